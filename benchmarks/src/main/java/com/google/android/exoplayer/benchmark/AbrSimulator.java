@@ -0,0 +1,307 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer.benchmark;
+
+import com.google.android.exoplayer.DefaultLoadControl;
+import com.google.android.exoplayer.ExoPlayer;
+import com.google.android.exoplayer.chunk.Chunk;
+import com.google.android.exoplayer.chunk.Format;
+import com.google.android.exoplayer.chunk.FormatEvaluator;
+import com.google.android.exoplayer.chunk.FormatEvaluator.AdaptiveEvaluator;
+import com.google.android.exoplayer.chunk.FormatEvaluator.BufferBasedEvaluator;
+import com.google.android.exoplayer.chunk.FormatEvaluator.Evaluation;
+import com.google.android.exoplayer.chunk.MediaChunk;
+import com.google.android.exoplayer.chunk.SingleSampleMediaChunk;
+import com.google.android.exoplayer.upstream.BandwidthEstimator;
+import com.google.android.exoplayer.upstream.ByteArrayDataSource;
+import com.google.android.exoplayer.upstream.DataSource;
+import com.google.android.exoplayer.upstream.DataSpec;
+import com.google.android.exoplayer.upstream.DefaultBandwidthMeter;
+import com.google.android.exoplayer.util.Clock;
+import com.google.android.exoplayer.util.MimeTypes;
+
+import android.net.Uri;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Replays bandwidth traces through adaptive {@link FormatEvaluator}s, and reports the average
+ * bitrate and rebuffer ratio that each achieves.
+ * <p>
+ * Playback of a fixed duration of segmented media is simulated in virtual time, so the results
+ * are deterministic and a long trace is replayed in well under a second. Segments are loaded one
+ * at a time, each taking the time for the first byte to arrive followed by the time to transfer it
+ * at the trace's bandwidth. Playback starts and resumes after rebuffering according to the
+ * player's default buffer durations, and loading pauses whilst the buffer is full. Discarding of
+ * buffered segments requested by an evaluator is not simulated.
+ * <p>
+ * With no arguments, a set of synthetic traces is replayed. Otherwise each argument is the path of
+ * a trace file, in the format described by {@link BandwidthTrace}.
+ */
+public final class AbrSimulator {
+
+  private static final long SEGMENT_DURATION_US = 4000000;
+  private static final int SEGMENT_COUNT = 150;
+  private static final long TIME_TO_FIRST_BYTE_US = 50000;
+  private static final long TRANSFER_STEP_US = 10000;
+  private static final long MAX_BUFFER_US = DefaultLoadControl.DEFAULT_HIGH_WATERMARK_MS * 1000L;
+  private static final long MIN_BUFFER_US = ExoPlayer.Factory.DEFAULT_MIN_BUFFER_MS * 1000L;
+  private static final long MIN_REBUFFER_US = ExoPlayer.Factory.DEFAULT_MIN_REBUFFER_MS * 1000L;
+
+  // A typical ladder of video formats, ordered by decreasing bitrate.
+  private static final Format[] FORMATS = new Format[] {
+      buildFormat(5800000, 1920, 1080),
+      buildFormat(4300000, 1920, 1080),
+      buildFormat(3000000, 1280, 720),
+      buildFormat(1750000, 1280, 720),
+      buildFormat(1050000, 960, 540),
+      buildFormat(560000, 640, 360),
+      buildFormat(375000, 512, 288),
+      buildFormat(235000, 320, 180)};
+
+  private static final String[] EVALUATOR_NAMES = new String[] {"adaptive", "buffer_based"};
+  private static final String[] ESTIMATOR_NAMES = new String[] {"percentile", "ewma", "harmonic"};
+
+  private AbrSimulator() {}
+
+  public static void main(String[] args) throws IOException {
+    List<BandwidthTrace> traces;
+    if (args.length == 0) {
+      traces = BandwidthTrace.getSyntheticTraces();
+    } else {
+      traces = new ArrayList<>();
+      for (String arg : args) {
+        traces.add(BandwidthTrace.fromFile(new File(arg)));
+      }
+    }
+
+    System.out.println(String.format(Locale.US, "%-12s %-13s %-10s %9s %9s %7s %9s %8s", "trace",
+        "evaluator", "estimator", "avg kbps", "rebuffer", "stalls", "startup", "switches"));
+    for (BandwidthTrace trace : traces) {
+      for (String evaluatorName : EVALUATOR_NAMES) {
+        for (String estimatorName : ESTIMATOR_NAMES) {
+          Result result = new Simulation(trace, evaluatorName, estimatorName).run();
+          System.out.println(String.format(Locale.US,
+              "%-12s %-13s %-10s %9d %8.2f%% %7d %8dms %8d", trace.name, evaluatorName,
+              estimatorName, result.averageBitrate / 1000, result.rebufferRatio * 100,
+              result.stallCount, result.startupTimeUs / 1000, result.switchCount));
+        }
+      }
+    }
+  }
+
+  /**
+   * The outcome of a single simulated playback.
+   */
+  public static final class Result {
+
+    /**
+     * The average bitrate of the loaded segments, in bits per second.
+     */
+    public final long averageBitrate;
+    /**
+     * The time spent rebuffering after playback started, as a fraction of the time from when
+     * playback started to when it ended.
+     */
+    public final double rebufferRatio;
+    /**
+     * The number of times that playback stalled after it started.
+     */
+    public final int stallCount;
+    /**
+     * The time taken for playback to start.
+     */
+    public final long startupTimeUs;
+    /**
+     * The number of times that consecutive segments were loaded in different formats.
+     */
+    public final int switchCount;
+
+    public Result(long averageBitrate, double rebufferRatio, int stallCount, long startupTimeUs,
+        int switchCount) {
+      this.averageBitrate = averageBitrate;
+      this.rebufferRatio = rebufferRatio;
+      this.stallCount = stallCount;
+      this.startupTimeUs = startupTimeUs;
+      this.switchCount = switchCount;
+    }
+
+  }
+
+  private static final class Simulation implements Clock {
+
+    private static final DataSource CHUNK_DATA_SOURCE = new ByteArrayDataSource(new byte[1]);
+    private static final DataSpec CHUNK_DATA_SPEC = new DataSpec(Uri.EMPTY);
+
+    private final BandwidthTrace trace;
+    private final DefaultBandwidthMeter bandwidthMeter;
+    private final FormatEvaluator evaluator;
+    private final Evaluation evaluation;
+    private final List<MediaChunk> queue;
+
+    private long timeUs;
+    private long playbackPositionUs;
+    private long bufferedPositionUs;
+    private boolean started;
+    private boolean playing;
+    private long startupTimeUs;
+    private long stallTimeUs;
+    private int stallCount;
+
+    public Simulation(BandwidthTrace trace, String evaluatorName, String estimatorName) {
+      this.trace = trace;
+      bandwidthMeter = new DefaultBandwidthMeter(null, null, this,
+          createBandwidthEstimator(estimatorName));
+      evaluator = createEvaluator(evaluatorName, bandwidthMeter);
+      evaluation = new Evaluation();
+      queue = new ArrayList<>();
+    }
+
+    public Result run() {
+      evaluator.enable();
+      long totalBits = 0;
+      int switchCount = 0;
+      for (int i = 0; i < SEGMENT_COUNT; i++) {
+        if (bufferedPositionUs - playbackPositionUs + SEGMENT_DURATION_US > MAX_BUFFER_US) {
+          // The buffer is full, so playback must be under way. Wait for space for the segment.
+          advance(bufferedPositionUs - playbackPositionUs + SEGMENT_DURATION_US - MAX_BUFFER_US);
+        }
+        while (!queue.isEmpty() && queue.get(0).endTimeUs <= playbackPositionUs) {
+          queue.remove(0);
+        }
+        Format previousFormat = evaluation.format;
+        evaluator.evaluate(queue, playbackPositionUs, FORMATS, evaluation);
+        Format format = evaluation.format;
+        if (previousFormat != null && format != previousFormat) {
+          switchCount++;
+        }
+        long bits = format.bitrate * SEGMENT_DURATION_US / 1000000;
+        load(bits / 8);
+        totalBits += bits;
+        long startTimeUs = bufferedPositionUs;
+        bufferedPositionUs += SEGMENT_DURATION_US;
+        queue.add(new SingleSampleMediaChunk(CHUNK_DATA_SOURCE, CHUNK_DATA_SPEC,
+            Chunk.TRIGGER_UNSPECIFIED, format, startTimeUs, bufferedPositionUs, i, null, null,
+            Chunk.NO_PARENT_ID));
+        maybeStartPlayback();
+      }
+      evaluator.disable();
+      // Play out the remainder of the buffer.
+      playing = true;
+      started = true;
+      advance(bufferedPositionUs - playbackPositionUs);
+
+      long mediaDurationUs = SEGMENT_COUNT * SEGMENT_DURATION_US;
+      return new Result(totalBits * 1000000 / mediaDurationUs,
+          (double) stallTimeUs / (mediaDurationUs + stallTimeUs), stallCount, startupTimeUs,
+          switchCount);
+    }
+
+    // Clock implementation.
+
+    @Override
+    public long elapsedRealtime() {
+      return timeUs / 1000;
+    }
+
+    // Internal methods.
+
+    private void load(long bytes) {
+      bandwidthMeter.onTransferRequest();
+      advance(TIME_TO_FIRST_BYTE_US);
+      bandwidthMeter.onTransferStart();
+      long remainingBits = bytes * 8;
+      while (remainingBits > 0) {
+        long bitsPerSecond = trace.getBitsPerSecond(timeUs);
+        // Bytes are reported in small steps, as they would be read by a loader.
+        long intervalUs = Math.min(trace.getNextChangeTimeUs(timeUs) - timeUs,
+            TRANSFER_STEP_US);
+        long bits = Math.min(remainingBits, bitsPerSecond * intervalUs / 1000000);
+        long elapsedUs = bits < remainingBits ? intervalUs
+            : (bits * 1000000 + bitsPerSecond - 1) / bitsPerSecond;
+        advance(elapsedUs);
+        if (bits > 0) {
+          bandwidthMeter.onBytesTransferred((int) (bits / 8));
+        }
+        remainingBits -= bits;
+      }
+      bandwidthMeter.onTransferEnd();
+    }
+
+    private void maybeStartPlayback() {
+      long bufferedDurationUs = bufferedPositionUs - playbackPositionUs;
+      if (!playing && bufferedDurationUs >= (started ? MIN_REBUFFER_US : MIN_BUFFER_US)) {
+        playing = true;
+        started = true;
+      }
+    }
+
+    private void advance(long durationUs) {
+      timeUs += durationUs;
+      if (!started) {
+        startupTimeUs += durationUs;
+      } else if (!playing) {
+        stallTimeUs += durationUs;
+      } else {
+        long bufferedDurationUs = bufferedPositionUs - playbackPositionUs;
+        if (durationUs <= bufferedDurationUs) {
+          playbackPositionUs += durationUs;
+        } else {
+          playbackPositionUs = bufferedPositionUs;
+          playing = false;
+          stallCount++;
+          stallTimeUs += durationUs - bufferedDurationUs;
+        }
+      }
+    }
+
+    private static BandwidthEstimator createBandwidthEstimator(String name) {
+      switch (name) {
+        case "percentile":
+          return new BandwidthEstimator.PercentileEstimator();
+        case "ewma":
+          return new BandwidthEstimator.EwmaEstimator();
+        case "harmonic":
+          return new BandwidthEstimator.HarmonicMeanEstimator();
+        default:
+          throw new IllegalArgumentException(name);
+      }
+    }
+
+    private static FormatEvaluator createEvaluator(String name,
+        DefaultBandwidthMeter bandwidthMeter) {
+      switch (name) {
+        case "adaptive":
+          return new AdaptiveEvaluator(bandwidthMeter);
+        case "buffer_based":
+          return new BufferBasedEvaluator(bandwidthMeter);
+        default:
+          throw new IllegalArgumentException(name);
+      }
+    }
+
+  }
+
+  private static Format buildFormat(int bitrate, int width, int height) {
+    return new Format(Integer.toString(bitrate / 1000), MimeTypes.VIDEO_MP4, width, height, 30,
+        -1, -1, bitrate);
+  }
+
+}
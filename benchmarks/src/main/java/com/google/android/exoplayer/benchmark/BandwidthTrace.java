@@ -0,0 +1,159 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer.benchmark;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * A recorded or synthetic bandwidth trace, consisting of consecutive intervals of constant
+ * bandwidth. The trace is repeated if it is replayed for longer than its duration.
+ * <p>
+ * Trace files contain one interval per line, formed of the duration of the interval in
+ * milliseconds and the bandwidth during the interval in kilobits per second, separated by
+ * whitespace. Blank lines and lines starting with {@code #} are ignored.
+ */
+public final class BandwidthTrace {
+
+  public final String name;
+
+  private final long[] intervalEndTimesUs;
+  private final long[] bitsPerSecond;
+  private final long durationUs;
+
+  /**
+   * @param name The name of the trace.
+   * @param intervalDurationsMs The duration of each interval, in milliseconds.
+   * @param kbps The bandwidth during each interval, in kilobits per second.
+   */
+  public BandwidthTrace(String name, long[] intervalDurationsMs, long[] kbps) {
+    if (intervalDurationsMs.length == 0 || intervalDurationsMs.length != kbps.length) {
+      throw new IllegalArgumentException("Invalid trace: " + name);
+    }
+    this.name = name;
+    intervalEndTimesUs = new long[intervalDurationsMs.length];
+    bitsPerSecond = new long[kbps.length];
+    long timeUs = 0;
+    boolean hasBandwidth = false;
+    for (int i = 0; i < intervalDurationsMs.length; i++) {
+      if (intervalDurationsMs[i] <= 0 || kbps[i] < 0) {
+        throw new IllegalArgumentException("Invalid interval " + i + " in trace: " + name);
+      }
+      timeUs += intervalDurationsMs[i] * 1000;
+      intervalEndTimesUs[i] = timeUs;
+      bitsPerSecond[i] = kbps[i] * 1000;
+      hasBandwidth |= kbps[i] > 0;
+    }
+    if (!hasBandwidth) {
+      throw new IllegalArgumentException("Trace has no bandwidth: " + name);
+    }
+    durationUs = timeUs;
+  }
+
+  /**
+   * Returns the bandwidth at the specified time, in bits per second.
+   */
+  public long getBitsPerSecond(long timeUs) {
+    return bitsPerSecond[getIntervalIndex(timeUs % durationUs)];
+  }
+
+  /**
+   * Returns the time at which the bandwidth next changes, which is always after {@code timeUs}.
+   */
+  public long getNextChangeTimeUs(long timeUs) {
+    long cycleStartTimeUs = timeUs - (timeUs % durationUs);
+    return cycleStartTimeUs + intervalEndTimesUs[getIntervalIndex(timeUs % durationUs)];
+  }
+
+  private int getIntervalIndex(long cycleTimeUs) {
+    for (int i = 0; i < intervalEndTimesUs.length; i++) {
+      if (cycleTimeUs < intervalEndTimesUs[i]) {
+        return i;
+      }
+    }
+    throw new IllegalStateException();
+  }
+
+  /**
+   * Reads a trace from a file in the format described in the class documentation.
+   */
+  public static BandwidthTrace fromFile(File file) throws IOException {
+    List<long[]> intervals = new ArrayList<>();
+    BufferedReader reader = new BufferedReader(new FileReader(file));
+    try {
+      String line;
+      while ((line = reader.readLine()) != null) {
+        line = line.trim();
+        if (line.isEmpty() || line.startsWith("#")) {
+          continue;
+        }
+        String[] fields = line.split("\\s+");
+        if (fields.length != 2) {
+          throw new IOException("Invalid line in " + file + ": " + line);
+        }
+        try {
+          intervals.add(new long[] {Long.parseLong(fields[0]), Long.parseLong(fields[1])});
+        } catch (NumberFormatException e) {
+          throw new IOException("Invalid line in " + file + ": " + line);
+        }
+      }
+    } finally {
+      reader.close();
+    }
+    long[] durationsMs = new long[intervals.size()];
+    long[] kbps = new long[intervals.size()];
+    for (int i = 0; i < intervals.size(); i++) {
+      durationsMs[i] = intervals.get(i)[0];
+      kbps[i] = intervals.get(i)[1];
+    }
+    return new BandwidthTrace(file.getName(), durationsMs, kbps);
+  }
+
+  /**
+   * Returns synthetic traces that exercise common network conditions. The traces are the same on
+   * every call.
+   */
+  public static List<BandwidthTrace> getSyntheticTraces() {
+    List<BandwidthTrace> traces = new ArrayList<>();
+    traces.add(new BandwidthTrace("stable", new long[] {60000}, new long[] {5000}));
+    traces.add(new BandwidthTrace("step_drop", new long[] {60000, 60000},
+        new long[] {6000, 1200}));
+    traces.add(new BandwidthTrace("outages", new long[] {55000, 5000}, new long[] {4000, 0}));
+    // Congested Wi-Fi: bandwidth varies widely from one second to the next.
+    traces.add(buildRandomTrace("fluctuating", 1000, 3000, 0.6));
+    // A weak cellular connection: low bandwidth that varies over several seconds.
+    traces.add(buildRandomTrace("cellular", 5000, 1000, 1));
+    return traces;
+  }
+
+  private static BandwidthTrace buildRandomTrace(String name, long intervalDurationMs,
+      long medianKbps, double sigma) {
+    Random random = new Random(0);
+    long[] durationsMs = new long[300];
+    long[] kbps = new long[durationsMs.length];
+    for (int i = 0; i < durationsMs.length; i++) {
+      durationsMs[i] = intervalDurationMs;
+      kbps[i] = (long) (medianKbps * Math.exp(random.nextGaussian() * sigma));
+    }
+    return new BandwidthTrace(name, durationsMs, kbps);
+  }
+
+}
@@ -0,0 +1,159 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer.benchmark;
+
+import com.google.android.exoplayer.extractor.RollingSampleBufferBenchmark;
+import com.google.android.exoplayer.extractor.ts.TsExtractorBenchmark;
+import com.google.android.exoplayer.hls.Aes128DataSourceBenchmark;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.Result;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Locale;
+
+/**
+ * Runs the benchmarks with the GC profiler enabled, and then summarizes the results as extraction
+ * rates and allocations per sample for the extractors, as extraction rates for each TS read path,
+ * as times and allocations per parse for the manifest and subtitle parsers, as decryption rates
+ * for HLS segment decryption, as times per sample and per seek for the sample queues, and as read
+ * and write rates for the caches.
+ * <p>
+ * Command line arguments are passed to JMH, so a subset of the benchmarks can be run by passing a
+ * regular expression, and options such as {@code -wi 1 -i 1} can be used to shorten a run.
+ */
+public final class BenchmarkMain {
+
+  private static final String ALLOCATION_RESULT_SUFFIX = "gc.alloc.rate.norm";
+
+  private BenchmarkMain() {}
+
+  public static void main(String[] args) throws CommandLineOptionException, RunnerException,
+      IOException, InterruptedException {
+    Options options = new OptionsBuilder()
+        .parent(new CommandLineOptions(args))
+        .addProfiler(GCProfiler.class)
+        .build();
+    Collection<RunResult> results = new Runner(options).run();
+
+    System.out.println();
+    System.out.println("Summary:");
+    for (RunResult result : results) {
+      String benchmark = result.getParams().getBenchmark();
+      if (benchmark.startsWith(ExtractorBenchmark.class.getName())) {
+        printExtractorResult(result);
+      } else if (benchmark.startsWith(TsExtractorBenchmark.class.getName())) {
+        printTsReadResult(result);
+      } else if (benchmark.startsWith(ManifestParserBenchmark.class.getName())) {
+        printParserResult(result, result.getParams().getParam("manifest"), "manifest");
+      } else if (benchmark.startsWith(SubtitleParserBenchmark.class.getName())) {
+        printParserResult(result, result.getParams().getParam("format"), "subtitle");
+      } else if (benchmark.startsWith(Aes128DataSourceBenchmark.class.getName())) {
+        printDecryptionResult(result);
+      } else if (benchmark.startsWith(RollingSampleBufferBenchmark.class.getName())) {
+        printSampleQueueResult(result);
+      } else if (benchmark.startsWith(CacheContentionBenchmark.class.getName())) {
+        printCacheContentionResult(result);
+      }
+    }
+  }
+
+  private static void printExtractorResult(RunResult result) throws IOException,
+      InterruptedException {
+    String format = result.getParams().getParam("format");
+    byte[] data = TestStreams.build(format);
+    int sampleCount = ExtractorBenchmark.extract(format, data);
+    double operationsPerSecond = result.getPrimaryResult().getScore();
+    double megabytesPerSecond = operationsPerSecond * data.length / (1024 * 1024);
+    double bytesPerSample = getAllocatedBytesPerOperation(result) / sampleCount;
+    System.out.println(String.format(Locale.US,
+        "  %-7s extractor: %8.1f MB/s, %8.1f bytes allocated per sample (%d samples)",
+        format, megabytesPerSecond, bytesPerSample, sampleCount));
+  }
+
+  private static void printTsReadResult(RunResult result) {
+    String path = result.getParams().getParam("path");
+    String readLength = result.getParams().getParam("readLength");
+    double operationsPerSecond = result.getPrimaryResult().getScore();
+    double megabytesPerSecond = operationsPerSecond * TsExtractorBenchmark.STREAM_LENGTH
+        / (1024 * 1024);
+    System.out.println(String.format(Locale.US,
+        "  %-10s TS extraction (%5s byte reads): %8.1f MB/s", path, readLength,
+        megabytesPerSecond));
+  }
+
+  private static void printDecryptionResult(RunResult result) {
+    String path = result.getParams().getParam("path");
+    String readLength = result.getParams().getParam("readLength");
+    double operationsPerSecond = result.getPrimaryResult().getScore();
+    double megabytesPerSecond = operationsPerSecond * Aes128DataSourceBenchmark.SEGMENT_LENGTH
+        / (1024 * 1024);
+    System.out.println(String.format(Locale.US,
+        "  %-19s decryption (%5s byte reads): %8.1f MB/s, %10.0f bytes allocated per segment",
+        path, readLength, megabytesPerSecond, getAllocatedBytesPerOperation(result)));
+  }
+
+  private static void printSampleQueueResult(RunResult result) {
+    String benchmark = result.getParams().getBenchmark();
+    double microsecondsPerOperation = result.getPrimaryResult().getScore();
+    if (benchmark.endsWith("loadAndRead")) {
+      int sampleCount = RollingSampleBufferBenchmark.SAMPLE_COUNT;
+      System.out.println(String.format(Locale.US,
+          "  sample queue load and read: %8.1f ns per sample, %8.1f bytes allocated per sample",
+          microsecondsPerOperation * 1000 / sampleCount,
+          getAllocatedBytesPerOperation(result) / sampleCount));
+    } else {
+      System.out.println(String.format(Locale.US,
+          "  sample queue seek: %8.2f us per seek", microsecondsPerOperation));
+    }
+  }
+
+  private static void printCacheContentionResult(RunResult result) {
+    String implementation = result.getParams().getParam("implementation");
+    Result<?> readResult = result.getSecondaryResults().get("read");
+    Result<?> writeResult = result.getSecondaryResults().get("write");
+    System.out.println(String.format(Locale.US,
+        "  %-10s cache: %10.0f reads per second, %8.0f writes per second", implementation,
+        readResult.getScore(), writeResult.getScore()));
+  }
+
+  private static void printParserResult(RunResult result, String name, String unit) {
+    Result<?> primaryResult = result.getPrimaryResult();
+    System.out.println(String.format(Locale.US,
+        "  %-17s parser: %10.1f %s per %s, %10.0f bytes allocated per %s",
+        name, primaryResult.getScore(), primaryResult.getScoreUnit().replace("/op", ""), unit,
+        getAllocatedBytesPerOperation(result), unit));
+  }
+
+  private static double getAllocatedBytesPerOperation(RunResult result) {
+    for (String name : result.getSecondaryResults().keySet()) {
+      if (name.endsWith(ALLOCATION_RESULT_SUFFIX)) {
+        Result<?> allocationResult = result.getSecondaryResults().get(name);
+        return allocationResult.getScore();
+      }
+    }
+    return Double.NaN;
+  }
+
+}
@@ -0,0 +1,209 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer.benchmark;
+
+import com.google.android.exoplayer.upstream.cache.Cache;
+import com.google.android.exoplayer.upstream.cache.CacheEvictor;
+import com.google.android.exoplayer.upstream.cache.CacheSpan;
+import com.google.android.exoplayer.upstream.cache.ConcurrentCache;
+import com.google.android.exoplayer.upstream.cache.SimpleCache;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.LinkedList;
+
+/**
+ * Measures contention between threads accessing a {@link SimpleCache} and a
+ * {@link ConcurrentCache}.
+ * <p>
+ * In the {@code contention} group a writer thread continuously commits new cache files, each of
+ * which causes an older one to be evicted, whilst reader threads open cached spans and query the
+ * spans of other keys. Throughout the run further threads wait on a key that is locked, as a
+ * prefetcher waiting behind playback would. {@link BenchmarkMain} reports the number of read and
+ * write operations completed per second. Results are only meaningful on a machine with multiple
+ * processors.
+ */
+@State(Scope.Group)
+@BenchmarkMode(Mode.Throughput)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class CacheContentionBenchmark {
+
+  public static final String IMPLEMENTATION_SIMPLE = "simple";
+  public static final String IMPLEMENTATION_CONCURRENT = "concurrent";
+
+  private static final int READER_THREAD_COUNT = 4;
+  private static final int WAITER_THREAD_COUNT = 4;
+  private static final int READ_KEY_COUNT = 16;
+  private static final int SPANS_PER_READ_KEY = 32;
+  private static final int SPAN_LENGTH = 1024;
+  private static final String LOCKED_KEY = "locked";
+
+  /**
+   * The position of a reader thread in the spans that it reads.
+   */
+  @State(Scope.Thread)
+  public static class ReaderState {
+
+    private int readIndex;
+
+  }
+
+  @Param({IMPLEMENTATION_SIMPLE, IMPLEMENTATION_CONCURRENT})
+  public String implementation;
+
+  private File cacheDir;
+  private Cache cache;
+  private CacheSpan lockedHole;
+  private Thread[] waiterThreads;
+  private int writeIndex;
+
+  @Setup
+  public void setUp() throws IOException, InterruptedException {
+    cacheDir = File.createTempFile("CacheContentionBenchmark", "");
+    if (!cacheDir.delete() || !cacheDir.mkdir()) {
+      throw new IOException("Failed to create " + cacheDir);
+    }
+    cache = IMPLEMENTATION_SIMPLE.equals(implementation)
+        ? new SimpleCache(cacheDir, new WrittenSpanEvictor())
+        : new ConcurrentCache(cacheDir, new WrittenSpanEvictor());
+    for (int i = 0; i < READ_KEY_COUNT; i++) {
+      for (int j = 0; j < SPANS_PER_READ_KEY; j++) {
+        writeSpan(cache, "read" + i, j * SPAN_LENGTH);
+      }
+    }
+    lockedHole = cache.startReadWrite(LOCKED_KEY, 0);
+    waiterThreads = new Thread[WAITER_THREAD_COUNT];
+    for (int i = 0; i < WAITER_THREAD_COUNT; i++) {
+      waiterThreads[i] = new Thread() {
+        @Override
+        public void run() {
+          try {
+            // Blocks until interrupted, since the key remains locked for the whole run.
+            cache.startReadWrite(LOCKED_KEY, 0);
+            throw new IllegalStateException("Acquired locked key");
+          } catch (InterruptedException e) {
+            // Expected.
+          }
+        }
+      };
+      waiterThreads[i].start();
+    }
+  }
+
+  @TearDown
+  public void tearDown() throws InterruptedException {
+    for (Thread thread : waiterThreads) {
+      thread.interrupt();
+      thread.join();
+    }
+    cache.releaseHoleSpan(lockedHole);
+    File[] files = cacheDir.listFiles();
+    if (files != null) {
+      for (File file : files) {
+        file.delete();
+      }
+    }
+    cacheDir.delete();
+  }
+
+  @Benchmark
+  @Group("contention")
+  @GroupThreads(1)
+  public void write() throws IOException, InterruptedException {
+    writeSpan(cache, "write" + writeIndex++, 0);
+  }
+
+  @Benchmark
+  @Group("contention")
+  @GroupThreads(READER_THREAD_COUNT)
+  public long read(ReaderState state) throws InterruptedException {
+    int readIndex = state.readIndex++;
+    String key = "read" + (readIndex % READ_KEY_COUNT);
+    long position = (readIndex % SPANS_PER_READ_KEY) * SPAN_LENGTH;
+    if (!cache.startReadWrite(key, position).isCached
+        || !cache.isCached(key, 0, position + SPAN_LENGTH)
+        || cache.getCachedSpans(key).size() != SPANS_PER_READ_KEY) {
+      throw new IllegalStateException("Span not cached: " + key + " " + position);
+    }
+    return cache.getCacheSpace();
+  }
+
+  private static void writeSpan(Cache cache, String key, long position)
+      throws IOException, InterruptedException {
+    CacheSpan holeSpan = cache.startReadWrite(key, position);
+    File file = cache.startFile(key, position, SPAN_LENGTH);
+    FileOutputStream outputStream = new FileOutputStream(file);
+    outputStream.write(new byte[SPAN_LENGTH]);
+    outputStream.close();
+    cache.commitFile(file);
+    cache.releaseHoleSpan(holeSpan);
+  }
+
+  /**
+   * Evicts the oldest spans written by the writer thread, so that every commit also evicts whilst
+   * the spans being read remain cached.
+   */
+  private static final class WrittenSpanEvictor implements CacheEvictor {
+
+    private static final int MAX_WRITTEN_SPANS = 8;
+
+    private final LinkedList<CacheSpan> writtenSpans = new LinkedList<>();
+
+    @Override
+    public void onStartFile(Cache cache, String key, long position, long length) {
+      // Do nothing.
+    }
+
+    @Override
+    public void onSpanAdded(Cache cache, CacheSpan span) {
+      if (span.key.startsWith("write")) {
+        writtenSpans.add(span);
+        if (writtenSpans.size() > MAX_WRITTEN_SPANS) {
+          cache.removeSpan(writtenSpans.removeFirst());
+        }
+      }
+    }
+
+    @Override
+    public void onSpanRemoved(Cache cache, CacheSpan span) {
+      // Do nothing.
+    }
+
+    @Override
+    public void onSpanTouched(Cache cache, CacheSpan oldSpan, CacheSpan newSpan) {
+      // Do nothing.
+    }
+
+  }
+
+}
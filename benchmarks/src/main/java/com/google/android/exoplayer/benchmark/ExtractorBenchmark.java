@@ -0,0 +1,205 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer.benchmark;
+
+import com.google.android.exoplayer.C;
+import com.google.android.exoplayer.MediaFormat;
+import com.google.android.exoplayer.drm.DrmInitData;
+import com.google.android.exoplayer.extractor.Extractor;
+import com.google.android.exoplayer.extractor.ExtractorInput;
+import com.google.android.exoplayer.extractor.ExtractorOutput;
+import com.google.android.exoplayer.extractor.PositionHolder;
+import com.google.android.exoplayer.extractor.SeekMap;
+import com.google.android.exoplayer.extractor.TrackOutput;
+import com.google.android.exoplayer.extractor.mp3.Mp3Extractor;
+import com.google.android.exoplayer.extractor.mp4.FragmentedMp4Extractor;
+import com.google.android.exoplayer.extractor.mp4.Mp4Extractor;
+import com.google.android.exoplayer.extractor.ts.AdtsExtractor;
+import com.google.android.exoplayer.extractor.ts.TsExtractor;
+import com.google.android.exoplayer.extractor.webm.WebmExtractor;
+import com.google.android.exoplayer.testutil.FakeExtractorInput;
+import com.google.android.exoplayer.util.ParsableByteArray;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.EOFException;
+import java.io.IOException;
+
+/**
+ * Measures how quickly each {@link Extractor} demultiplexes a stream held in memory.
+ * <p>
+ * Each operation extracts one complete stream built by {@link TestStreams}. Multiplying the
+ * throughput by the length of the stream gives the extraction rate in bytes per second, and
+ * dividing the normalized allocation rate reported by the GC profiler by the number of samples in
+ * the stream gives the number of bytes allocated per sample. {@link BenchmarkMain} reports both.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ExtractorBenchmark {
+
+  private static final int SCRATCH_LENGTH = 64 * 1024;
+
+  @Param({TestStreams.FORMAT_TS, TestStreams.FORMAT_TS_HEVC, TestStreams.FORMAT_FRAGMENTED_MP4,
+      TestStreams.FORMAT_MP4, TestStreams.FORMAT_WEBM, TestStreams.FORMAT_MP3,
+      TestStreams.FORMAT_ADTS})
+  public String format;
+
+  private byte[] data;
+
+  @Setup
+  public void setUp() {
+    data = TestStreams.build(format);
+  }
+
+  @Benchmark
+  public int extract() throws IOException, InterruptedException {
+    return extract(format, data);
+  }
+
+  /**
+   * Extracts a stream, copying the sample data into a scratch buffer.
+   *
+   * @param format The format of the stream, as defined by {@link TestStreams}.
+   * @param data The stream.
+   * @return The number of samples that were output.
+   * @throws IOException If the stream could not be extracted.
+   * @throws InterruptedException If the thread was interrupted.
+   */
+  public static int extract(String format, byte[] data) throws IOException,
+      InterruptedException {
+    FakeExtractorInput input = new FakeExtractorInput.Builder().setData(data).build();
+    CountingExtractorOutput output = new CountingExtractorOutput();
+    Extractor extractor = createExtractor(format);
+    extractor.init(output);
+    PositionHolder seekPositionHolder = new PositionHolder();
+    int result = Extractor.RESULT_CONTINUE;
+    while (result != Extractor.RESULT_END_OF_INPUT) {
+      result = extractor.read(input, seekPositionHolder);
+      if (result == Extractor.RESULT_SEEK) {
+        input.setPosition((int) seekPositionHolder.position);
+      }
+    }
+    return output.trackOutput.sampleCount;
+  }
+
+  private static Extractor createExtractor(String format) {
+    switch (format) {
+      case TestStreams.FORMAT_TS:
+      case TestStreams.FORMAT_TS_HEVC:
+        return new TsExtractor();
+      case TestStreams.FORMAT_FRAGMENTED_MP4:
+        return new FragmentedMp4Extractor();
+      case TestStreams.FORMAT_MP4:
+        return new Mp4Extractor();
+      case TestStreams.FORMAT_WEBM:
+        return new WebmExtractor();
+      case TestStreams.FORMAT_MP3:
+        return new Mp3Extractor();
+      case TestStreams.FORMAT_ADTS:
+        return new AdtsExtractor();
+      default:
+        throw new IllegalArgumentException("Unsupported format: " + format);
+    }
+  }
+
+  /**
+   * An {@link ExtractorOutput} that outputs the samples of all tracks to a single
+   * {@link CountingTrackOutput}.
+   */
+  private static final class CountingExtractorOutput implements ExtractorOutput {
+
+    public final CountingTrackOutput trackOutput = new CountingTrackOutput();
+
+    @Override
+    public TrackOutput track(int trackId) {
+      return trackOutput;
+    }
+
+    @Override
+    public void endTracks() {
+      // Do nothing.
+    }
+
+    @Override
+    public void seekMap(SeekMap seekMap) {
+      // Do nothing.
+    }
+
+    @Override
+    public void drmInitData(DrmInitData drmInitData) {
+      // Do nothing.
+    }
+
+  }
+
+  /**
+   * A {@link TrackOutput} that copies sample data into a scratch buffer, as the rolling buffer of a
+   * real output would, and counts samples.
+   */
+  private static final class CountingTrackOutput implements TrackOutput {
+
+    private final byte[] scratch = new byte[SCRATCH_LENGTH];
+
+    public int sampleCount;
+
+    @Override
+    public void format(MediaFormat format) {
+      // Do nothing.
+    }
+
+    @Override
+    public int sampleData(ExtractorInput input, int length, boolean allowEndOfInput)
+        throws IOException, InterruptedException {
+      int bytesRead = input.read(scratch, 0, Math.min(length, SCRATCH_LENGTH));
+      if (bytesRead == C.RESULT_END_OF_INPUT) {
+        if (allowEndOfInput) {
+          return C.RESULT_END_OF_INPUT;
+        }
+        throw new EOFException();
+      }
+      return bytesRead;
+    }
+
+    @Override
+    public void sampleData(ParsableByteArray data, int length) {
+      while (length > 0) {
+        int bytesToRead = Math.min(length, SCRATCH_LENGTH);
+        data.readBytes(scratch, 0, bytesToRead);
+        length -= bytesToRead;
+      }
+    }
+
+    @Override
+    public void sampleMetadata(long timeUs, int flags, int size, int offset,
+        byte[] encryptionKey) {
+      sampleCount++;
+    }
+
+  }
+
+}
@@ -0,0 +1,142 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer.benchmark;
+
+import com.google.android.exoplayer.dash.mpd.MediaPresentationDescriptionParser;
+import com.google.android.exoplayer.hls.HlsMediaPlaylist;
+import com.google.android.exoplayer.hls.HlsPlaylistParser;
+import com.google.android.exoplayer.smoothstreaming.SmoothStreamingManifestParser;
+import com.google.android.exoplayer.upstream.UriLoadable;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the time taken to parse a manifest.
+ * <p>
+ * The DASH and SmoothStreaming manifests are the library's test assets. HLS playlists are not
+ * included in the test assets, so a master playlist with a typical number of variants and a media
+ * playlist for a two hour event are generated instead. The media playlist is also parsed as a
+ * refresh of a live playlist whose window has moved on by one segment.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ManifestParserBenchmark {
+
+  public static final String MANIFEST_DASH = "dash";
+  public static final String MANIFEST_SMOOTHSTREAMING = "smoothstreaming";
+  public static final String MANIFEST_HLS_MASTER = "hls_master";
+  public static final String MANIFEST_HLS_MEDIA = "hls_media";
+  public static final String MANIFEST_HLS_MEDIA_REFRESH = "hls_media_refresh";
+
+  private static final String CONNECTION_URL = "http://example.com/manifest";
+
+  private static final int HLS_VARIANT_COUNT = 8;
+  private static final int HLS_SEGMENT_COUNT = 1200;
+  private static final int HLS_SEGMENT_DURATION_SECS = 6;
+
+  @Param({MANIFEST_DASH, MANIFEST_SMOOTHSTREAMING, MANIFEST_HLS_MASTER, MANIFEST_HLS_MEDIA,
+      MANIFEST_HLS_MEDIA_REFRESH})
+  public String manifest;
+
+  private UriLoadable.Parser<?> parser;
+  private byte[] data;
+  private HlsMediaPlaylist previousPlaylist;
+
+  @Setup
+  public void setUp() throws IOException {
+    switch (manifest) {
+      case MANIFEST_DASH:
+        parser = new MediaPresentationDescriptionParser();
+        data = TestStreams.readAsset("dash/sample_mpd_1");
+        break;
+      case MANIFEST_SMOOTHSTREAMING:
+        parser = new SmoothStreamingManifestParser();
+        data = TestStreams.readAsset("smoothstreaming/sample_ismc_1");
+        break;
+      case MANIFEST_HLS_MASTER:
+        parser = new HlsPlaylistParser();
+        data = buildHlsMasterPlaylist().getBytes("UTF-8");
+        break;
+      case MANIFEST_HLS_MEDIA:
+        parser = new HlsPlaylistParser();
+        data = buildHlsMediaPlaylist(0, false).getBytes("UTF-8");
+        break;
+      case MANIFEST_HLS_MEDIA_REFRESH:
+        parser = new HlsPlaylistParser();
+        previousPlaylist = (HlsMediaPlaylist) parser.parse(CONNECTION_URL,
+            new ByteArrayInputStream(buildHlsMediaPlaylist(0, true).getBytes("UTF-8")));
+        data = buildHlsMediaPlaylist(1, true).getBytes("UTF-8");
+        break;
+      default:
+        throw new IllegalArgumentException("Unsupported manifest: " + manifest);
+    }
+  }
+
+  @Benchmark
+  public Object parse() throws IOException {
+    if (previousPlaylist != null) {
+      return ((HlsPlaylistParser) parser).parseMediaPlaylist(CONNECTION_URL, data, data.length,
+          previousPlaylist);
+    }
+    return parser.parse(CONNECTION_URL, new ByteArrayInputStream(data));
+  }
+
+  private static String buildHlsMasterPlaylist() {
+    StringBuilder builder = new StringBuilder("#EXTM3U\n");
+    for (int i = 0; i < HLS_VARIANT_COUNT; i++) {
+      int height = 144 * (i + 1);
+      builder.append("#EXT-X-STREAM-INF:BANDWIDTH=").append(400000 * (i + 1))
+          .append(",CODECS=\"mp4a.40.2,avc1.4d401f\",RESOLUTION=")
+          .append(height * 16 / 9).append('x').append(height).append('\n')
+          .append("http://example.com/variant").append(i).append(".m3u8\n");
+    }
+    return builder.toString();
+  }
+
+  private static String buildHlsMediaPlaylist(int mediaSequence, boolean live) {
+    StringBuilder builder = new StringBuilder("#EXTM3U\n")
+        .append("#EXT-X-VERSION:3\n")
+        .append("#EXT-X-TARGETDURATION:").append(HLS_SEGMENT_DURATION_SECS).append('\n')
+        .append("#EXT-X-MEDIA-SEQUENCE:").append(mediaSequence).append('\n');
+    for (int i = mediaSequence; i < mediaSequence + HLS_SEGMENT_COUNT; i++) {
+      builder.append("#EXTINF:").append(HLS_SEGMENT_DURATION_SECS).append(".000,\n")
+          .append("http://example.com/segment").append(i).append(".ts\n");
+    }
+    if (!live) {
+      builder.append("#EXT-X-ENDLIST\n");
+    }
+    return builder.toString();
+  }
+
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer.benchmark;
+
+import com.google.android.exoplayer.ParserException;
+import com.google.android.exoplayer.text.Subtitle;
+import com.google.android.exoplayer.text.SubtitleParser;
+import com.google.android.exoplayer.text.subrip.SubripParser;
+import com.google.android.exoplayer.text.ttml.TtmlParser;
+import com.google.android.exoplayer.text.webvtt.WebvttParser;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the time taken to parse a subtitle file from the library's test assets.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class SubtitleParserBenchmark {
+
+  public static final String FORMAT_SUBRIP = "subrip";
+  public static final String FORMAT_WEBVTT = "webvtt";
+  public static final String FORMAT_TTML = "ttml";
+
+  @Param({FORMAT_SUBRIP, FORMAT_WEBVTT, FORMAT_TTML})
+  public String format;
+
+  private SubtitleParser parser;
+  private byte[] data;
+
+  @Setup
+  public void setUp() throws IOException {
+    switch (format) {
+      case FORMAT_SUBRIP:
+        parser = new SubripParser();
+        data = TestStreams.readAsset("subrip/typical");
+        break;
+      case FORMAT_WEBVTT:
+        parser = new WebvttParser();
+        data = TestStreams.readAsset("webvtt/with_positioning");
+        break;
+      case FORMAT_TTML:
+        parser = new TtmlParser();
+        data = TestStreams.readAsset("ttml/inherit_multiple_styles.xml");
+        break;
+      default:
+        throw new IllegalArgumentException("Unsupported format: " + format);
+    }
+  }
+
+  @Benchmark
+  public Subtitle parse() throws ParserException {
+    return parser.parse(data, 0, data.length);
+  }
+
+}
@@ -0,0 +1,499 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer.benchmark;
+
+import com.google.android.exoplayer.util.Util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+/**
+ * Builds synthetic media streams for {@link ExtractorBenchmark}, and loads the library's test
+ * assets for the other benchmarks.
+ * <p>
+ * Each stream carries a few seconds of content at broadcast bitrates. Sample payloads are filled
+ * with pseudo-random bytes that cannot be mistaken for start codes or sync words, so that the
+ * number of samples extracted from each stream is fixed.
+ */
+/* package */ final class TestStreams {
+
+  public static final String FORMAT_TS = "ts";
+  public static final String FORMAT_TS_HEVC = "ts-hevc";
+  public static final String FORMAT_FRAGMENTED_MP4 = "fmp4";
+  public static final String FORMAT_MP4 = "mp4";
+  public static final String FORMAT_WEBM = "webm";
+  public static final String FORMAT_MP3 = "mp3";
+  public static final String FORMAT_ADTS = "adts";
+
+  private static final int VIDEO_FRAME_COUNT = 150;
+  private static final int VIDEO_FRAME_SIZE = 16 * 1024;
+  private static final int VIDEO_FRAMES_PER_KEYFRAME = 25;
+  private static final int AUDIO_FRAME_COUNT = 6000;
+  // HEVC frames at 25fps, for a bitrate of 20Mbps.
+  private static final int HEVC_FRAME_SIZE = 100 * 1000;
+
+  // H.264 parameter sets for 1280x720 video, as found in the avcC atom below.
+  private static final byte[] H264_SPS = Util.getBytesFromHexString(
+      "6764001facb402802dd80880000003008000001e078c1950");
+  private static final byte[] H264_PPS = Util.getBytesFromHexString("68ee3cb0");
+  private static final byte[] H264_AUD = Util.getBytesFromHexString("09f0");
+
+  // H.265 parameter sets for 1280x720 video.
+  private static final byte[] H265_VPS = Util.getBytesFromHexString(
+      "40010c01ffff01600000030090000003000003005d959809");
+  private static final byte[] H265_SPS = Util.getBytesFromHexString(
+      "42010101600000030090000003000003005da00280802d165959a4932bc05a70800001f480003a9804");
+  private static final byte[] H265_PPS = Util.getBytesFromHexString("4401c172b46240");
+  private static final byte[] H265_AUD = Util.getBytesFromHexString("460150");
+
+  // MP4 atom payloads for a 30fps AVC video track.
+  private static final byte[] FTYP_PAYLOAD = Util.getBytesFromHexString("6d70343100000000");
+  private static final byte[] MVHD_PAYLOAD = Util.getBytesFromHexString(
+      "00000000cf6c4888cf6c48880000025800023ad40001000001000000000000000000000000010000000000000000"
+      + "000000000000000100000000000000000000000000004000000000000000000000000000000000000000000000"
+      + "000000000000000003");
+  private static final byte[] TKHD_PAYLOAD = Util.getBytesFromHexString(
+      "00000007D1F0C7BFD1F0C7BF0000000100000000FFFFFFFF00000000000000000000000000000000000100000000"
+      + "0000000000000000000000010000000000000000000000000000400000000780000004380000");
+  private static final byte[] MDHD_PAYLOAD = Util.getBytesFromHexString(
+      "0000000000000000cf6c48890000001e00001c8a55c40000");
+  private static final byte[] HDLR_PAYLOAD = Util.getBytesFromHexString("000000000000000076696465");
+  private static final byte[] STSD_PAYLOAD = Util.getBytesFromHexString(
+      "00000000000000010000009961766331000000000000000100000000000000000000000000000000050002d00048"
+      + "000000480000000000000001000000000000000000000000000000000000000000000000000000000000000000"
+      + "18ffff0000002f617663430164001fffe100186764001facb402802dd80880000003008000001e078c19500100"
+      + "0468ee3cb000000014627472740000e35c0042a61000216cb8");
+
+  // ADTS header for AAC LC, 44.1kHz stereo, without the frame length.
+  private static final byte[] ADTS_HEADER = Util.getBytesFromHexString("fff15080001ffc");
+  private static final int ADTS_FRAME_SIZE = 371;
+  // MPEG-1 Layer III header for 128kbps, 44.1kHz joint stereo.
+  private static final byte[] MP3_HEADER = Util.getBytesFromHexString("fffb9064");
+  private static final int MP3_FRAME_SIZE = 417;
+
+  private TestStreams() {}
+
+  /**
+   * Builds a stream in the specified format.
+   *
+   * @param format One of the {@code FORMAT_*} constants.
+   * @return The stream.
+   */
+  public static byte[] build(String format) {
+    Random random = new Random(0);
+    switch (format) {
+      case FORMAT_TS:
+        return buildTs(random, false);
+      case FORMAT_TS_HEVC:
+        return buildTs(random, true);
+      case FORMAT_FRAGMENTED_MP4:
+        return buildFragmentedMp4(random);
+      case FORMAT_MP4:
+        return buildMp4(random);
+      case FORMAT_WEBM:
+        return buildWebm(random);
+      case FORMAT_MP3:
+        return buildMp3(random);
+      case FORMAT_ADTS:
+        return buildAdts(random);
+      default:
+        throw new IllegalArgumentException(format);
+    }
+  }
+
+  /**
+   * Reads one of the library's test assets.
+   *
+   * @param fileName The name of the asset, relative to the assets directory.
+   * @return The contents of the asset.
+   * @throws IOException If the asset could not be read.
+   */
+  public static byte[] readAsset(String fileName) throws IOException {
+    InputStream inputStream = TestStreams.class.getResourceAsStream("/" + fileName);
+    if (inputStream == null) {
+      throw new IOException("Asset not found: " + fileName);
+    }
+    try {
+      ByteArrayOutputStream output = new ByteArrayOutputStream();
+      byte[] buffer = new byte[4096];
+      int bytesRead;
+      while ((bytesRead = inputStream.read(buffer)) != -1) {
+        output.write(buffer, 0, bytesRead);
+      }
+      return output.toByteArray();
+    } finally {
+      inputStream.close();
+    }
+  }
+
+  // MPEG-TS.
+
+  private static final int TS_PACKET_SIZE = 188;
+  private static final int PMT_PID = 0x100;
+  private static final int VIDEO_PID = 0x101;
+  private static final int AUDIO_PID = 0x102;
+
+  private static byte[] buildTs(Random random, boolean hevc) {
+    ByteArrayOutputStream output = new ByteArrayOutputStream();
+    writeTsPackets(output, 0, Util.getBytesFromHexString("00b00d0001c100000001"
+        + hex16(0xE000 | PMT_PID) + "00000000"));
+    writeTsPackets(output, PMT_PID, Util.getBytesFromHexString("02b0170001c10000"
+        + hex16(0xE000 | VIDEO_PID) + "f000"
+        + (hevc ? "24" : "1b") + hex16(0xE000 | VIDEO_PID) + "f000"
+        + "0f" + hex16(0xE000 | AUDIO_PID) + "f000"
+        + "00000000"));
+    // Video at 25fps, interleaved with AAC frames of 1024 samples.
+    long audioPts = 0;
+    for (int i = 0; i < VIDEO_FRAME_COUNT; i++) {
+      long videoPts = i * 3600L;
+      while (audioPts < videoPts + 3600) {
+        writeTsPackets(output, AUDIO_PID, buildPes(0xC0, audioPts, buildAdtsFrame(random)));
+        audioPts += 1024 * 90000L / 44100;
+      }
+      boolean keyframe = i % VIDEO_FRAMES_PER_KEYFRAME == 0;
+      byte[] accessUnit = hevc ? buildH265AccessUnit(random, keyframe)
+          : buildH264AccessUnit(random, keyframe);
+      writeTsPackets(output, VIDEO_PID, buildPes(0xE0, videoPts, accessUnit));
+    }
+    return output.toByteArray();
+  }
+
+  private static byte[] buildH264AccessUnit(Random random, boolean keyframe) {
+    ByteArrayOutputStream accessUnit = new ByteArrayOutputStream();
+    writeStartCodeNalUnit(accessUnit, H264_AUD);
+    if (keyframe) {
+      writeStartCodeNalUnit(accessUnit, H264_SPS);
+      writeStartCodeNalUnit(accessUnit, H264_PPS);
+    }
+    writeStartCodeNalUnit(accessUnit, buildSlice(random, keyframe));
+    return accessUnit.toByteArray();
+  }
+
+  private static byte[] buildH265AccessUnit(Random random, boolean keyframe) {
+    ByteArrayOutputStream accessUnit = new ByteArrayOutputStream();
+    writeStartCodeNalUnit(accessUnit, H265_AUD);
+    if (keyframe) {
+      writeStartCodeNalUnit(accessUnit, H265_VPS);
+      writeStartCodeNalUnit(accessUnit, H265_SPS);
+      writeStartCodeNalUnit(accessUnit, H265_PPS);
+    }
+    // An IDR_W_RADL or TRAIL_R slice segment header, with first_slice_segment_in_pic_flag set.
+    byte[] header = new byte[] {(byte) (keyframe ? 0x26 : 0x02), 0x01, (byte) 0x80};
+    writeStartCodeNalUnit(accessUnit,
+        join(header, buildEscapedPayload(random, HEVC_FRAME_SIZE - header.length)));
+    return accessUnit.toByteArray();
+  }
+
+  private static byte[] buildPes(int streamId, long pts, byte[] payload) {
+    int packetLength = 3 + 5 + payload.length;
+    byte[] header = new byte[] {
+        0, 0, 1, (byte) streamId,
+        (byte) (packetLength > 0xFFFF ? 0 : packetLength >> 8),
+        (byte) (packetLength > 0xFFFF ? 0 : packetLength),
+        (byte) 0x84, (byte) 0x80, 5,
+        (byte) (0x21 | ((pts >> 29) & 0x0E)), (byte) (pts >> 22), (byte) ((pts >> 14) | 0x01),
+        (byte) (pts >> 7), (byte) ((pts << 1) | 0x01)};
+    return join(header, payload);
+  }
+
+  private static void writeTsPackets(ByteArrayOutputStream output, int pid, byte[] payloadUnit) {
+    if (pid == 0 || pid == PMT_PID) {
+      // Sections are preceded by a pointer field.
+      payloadUnit = join(new byte[1], payloadUnit);
+    }
+    int offset = 0;
+    while (offset < payloadUnit.length) {
+      int payloadLength = Math.min(TS_PACKET_SIZE - 4, payloadUnit.length - offset);
+      int stuffingLength = TS_PACKET_SIZE - 4 - payloadLength;
+      output.write(0x47);
+      output.write((offset == 0 ? 0x40 : 0x00) | (pid >> 8));
+      output.write(pid & 0xFF);
+      output.write(stuffingLength > 0 ? 0x30 : 0x10);
+      if (stuffingLength > 0) {
+        output.write(stuffingLength - 1);
+        if (stuffingLength > 1) {
+          output.write(0x00);
+          for (int i = 2; i < stuffingLength; i++) {
+            output.write(0xFF);
+          }
+        }
+      }
+      output.write(payloadUnit, offset, payloadLength);
+      offset += payloadLength;
+    }
+  }
+
+  private static void writeStartCodeNalUnit(ByteArrayOutputStream output, byte[] nalUnit) {
+    output.write(0);
+    output.write(0);
+    output.write(1);
+    output.write(nalUnit, 0, nalUnit.length);
+  }
+
+  private static byte[] buildSlice(Random random, boolean idr) {
+    byte[] slice = buildPayload(random, VIDEO_FRAME_SIZE);
+    slice[0] = (byte) (idr ? 0x65 : 0x41);
+    return slice;
+  }
+
+  // MP4.
+
+  private static byte[] buildMp4(Random random) {
+    int[] sampleSizes = new int[VIDEO_FRAME_COUNT];
+    ByteArrayOutputStream mdatPayload = new ByteArrayOutputStream();
+    for (int i = 0; i < VIDEO_FRAME_COUNT; i++) {
+      byte[] sample = buildLengthPrefixedSample(random, i % VIDEO_FRAMES_PER_KEYFRAME == 0);
+      sampleSizes[i] = sample.length;
+      mdatPayload.write(sample, 0, sample.length);
+    }
+    byte[] ftyp = atom("ftyp", FTYP_PAYLOAD);
+    // The moov atom's size doesn't depend on the chunk offset, so build it twice.
+    int moovSize = buildMp4Moov(sampleSizes, 0).length;
+    byte[] moov = buildMp4Moov(sampleSizes, ftyp.length + moovSize + 8);
+    return join(ftyp, moov, atom("mdat", mdatPayload.toByteArray()));
+  }
+
+  private static byte[] buildMp4Moov(int[] sampleSizes, int chunkOffset) {
+    int sampleCount = sampleSizes.length;
+    ByteBuffer stts = ByteBuffer.allocate(16);
+    stts.putInt(0).putInt(1).putInt(sampleCount).putInt(1);
+    int keyframeCount = (sampleCount + VIDEO_FRAMES_PER_KEYFRAME - 1) / VIDEO_FRAMES_PER_KEYFRAME;
+    ByteBuffer stss = ByteBuffer.allocate(8 + 4 * keyframeCount);
+    stss.putInt(0).putInt(keyframeCount);
+    for (int i = 0; i < sampleCount; i += VIDEO_FRAMES_PER_KEYFRAME) {
+      stss.putInt(i + 1);
+    }
+    ByteBuffer stsc = ByteBuffer.allocate(20);
+    stsc.putInt(0).putInt(1).putInt(1).putInt(sampleCount).putInt(1);
+    ByteBuffer stsz = ByteBuffer.allocate(12 + 4 * sampleCount);
+    stsz.putInt(0).putInt(0).putInt(sampleCount);
+    for (int sampleSize : sampleSizes) {
+      stsz.putInt(sampleSize);
+    }
+    ByteBuffer stco = ByteBuffer.allocate(12);
+    stco.putInt(0).putInt(1).putInt(chunkOffset);
+    byte[] stbl = atom("stbl", atom("stsd", STSD_PAYLOAD), atom("stts", stts.array()),
+        atom("stss", stss.array()), atom("stsc", stsc.array()), atom("stsz", stsz.array()),
+        atom("stco", stco.array()));
+    return atom("moov", atom("mvhd", MVHD_PAYLOAD), buildTrak(stbl));
+  }
+
+  private static byte[] buildTrak(byte[] stbl) {
+    return atom("trak", atom("tkhd", TKHD_PAYLOAD),
+        atom("mdia", atom("mdhd", MDHD_PAYLOAD), atom("hdlr", HDLR_PAYLOAD),
+            atom("minf", atom("vmhd", new byte[0]), stbl)));
+  }
+
+  // Fragmented MP4.
+
+  private static byte[] buildFragmentedMp4(Random random) {
+    byte[] emptyTable = new byte[8];
+    byte[] stbl = atom("stbl", atom("stsd", STSD_PAYLOAD), atom("stts", emptyTable),
+        atom("stsc", emptyTable), atom("stsz", new byte[12]), atom("stco", emptyTable));
+    // Samples have a duration of one timescale unit, and are not sync samples by default.
+    ByteBuffer trex = ByteBuffer.allocate(24);
+    trex.putInt(0).putInt(1).putInt(1).putInt(1).putInt(0).putInt(0x00010000);
+    ByteArrayOutputStream output = new ByteArrayOutputStream();
+    write(output, atom("ftyp", FTYP_PAYLOAD));
+    write(output, atom("moov", atom("mvhd", MVHD_PAYLOAD), buildTrak(stbl),
+        atom("mvex", atom("trex", trex.array()))));
+    for (int i = 0; i < VIDEO_FRAME_COUNT; i += VIDEO_FRAMES_PER_KEYFRAME) {
+      int sampleCount = Math.min(VIDEO_FRAMES_PER_KEYFRAME, VIDEO_FRAME_COUNT - i);
+      ByteArrayOutputStream mdatPayload = new ByteArrayOutputStream();
+      ByteBuffer trun = ByteBuffer.allocate(16 + 4 * sampleCount);
+      // Sizes are set for each sample, and the first sample's flags mark it as a sync sample. The
+      // data offset is set below.
+      trun.putInt(0x000205).putInt(sampleCount).putInt(0).putInt(0);
+      for (int j = 0; j < sampleCount; j++) {
+        byte[] sample = buildLengthPrefixedSample(random, j == 0);
+        trun.putInt(sample.length);
+        mdatPayload.write(sample, 0, sample.length);
+      }
+      ByteBuffer tfdt = ByteBuffer.allocate(12);
+      tfdt.putInt(0x01000000).putLong(i);
+      byte[] mfhd = ByteBuffer.allocate(8).putInt(0).putInt(i / VIDEO_FRAMES_PER_KEYFRAME + 1)
+          .array();
+      byte[] tfhd = ByteBuffer.allocate(8).putInt(0).putInt(1).array();
+      int moofSize = atom("moof", atom("mfhd", mfhd),
+          atom("traf", atom("tfhd", tfhd), atom("tfdt", tfdt.array()), atom("trun", trun.array())))
+          .length;
+      trun.putInt(8, moofSize + 8);
+      write(output, atom("moof", atom("mfhd", mfhd),
+          atom("traf", atom("tfhd", tfhd), atom("tfdt", tfdt.array()),
+              atom("trun", trun.array()))));
+      write(output, atom("mdat", mdatPayload.toByteArray()));
+    }
+    return output.toByteArray();
+  }
+
+  private static byte[] buildLengthPrefixedSample(Random random, boolean idr) {
+    byte[] slice = buildSlice(random, idr);
+    return join(ByteBuffer.allocate(4).putInt(slice.length).array(), slice);
+  }
+
+  private static byte[] atom(String type, byte[]... payloads) {
+    byte[] payload = join(payloads);
+    ByteBuffer atom = ByteBuffer.allocate(8 + payload.length);
+    atom.putInt(8 + payload.length).putInt(Util.getIntegerCodeForString(type)).put(payload);
+    return atom.array();
+  }
+
+  // WebM.
+
+  private static final int ID_EBML = 0x1A45DFA3;
+  private static final int ID_EBML_READ_VERSION = 0x42F7;
+  private static final int ID_DOC_TYPE = 0x4282;
+  private static final int ID_DOC_TYPE_READ_VERSION = 0x4285;
+  private static final int ID_SEGMENT = 0x18538067;
+  private static final int ID_INFO = 0x1549A966;
+  private static final int ID_TIMECODE_SCALE = 0x2AD7B1;
+  private static final int ID_TRACKS = 0x1654AE6B;
+  private static final int ID_TRACK_ENTRY = 0xAE;
+  private static final int ID_TRACK_NUMBER = 0xD7;
+  private static final int ID_TRACK_TYPE = 0x83;
+  private static final int ID_CODEC_ID = 0x86;
+  private static final int ID_VIDEO = 0xE0;
+  private static final int ID_PIXEL_WIDTH = 0xB0;
+  private static final int ID_PIXEL_HEIGHT = 0xBA;
+  private static final int ID_CLUSTER = 0x1F43B675;
+  private static final int ID_TIME_CODE = 0xE7;
+  private static final int ID_SIMPLE_BLOCK = 0xA3;
+
+  private static byte[] buildWebm(Random random) {
+    byte[] header = ebml(ID_EBML, ebmlUint(ID_EBML_READ_VERSION, 1),
+        ebml(ID_DOC_TYPE, "webm".getBytes()), ebmlUint(ID_DOC_TYPE_READ_VERSION, 2));
+    byte[] info = ebml(ID_INFO, ebmlUint(ID_TIMECODE_SCALE, 1000000));
+    byte[] tracks = ebml(ID_TRACKS, ebml(ID_TRACK_ENTRY, ebmlUint(ID_TRACK_NUMBER, 1),
+        ebmlUint(ID_TRACK_TYPE, 1), ebml(ID_CODEC_ID, "V_VP9".getBytes()),
+        ebml(ID_VIDEO, ebmlUint(ID_PIXEL_WIDTH, 1280), ebmlUint(ID_PIXEL_HEIGHT, 720))));
+    ByteArrayOutputStream segmentPayload = new ByteArrayOutputStream();
+    write(segmentPayload, info);
+    write(segmentPayload, tracks);
+    // Clusters of one second at 25fps, each starting with a keyframe.
+    for (int i = 0; i < VIDEO_FRAME_COUNT; i += VIDEO_FRAMES_PER_KEYFRAME) {
+      ByteArrayOutputStream clusterPayload = new ByteArrayOutputStream();
+      write(clusterPayload, ebmlUint(ID_TIME_CODE, i * 40));
+      for (int j = 0; j < VIDEO_FRAMES_PER_KEYFRAME && i + j < VIDEO_FRAME_COUNT; j++) {
+        byte[] blockHeader = new byte[] {(byte) 0x81, (byte) ((j * 40) >> 8), (byte) (j * 40),
+            (byte) (j == 0 ? 0x80 : 0x00)};
+        write(clusterPayload, ebml(ID_SIMPLE_BLOCK,
+            join(blockHeader, buildPayload(random, VIDEO_FRAME_SIZE))));
+      }
+      write(segmentPayload, ebml(ID_CLUSTER, clusterPayload.toByteArray()));
+    }
+    return join(header, ebml(ID_SEGMENT, segmentPayload.toByteArray()));
+  }
+
+  private static byte[] ebml(int id, byte[]... payloads) {
+    byte[] payload = join(payloads);
+    int idLength = id > 0xFFFFFF ? 4 : id > 0xFFFF ? 3 : id > 0xFF ? 2 : 1;
+    ByteBuffer element = ByteBuffer.allocate(idLength + 8 + payload.length);
+    for (int i = idLength - 1; i >= 0; i--) {
+      element.put((byte) (id >> (8 * i)));
+    }
+    // Always use an eight byte size.
+    element.putLong(0x0100000000000000L | payload.length);
+    element.put(payload);
+    return element.array();
+  }
+
+  private static byte[] ebmlUint(int id, int value) {
+    return ebml(id, ByteBuffer.allocate(4).putInt(value).array());
+  }
+
+  // MP3 and ADTS.
+
+  private static byte[] buildMp3(Random random) {
+    ByteArrayOutputStream output = new ByteArrayOutputStream();
+    for (int i = 0; i < AUDIO_FRAME_COUNT; i++) {
+      byte[] frame = buildPayload(random, MP3_FRAME_SIZE);
+      System.arraycopy(MP3_HEADER, 0, frame, 0, MP3_HEADER.length);
+      write(output, frame);
+    }
+    return output.toByteArray();
+  }
+
+  private static byte[] buildAdts(Random random) {
+    ByteArrayOutputStream output = new ByteArrayOutputStream();
+    for (int i = 0; i < AUDIO_FRAME_COUNT; i++) {
+      write(output, buildAdtsFrame(random));
+    }
+    return output.toByteArray();
+  }
+
+  private static byte[] buildAdtsFrame(Random random) {
+    byte[] frame = buildPayload(random, ADTS_FRAME_SIZE);
+    System.arraycopy(ADTS_HEADER, 0, frame, 0, ADTS_HEADER.length);
+    frame[3] |= (byte) ((ADTS_FRAME_SIZE >> 11) & 0x03);
+    frame[4] = (byte) (ADTS_FRAME_SIZE >> 3);
+    frame[5] |= (byte) ((ADTS_FRAME_SIZE & 0x07) << 5);
+    return frame;
+  }
+
+  // Utility methods.
+
+  /**
+   * Returns pseudo-random bytes in the range [0x01, 0xFE], which contain no start codes or sync
+   * words.
+   */
+  private static byte[] buildPayload(Random random, int length) {
+    byte[] payload = new byte[length];
+    for (int i = 0; i < length; i++) {
+      payload[i] = (byte) (1 + random.nextInt(0xFE));
+    }
+    return payload;
+  }
+
+  /**
+   * Returns pseudo-random bytes that include zeros as coded slice data does, with emulation
+   * prevention bytes inserted so that they contain no start codes. The last byte is never zero.
+   */
+  private static byte[] buildEscapedPayload(Random random, int length) {
+    byte[] payload = new byte[length];
+    int zeroCount = 0;
+    for (int i = 0; i < length; i++) {
+      int value = random.nextInt(0x100);
+      if (zeroCount == 2 && value <= 3) {
+        value = 3;
+      } else if (i == length - 1 && value == 0) {
+        value = 0x80;
+      }
+      payload[i] = (byte) value;
+      zeroCount = value == 0 ? zeroCount + 1 : 0;
+    }
+    return payload;
+  }
+
+  private static byte[] join(byte[]... arrays) {
+    ByteArrayOutputStream output = new ByteArrayOutputStream();
+    for (byte[] array : arrays) {
+      write(output, array);
+    }
+    return output.toByteArray();
+  }
+
+  private static void write(ByteArrayOutputStream output, byte[] data) {
+    output.write(data, 0, data.length);
+  }
+
+  private static String hex16(int value) {
+    return String.format("%04x", value);
+  }
+
+}
@@ -0,0 +1,204 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer.extractor;
+
+import com.google.android.exoplayer.C;
+import com.google.android.exoplayer.SampleHolder;
+import com.google.android.exoplayer.upstream.DefaultAllocator;
+import com.google.android.exoplayer.util.ParsableByteArray;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the sample queues of a 60fps video track and an AAC audio track, as used by
+ * {@link DefaultTrackOutput}.
+ * <p>
+ * {@link #loadAndRead} commits {@link #DURATION_SECONDS} seconds of samples to both queues on a
+ * loading thread, while the benchmark thread reads them as they become available. {@link #seek}
+ * skips to a keyframe near the end of a video queue holding {@link #SEEK_DURATION_SECONDS} seconds
+ * of samples. Sample data is kept small, so that the sample information queue rather than copying
+ * of sample data dominates the measurement.
+ * <p>
+ * This class is in the extractor package because {@link RollingSampleBuffer} is private to it.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class RollingSampleBufferBenchmark {
+
+  /**
+   * The duration of media loaded and read by {@link #loadAndRead}.
+   */
+  public static final int DURATION_SECONDS = 10;
+
+  /**
+   * The duration of media held in the queue in which {@link #seek} seeks.
+   */
+  public static final int SEEK_DURATION_SECONDS = 120;
+
+  private static final int VIDEO_FRAME_RATE = 60;
+  private static final int VIDEO_KEYFRAME_INTERVAL = 2 * VIDEO_FRAME_RATE;
+  private static final int VIDEO_SAMPLE_SIZE = 64;
+  private static final long VIDEO_SAMPLE_DURATION_US = C.MICROS_PER_SECOND / VIDEO_FRAME_RATE;
+  private static final int AUDIO_SAMPLE_SIZE = 16;
+  private static final long AUDIO_SAMPLE_DURATION_US = 1024 * C.MICROS_PER_SECOND / 44100;
+
+  private static final int VIDEO_SAMPLE_COUNT = DURATION_SECONDS * VIDEO_FRAME_RATE;
+  private static final int AUDIO_SAMPLE_COUNT =
+      (int) (DURATION_SECONDS * C.MICROS_PER_SECOND / AUDIO_SAMPLE_DURATION_US);
+
+  /**
+   * The number of video and audio samples read by each {@link #loadAndRead} operation.
+   */
+  public static final int SAMPLE_COUNT = VIDEO_SAMPLE_COUNT + AUDIO_SAMPLE_COUNT;
+
+  /**
+   * Holds a video queue that is refilled before each {@link #seek} operation.
+   */
+  @State(Scope.Thread)
+  public static class SeekState {
+
+    private RollingSampleBuffer buffer;
+    private ParsableByteArray data;
+
+    @Setup
+    public void setUp() {
+      buffer = new RollingSampleBuffer(new DefaultAllocator(64 * 1024));
+      data = new ParsableByteArray(VIDEO_SAMPLE_SIZE);
+    }
+
+    @Setup(Level.Invocation)
+    public void fill() {
+      buffer.clear();
+      for (int i = 0; i < SEEK_DURATION_SECONDS * VIDEO_FRAME_RATE; i++) {
+        commitVideoSample(buffer, data, i);
+      }
+    }
+
+  }
+
+  private ExecutorService loadingExecutor;
+  private RollingSampleBuffer videoBuffer;
+  private RollingSampleBuffer audioBuffer;
+  private SampleHolder holder;
+
+  @Setup
+  public void setUp() {
+    loadingExecutor = Executors.newSingleThreadExecutor();
+    DefaultAllocator allocator = new DefaultAllocator(64 * 1024);
+    videoBuffer = new RollingSampleBuffer(allocator);
+    audioBuffer = new RollingSampleBuffer(allocator);
+    holder = new SampleHolder(SampleHolder.BUFFER_REPLACEMENT_MODE_NORMAL);
+  }
+
+  @TearDown
+  public void tearDown() {
+    loadingExecutor.shutdown();
+  }
+
+  @Benchmark
+  public int loadAndRead() throws ExecutionException, InterruptedException {
+    videoBuffer.clear();
+    audioBuffer.clear();
+    Future<?> loadingTask = loadingExecutor.submit(new Runnable() {
+      @Override
+      public void run() {
+        commitSamples(videoBuffer, audioBuffer);
+      }
+    });
+    int sampleCount = 0;
+    while (sampleCount < SAMPLE_COUNT) {
+      // Read from whichever track is behind, as the renderers would.
+      int videoIndex = videoBuffer.getReadIndex();
+      int audioIndex = audioBuffer.getReadIndex();
+      boolean readVideo = videoIndex < VIDEO_SAMPLE_COUNT && (audioIndex == AUDIO_SAMPLE_COUNT
+          || videoIndex * VIDEO_SAMPLE_DURATION_US <= audioIndex * AUDIO_SAMPLE_DURATION_US);
+      holder.clearData();
+      if ((readVideo ? videoBuffer : audioBuffer).readSample(holder)) {
+        sampleCount++;
+      } else {
+        Thread.yield();
+      }
+    }
+    loadingTask.get();
+    return sampleCount;
+  }
+
+  @Benchmark
+  public int seek(SeekState state) {
+    long seekTimeUs = (SEEK_DURATION_SECONDS - 1) * C.MICROS_PER_SECOND;
+    if (!state.buffer.skipToKeyframeBefore(seekTimeUs)) {
+      throw new IllegalStateException("Keyframe not found");
+    }
+    return state.buffer.getReadIndex();
+  }
+
+  private static void commitSamples(RollingSampleBuffer videoBuffer,
+      RollingSampleBuffer audioBuffer) {
+    ParsableByteArray data = new ParsableByteArray(VIDEO_SAMPLE_SIZE);
+    // Interleave the tracks as they would be in a muxed stream.
+    int audioIndex = 0;
+    for (int videoIndex = 0; videoIndex < VIDEO_SAMPLE_COUNT; videoIndex++) {
+      commitVideoSample(videoBuffer, data, videoIndex);
+      long videoTimeUs = videoIndex * VIDEO_SAMPLE_DURATION_US;
+      while (audioIndex < AUDIO_SAMPLE_COUNT
+          && audioIndex * AUDIO_SAMPLE_DURATION_US <= videoTimeUs) {
+        commitAudioSample(audioBuffer, data, audioIndex++);
+      }
+    }
+    while (audioIndex < AUDIO_SAMPLE_COUNT) {
+      commitAudioSample(audioBuffer, data, audioIndex++);
+    }
+  }
+
+  private static void commitVideoSample(RollingSampleBuffer buffer, ParsableByteArray data,
+      int index) {
+    data.setPosition(0);
+    buffer.appendData(data, VIDEO_SAMPLE_SIZE);
+    int flags = index % VIDEO_KEYFRAME_INTERVAL == 0 ? C.SAMPLE_FLAG_SYNC : 0;
+    buffer.commitSample(index * VIDEO_SAMPLE_DURATION_US, flags,
+        (long) index * VIDEO_SAMPLE_SIZE, VIDEO_SAMPLE_SIZE, null);
+  }
+
+  private static void commitAudioSample(RollingSampleBuffer buffer, ParsableByteArray data,
+      int index) {
+    data.setPosition(0);
+    buffer.appendData(data, AUDIO_SAMPLE_SIZE);
+    buffer.commitSample(index * AUDIO_SAMPLE_DURATION_US, C.SAMPLE_FLAG_SYNC,
+        (long) index * AUDIO_SAMPLE_SIZE, AUDIO_SAMPLE_SIZE, null);
+  }
+
+}
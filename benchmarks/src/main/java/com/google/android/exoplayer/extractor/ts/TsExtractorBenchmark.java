@@ -0,0 +1,265 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer.extractor.ts;
+
+import com.google.android.exoplayer.drm.DrmInitData;
+import com.google.android.exoplayer.extractor.DefaultExtractorInput;
+import com.google.android.exoplayer.extractor.DummyTrackOutput;
+import com.google.android.exoplayer.extractor.Extractor;
+import com.google.android.exoplayer.extractor.ExtractorOutput;
+import com.google.android.exoplayer.extractor.PositionHolder;
+import com.google.android.exoplayer.extractor.SeekMap;
+import com.google.android.exoplayer.extractor.TrackOutput;
+import com.google.android.exoplayer.upstream.DataSource;
+import com.google.android.exoplayer.upstream.DataSpec;
+
+import android.net.Uri;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+/**
+ * Measures how quickly {@link TsExtractor} demultiplexes a high bitrate stream that is delivered
+ * in reads of different lengths.
+ * <p>
+ * The stream is read in chunks of at most {@code readLength} bytes: large reads, as when loading
+ * HLS segments over HTTP, datagram sized reads of seven packets, as when receiving UDP multicast,
+ * and reads of a single packet. The {@code batched} path reads up to
+ * {@link TsExtractor#BUFFER_PACKET_COUNT} packets from the input at a time. The
+ * {@code per_packet} path is the baseline, and reads each packet separately. Multiplying the
+ * throughput by {@link #STREAM_LENGTH} gives the extraction rate in bytes per second, which
+ * {@link com.google.android.exoplayer.benchmark.BenchmarkMain} reports.
+ * <p>
+ * This class is in the TS package because the constructor that sets the number of packets read at
+ * a time is private to it.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class TsExtractorBenchmark {
+
+  public static final String PATH_BATCHED = "batched";
+  public static final String PATH_PER_PACKET = "per_packet";
+
+  private static final int TS_PACKET_SIZE = 188;
+  private static final int PMT_PID = 0x100;
+  private static final int ID3_PID = 0x101;
+  private static final int TS_STREAM_TYPE_ID3 = 0x15;
+  private static final int SAMPLE_COUNT = 256;
+  private static final int SAMPLE_BODY_LENGTH = 64 * 1024;
+
+  private static final byte[] STREAM = buildStream();
+
+  /**
+   * The length of the stream.
+   */
+  public static final int STREAM_LENGTH = STREAM.length;
+
+  @Param({PATH_PER_PACKET, PATH_BATCHED})
+  public String path;
+
+  @Param({"32768", "1316", "188"})
+  public int readLength;
+
+  private int bufferPacketCount;
+
+  @Setup
+  public void setUp() {
+    bufferPacketCount = PATH_BATCHED.equals(path) ? TsExtractor.BUFFER_PACKET_COUNT : 1;
+  }
+
+  @Benchmark
+  public int extract() throws IOException, InterruptedException {
+    DataSource dataSource = new ChunkedDataSource(STREAM, readLength);
+    long length = dataSource.open(new DataSpec(Uri.EMPTY));
+    DefaultExtractorInput input = new DefaultExtractorInput(dataSource, 0, length);
+    CountingExtractorOutput output = new CountingExtractorOutput();
+    TsExtractor extractor = new TsExtractor(bufferPacketCount);
+    extractor.init(output);
+    PositionHolder seekPositionHolder = new PositionHolder();
+    while (extractor.read(input, seekPositionHolder) != Extractor.RESULT_END_OF_INPUT) {
+      // Continue.
+    }
+    // The last sample is never output, because its PES packet length is unbounded.
+    if (output.trackOutput.sampleCount != SAMPLE_COUNT - 1) {
+      throw new IllegalStateException("Extracted " + output.trackOutput.sampleCount + " samples");
+    }
+    return output.trackOutput.sampleCount;
+  }
+
+  private static byte[] buildStream() {
+    ByteArrayOutputStream output = new ByteArrayOutputStream();
+    writeTsPackets(output, 0, new byte[] {
+        0x00, // pointer_field
+        0x00, (byte) 0xB0, 13, // table_id, section_syntax_indicator, section_length
+        0x00, 0x01, (byte) 0xC1, 0x00, 0x00, // transport_stream_id, version, section numbers
+        0x00, 0x01, (byte) (0xE0 | (PMT_PID >> 8)), (byte) PMT_PID, // program_map_PID
+        0x00, 0x00, 0x00, 0x00}); // CRC_32
+    writeTsPackets(output, PMT_PID, new byte[] {
+        0x00, // pointer_field
+        0x02, (byte) 0xB0, 18, // table_id, section_syntax_indicator, section_length
+        0x00, 0x01, (byte) 0xC1, 0x00, 0x00, // program_number, version, section numbers
+        (byte) (0xE0 | (ID3_PID >> 8)), (byte) ID3_PID, (byte) 0xF0, 0x00, // PCR_PID
+        TS_STREAM_TYPE_ID3, (byte) (0xE0 | (ID3_PID >> 8)), (byte) ID3_PID, (byte) 0xF0, 0x00,
+        0x00, 0x00, 0x00, 0x00}); // CRC_32
+    byte[] pes = new byte[14 + 10 + SAMPLE_BODY_LENGTH];
+    // PES header, with an unbounded PES_packet_length and a PTS.
+    pes[2] = 0x01;
+    pes[3] = (byte) 0xBD;
+    pes[6] = (byte) 0x84;
+    pes[7] = (byte) 0x80;
+    pes[8] = 0x05;
+    // ID3 header, with a synchsafe size.
+    pes[14] = 'I';
+    pes[15] = 'D';
+    pes[16] = '3';
+    pes[17] = 0x04;
+    pes[20] = (byte) ((SAMPLE_BODY_LENGTH >> 21) & 0x7F);
+    pes[21] = (byte) ((SAMPLE_BODY_LENGTH >> 14) & 0x7F);
+    pes[22] = (byte) ((SAMPLE_BODY_LENGTH >> 7) & 0x7F);
+    pes[23] = (byte) (SAMPLE_BODY_LENGTH & 0x7F);
+    for (int i = 0; i < SAMPLE_COUNT; i++) {
+      long pts = i * 3000L;
+      pes[9] = (byte) (0x21 | ((pts >> 29) & 0x0E));
+      pes[10] = (byte) (pts >> 22);
+      pes[11] = (byte) (((pts >> 14) & 0xFE) | 0x01);
+      pes[12] = (byte) (pts >> 7);
+      pes[13] = (byte) (((pts << 1) & 0xFE) | 0x01);
+      writeTsPackets(output, ID3_PID, pes);
+    }
+    return output.toByteArray();
+  }
+
+  /**
+   * Splits a payload unit into TS packets, using adaptation field stuffing to fill the last one.
+   */
+  private static void writeTsPackets(ByteArrayOutputStream output, int pid, byte[] payloadUnit) {
+    int offset = 0;
+    while (offset < payloadUnit.length) {
+      int payloadLength = Math.min(TS_PACKET_SIZE - 4, payloadUnit.length - offset);
+      int stuffingLength = TS_PACKET_SIZE - 4 - payloadLength;
+      output.write(0x47);
+      output.write((offset == 0 ? 0x40 : 0x00) | (pid >> 8));
+      output.write(pid & 0xFF);
+      output.write(stuffingLength > 0 ? 0x30 : 0x10);
+      if (stuffingLength > 0) {
+        output.write(stuffingLength - 1); // adaptation_field_length
+        if (stuffingLength > 1) {
+          output.write(0x00); // Adaptation field flags.
+          for (int i = 2; i < stuffingLength; i++) {
+            output.write(0xFF);
+          }
+        }
+      }
+      output.write(payloadUnit, offset, payloadLength);
+      offset += payloadLength;
+    }
+  }
+
+  /**
+   * A {@link DataSource} that returns at most a fixed number of bytes from each read.
+   */
+  private static final class ChunkedDataSource implements DataSource {
+
+    private final byte[] data;
+    private final int maxReadLength;
+
+    private int position;
+
+    public ChunkedDataSource(byte[] data, int maxReadLength) {
+      this.data = data;
+      this.maxReadLength = maxReadLength;
+    }
+
+    @Override
+    public long open(DataSpec dataSpec) {
+      position = (int) dataSpec.position;
+      return data.length - position;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int readLength) {
+      if (position == data.length) {
+        return -1;
+      }
+      int bytesToRead = Math.min(Math.min(readLength, maxReadLength), data.length - position);
+      System.arraycopy(data, position, buffer, offset, bytesToRead);
+      position += bytesToRead;
+      return bytesToRead;
+    }
+
+    @Override
+    public void close() {
+      // Do nothing.
+    }
+
+  }
+
+  /**
+   * An {@link ExtractorOutput} that discards sample data and counts samples.
+   */
+  private static final class CountingExtractorOutput implements ExtractorOutput {
+
+    public final CountingTrackOutput trackOutput = new CountingTrackOutput();
+
+    @Override
+    public TrackOutput track(int trackId) {
+      return trackOutput;
+    }
+
+    @Override
+    public void endTracks() {
+      // Do nothing.
+    }
+
+    @Override
+    public void seekMap(SeekMap seekMap) {
+      // Do nothing.
+    }
+
+    @Override
+    public void drmInitData(DrmInitData drmInitData) {
+      // Do nothing.
+    }
+
+  }
+
+  private static final class CountingTrackOutput extends DummyTrackOutput {
+
+    public int sampleCount;
+
+    @Override
+    public void sampleMetadata(long timeUs, int flags, int size, int offset,
+        byte[] encryptionKey) {
+      sampleCount++;
+    }
+
+  }
+
+}
@@ -0,0 +1,124 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer.hls;
+
+import com.google.android.exoplayer.upstream.ByteArrayDataSource;
+import com.google.android.exoplayer.upstream.DataSource;
+import com.google.android.exoplayer.upstream.DataSourceInputStream;
+import com.google.android.exoplayer.upstream.DataSpec;
+
+import android.net.Uri;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.GeneralSecurityException;
+import java.util.Random;
+
+import javax.crypto.Cipher;
+import javax.crypto.CipherInputStream;
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * Measures how quickly an AES-128 encrypted HLS segment held in memory is decrypted.
+ * <p>
+ * The {@code cipher_input_stream} path decrypts through a {@link CipherInputStream}, as
+ * {@link Aes128DataSource} did previously. The {@code bulk} path reads through
+ * {@link Aes128DataSource}. Segments are read in lengths of a single TS packet, and of the batch of
+ * packets that the TS extractor reads at a time. Multiplying the throughput by the length of the
+ * segment gives the decryption rate in bytes per second, which
+ * {@link com.google.android.exoplayer.benchmark.BenchmarkMain} reports.
+ * <p>
+ * This class is in the HLS package because {@link Aes128DataSource} is private to it.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class Aes128DataSourceBenchmark {
+
+  public static final String PATH_CIPHER_INPUT_STREAM = "cipher_input_stream";
+  public static final String PATH_BULK = "bulk";
+
+  /**
+   * The length of the encrypted segment.
+   */
+  public static final int SEGMENT_LENGTH = 4 * 1024 * 1024;
+
+  private static final byte[] KEY = new byte[16];
+  private static final byte[] IV = new byte[16];
+
+  @Param({PATH_CIPHER_INPUT_STREAM, PATH_BULK})
+  public String path;
+
+  @Param({"188", "9400"})
+  public int readLength;
+
+  private byte[] data;
+  private byte[] buffer;
+
+  @Setup
+  public void setUp() throws GeneralSecurityException {
+    byte[] segment = new byte[SEGMENT_LENGTH];
+    new Random(0).nextBytes(segment);
+    Cipher cipher = Cipher.getInstance("AES/CBC/PKCS5Padding");
+    cipher.init(Cipher.ENCRYPT_MODE, new SecretKeySpec(KEY, "AES"), new IvParameterSpec(IV));
+    data = cipher.doFinal(segment);
+    buffer = new byte[readLength];
+  }
+
+  @Benchmark
+  public long decrypt() throws IOException, GeneralSecurityException {
+    DataSpec dataSpec = new DataSpec(Uri.EMPTY);
+    DataSource upstream = new ByteArrayDataSource(data);
+    long bytesRead = 0;
+    int result;
+    if (PATH_CIPHER_INPUT_STREAM.equals(path)) {
+      Cipher cipher = Cipher.getInstance("AES/CBC/PKCS5Padding");
+      cipher.init(Cipher.DECRYPT_MODE, new SecretKeySpec(KEY, "AES"), new IvParameterSpec(IV));
+      InputStream inputStream = new CipherInputStream(new DataSourceInputStream(upstream, dataSpec),
+          cipher);
+      while ((result = inputStream.read(buffer, 0, readLength)) != -1) {
+        bytesRead += result;
+      }
+      inputStream.close();
+    } else {
+      DataSource dataSource = new Aes128DataSource(upstream, KEY, IV);
+      dataSource.open(dataSpec);
+      while ((result = dataSource.read(buffer, 0, readLength)) != -1) {
+        bytesRead += result;
+      }
+      dataSource.close();
+    }
+    if (bytesRead != SEGMENT_LENGTH) {
+      throw new IllegalStateException("Decrypted " + bytesRead + " bytes");
+    }
+    return bytesRead;
+  }
+
+}
@@ -0,0 +1,50 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package android.os;
+
+/**
+ * Replaces the framework's {@code SystemProperties}, which reads properties through native
+ * methods, when benchmarks are run on a desktop JVM. Only the SDK version, which is read by
+ * {@link Build.VERSION}, is defined.
+ */
+public final class SystemProperties {
+
+  private static final String SDK_VERSION_KEY = "ro.build.version.sdk";
+  private static final int SDK_VERSION = 16;
+
+  private SystemProperties() {}
+
+  public static String get(String key) {
+    return "";
+  }
+
+  public static String get(String key, String def) {
+    return def;
+  }
+
+  public static int getInt(String key, int def) {
+    return SDK_VERSION_KEY.equals(key) ? SDK_VERSION : def;
+  }
+
+  public static long getLong(String key, long def) {
+    return def;
+  }
+
+  public static boolean getBoolean(String key, boolean def) {
+    return def;
+  }
+
+}
@@ -0,0 +1,58 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package android.text;
+
+/**
+ * Replaces the framework's {@code TextUtils}, whose static initialization requires native
+ * resources, when benchmarks are run on a desktop JVM. Only the methods used by the library and by
+ * the framework's text classes are defined.
+ */
+public final class TextUtils {
+
+  private TextUtils() {}
+
+  public static boolean isEmpty(CharSequence str) {
+    return str == null || str.length() == 0;
+  }
+
+  public static boolean equals(CharSequence a, CharSequence b) {
+    return a == b || (a != null && b != null && a.toString().equals(b.toString()));
+  }
+
+  public static void getChars(CharSequence s, int start, int end, char[] dest, int destoff) {
+    for (int i = start; i < end; i++) {
+      dest[destoff++] = s.charAt(i);
+    }
+  }
+
+  public static int indexOf(CharSequence s, char ch, int start, int end) {
+    for (int i = start; i < end; i++) {
+      if (s.charAt(i) == ch) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  /* package */ static char[] obtain(int len) {
+    return new char[len];
+  }
+
+  /* package */ static void recycle(char[] temp) {
+    // Do nothing.
+  }
+
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package android.util;
+
+/**
+ * Replaces the framework's {@code Log}, which writes through a native method, when benchmarks are
+ * run on a desktop JVM. Warnings and errors are written to standard error, and other messages are
+ * discarded so that they don't disturb measurements.
+ */
+public final class Log {
+
+  public static final int VERBOSE = 2;
+  public static final int DEBUG = 3;
+  public static final int INFO = 4;
+  public static final int WARN = 5;
+  public static final int ERROR = 6;
+  public static final int ASSERT = 7;
+
+  private Log() {}
+
+  public static int v(String tag, String msg) {
+    return 0;
+  }
+
+  public static int v(String tag, String msg, Throwable tr) {
+    return 0;
+  }
+
+  public static int d(String tag, String msg) {
+    return 0;
+  }
+
+  public static int d(String tag, String msg, Throwable tr) {
+    return 0;
+  }
+
+  public static int i(String tag, String msg) {
+    return 0;
+  }
+
+  public static int i(String tag, String msg, Throwable tr) {
+    return 0;
+  }
+
+  public static int w(String tag, String msg) {
+    return println(tag, msg, null);
+  }
+
+  public static int w(String tag, String msg, Throwable tr) {
+    return println(tag, msg, tr);
+  }
+
+  public static int w(String tag, Throwable tr) {
+    return println(tag, null, tr);
+  }
+
+  public static int e(String tag, String msg) {
+    return println(tag, msg, null);
+  }
+
+  public static int e(String tag, String msg, Throwable tr) {
+    return println(tag, msg, tr);
+  }
+
+  public static boolean isLoggable(String tag, int level) {
+    return level >= WARN;
+  }
+
+  public static String getStackTraceString(Throwable tr) {
+    return tr == null ? "" : tr.toString();
+  }
+
+  private static int println(String tag, String msg, Throwable tr) {
+    System.err.println(tag + ": " + (msg != null ? msg : "") + (tr != null ? " " + tr : ""));
+    return 0;
+  }
+
+}
@@ -183,6 +183,21 @@ public class EventLogger implements DemoPlayer.Listener, DemoPlayer.InfoListener
         + ", " + availableRangeValuesUs[1] + "]");
   }
 
+  @Override
+  public void onManifestMerged(int sourceId, int periodCount, int reusedPeriodCount,
+      int representationCount, int reusedRepresentationCount) {
+    Log.d(TAG, "manifestMerged [" + reusedPeriodCount + "/" + periodCount + ", "
+        + reusedRepresentationCount + "/" + representationCount + "]");
+  }
+
+  @Override
+  public void onStartupTimings(long manifestMs, long drmMs, long initializationMs,
+      long firstSampleMs, long firstFrameMs) {
+    Log.d(TAG, "startupTimings [manifest=" + manifestMs + ", drm=" + drmMs + ", initialization="
+        + initializationMs + ", firstSample=" + firstSampleMs + ", firstFrame=" + firstFrameMs
+        + "]");
+  }
+
   private void printInternalError(String type, Exception e) {
     Log.e(TAG, "internalError [" + getSessionTimeString() + ", " + type + "]", e);
   }
@@ -26,6 +26,7 @@ import com.google.android.exoplayer.chunk.ChunkSampleSource;
 import com.google.android.exoplayer.chunk.ChunkSource;
 import com.google.android.exoplayer.chunk.FormatEvaluator.AdaptiveEvaluator;
 import com.google.android.exoplayer.dash.DashChunkSource;
+import com.google.android.exoplayer.dash.DashStartupPrefetcher;
 import com.google.android.exoplayer.dash.DefaultDashTrackSelector;
 import com.google.android.exoplayer.dash.mpd.AdaptationSet;
 import com.google.android.exoplayer.dash.mpd.MediaPresentationDescription;
@@ -40,9 +41,10 @@ import com.google.android.exoplayer.drm.StreamingDrmSessionManager;
 import com.google.android.exoplayer.drm.UnsupportedDrmException;
 import com.google.android.exoplayer.text.TextTrackRenderer;
 import com.google.android.exoplayer.upstream.DataSource;
-import com.google.android.exoplayer.upstream.DefaultAllocator;
+import com.google.android.exoplayer.upstream.DataSourceFactory;
 import com.google.android.exoplayer.upstream.DefaultBandwidthMeter;
 import com.google.android.exoplayer.upstream.DefaultUriDataSource;
+import com.google.android.exoplayer.upstream.SlabAllocator;
 import com.google.android.exoplayer.upstream.UriDataSource;
 import com.google.android.exoplayer.util.ManifestFetcher;
 import com.google.android.exoplayer.util.Util;
@@ -63,6 +65,9 @@ public class DashRendererBuilder implements RendererBuilder {
   private static final String TAG = "DashRendererBuilder";
 
   private static final int BUFFER_SEGMENT_SIZE = 64 * 1024;
+  private static final int AUDIO_BUFFER_SEGMENT_SIZE = 16 * 1024;
+  private static final int TEXT_BUFFER_SEGMENT_SIZE = 4 * 1024;
+  private static final int BUFFER_SLAB_SIZE = 16 * BUFFER_SEGMENT_SIZE;
   private static final int VIDEO_BUFFER_SEGMENTS = 200;
   private static final int AUDIO_BUFFER_SEGMENTS = 54;
   private static final int TEXT_BUFFER_SEGMENTS = 2;
@@ -114,6 +119,8 @@ public class DashRendererBuilder implements RendererBuilder {
     private boolean canceled;
     private MediaPresentationDescription manifest;
     private long elapsedRealtimeOffset;
+    private DashStartupPrefetcher videoPrefetcher;
+    private DashStartupPrefetcher audioPrefetcher;
 
     public AsyncRendererBuilder(Context context, String userAgent, String url,
         MediaDrmCallback drmCallback, DemoPlayer player) {
@@ -132,6 +139,10 @@ public class DashRendererBuilder implements RendererBuilder {
 
     public void cancel() {
       canceled = true;
+      if (videoPrefetcher != null) {
+        videoPrefetcher.cancel();
+        audioPrefetcher.cancel();
+      }
     }
 
     @Override
@@ -140,6 +151,7 @@ public class DashRendererBuilder implements RendererBuilder {
         return;
       }
 
+      player.getStartupTimer().onManifestLoaded();
       this.manifest = manifest;
       if (manifest.dynamic && manifest.utcTiming != null) {
         UtcTimingElementResolver.resolveTimingElement(manifestDataSource, manifest.utcTiming,
@@ -182,7 +194,9 @@ public class DashRendererBuilder implements RendererBuilder {
     private void buildRenderers() {
       Period period = manifest.getPeriod(0);
       Handler mainHandler = player.getMainHandler();
-      LoadControl loadControl = new DefaultLoadControl(new DefaultAllocator(BUFFER_SEGMENT_SIZE));
+      SlabAllocator allocator = new SlabAllocator(BUFFER_SLAB_SIZE, TEXT_BUFFER_SEGMENT_SIZE,
+          AUDIO_BUFFER_SEGMENT_SIZE, BUFFER_SEGMENT_SIZE);
+      LoadControl loadControl = new DefaultLoadControl(allocator);
       DefaultBandwidthMeter bandwidthMeter = new DefaultBandwidthMeter(mainHandler, player);
 
       boolean hasContentProtection = false;
@@ -212,27 +226,54 @@ public class DashRendererBuilder implements RendererBuilder {
         }
       }
 
+      // Start loading the first video and audio chunks whilst the renderers are being built.
+      DataSourceFactory dataSourceFactory = newDataSourceFactory(bandwidthMeter);
+      videoPrefetcher = new DashStartupPrefetcher(
+          new DefaultUriDataSource(context, bandwidthMeter, userAgent), dataSourceFactory,
+          allocator.getAllocator(BUFFER_SEGMENT_SIZE));
+      audioPrefetcher = new DashStartupPrefetcher(
+          new DefaultUriDataSource(context, bandwidthMeter, userAgent), dataSourceFactory,
+          allocator.getAllocator(AUDIO_BUFFER_SEGMENT_SIZE));
+      for (int i = 0; i < period.adaptationSets.size(); i++) {
+        AdaptationSet adaptationSet = period.adaptationSets.get(i);
+        if (adaptationSet.type == AdaptationSet.TYPE_VIDEO) {
+          videoPrefetcher.prefetch(manifest, DashStartupPrefetcher.getInitialRepresentation(
+              adaptationSet, AdaptiveEvaluator.DEFAULT_MAX_INITIAL_BITRATE));
+          break;
+        }
+      }
+      for (int i = 0; i < period.adaptationSets.size(); i++) {
+        AdaptationSet adaptationSet = period.adaptationSets.get(i);
+        if (adaptationSet.type == AdaptationSet.TYPE_AUDIO) {
+          // The first audio track is selected by default.
+          audioPrefetcher.prefetch(manifest, adaptationSet.representations.get(0));
+          break;
+        }
+      }
+
       // Build the video renderer.
-      DataSource videoDataSource = new DefaultUriDataSource(context, bandwidthMeter, userAgent);
+      DataSource videoDataSource = videoPrefetcher.getDataSource();
       ChunkSource videoChunkSource = new DashChunkSource(manifestFetcher,
           DefaultDashTrackSelector.newVideoInstance(context, true, filterHdContent),
           videoDataSource, new AdaptiveEvaluator(bandwidthMeter), LIVE_EDGE_LATENCY_MS,
           elapsedRealtimeOffset, mainHandler, player, DemoPlayer.TYPE_VIDEO);
       ChunkSampleSource videoSampleSource = new ChunkSampleSource(videoChunkSource, loadControl,
           VIDEO_BUFFER_SEGMENTS * BUFFER_SEGMENT_SIZE, mainHandler, player,
-          DemoPlayer.TYPE_VIDEO);
+          DemoPlayer.TYPE_VIDEO, ChunkSampleSource.DEFAULT_MIN_LOADABLE_RETRY_COUNT,
+          allocator.getAllocator(BUFFER_SEGMENT_SIZE));
       TrackRenderer videoRenderer = new MediaCodecVideoTrackRenderer(context, videoSampleSource,
           MediaCodecSelector.DEFAULT, MediaCodec.VIDEO_SCALING_MODE_SCALE_TO_FIT, 5000,
           drmSessionManager, true, mainHandler, player, 50);
 
       // Build the audio renderer.
-      DataSource audioDataSource = new DefaultUriDataSource(context, bandwidthMeter, userAgent);
+      DataSource audioDataSource = audioPrefetcher.getDataSource();
       ChunkSource audioChunkSource = new DashChunkSource(manifestFetcher,
           DefaultDashTrackSelector.newAudioInstance(), audioDataSource, null, LIVE_EDGE_LATENCY_MS,
           elapsedRealtimeOffset, mainHandler, player, DemoPlayer.TYPE_AUDIO);
       ChunkSampleSource audioSampleSource = new ChunkSampleSource(audioChunkSource, loadControl,
           AUDIO_BUFFER_SEGMENTS * BUFFER_SEGMENT_SIZE, mainHandler, player,
-          DemoPlayer.TYPE_AUDIO);
+          DemoPlayer.TYPE_AUDIO, ChunkSampleSource.DEFAULT_MIN_LOADABLE_RETRY_COUNT,
+          allocator.getAllocator(AUDIO_BUFFER_SEGMENT_SIZE));
       TrackRenderer audioRenderer = new MediaCodecAudioTrackRenderer(audioSampleSource,
           MediaCodecSelector.DEFAULT, drmSessionManager, true, mainHandler, player,
           AudioCapabilities.getCapabilities(context), AudioManager.STREAM_MUSIC);
@@ -244,7 +285,8 @@ public class DashRendererBuilder implements RendererBuilder {
           elapsedRealtimeOffset, mainHandler, player, DemoPlayer.TYPE_TEXT);
       ChunkSampleSource textSampleSource = new ChunkSampleSource(textChunkSource, loadControl,
           TEXT_BUFFER_SEGMENTS * BUFFER_SEGMENT_SIZE, mainHandler, player,
-          DemoPlayer.TYPE_TEXT);
+          DemoPlayer.TYPE_TEXT, ChunkSampleSource.DEFAULT_MIN_LOADABLE_RETRY_COUNT,
+          allocator.getAllocator(TEXT_BUFFER_SEGMENT_SIZE));
       TrackRenderer textRenderer = new TextTrackRenderer(textSampleSource, player,
           mainHandler.getLooper());
 
@@ -256,6 +298,15 @@ public class DashRendererBuilder implements RendererBuilder {
       player.onRenderers(renderers, bandwidthMeter);
     }
 
+    private DataSourceFactory newDataSourceFactory(final DefaultBandwidthMeter bandwidthMeter) {
+      return new DataSourceFactory() {
+        @Override
+        public DataSource createDataSource() {
+          return new DefaultUriDataSource(context, bandwidthMeter, userAgent);
+        }
+      };
+    }
+
     private static int getWidevineSecurityLevel(StreamingDrmSessionManager sessionManager) {
       String securityLevelProperty = sessionManager.getPropertyString("securityLevel");
       return securityLevelProperty.equals("L1") ? SECURITY_LEVEL_1 : securityLevelProperty
@@ -27,6 +27,7 @@ import com.google.android.exoplayer.MediaFormat;
 import com.google.android.exoplayer.TimeRange;
 import com.google.android.exoplayer.TrackRenderer;
 import com.google.android.exoplayer.audio.AudioTrack;
+import com.google.android.exoplayer.chunk.Chunk;
 import com.google.android.exoplayer.chunk.ChunkSampleSource;
 import com.google.android.exoplayer.chunk.Format;
 import com.google.android.exoplayer.dash.DashChunkSource;
@@ -40,6 +41,7 @@ import com.google.android.exoplayer.upstream.BandwidthMeter;
 import com.google.android.exoplayer.upstream.DefaultBandwidthMeter;
 import com.google.android.exoplayer.util.DebugTextViewHelper;
 import com.google.android.exoplayer.util.PlayerControl;
+import com.google.android.exoplayer.util.StartupTimer;
 
 import android.media.MediaCodec.CryptoException;
 import android.os.Handler;
@@ -59,8 +61,9 @@ import java.util.concurrent.CopyOnWriteArrayList;
 public class DemoPlayer implements ExoPlayer.Listener, ChunkSampleSource.EventListener,
     HlsSampleSource.EventListener, DefaultBandwidthMeter.EventListener,
     MediaCodecVideoTrackRenderer.EventListener, MediaCodecAudioTrackRenderer.EventListener,
-    StreamingDrmSessionManager.EventListener, DashChunkSource.EventListener, TextRenderer,
-    MetadataRenderer<List<Id3Frame>>, DebugTextViewHelper.Provider {
+    StreamingDrmSessionManager.EventListener, DashChunkSource.EventListener,
+    DashChunkSource.ManifestMergeListener, TextRenderer, MetadataRenderer<List<Id3Frame>>,
+    DebugTextViewHelper.Provider, StartupTimer.EventListener {
 
   /**
    * Builds renderers for the player.
@@ -127,6 +130,10 @@ public class DemoPlayer implements ExoPlayer.Listener, ChunkSampleSource.EventLi
     void onDecoderInitialized(String decoderName, long elapsedRealtimeMs,
         long initializationDurationMs);
     void onAvailableRangeChanged(int sourceId, TimeRange availableRange);
+    void onManifestMerged(int sourceId, int periodCount, int reusedPeriodCount,
+        int representationCount, int reusedRepresentationCount);
+    void onStartupTimings(long manifestMs, long drmMs, long initializationMs, long firstSampleMs,
+        long firstFrameMs);
   }
 
   /**
@@ -166,6 +173,7 @@ public class DemoPlayer implements ExoPlayer.Listener, ChunkSampleSource.EventLi
   private final ExoPlayer player;
   private final PlayerControl playerControl;
   private final Handler mainHandler;
+  private final StartupTimer startupTimer;
   private final CopyOnWriteArrayList<Listener> listeners;
 
   private int rendererBuildingState;
@@ -192,6 +200,7 @@ public class DemoPlayer implements ExoPlayer.Listener, ChunkSampleSource.EventLi
     player.addListener(this);
     playerControl = new PlayerControl(player);
     mainHandler = new Handler();
+    startupTimer = new StartupTimer(mainHandler, this);
     listeners = new CopyOnWriteArrayList<>();
     lastReportedPlaybackState = STATE_IDLE;
     rendererBuildingState = RENDERER_BUILDING_STATE_IDLE;
@@ -287,6 +296,7 @@ public class DemoPlayer implements ExoPlayer.Listener, ChunkSampleSource.EventLi
     videoRenderer = null;
     rendererBuildingState = RENDERER_BUILDING_STATE_BUILDING;
     maybeReportPlayerState();
+    startupTimer.start();
     rendererBuilder.buildRenderers(this);
   }
 
@@ -400,6 +410,10 @@ public class DemoPlayer implements ExoPlayer.Listener, ChunkSampleSource.EventLi
     return mainHandler;
   }
 
+  /* package */ StartupTimer getStartupTimer() {
+    return startupTimer;
+  }
+
   @Override
   public void onPlayerStateChanged(boolean playWhenReady, int state) {
     maybeReportPlayerState();
@@ -451,7 +465,7 @@ public class DemoPlayer implements ExoPlayer.Listener, ChunkSampleSource.EventLi
 
   @Override
   public void onDrmKeysLoaded() {
-    // Do nothing.
+    startupTimer.onDrmKeysLoaded();
   }
 
   @Override
@@ -532,6 +546,24 @@ public class DemoPlayer implements ExoPlayer.Listener, ChunkSampleSource.EventLi
     }
   }
 
+  @Override
+  public void onManifestMerged(int sourceId, int periodCount, int reusedPeriodCount,
+      int representationCount, int reusedRepresentationCount) {
+    if (infoListener != null) {
+      infoListener.onManifestMerged(sourceId, periodCount, reusedPeriodCount, representationCount,
+          reusedRepresentationCount);
+    }
+  }
+
+  @Override
+  public void onStartupTimings(long manifestMs, long drmMs, long initializationMs,
+      long firstSampleMs, long firstFrameMs) {
+    if (infoListener != null) {
+      infoListener.onStartupTimings(manifestMs, drmMs, initializationMs, firstSampleMs,
+          firstFrameMs);
+    }
+  }
+
   @Override
   public void onPlayWhenReadyCommitted() {
     // Do nothing.
@@ -539,7 +571,7 @@ public class DemoPlayer implements ExoPlayer.Listener, ChunkSampleSource.EventLi
 
   @Override
   public void onDrawnToSurface(Surface surface) {
-    // Do nothing.
+    startupTimer.onFirstFrameRendered();
   }
 
   @Override
@@ -554,6 +586,11 @@ public class DemoPlayer implements ExoPlayer.Listener, ChunkSampleSource.EventLi
   @Override
   public void onLoadCompleted(int sourceId, long bytesLoaded, int type, int trigger, Format format,
       long mediaStartTimeMs, long mediaEndTimeMs, long elapsedRealtimeMs, long loadDurationMs) {
+    if (sourceId == TYPE_VIDEO && type == Chunk.TYPE_MEDIA_INITIALIZATION) {
+      startupTimer.onInitializationLoaded();
+    } else if (sourceId == TYPE_VIDEO && type == Chunk.TYPE_MEDIA) {
+      startupTimer.onFirstSampleLoaded();
+    }
     if (infoListener != null) {
       infoListener.onLoadCompleted(sourceId, bytesLoaded, type, trigger, format, mediaStartTimeMs,
           mediaEndTimeMs, elapsedRealtimeMs, loadDurationMs);
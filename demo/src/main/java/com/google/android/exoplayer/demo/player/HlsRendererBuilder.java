@@ -128,6 +128,7 @@ public class HlsRendererBuilder implements RendererBuilder {
         return;
       }
 
+      player.getStartupTimer().onManifestLoaded();
       Handler mainHandler = player.getMainHandler();
       LoadControl loadControl = new DefaultLoadControl(new DefaultAllocator(BUFFER_SEGMENT_SIZE));
       DefaultBandwidthMeter bandwidthMeter = new DefaultBandwidthMeter();
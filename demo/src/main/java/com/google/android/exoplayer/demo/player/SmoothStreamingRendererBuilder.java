@@ -36,10 +36,10 @@ import com.google.android.exoplayer.smoothstreaming.SmoothStreamingManifest;
 import com.google.android.exoplayer.smoothstreaming.SmoothStreamingManifestParser;
 import com.google.android.exoplayer.text.TextTrackRenderer;
 import com.google.android.exoplayer.upstream.DataSource;
-import com.google.android.exoplayer.upstream.DefaultAllocator;
 import com.google.android.exoplayer.upstream.DefaultBandwidthMeter;
 import com.google.android.exoplayer.upstream.DefaultHttpDataSource;
 import com.google.android.exoplayer.upstream.DefaultUriDataSource;
+import com.google.android.exoplayer.upstream.SlabAllocator;
 import com.google.android.exoplayer.util.ManifestFetcher;
 import com.google.android.exoplayer.util.Util;
 
@@ -56,6 +56,9 @@ import java.io.IOException;
 public class SmoothStreamingRendererBuilder implements RendererBuilder {
 
   private static final int BUFFER_SEGMENT_SIZE = 64 * 1024;
+  private static final int AUDIO_BUFFER_SEGMENT_SIZE = 16 * 1024;
+  private static final int TEXT_BUFFER_SEGMENT_SIZE = 4 * 1024;
+  private static final int BUFFER_SLAB_SIZE = 16 * BUFFER_SEGMENT_SIZE;
   private static final int VIDEO_BUFFER_SEGMENTS = 200;
   private static final int AUDIO_BUFFER_SEGMENTS = 54;
   private static final int TEXT_BUFFER_SEGMENTS = 2;
@@ -135,8 +138,11 @@ public class SmoothStreamingRendererBuilder implements RendererBuilder {
         return;
       }
 
+      player.getStartupTimer().onManifestLoaded();
       Handler mainHandler = player.getMainHandler();
-      LoadControl loadControl = new DefaultLoadControl(new DefaultAllocator(BUFFER_SEGMENT_SIZE));
+      SlabAllocator allocator = new SlabAllocator(BUFFER_SLAB_SIZE, TEXT_BUFFER_SEGMENT_SIZE,
+          AUDIO_BUFFER_SEGMENT_SIZE, BUFFER_SEGMENT_SIZE);
+      LoadControl loadControl = new DefaultLoadControl(allocator);
       DefaultBandwidthMeter bandwidthMeter = new DefaultBandwidthMeter(mainHandler, player);
 
       // Check drm support if necessary.
@@ -163,7 +169,8 @@ public class SmoothStreamingRendererBuilder implements RendererBuilder {
           videoDataSource, new AdaptiveEvaluator(bandwidthMeter), LIVE_EDGE_LATENCY_MS);
       ChunkSampleSource videoSampleSource = new ChunkSampleSource(videoChunkSource, loadControl,
           VIDEO_BUFFER_SEGMENTS * BUFFER_SEGMENT_SIZE, mainHandler, player,
-          DemoPlayer.TYPE_VIDEO);
+          DemoPlayer.TYPE_VIDEO, ChunkSampleSource.DEFAULT_MIN_LOADABLE_RETRY_COUNT,
+          allocator.getAllocator(BUFFER_SEGMENT_SIZE));
       TrackRenderer videoRenderer = new MediaCodecVideoTrackRenderer(context, videoSampleSource,
           MediaCodecSelector.DEFAULT, MediaCodec.VIDEO_SCALING_MODE_SCALE_TO_FIT, 5000,
           drmSessionManager, true, mainHandler, player, 50);
@@ -175,7 +182,8 @@ public class SmoothStreamingRendererBuilder implements RendererBuilder {
           audioDataSource, null, LIVE_EDGE_LATENCY_MS);
       ChunkSampleSource audioSampleSource = new ChunkSampleSource(audioChunkSource, loadControl,
           AUDIO_BUFFER_SEGMENTS * BUFFER_SEGMENT_SIZE, mainHandler, player,
-          DemoPlayer.TYPE_AUDIO);
+          DemoPlayer.TYPE_AUDIO, ChunkSampleSource.DEFAULT_MIN_LOADABLE_RETRY_COUNT,
+          allocator.getAllocator(AUDIO_BUFFER_SEGMENT_SIZE));
       TrackRenderer audioRenderer = new MediaCodecAudioTrackRenderer(audioSampleSource,
           MediaCodecSelector.DEFAULT, drmSessionManager, true, mainHandler, player,
           AudioCapabilities.getCapabilities(context), AudioManager.STREAM_MUSIC);
@@ -187,7 +195,8 @@ public class SmoothStreamingRendererBuilder implements RendererBuilder {
           textDataSource, null, LIVE_EDGE_LATENCY_MS);
       ChunkSampleSource textSampleSource = new ChunkSampleSource(textChunkSource, loadControl,
           TEXT_BUFFER_SEGMENTS * BUFFER_SEGMENT_SIZE, mainHandler, player,
-          DemoPlayer.TYPE_TEXT);
+          DemoPlayer.TYPE_TEXT, ChunkSampleSource.DEFAULT_MIN_LOADABLE_RETRY_COUNT,
+          allocator.getAllocator(TEXT_BUFFER_SEGMENT_SIZE));
       TrackRenderer textRenderer = new TextTrackRenderer(textSampleSource, player,
           mainHandler.getLooper());
 
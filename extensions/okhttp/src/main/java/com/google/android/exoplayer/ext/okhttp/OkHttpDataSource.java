@@ -19,6 +19,7 @@ import com.google.android.exoplayer.C;
 import com.google.android.exoplayer.upstream.DataSpec;
 import com.google.android.exoplayer.upstream.HttpDataSource;
 import com.google.android.exoplayer.upstream.TransferListener;
+import com.google.android.exoplayer.upstream.TransferRequestListener;
 import com.google.android.exoplayer.util.Assertions;
 import com.google.android.exoplayer.util.Predicate;
 
@@ -149,6 +150,21 @@ public class OkHttpDataSource implements HttpDataSource {
 
   @Override
   public long open(DataSpec dataSpec) throws HttpDataSourceException {
+    if (!(listener instanceof TransferRequestListener)) {
+      return openInternal(dataSpec);
+    }
+    TransferRequestListener requestListener = (TransferRequestListener) listener;
+    requestListener.onTransferRequest();
+    try {
+      return openInternal(dataSpec);
+    } finally {
+      if (!opened) {
+        requestListener.onTransferRequestFailed();
+      }
+    }
+  }
+
+  private long openInternal(DataSpec dataSpec) throws HttpDataSourceException {
     this.dataSpec = dataSpec;
     this.bytesRead = 0;
     this.bytesSkipped = 0;
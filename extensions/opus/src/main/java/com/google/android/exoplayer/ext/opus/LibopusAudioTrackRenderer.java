@@ -25,9 +25,10 @@ import com.google.android.exoplayer.SampleSource;
 import com.google.android.exoplayer.SampleSourceTrackRenderer;
 import com.google.android.exoplayer.TrackRenderer;
 import com.google.android.exoplayer.audio.AudioTrack;
-import com.google.android.exoplayer.ext.opus.OpusDecoderWrapper.InputBuffer;
-import com.google.android.exoplayer.ext.opus.OpusDecoderWrapper.OutputBuffer;
+import com.google.android.exoplayer.ext.opus.OpusDecoderWrapper.OpusOutputBuffer;
 import com.google.android.exoplayer.util.MimeTypes;
+import com.google.android.exoplayer.util.extensions.Buffer;
+import com.google.android.exoplayer.util.extensions.InputBuffer;
 
 import android.os.Handler;
 
@@ -85,14 +86,13 @@ public final class LibopusAudioTrackRenderer extends SampleSourceTrackRenderer
   private MediaFormat format;
   private OpusDecoderWrapper decoder;
   private InputBuffer inputBuffer;
-  private OutputBuffer outputBuffer;
+  private OpusOutputBuffer outputBuffer;
 
   private long currentPositionUs;
   private boolean allowPositionDiscontinuity;
   private boolean inputStreamEnded;
   private boolean outputStreamEnded;
   private boolean sourceIsReady;
-  private boolean notifyDiscontinuityToDecoder;
 
   private AudioTrack audioTrack;
   private int audioSessionId;
@@ -220,10 +220,10 @@ public final class LibopusAudioTrackRenderer extends SampleSourceTrackRenderer
       }
     }
 
-    if (outputBuffer.getFlag(OpusDecoderWrapper.FLAG_END_OF_STREAM)) {
+    if (outputBuffer.getFlag(Buffer.FLAG_END_OF_STREAM)) {
       outputStreamEnded = true;
       audioTrack.handleEndOfStream();
-      decoder.releaseOutputBuffer(outputBuffer);
+      outputBuffer.release();
       outputBuffer = null;
       return;
     }
@@ -250,7 +250,7 @@ public final class LibopusAudioTrackRenderer extends SampleSourceTrackRenderer
 
     // Release the buffer if it was consumed.
     if ((handleBufferResult & AudioTrack.RESULT_BUFFER_CONSUMED) != 0) {
-      decoder.releaseOutputBuffer(outputBuffer);
+      outputBuffer.release();
       codecCounters.renderedOutputBufferCount++;
       outputBuffer = null;
     }
@@ -277,17 +277,12 @@ public final class LibopusAudioTrackRenderer extends SampleSourceTrackRenderer
       return true;
     }
     if (result == SampleSource.END_OF_STREAM) {
-      inputBuffer.setFlag(OpusDecoderWrapper.FLAG_END_OF_STREAM);
+      inputBuffer.setFlag(Buffer.FLAG_END_OF_STREAM);
       decoder.queueInputBuffer(inputBuffer);
       inputBuffer = null;
       inputStreamEnded = true;
       return false;
     }
-    if (notifyDiscontinuityToDecoder) {
-      notifyDiscontinuityToDecoder = false;
-      inputBuffer.setFlag(OpusDecoderWrapper.FLAG_RESET_DECODER);
-    }
-
     decoder.queueInputBuffer(inputBuffer);
     inputBuffer = null;
     return true;
@@ -295,9 +290,11 @@ public final class LibopusAudioTrackRenderer extends SampleSourceTrackRenderer
 
   private void flushDecoder() {
     inputBuffer = null;
-    outputBuffer = null;
+    if (outputBuffer != null) {
+      outputBuffer.release();
+      outputBuffer = null;
+    }
     decoder.flush();
-    notifyDiscontinuityToDecoder = true;
   }
 
   @Override
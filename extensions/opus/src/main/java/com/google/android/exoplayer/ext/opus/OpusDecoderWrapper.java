@@ -16,42 +16,29 @@
 package com.google.android.exoplayer.ext.opus;
 
 import com.google.android.exoplayer.SampleHolder;
+import com.google.android.exoplayer.util.extensions.Buffer;
+import com.google.android.exoplayer.util.extensions.InputBuffer;
+import com.google.android.exoplayer.util.extensions.OutputBuffer;
+import com.google.android.exoplayer.util.extensions.SimpleDecoder;
 
 import java.nio.ByteBuffer;
-import java.util.LinkedList;
 
 /**
  * Wraps {@link OpusDecoder}, exposing a higher level decoder interface.
  */
-/* package */ class OpusDecoderWrapper extends Thread {
-
-  public static final int FLAG_END_OF_STREAM = 1;
-  public static final int FLAG_RESET_DECODER = 2;
+/* package */ final class OpusDecoderWrapper extends
+    SimpleDecoder<InputBuffer, OpusDecoderWrapper.OpusOutputBuffer, OpusDecoderException> {
 
   private static final int INPUT_BUFFER_SIZE = 960 * 6;
   private static final int OUTPUT_BUFFER_SIZE = 960 * 6 * 2;
   private static final int NUM_BUFFERS = 16;
   private static final int DEFAULT_SEEK_PRE_ROLL = 3840;
 
-  private final Object lock;
   private final OpusHeader opusHeader;
-
-  private final LinkedList<InputBuffer> dequeuedInputBuffers;
-  private final LinkedList<InputBuffer> queuedInputBuffers;
-  private final LinkedList<OutputBuffer> queuedOutputBuffers;
-  private final LinkedList<OutputBuffer> dequeuedOutputBuffers;
-  private final InputBuffer[] availableInputBuffers;
-  private final OutputBuffer[] availableOutputBuffers;
-  private int availableInputBufferCount;
-  private int availableOutputBufferCount;
+  private final OpusDecoder decoder;
+  private final int seekPreRoll;
 
   private int skipSamples;
-  private boolean flushDecodedOutputBuffer;
-  private boolean released;
-
-  private int seekPreRoll;
-
-  private OpusDecoderException decoderException;
 
   /**
    * @param headerBytes Opus header data that is used to initialize the decoder. For WebM Container,
@@ -66,209 +53,81 @@ import java.util.LinkedList;
    */
   public OpusDecoderWrapper(byte[] headerBytes, long codecDelayNs,
       long seekPreRollNs) throws OpusDecoderException {
-    lock = new Object();
+    this(headerBytes, codecDelayNs, seekPreRollNs, NUM_BUFFERS);
+  }
+
+  /**
+   * @param headerBytes Opus header data that is used to initialize the decoder. For WebM Container,
+   *    this comes from the CodecPrivate Track element.
+   * @param codecDelayNs Delay in nanoseconds added by the codec at the beginning. For WebM
+   *    Container, this comes from the CodecDelay Track Element. Can be -1 in which case the value
+   *    from the codec header will be used.
+   * @param seekPreRollNs Duration in nanoseconds of samples to discard when there is a
+   *    discontinuity. For WebM Container, this comes from the SeekPreRoll Track Element. Can be -1
+   *    in which case the default value of 80ns will be used.
+   * @param bufferCount The number of input buffers and the number of output buffers.
+   * @throws OpusDecoderException if an exception occurs when initializing the decoder.
+   */
+  public OpusDecoderWrapper(byte[] headerBytes, long codecDelayNs,
+      long seekPreRollNs, int bufferCount) throws OpusDecoderException {
+    super(new InputBuffer[bufferCount], new OpusOutputBuffer[bufferCount]);
     opusHeader = parseOpusHeader(headerBytes);
     skipSamples = (codecDelayNs == -1) ? opusHeader.skipSamples
         : nsToSamples(opusHeader, codecDelayNs);
-    seekPreRoll = (seekPreRoll == -1) ? DEFAULT_SEEK_PRE_ROLL
+    seekPreRoll = (seekPreRollNs == -1) ? DEFAULT_SEEK_PRE_ROLL
         : nsToSamples(opusHeader, seekPreRollNs);
-    dequeuedInputBuffers = new LinkedList<>();
-    queuedInputBuffers = new LinkedList<>();
-    queuedOutputBuffers = new LinkedList<>();
-    dequeuedOutputBuffers = new LinkedList<>();
-    availableInputBuffers = new InputBuffer[NUM_BUFFERS];
-    availableOutputBuffers = new OutputBuffer[NUM_BUFFERS];
-    availableInputBufferCount = NUM_BUFFERS;
-    availableOutputBufferCount = NUM_BUFFERS;
-    for (int i = 0; i < NUM_BUFFERS; i++) {
-      availableInputBuffers[i] = new InputBuffer();
-      availableOutputBuffers[i] = new OutputBuffer();
-    }
-  }
-
-  public InputBuffer dequeueInputBuffer() throws OpusDecoderException {
-    synchronized (lock) {
-      maybeThrowDecoderError();
-      if (availableInputBufferCount == 0) {
-        return null;
-      }
-      InputBuffer inputBuffer = availableInputBuffers[--availableInputBufferCount];
-      inputBuffer.reset();
-      dequeuedInputBuffers.addLast(inputBuffer);
-      return inputBuffer;
-    }
-  }
-
-  public void queueInputBuffer(InputBuffer inputBuffer) throws OpusDecoderException {
-    synchronized (lock) {
-      maybeThrowDecoderError();
-      dequeuedInputBuffers.remove(inputBuffer);
-      queuedInputBuffers.addLast(inputBuffer);
-      maybeNotifyDecodeLoop();
-    }
-  }
-
-  public OutputBuffer dequeueOutputBuffer() throws OpusDecoderException {
-    synchronized (lock) {
-      maybeThrowDecoderError();
-      if (queuedOutputBuffers.isEmpty()) {
-        return null;
-      }
-      OutputBuffer outputBuffer = queuedOutputBuffers.removeFirst();
-      dequeuedOutputBuffers.add(outputBuffer);
-      return outputBuffer;
-    }
-  }
-
-  public void releaseOutputBuffer(OutputBuffer outputBuffer) throws OpusDecoderException {
-    synchronized (lock) {
-      maybeThrowDecoderError();
-      outputBuffer.reset();
-      dequeuedOutputBuffers.remove(outputBuffer);
-      availableOutputBuffers[availableOutputBufferCount++] = outputBuffer;
-      maybeNotifyDecodeLoop();
-    }
-  }
-
-  public void flush() {
-    synchronized (lock) {
-      flushDecodedOutputBuffer = true;
-      while (!dequeuedInputBuffers.isEmpty()) {
-        availableInputBuffers[availableInputBufferCount++] = dequeuedInputBuffers.removeFirst();
-      }
-      while (!queuedInputBuffers.isEmpty()) {
-        availableInputBuffers[availableInputBufferCount++] = queuedInputBuffers.removeFirst();
-      }
-      while (!queuedOutputBuffers.isEmpty()) {
-        availableOutputBuffers[availableOutputBufferCount++] = queuedOutputBuffers.removeFirst();
-      }
-      while (!dequeuedOutputBuffers.isEmpty()) {
-        availableOutputBuffers[availableOutputBufferCount++] = dequeuedOutputBuffers.removeFirst();
-      }
-    }
+    decoder = new OpusDecoder(opusHeader);
   }
 
+  @Override
   public void release() {
-    synchronized (lock) {
-      released = true;
-      lock.notify();
-    }
-    try {
-      join();
-    } catch (InterruptedException e) {
-      Thread.currentThread().interrupt();
-    }
+    super.release();
+    decoder.close();
   }
 
-  private void maybeThrowDecoderError() throws OpusDecoderException {
-    if (decoderException != null) {
-      throw decoderException;
-    }
+  @Override
+  protected InputBuffer createInputBuffer() {
+    return new InputBuffer(INPUT_BUFFER_SIZE);
   }
 
-  /**
-   * Notifies the decode loop if there exists a queued input buffer and an available output buffer
-   * to decode into.
-   * <p>
-   * Should only be called whilst synchronized on the lock object.
-   */
-  private void maybeNotifyDecodeLoop() {
-    if (!queuedInputBuffers.isEmpty() && availableOutputBufferCount > 0) {
-      lock.notify();
-    }
+  @Override
+  protected OpusOutputBuffer createOutputBuffer() {
+    return new OpusOutputBuffer(this);
   }
 
   @Override
-  public void run() {
-    OpusDecoder decoder = null;
+  protected OpusDecoderException decode(InputBuffer inputBuffer, OpusOutputBuffer outputBuffer,
+      boolean reset) {
+    if (reset) {
+      decoder.reset();
+      // When seeking to 0, skip number of samples as specified in opus header. When seeking to
+      // any other time, skip number of samples as specified by seek preroll.
+      skipSamples = (inputBuffer.sampleHolder.timeUs == 0) ? opusHeader.skipSamples : seekPreRoll;
+    }
+    SampleHolder sampleHolder = inputBuffer.sampleHolder;
+    sampleHolder.data.position(sampleHolder.data.position() - sampleHolder.size);
     try {
-      decoder = new OpusDecoder(opusHeader);
-      while (decodeBuffer(decoder)) {
-        // Do nothing.
-      }
-    } catch (OpusDecoderException e) {
-      synchronized (lock) {
-        decoderException = e;
-      }
-    } catch (InterruptedException e) {
-      // Shouldn't ever happen.
-    } finally {
-      if (decoder != null) {
-        decoder.close();
-      }
-    }
-  }
-
-  private boolean decodeBuffer(OpusDecoder decoder) throws InterruptedException,
-      OpusDecoderException {
-    InputBuffer inputBuffer;
-    OutputBuffer outputBuffer;
-
-    // Wait until we have an input buffer to decode, and an output buffer to decode into.
-    synchronized (lock) {
-      while (!released && (queuedInputBuffers.isEmpty() || availableOutputBufferCount == 0)) {
-        lock.wait();
-      }
-      if (released) {
-        return false;
-      }
-      inputBuffer = queuedInputBuffers.removeFirst();
-      outputBuffer = availableOutputBuffers[--availableOutputBufferCount];
-      flushDecodedOutputBuffer = false;
-    }
-
-    // Decode.
-    boolean skipBuffer = false;
-    if (inputBuffer.getFlag(FLAG_END_OF_STREAM)) {
-      outputBuffer.setFlag(FLAG_END_OF_STREAM);
-    } else {
-      if (inputBuffer.getFlag(FLAG_RESET_DECODER)) {
-        decoder.reset();
-        // When seeking to 0, skip number of samples as specified in opus header. When seeking to
-        // any other time, skip number of samples as specified by seek preroll.
-        skipSamples = (inputBuffer.sampleHolder.timeUs == 0) ? opusHeader.skipSamples : seekPreRoll;
-      }
-      SampleHolder sampleHolder = inputBuffer.sampleHolder;
-      sampleHolder.data.position(sampleHolder.data.position() - sampleHolder.size);
-      outputBuffer.timestampUs = sampleHolder.timeUs;
       outputBuffer.size = decoder.decode(sampleHolder.data, sampleHolder.size,
           outputBuffer.data, outputBuffer.data.capacity());
-      outputBuffer.data.position(0);
-      if (skipSamples > 0) {
-        int bytesPerSample = opusHeader.channelCount * 2;
-        int skipBytes = skipSamples * bytesPerSample;
-        if (outputBuffer.size <= skipBytes) {
-          skipSamples -= outputBuffer.size / bytesPerSample;
-          outputBuffer.size = 0;
-          skipBuffer = true;
-        } else {
-          skipSamples = 0;
-          outputBuffer.size -= skipBytes;
-          outputBuffer.data.position(skipBytes);
-        }
-      }
-    }
-
-    synchronized (lock) {
-      if (flushDecodedOutputBuffer
-          || inputBuffer.sampleHolder.isDecodeOnly()
-          || skipBuffer) {
-        // In the following cases, we make the output buffer available again rather than queuing it
-        // to be consumed:
-        // 1) A flush occured whilst we were decoding.
-        // 2) The input sample has decodeOnly flag set.
-        // 3) We skip the entire buffer due to skipSamples being greater than bytes decoded.
-        outputBuffer.reset();
-        availableOutputBuffers[availableOutputBufferCount++] = outputBuffer;
+    } catch (OpusDecoderException e) {
+      return e;
+    }
+    outputBuffer.data.position(0);
+    if (skipSamples > 0) {
+      int bytesPerSample = opusHeader.channelCount * 2;
+      int skipBytes = skipSamples * bytesPerSample;
+      if (outputBuffer.size <= skipBytes) {
+        // Skip the entire buffer.
+        skipSamples -= outputBuffer.size / bytesPerSample;
+        outputBuffer.size = 0;
+        outputBuffer.setFlag(Buffer.FLAG_DECODE_ONLY);
       } else {
-        // Queue the decoded output buffer to be consumed.
-        queuedOutputBuffers.addLast(outputBuffer);
+        skipSamples = 0;
+        outputBuffer.size -= skipBytes;
+        outputBuffer.data.position(skipBytes);
       }
-      // Make the input buffer available again.
-      availableInputBuffers[availableInputBufferCount++] = inputBuffer;
     }
-
-    return true;
+    return null;
   }
 
   private static OpusHeader parseOpusHeader(byte[] headerBytes) throws OpusDecoderException {
@@ -327,55 +186,28 @@ import java.util.LinkedList;
     return (int) (ns * opusHeader.sampleRate / 1000000000);
   }
 
-  /* package */ static final class InputBuffer {
-
-    public final SampleHolder sampleHolder;
-
-    public int flags;
-
-    public InputBuffer() {
-      sampleHolder = new SampleHolder(SampleHolder.BUFFER_REPLACEMENT_MODE_DIRECT);
-      sampleHolder.data = ByteBuffer.allocateDirect(INPUT_BUFFER_SIZE);
-    }
-
-    public void reset() {
-      sampleHolder.clearData();
-      flags = 0;
-    }
+  /* package */ static final class OpusOutputBuffer extends OutputBuffer {
 
-    public void setFlag(int flag) {
-      flags |= flag;
-    }
-
-    public boolean getFlag(int flag) {
-      return (flags & flag) == flag;
-    }
-
-  }
-
-  /* package */ static final class OutputBuffer {
-
-    public ByteBuffer data;
+    public final ByteBuffer data;
     public int size;
-    public long timestampUs;
-    public int flags;
 
-    public OutputBuffer() {
+    private final OpusDecoderWrapper owner;
+
+    public OpusOutputBuffer(OpusDecoderWrapper owner) {
+      this.owner = owner;
       data = ByteBuffer.allocateDirect(OUTPUT_BUFFER_SIZE);
     }
 
+    @Override
     public void reset() {
+      super.reset();
       data.clear();
       size = 0;
-      flags = 0;
-    }
-
-    public void setFlag(int flag) {
-      flags |= flag;
     }
 
-    public boolean getFlag(int flag) {
-      return (flags & flag) == flag;
+    @Override
+    public void release() {
+      owner.releaseOutputBuffer(this);
     }
 
   }
@@ -25,6 +25,7 @@ import com.google.android.exoplayer.SampleSourceTrackRenderer;
 import com.google.android.exoplayer.TrackRenderer;
 import com.google.android.exoplayer.ext.vp9.VpxDecoderWrapper.VpxInputBuffer;
 import com.google.android.exoplayer.util.MimeTypes;
+import com.google.android.exoplayer.util.extensions.Buffer;
 
 import android.graphics.Bitmap;
 import android.graphics.Canvas;
@@ -202,7 +203,12 @@ public final class LibvpxVideoTrackRenderer extends SampleSourceTrackRenderer {
     // If we don't have a decoder yet, we need to instantiate one.
     if (decoder == null) {
       long startElapsedRealtimeMs = SystemClock.elapsedRealtime();
-      decoder = new VpxDecoderWrapper(outputMode);
+      try {
+        decoder = new VpxDecoderWrapper(outputMode);
+      } catch (VpxDecoderException e) {
+        notifyDecoderError(e);
+        throw new ExoPlaybackException(e);
+      }
       decoder.start();
       notifyDecoderInitialized(startElapsedRealtimeMs, SystemClock.elapsedRealtime());
       codecCounters.codecInitCount++;
@@ -232,9 +238,9 @@ public final class LibvpxVideoTrackRenderer extends SampleSourceTrackRenderer {
       }
     }
 
-    if (outputBuffer.flags == VpxDecoderWrapper.FLAG_END_OF_STREAM) {
+    if (outputBuffer.getFlag(Buffer.FLAG_END_OF_STREAM)) {
       outputStreamEnded = true;
-      decoder.releaseOutputBuffer(outputBuffer);
+      outputBuffer.release();
       outputBuffer = null;
       return;
     }
@@ -249,7 +255,7 @@ public final class LibvpxVideoTrackRenderer extends SampleSourceTrackRenderer {
       if (droppedFrameCount == maxDroppedFrameCountToNotify) {
         notifyAndResetDroppedFrameCount();
       }
-      decoder.releaseOutputBuffer(outputBuffer);
+      outputBuffer.release();
       outputBuffer = null;
       return;
     }
@@ -333,7 +339,7 @@ public final class LibvpxVideoTrackRenderer extends SampleSourceTrackRenderer {
       return true;
     }
     if (result == SampleSource.END_OF_STREAM) {
-      inputBuffer.flags = VpxDecoderWrapper.FLAG_END_OF_STREAM;
+      inputBuffer.setFlag(Buffer.FLAG_END_OF_STREAM);
       decoder.queueInputBuffer(inputBuffer);
       inputBuffer = null;
       inputStreamEnded = true;
@@ -350,7 +356,7 @@ public final class LibvpxVideoTrackRenderer extends SampleSourceTrackRenderer {
   private void flushDecoder() {
     inputBuffer = null;
     if (outputBuffer != null) {
-      decoder.releaseOutputBuffer(outputBuffer);
+      outputBuffer.release();
       outputBuffer = null;
     }
     decoder.flush();
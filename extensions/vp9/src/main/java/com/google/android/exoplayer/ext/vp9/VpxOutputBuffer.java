@@ -15,12 +15,14 @@
  */
 package com.google.android.exoplayer.ext.vp9;
 
+import com.google.android.exoplayer.util.extensions.OutputBuffer;
+
 import java.nio.ByteBuffer;
 
 /**
  * OutputBuffer for storing the video frame.
  */
-public final class VpxOutputBuffer {
+public final class VpxOutputBuffer extends OutputBuffer {
 
   public static final int COLORSPACE_UNKNOWN = 0;
   public static final int COLORSPACE_BT601 = 1;
@@ -36,10 +38,8 @@ public final class VpxOutputBuffer {
    * RGB buffer for RGB mode.
    */
   public ByteBuffer data;
-  public long timestampUs;
   public int width;
   public int height;
-  public int flags;
   /**
    * YUV planes for YUV mode.
    */
@@ -48,9 +48,7 @@ public final class VpxOutputBuffer {
   public int mode;
   public int colorspace;
 
-  /**
-   * Releases the buffer back to the decoder, allowing it to be reused.
-   */
+  @Override
   public void release() {
     decoder.releaseOutputBuffer(this);
   }
@@ -0,0 +1,84 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer;
+
+import com.google.android.exoplayer.util.FakeClock;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit tests for {@link WorkScheduler}.
+ */
+public class WorkSchedulerTest extends TestCase {
+
+  private FakeClock clock;
+  private WorkScheduler scheduler;
+
+  @Override
+  protected void setUp() {
+    clock = new FakeClock(1000);
+    scheduler = new WorkScheduler(clock);
+  }
+
+  public void testDefaultDelayMatchesMinimumInterval() {
+    scheduler.onOperationStarted();
+    scheduler.onRendererWorkDone(TrackRenderer.DEFAULT_MAX_WORK_DELAY_US);
+    assertEquals(WorkScheduler.MIN_RENDERING_INTERVAL_MS, scheduler.getRenderingDelayMs());
+  }
+
+  public void testEarliestRendererDeadlineIsUsed() {
+    scheduler.onOperationStarted();
+    scheduler.onRendererWorkDone(40000);
+    scheduler.onRendererWorkDone(25000);
+    scheduler.onRendererWorkDone(Long.MAX_VALUE);
+    assertEquals(25, scheduler.getRenderingDelayMs());
+  }
+
+  public void testDelayIsConstrained() {
+    scheduler.onOperationStarted();
+    scheduler.onRendererWorkDone(0);
+    assertEquals(WorkScheduler.MIN_RENDERING_INTERVAL_MS, scheduler.getRenderingDelayMs());
+
+    // Without any deadlines, the loop still runs at the maximum interval.
+    scheduler.onOperationStarted();
+    assertEquals(WorkScheduler.MAX_RENDERING_INTERVAL_MS, scheduler.getRenderingDelayMs());
+    scheduler.onRendererWorkDone(Long.MAX_VALUE);
+    assertEquals(WorkScheduler.MAX_RENDERING_INTERVAL_MS, scheduler.getRenderingDelayMs());
+  }
+
+  public void testDelayIsMeasuredFromOperationStart() {
+    scheduler.onOperationStarted();
+    scheduler.onRendererWorkDone(40000);
+    clock.advanceTime(15);
+    assertEquals(25, scheduler.getRenderingDelayMs());
+    assertEquals(5, scheduler.getDelayMs(20));
+
+    // An operation that overruns the deadline is followed immediately by the next.
+    clock.advanceTime(30);
+    assertEquals(0, scheduler.getRenderingDelayMs());
+    assertEquals(0, scheduler.getDelayMs(20));
+  }
+
+  public void testDeadlinesAreResetByEachOperation() {
+    scheduler.onOperationStarted();
+    scheduler.onRendererWorkDone(TrackRenderer.DEFAULT_MAX_WORK_DELAY_US);
+    clock.advanceTime(WorkScheduler.MIN_RENDERING_INTERVAL_MS);
+    scheduler.onOperationStarted();
+    scheduler.onRendererWorkDone(60000);
+    assertEquals(60, scheduler.getRenderingDelayMs());
+  }
+
+}
@@ -0,0 +1,147 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer.chunk;
+
+import com.google.android.exoplayer.chunk.FormatEvaluator.BufferBasedEvaluator;
+import com.google.android.exoplayer.chunk.FormatEvaluator.Evaluation;
+import com.google.android.exoplayer.upstream.BandwidthMeter;
+import com.google.android.exoplayer.upstream.ByteArrayDataSource;
+import com.google.android.exoplayer.upstream.DataSpec;
+import com.google.android.exoplayer.util.MimeTypes;
+
+import android.net.Uri;
+
+import junit.framework.TestCase;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Unit tests for {@link FormatEvaluator} implementations.
+ */
+public class FormatEvaluatorTest extends TestCase {
+
+  private static final Format FORMAT_4000 = buildFormat("4000", 4000000);
+  private static final Format FORMAT_2000 = buildFormat("2000", 2000000);
+  private static final Format FORMAT_1000 = buildFormat("1000", 1000000);
+  private static final Format FORMAT_500 = buildFormat("500", 500000);
+  private static final Format[] FORMATS =
+      new Format[] {FORMAT_4000, FORMAT_2000, FORMAT_1000, FORMAT_500};
+
+  private FakeBandwidthMeter bandwidthMeter;
+  private BufferBasedEvaluator evaluator;
+  private Evaluation evaluation;
+
+  @Override
+  protected void setUp() {
+    bandwidthMeter = new FakeBandwidthMeter();
+    evaluator = new BufferBasedEvaluator(bandwidthMeter);
+    evaluator.enable();
+    evaluation = new Evaluation();
+  }
+
+  public void testBufferBasedInitialSelectionUsesMaxInitialBitrate() {
+    evaluator.evaluate(Collections.<MediaChunk>emptyList(), 0, FORMATS, evaluation);
+    assertSame(FORMAT_500, evaluation.format);
+    assertEquals(Chunk.TRIGGER_INITIAL, evaluation.trigger);
+  }
+
+  public void testBufferBasedLowBufferFollowsBandwidth() {
+    bandwidthMeter.bitrateEstimate = 2000000;
+    evaluation.format = FORMAT_500;
+    evaluate(5000);
+    // 75% of the estimate is available.
+    assertSame(FORMAT_1000, evaluation.format);
+    assertEquals(Chunk.TRIGGER_ADAPTIVE, evaluation.trigger);
+  }
+
+  public void testBufferBasedFullBufferSelectsHighestQuality() {
+    bandwidthMeter.bitrateEstimate = 10000000;
+    evaluation.format = FORMAT_2000;
+    evaluate(29000);
+    assertSame(FORMAT_4000, evaluation.format);
+  }
+
+  public void testBufferBasedBandwidthDropWithFullBuffer() {
+    bandwidthMeter.bitrateEstimate = 10000000;
+    evaluation.format = FORMAT_2000;
+    evaluate(29000);
+    assertSame(FORMAT_4000, evaluation.format);
+    // The buffer absorbs the drop, so quality is reduced by less than the bandwidth suggests.
+    bandwidthMeter.bitrateEstimate = 600000;
+    evaluate(25000);
+    assertSame(FORMAT_2000, evaluation.format);
+    // Once the buffer is low, selection follows the bandwidth estimate again.
+    evaluate(5000);
+    assertSame(FORMAT_500, evaluation.format);
+  }
+
+  public void testBufferBasedDefersSwitchUpBeyondBandwidth() {
+    bandwidthMeter.bitrateEstimate = 2000000;
+    evaluation.format = FORMAT_1000;
+    evaluate(29000);
+    assertSame(FORMAT_1000, evaluation.format);
+  }
+
+  public void testBufferBasedSingleFormat() {
+    bandwidthMeter.bitrateEstimate = 100000;
+    evaluation.format = FORMAT_1000;
+    evaluator.evaluate(buildQueue(29000), 0, new Format[] {FORMAT_1000}, evaluation);
+    assertSame(FORMAT_1000, evaluation.format);
+  }
+
+  private void evaluate(long bufferedDurationMs) {
+    evaluator.evaluate(buildQueue(bufferedDurationMs), 0, FORMATS, evaluation);
+  }
+
+  private List<MediaChunk> buildQueue(long bufferedDurationMs) {
+    MediaChunk chunk = new SingleSampleMediaChunk(new ByteArrayDataSource(new byte[1]),
+        new DataSpec(Uri.EMPTY), Chunk.TRIGGER_UNSPECIFIED, evaluation.format, 0,
+        bufferedDurationMs * 1000, 0, null, null, Chunk.NO_PARENT_ID);
+    return Collections.singletonList(chunk);
+  }
+
+  private static Format buildFormat(String id, int bitrate) {
+    return new Format(id, MimeTypes.VIDEO_MP4, 1280, 720, 30, -1, -1, bitrate);
+  }
+
+  private static final class FakeBandwidthMeter implements BandwidthMeter {
+
+    public long bitrateEstimate = NO_ESTIMATE;
+
+    @Override
+    public long getBitrateEstimate() {
+      return bitrateEstimate;
+    }
+
+    @Override
+    public void onTransferStart() {
+      // Do nothing.
+    }
+
+    @Override
+    public void onBytesTransferred(int bytesTransferred) {
+      // Do nothing.
+    }
+
+    @Override
+    public void onTransferEnd() {
+      // Do nothing.
+    }
+
+  }
+
+}
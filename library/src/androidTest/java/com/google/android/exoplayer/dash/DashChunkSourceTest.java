@@ -31,7 +31,7 @@ import com.google.android.exoplayer.dash.mpd.Representation;
 import com.google.android.exoplayer.dash.mpd.SegmentBase.MultiSegmentBase;
 import com.google.android.exoplayer.dash.mpd.SegmentBase.SegmentList;
 import com.google.android.exoplayer.dash.mpd.SegmentBase.SegmentTemplate;
-import com.google.android.exoplayer.dash.mpd.SegmentBase.SegmentTimelineElement;
+import com.google.android.exoplayer.dash.mpd.SegmentBase.SegmentTimeline;
 import com.google.android.exoplayer.dash.mpd.SegmentBase.SingleSegmentBase;
 import com.google.android.exoplayer.dash.mpd.UrlTemplate;
 import com.google.android.exoplayer.testutil.TestUtil;
@@ -198,24 +198,23 @@ public class DashChunkSourceTest extends InstrumentationTestCase {
 
   private static Representation buildSegmentTimelineRepresentation(long timelineDurationMs,
       long timelineStartTimeMs) {
-    List<SegmentTimelineElement> segmentTimeline = new ArrayList<>();
     List<RangedUri> mediaSegments = new ArrayList<>();
     long segmentStartTimeMs = timelineStartTimeMs;
     long byteStart = 0;
     // Create all but the last segment with LIVE_SEGMENT_DURATION_MS.
     int segmentCount = (int) Util.ceilDivide(timelineDurationMs, LIVE_SEGMENT_DURATION_MS);
     for (int i = 0; i < segmentCount - 1; i++) {
-      segmentTimeline.add(new SegmentTimelineElement(segmentStartTimeMs, LIVE_SEGMENT_DURATION_MS));
       mediaSegments.add(new RangedUri("", "", byteStart, 500L));
       segmentStartTimeMs += LIVE_SEGMENT_DURATION_MS;
       byteStart += 500;
     }
     // The final segment duration is calculated so that the total duration is timelineDurationMs.
     long finalSegmentDurationMs = (timelineStartTimeMs + timelineDurationMs) - segmentStartTimeMs;
-    segmentTimeline.add(new SegmentTimelineElement(segmentStartTimeMs, finalSegmentDurationMs));
     mediaSegments.add(new RangedUri("", "", byteStart, 500L));
-    segmentStartTimeMs += finalSegmentDurationMs;
-    byteStart += 500;
+    SegmentTimeline segmentTimeline = new SegmentTimeline(
+        new long[] {timelineStartTimeMs, segmentStartTimeMs},
+        new long[] {LIVE_SEGMENT_DURATION_MS, finalSegmentDurationMs},
+        new int[] {segmentCount - 1, 1});
     // Construct the list.
     MultiSegmentBase segmentBase = new SegmentList(null, 1000, 0, 0, 0, segmentTimeline,
         mediaSegments);
@@ -0,0 +1,191 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer.dash;
+
+import com.google.android.exoplayer.C;
+import com.google.android.exoplayer.chunk.Format;
+import com.google.android.exoplayer.dash.mpd.AdaptationSet;
+import com.google.android.exoplayer.dash.mpd.MediaPresentationDescription;
+import com.google.android.exoplayer.dash.mpd.Period;
+import com.google.android.exoplayer.dash.mpd.RangedUri;
+import com.google.android.exoplayer.dash.mpd.Representation;
+import com.google.android.exoplayer.dash.mpd.SegmentBase.SegmentTemplate;
+import com.google.android.exoplayer.dash.mpd.UrlTemplate;
+import com.google.android.exoplayer.testutil.FakeDataSource;
+import com.google.android.exoplayer.testutil.TestUtil;
+import com.google.android.exoplayer.upstream.DataSource;
+import com.google.android.exoplayer.upstream.DataSourceFactory;
+import com.google.android.exoplayer.upstream.DataSpec;
+import com.google.android.exoplayer.upstream.SlabAllocator;
+import com.google.android.exoplayer.util.MimeTypes;
+
+import junit.framework.TestCase;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Unit tests for {@link DashStartupPrefetcher}.
+ */
+public class DashStartupPrefetcherTest extends TestCase {
+
+  private static final String BASE_URL = "http://example.com/";
+  private static final int ALLOCATION_LENGTH = 256;
+  private static final int DATA_LENGTH = 1000;
+  private static final long TIMEOUT_MS = 5000;
+
+  private byte[] data;
+  private SlabAllocator allocator;
+
+  @Override
+  protected void setUp() {
+    data = TestUtil.buildTestData(DATA_LENGTH);
+    allocator = new SlabAllocator(ALLOCATION_LENGTH * 16, ALLOCATION_LENGTH);
+  }
+
+  public void testGetInitialRepresentation() {
+    AdaptationSet adaptationSet = buildAdaptationSet(2000000, 1000000, 500000);
+    assertEquals(1000000, DashStartupPrefetcher.getInitialRepresentation(adaptationSet, 1500000)
+        .format.bitrate);
+    assertEquals(500000, DashStartupPrefetcher.getInitialRepresentation(adaptationSet, 500000)
+        .format.bitrate);
+    // All representations exceed the maximum, so the lowest is selected.
+    assertEquals(500000, DashStartupPrefetcher.getInitialRepresentation(adaptationSet, 100000)
+        .format.bitrate);
+  }
+
+  public void testPrefetchedRequestsAreServedFromMemory() throws IOException {
+    // The upstream source has no data, and so would fail any request.
+    DashStartupPrefetcher prefetcher = new DashStartupPrefetcher(newDataSource(new byte[0]),
+        newDataSourceFactory(data), allocator);
+    AdaptationSet adaptationSet = buildAdaptationSet(1000000);
+    assertTrue(prefetcher.prefetch(buildManifest(false, adaptationSet),
+        adaptationSet.representations.get(0)));
+
+    DataSource dataSource = prefetcher.getDataSource();
+    Representation representation = adaptationSet.representations.get(0);
+    DashSegmentIndex index = representation.getIndex();
+    // The chunk source requests the initialization data, followed by the first segment.
+    assertTrue(Arrays.equals(data,
+        readToEnd(dataSource, representation, representation.getInitializationUri())));
+    assertTrue(Arrays.equals(data, readToEnd(dataSource, representation,
+        index.getSegmentUrl(index.getFirstSegmentNum()))));
+    // Later segments are read from upstream.
+    assertReadFails(dataSource, representation,
+        index.getSegmentUrl(index.getFirstSegmentNum() + 1));
+    prefetcher.cancel();
+  }
+
+  public void testUnrequestedDataIsReleasedOnceLoadsComplete() throws Exception {
+    DashStartupPrefetcher prefetcher = new DashStartupPrefetcher(newDataSource(data),
+        newDataSourceFactory(data), allocator);
+    AdaptationSet adaptationSet = buildAdaptationSet(1000000, 500000);
+    assertTrue(prefetcher.prefetch(buildManifest(false, adaptationSet),
+        adaptationSet.representations.get(0)));
+
+    // The chunk source selects a different representation, which is read from upstream.
+    DataSource dataSource = prefetcher.getDataSource();
+    Representation representation = adaptationSet.representations.get(1);
+    DashSegmentIndex index = representation.getIndex();
+    readToEnd(dataSource, representation, representation.getInitializationUri());
+    readToEnd(dataSource, representation, index.getSegmentUrl(index.getFirstSegmentNum()));
+    long deadlineMs = System.currentTimeMillis() + TIMEOUT_MS;
+    while (allocator.getTotalBytesAllocated() != 0 && System.currentTimeMillis() < deadlineMs) {
+      Thread.sleep(10);
+    }
+    assertEquals(0, allocator.getTotalBytesAllocated());
+  }
+
+  public void testDynamicManifestIsNotPrefetched() throws IOException {
+    DashStartupPrefetcher prefetcher = new DashStartupPrefetcher(newDataSource(new byte[0]),
+        newDataSourceFactory(data), allocator);
+    AdaptationSet adaptationSet = buildAdaptationSet(1000000);
+    Representation representation = adaptationSet.representations.get(0);
+    assertFalse(prefetcher.prefetch(buildManifest(true, adaptationSet), representation));
+    assertReadFails(prefetcher.getDataSource(), representation,
+        representation.getInitializationUri());
+  }
+
+  private static MediaPresentationDescription buildManifest(boolean dynamic,
+      AdaptationSet adaptationSet) {
+    Period period = new Period("p1", 0, Collections.singletonList(adaptationSet));
+    return new MediaPresentationDescription(0, dynamic ? -1 : 20000, 0, dynamic, 5000, -1, null,
+        null, Collections.singletonList(period));
+  }
+
+  private static AdaptationSet buildAdaptationSet(int... bitrates) {
+    SegmentTemplate segmentBase = new SegmentTemplate(null, 1000, 0, 1, 2000, null,
+        UrlTemplate.compile("$RepresentationID$/init.mp4"),
+        UrlTemplate.compile("$RepresentationID$/$Number$.m4s"), BASE_URL);
+    List<Representation> representations = new ArrayList<>();
+    for (int bitrate : bitrates) {
+      Format format = new Format(Integer.toString(bitrate / 1000), MimeTypes.VIDEO_MP4, 1280, 720,
+          30, -1, -1, bitrate);
+      representations.add(Representation.newInstance(null, 0, format, segmentBase));
+    }
+    return new AdaptationSet(0, AdaptationSet.TYPE_VIDEO, representations);
+  }
+
+  private static DataSource newDataSource(byte[] data) {
+    FakeDataSource.Builder builder = new FakeDataSource.Builder();
+    if (data.length > 0) {
+      builder.appendReadData(data);
+    }
+    return builder.build();
+  }
+
+  private static DataSourceFactory newDataSourceFactory(final byte[] data) {
+    return new DataSourceFactory() {
+      @Override
+      public DataSource createDataSource() {
+        return newDataSource(data);
+      }
+    };
+  }
+
+  private static void assertReadFails(DataSource dataSource, Representation representation,
+      RangedUri rangedUri) {
+    try {
+      readToEnd(dataSource, representation, rangedUri);
+      fail();
+    } catch (IOException e) {
+      // Expected.
+    }
+  }
+
+  private static byte[] readToEnd(DataSource dataSource, Representation representation,
+      RangedUri rangedUri) throws IOException {
+    // Requests are made in the same way as by DashChunkSource.
+    try {
+      dataSource.open(new DataSpec(rangedUri.getUri(), rangedUri.start, rangedUri.length,
+          representation.getCacheKey(rangedUri)));
+      ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+      byte[] buffer = new byte[100];
+      int bytesRead;
+      while ((bytesRead = dataSource.read(buffer, 0, buffer.length)) != C.RESULT_END_OF_INPUT) {
+        outputStream.write(buffer, 0, bytesRead);
+      }
+      return outputStream.toByteArray();
+    } finally {
+      dataSource.close();
+    }
+  }
+
+}
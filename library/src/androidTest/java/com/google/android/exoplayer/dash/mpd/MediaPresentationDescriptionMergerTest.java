@@ -0,0 +1,177 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer.dash.mpd;
+
+import com.google.android.exoplayer.chunk.Format;
+import com.google.android.exoplayer.dash.DashSegmentIndex;
+import com.google.android.exoplayer.dash.mpd.SegmentBase.SegmentTemplate;
+import com.google.android.exoplayer.dash.mpd.SegmentBase.SegmentTimeline;
+import com.google.android.exoplayer.util.MimeTypes;
+
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Unit tests for {@link MediaPresentationDescriptionMerger}.
+ */
+public class MediaPresentationDescriptionMergerTest extends TestCase {
+
+  private static final Format VIDEO_FORMAT =
+      new Format("1", MimeTypes.VIDEO_MP4, 1280, 720, 30, -1, -1, 1000000);
+  private static final Format AUDIO_FORMAT =
+      new Format("2", MimeTypes.AUDIO_MP4, -1, -1, -1, 2, 44100, 128000);
+
+  private MediaPresentationDescriptionMerger merger;
+
+  @Override
+  protected void setUp() {
+    merger = new MediaPresentationDescriptionMerger();
+  }
+
+  public void testMergeUnchanged() {
+    MediaPresentationDescription previous = buildManifest(buildPeriod("p1", 0, 10, 10));
+    MediaPresentationDescription manifest = buildManifest(buildPeriod("p1", 0, 10, 10));
+
+    MediaPresentationDescription merged = merger.merge(previous, manifest);
+    assertSame(previous.getPeriod(0), merged.getPeriod(0));
+    assertCounts(1, 1, 2, 2);
+  }
+
+  public void testMergeExtendedTimeline() {
+    MediaPresentationDescription previous = buildManifest(buildPeriod("p1", 0, 10, 10));
+    MediaPresentationDescription manifest = buildManifest(buildPeriod("p1", 0, 11, 10));
+
+    MediaPresentationDescription merged = merger.merge(previous, manifest);
+    Period period = merged.getPeriod(0);
+    assertSame(previous.getPeriod(0), period);
+    assertEquals(11, period.adaptationSets.get(0).representations.get(0).getIndex()
+        .getLastSegmentNum(0));
+    assertEquals(10, period.adaptationSets.get(1).representations.get(0).getIndex()
+        .getLastSegmentNum(0));
+    assertCounts(1, 1, 2, 2);
+  }
+
+  public void testMergeShortenedTimeline() {
+    MediaPresentationDescription previous = buildManifest(buildPeriod("p1", 0, 10, 10));
+    MediaPresentationDescription manifest = buildManifest(buildPeriod("p1", 0, 9, 10));
+
+    MediaPresentationDescription merged = merger.merge(previous, manifest);
+    Period period = merged.getPeriod(0);
+    assertNotSame(previous.getPeriod(0), period);
+    assertNotSame(previous.getPeriod(0).adaptationSets.get(0), period.adaptationSets.get(0));
+    assertSame(previous.getPeriod(0).adaptationSets.get(1), period.adaptationSets.get(1));
+    assertSame(manifest.getPeriod(0).adaptationSets.get(0).representations.get(0),
+        period.adaptationSets.get(0).representations.get(0));
+    assertEquals(9, period.adaptationSets.get(0).representations.get(0).getIndex()
+        .getLastSegmentNum(0));
+    // The previous representation is left unchanged.
+    assertEquals(10, previous.getPeriod(0).adaptationSets.get(0).representations.get(0)
+        .getIndex().getLastSegmentNum(0));
+    assertCounts(1, 0, 2, 1);
+  }
+
+  public void testMergeSlidingWindow() {
+    MediaPresentationDescription previous = buildManifest(buildPeriod("p1", 0, 0, 10, 10));
+    // The window moves forward by two segments.
+    MediaPresentationDescription manifest = buildManifest(buildPeriod("p1", 0, 2, 10, 10));
+
+    MediaPresentationDescription merged = merger.merge(previous, manifest);
+    Period period = merged.getPeriod(0);
+    assertSame(previous.getPeriod(0), period);
+    DashSegmentIndex index = period.adaptationSets.get(0).representations.get(0).getIndex();
+    assertEquals(3, index.getFirstSegmentNum());
+    assertEquals(12, index.getLastSegmentNum(0));
+    assertEquals(4000000, index.getTimeUs(3));
+    assertEquals(22000000, index.getTimeUs(12));
+    assertCounts(1, 1, 2, 2);
+  }
+
+  public void testMergeAddedPeriod() {
+    MediaPresentationDescription previous = buildManifest(buildPeriod("p1", 0, 10, 10));
+    MediaPresentationDescription manifest = buildManifest(buildPeriod("p1", 0, 10, 10),
+        buildPeriod("p2", 20000, 1, 1));
+
+    MediaPresentationDescription merged = merger.merge(previous, manifest);
+    assertEquals(2, merged.getPeriodCount());
+    assertSame(previous.getPeriod(0), merged.getPeriod(0));
+    assertSame(manifest.getPeriod(1), merged.getPeriod(1));
+    assertCounts(2, 1, 4, 2);
+  }
+
+  public void testMergeRemovedPeriod() {
+    MediaPresentationDescription previous = buildManifest(buildPeriod("p1", 0, 10, 10),
+        buildPeriod("p2", 20000, 1, 1));
+    MediaPresentationDescription manifest = buildManifest(buildPeriod("p2", 20000, 2, 2));
+
+    MediaPresentationDescription merged = merger.merge(previous, manifest);
+    assertEquals(1, merged.getPeriodCount());
+    assertSame(previous.getPeriod(1), merged.getPeriod(0));
+    assertEquals(2, merged.getPeriod(0).adaptationSets.get(0).representations.get(0).getIndex()
+        .getLastSegmentNum(0));
+    assertCounts(1, 1, 2, 2);
+  }
+
+  public void testMergeWithoutPreviousManifest() {
+    MediaPresentationDescription manifest = buildManifest(buildPeriod("p1", 0, 10, 10));
+
+    assertSame(manifest, merger.merge(null, manifest));
+    assertCounts(1, 0, 2, 0);
+  }
+
+  private void assertCounts(int periodCount, int reusedPeriodCount, int representationCount,
+      int reusedRepresentationCount) {
+    assertEquals(periodCount, merger.getPeriodCount());
+    assertEquals(reusedPeriodCount, merger.getReusedPeriodCount());
+    assertEquals(representationCount, merger.getRepresentationCount());
+    assertEquals(reusedRepresentationCount, merger.getReusedRepresentationCount());
+  }
+
+  private static MediaPresentationDescription buildManifest(Period... periods) {
+    return new MediaPresentationDescription(0, -1, 0, true, 5000, -1, null, null,
+        new ArrayList<>(Arrays.asList(periods)));
+  }
+
+  private static Period buildPeriod(String id, long startMs, int videoSegmentCount,
+      int audioSegmentCount) {
+    return buildPeriod(id, startMs, 0, videoSegmentCount, audioSegmentCount);
+  }
+
+  private static Period buildPeriod(String id, long startMs, int removedSegmentCount,
+      int videoSegmentCount, int audioSegmentCount) {
+    List<AdaptationSet> adaptationSets = new ArrayList<>();
+    adaptationSets.add(buildAdaptationSet(0, AdaptationSet.TYPE_VIDEO, VIDEO_FORMAT,
+        removedSegmentCount, videoSegmentCount));
+    adaptationSets.add(buildAdaptationSet(1, AdaptationSet.TYPE_AUDIO, AUDIO_FORMAT,
+        removedSegmentCount, audioSegmentCount));
+    return new Period(id, startMs, adaptationSets);
+  }
+
+  private static AdaptationSet buildAdaptationSet(int id, int type, Format format,
+      int removedSegmentCount, int segmentCount) {
+    SegmentTimeline timeline = new SegmentTimeline(new long[] {removedSegmentCount * 2000},
+        new long[] {2000}, new int[] {segmentCount});
+    SegmentTemplate segmentBase = new SegmentTemplate(null, 1000, 0, 1 + removedSegmentCount, 0,
+        timeline, null,
+        UrlTemplate.compile("$RepresentationID$/$Number$.m4s"), "http://example.com/");
+    List<Representation> representations = new ArrayList<>();
+    representations.add(Representation.newInstance(null, 0, format, segmentBase));
+    return new AdaptationSet(id, type, representations);
+  }
+
+}
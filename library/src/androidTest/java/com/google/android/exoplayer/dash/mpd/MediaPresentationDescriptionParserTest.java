@@ -15,10 +15,15 @@
  */
 package com.google.android.exoplayer.dash.mpd;
 
+import com.google.android.exoplayer.C;
+import com.google.android.exoplayer.dash.DashSegmentIndex;
+
 import android.test.InstrumentationTestCase;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.charset.Charset;
 
 /**
  * Unit tests for {@link MediaPresentationDescriptionParser}.
@@ -35,4 +40,32 @@ public class MediaPresentationDescriptionParserTest extends InstrumentationTestC
     parser.parse("https://example.com/test.mpd", inputStream);
   }
 
+  public void testParseSegmentTimeline() throws IOException {
+    String mpd = "<MPD type=\"dynamic\" availabilityStartTime=\"1970-01-01T00:00:00Z\">"
+        + "<Period start=\"PT0S\"><AdaptationSet mimeType=\"video/mp4\">"
+        + "<SegmentTemplate timescale=\"1000\" media=\"$Time$.m4s\">"
+        + "<SegmentTimeline>"
+        + "<S t=\"1000\" d=\"2000\" r=\"43199\"/>"
+        + "<S d=\"1000\"/>"
+        + "<S t=\"100000000\" d=\"2000\" r=\"1\"/>"
+        + "</SegmentTimeline>"
+        + "</SegmentTemplate>"
+        + "<Representation id=\"1\" bandwidth=\"1000000\" width=\"1280\" height=\"720\"/>"
+        + "</AdaptationSet></Period></MPD>";
+    MediaPresentationDescription manifest = new MediaPresentationDescriptionParser().parse(
+        "https://example.com/test.mpd",
+        new ByteArrayInputStream(mpd.getBytes(Charset.forName(C.UTF8_NAME))));
+
+    DashSegmentIndex index = manifest.getPeriod(0).adaptationSets.get(0).representations.get(0)
+        .getIndex();
+    assertEquals(1, index.getFirstSegmentNum());
+    assertEquals(43203, index.getLastSegmentNum(C.UNKNOWN_TIME_US));
+    assertEquals(1000000, index.getTimeUs(1));
+    assertEquals(86399000000L, index.getTimeUs(43200));
+    assertEquals(86401000000L, index.getTimeUs(43201));
+    assertEquals(1000000, index.getDurationUs(43201, C.UNKNOWN_TIME_US));
+    assertEquals(100002000000L, index.getTimeUs(43203));
+    assertEquals(43201, index.getSegmentNum(86401500000L, C.UNKNOWN_TIME_US));
+  }
+
 }
@@ -0,0 +1,175 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer.dash.mpd;
+
+import com.google.android.exoplayer.C;
+import com.google.android.exoplayer.dash.mpd.SegmentBase.SegmentTemplate;
+import com.google.android.exoplayer.dash.mpd.SegmentBase.SegmentTimeline;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit tests for {@link SegmentBase}.
+ */
+public class SegmentBaseTest extends TestCase {
+
+  // Three runs: 0-3 of duration 10 from time 100, 4 of duration 15, 5-6 of duration 10 after a gap.
+  private static final SegmentTimeline TIMELINE = new SegmentTimeline(
+      new long[] {100, 140, 200}, new long[] {10, 15, 10}, new int[] {4, 1, 2});
+
+  public void testSegmentTimelineLookups() {
+    assertEquals(7, TIMELINE.getSegmentCount());
+    long[] expectedStartTimes = new long[] {100, 110, 120, 130, 140, 200, 210};
+    long[] expectedDurations = new long[] {10, 10, 10, 10, 15, 10, 10};
+    for (int i = 0; i < expectedStartTimes.length; i++) {
+      assertEquals(expectedStartTimes[i], TIMELINE.getStartTime(i));
+      assertEquals(expectedDurations[i], TIMELINE.getDuration(i));
+      assertEquals(i, TIMELINE.getSegmentIndex(expectedStartTimes[i]));
+      assertEquals(i, TIMELINE.getSegmentIndex(expectedStartTimes[i] + 9));
+    }
+    assertEquals(0, TIMELINE.getSegmentIndex(0));
+    // Times in the gap after the run of duration 15 fall in its segment.
+    assertEquals(4, TIMELINE.getSegmentIndex(199));
+    assertEquals(6, TIMELINE.getSegmentIndex(Long.MAX_VALUE / 2));
+  }
+
+  public void testSegmentTimelineIndexOutOfBounds() {
+    try {
+      TIMELINE.getStartTime(7);
+      fail();
+    } catch (IndexOutOfBoundsException e) {
+      // Expected.
+    }
+  }
+
+  public void testSegmentTimelineExtension() {
+    SegmentTimeline timeline = new SegmentTimeline(
+        new long[] {100, 140}, new long[] {10, 15}, new int[] {4, 1});
+    // The last run is lengthened and a further run appended.
+    assertTrue(extend(timeline, new SegmentTimeline(
+        new long[] {100, 140, 200}, new long[] {10, 15, 10}, new int[] {4, 3, 2})));
+    assertEquals(0, timeline.getFirstSegmentIndex());
+    assertEquals(9, timeline.getSegmentCount());
+    assertEquals(170, timeline.getStartTime(6));
+    assertEquals(210, timeline.getStartTime(8));
+    assertEquals(8, timeline.getSegmentIndex(215));
+  }
+
+  public void testSegmentTimelineExtensionWithSegmentsRemovedFromStart() {
+    SegmentTimeline timeline = new SegmentTimeline(
+        new long[] {100, 140}, new long[] {10, 15}, new int[] {4, 1});
+    // The first segment is removed, and two segments added.
+    assertTrue(extend(timeline, new SegmentTimeline(
+        new long[] {110, 140}, new long[] {10, 15}, new int[] {3, 3})));
+    assertEquals(1, timeline.getFirstSegmentIndex());
+    assertEquals(6, timeline.getSegmentCount());
+    assertEquals(110, timeline.getStartTime(1));
+    assertEquals(170, timeline.getStartTime(6));
+    assertEquals(1, timeline.getSegmentIndex(0));
+    assertEquals(6, timeline.getSegmentIndex(175));
+    // The whole of the first run is removed, and a further run appended.
+    assertTrue(extend(timeline, new SegmentTimeline(
+        new long[] {140, 200}, new long[] {15, 10}, new int[] {3, 1})));
+    assertEquals(4, timeline.getFirstSegmentIndex());
+    assertEquals(4, timeline.getSegmentCount());
+    assertEquals(140, timeline.getStartTime(4));
+    assertEquals(200, timeline.getStartTime(7));
+    try {
+      timeline.getStartTime(3);
+      fail();
+    } catch (IndexOutOfBoundsException e) {
+      // Expected.
+    }
+  }
+
+  public void testSegmentTimelineIsNotExtendedByDifferentTimeline() {
+    SegmentTimeline timeline = new SegmentTimeline(
+        new long[] {100, 140}, new long[] {10, 15}, new int[] {4, 1});
+    // A run in the middle changed.
+    assertFalse(extend(timeline, new SegmentTimeline(
+        new long[] {100, 140, 160}, new long[] {10, 15, 10}, new int[] {5, 1, 1})));
+    // No segments added.
+    assertFalse(extend(timeline, new SegmentTimeline(
+        new long[] {100, 140}, new long[] {10, 15}, new int[] {4, 1})));
+    // Segments removed from the start, but none added.
+    assertFalse(extend(timeline, new SegmentTimeline(
+        new long[] {110, 140}, new long[] {10, 15}, new int[] {3, 1})));
+    // Starts part way through a segment.
+    assertFalse(extend(timeline, new SegmentTimeline(
+        new long[] {115, 140}, new long[] {10, 15}, new int[] {2, 2})));
+    // Starts after the end of the timeline.
+    assertFalse(extend(timeline, new SegmentTimeline(
+        new long[] {155}, new long[] {15}, new int[] {2})));
+    // Starts before the start of the timeline.
+    assertFalse(extend(timeline, new SegmentTimeline(
+        new long[] {90, 140}, new long[] {10, 15}, new int[] {5, 2})));
+    assertEquals(0, timeline.getFirstSegmentIndex());
+    assertEquals(5, timeline.getSegmentCount());
+  }
+
+  public void testSegmentTemplateExtensionWithSegmentsRemovedFromStart() {
+    // The start number is advanced as segments are removed.
+    SegmentTemplate segmentBase = buildSlidingSegmentTemplate(5, 100, 4, "$Number$");
+    assertTrue(segmentBase.extendTimeline(buildSlidingSegmentTemplate(7, 120, 4, "$Number$")));
+    assertEquals(7, segmentBase.getFirstSegmentNum());
+    assertEquals(10, segmentBase.getLastSegmentNum(0));
+    assertEquals(120 * C.MICROS_PER_SECOND, segmentBase.getSegmentTimeUs(7));
+    // The start number isn't advanced, so segments can't be addressed by number.
+    assertFalse(segmentBase.extendTimeline(buildSlidingSegmentTemplate(5, 130, 4, "$Number$")));
+    segmentBase = buildSlidingSegmentTemplate(5, 100, 4, "$Time$");
+    assertTrue(segmentBase.extendTimeline(buildSlidingSegmentTemplate(5, 120, 4, "$Time$")));
+    assertEquals(7, segmentBase.getFirstSegmentNum());
+    assertEquals(10, segmentBase.getLastSegmentNum(0));
+  }
+
+  public void testGetSegmentNumWithTimeline() {
+    // A timescale that doesn't divide evenly into microseconds, with a presentation time offset.
+    SegmentTemplate segmentBase = new SegmentTemplate(null, 90000, 9000000, 5, 0,
+        new SegmentTimeline(new long[] {9000000, 9540000}, new long[] {180180, 90090},
+            new int[] {3, 100}),
+        null, UrlTemplate.compile("$Number$"), "http://example.com");
+    int firstSegmentNum = segmentBase.getFirstSegmentNum();
+    int lastSegmentNum = segmentBase.getLastSegmentNum(0);
+    assertEquals(5, firstSegmentNum);
+    assertEquals(107, lastSegmentNum);
+    assertEquals(firstSegmentNum, segmentBase.getSegmentNum(0, 0));
+    for (int segmentNum = firstSegmentNum; segmentNum <= lastSegmentNum; segmentNum++) {
+      long timeUs = segmentBase.getSegmentTimeUs(segmentNum);
+      assertEquals(segmentNum, segmentBase.getSegmentNum(timeUs, 0));
+      assertEquals(segmentNum, segmentBase.getSegmentNum(timeUs + 1, 0));
+      if (segmentNum > firstSegmentNum) {
+        assertEquals(segmentNum - 1, segmentBase.getSegmentNum(timeUs - 1, 0));
+      }
+    }
+  }
+
+  private static boolean extend(SegmentTimeline timeline, SegmentTimeline other) {
+    int firstSegmentIndex = timeline.getExtensionStartIndex(other);
+    if (firstSegmentIndex == -1) {
+      return false;
+    }
+    timeline.extend(other, firstSegmentIndex);
+    return true;
+  }
+
+  private static SegmentTemplate buildSlidingSegmentTemplate(int startNumber, long startTime,
+      int segmentCount, String mediaTemplate) {
+    return new SegmentTemplate(null, 1, 0, startNumber, 0,
+        new SegmentTimeline(new long[] {startTime}, new long[] {10}, new int[] {segmentCount}),
+        null, UrlTemplate.compile(mediaTemplate), "http://example.com");
+  }
+
+}
@@ -0,0 +1,235 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer.drm;
+
+import com.google.android.exoplayer.drm.DrmInitData.SchemeInitData;
+import com.google.android.exoplayer.util.Clock;
+import com.google.android.exoplayer.util.MimeTypes;
+
+import android.media.MediaCrypto;
+
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Unit tests for {@link PooledDrmSessionManager}.
+ */
+public class PooledDrmSessionManagerTest extends TestCase {
+
+  private static final int MAX_IDLE_SESSIONS = 2;
+  private static final long SESSION_TIME_TO_LIVE_MS = 60000;
+
+  private static final DrmInitData INIT_DATA_1 = buildDrmInitData(1);
+  private static final DrmInitData INIT_DATA_2 = buildDrmInitData(2);
+  private static final DrmInitData INIT_DATA_3 = buildDrmInitData(3);
+
+  private ManualClock clock;
+  private FakeSessionFactory sessionFactory;
+  private PooledDrmSessionManager manager;
+
+  @Override
+  protected void setUp() {
+    clock = new ManualClock();
+    sessionFactory = new FakeSessionFactory();
+    manager = new PooledDrmSessionManager(StreamingDrmSessionManager.WIDEVINE_UUID,
+        sessionFactory, MAX_IDLE_SESSIONS, SESSION_TIME_TO_LIVE_MS, clock, null, null);
+  }
+
+  public void testPreloadedSessionIsUsed() {
+    assertTrue(manager.preload(INIT_DATA_1));
+    assertEquals(1, sessionFactory.sessions.size());
+    FakeSession session = sessionFactory.sessions.get(0);
+    assertEquals(DrmSessionManager.STATE_OPENED, session.getState());
+    session.loadKeys();
+
+    manager.open(INIT_DATA_1);
+    assertEquals(1, sessionFactory.sessions.size());
+    assertEquals(DrmSessionManager.STATE_OPENED_WITH_KEYS, manager.getState());
+    assertEquals(0, manager.getIdleSessionCount());
+  }
+
+  public void testOtherInitDataOpensNewSession() {
+    manager.preload(INIT_DATA_1);
+    manager.open(INIT_DATA_2);
+    assertEquals(2, sessionFactory.sessions.size());
+    assertEquals(DrmSessionManager.STATE_OPENED, manager.getState());
+    assertEquals(1, manager.getIdleSessionCount());
+  }
+
+  public void testClosedSessionWithKeysIsReused() {
+    manager.open(INIT_DATA_1);
+    manager.open(INIT_DATA_1);
+    FakeSession session = sessionFactory.sessions.get(0);
+    session.loadKeys();
+
+    // The session is shared by each renderer, and is only released when all have closed it.
+    manager.close();
+    assertEquals(DrmSessionManager.STATE_OPENED_WITH_KEYS, manager.getState());
+    manager.close();
+    assertEquals(DrmSessionManager.STATE_CLOSED, manager.getState());
+    assertEquals(DrmSessionManager.STATE_OPENED_WITH_KEYS, session.getState());
+
+    manager.open(INIT_DATA_1);
+    assertEquals(1, sessionFactory.sessions.size());
+    assertEquals(DrmSessionManager.STATE_OPENED_WITH_KEYS, manager.getState());
+  }
+
+  public void testClosedSessionWithoutKeysIsClosed() {
+    manager.open(INIT_DATA_1);
+    manager.close();
+    assertEquals(DrmSessionManager.STATE_CLOSED, sessionFactory.sessions.get(0).getState());
+    assertEquals(0, manager.getIdleSessionCount());
+  }
+
+  public void testLeastRecentlyUsedSessionIsEvicted() {
+    manager.preload(INIT_DATA_1);
+    manager.preload(INIT_DATA_2);
+    // Preloading a session again makes it the most recently used.
+    manager.preload(INIT_DATA_1);
+    manager.preload(INIT_DATA_3);
+    assertEquals(3, sessionFactory.sessions.size());
+    assertEquals(MAX_IDLE_SESSIONS, manager.getIdleSessionCount());
+    assertEquals(DrmSessionManager.STATE_OPENED, sessionFactory.sessions.get(0).getState());
+    assertEquals(DrmSessionManager.STATE_CLOSED, sessionFactory.sessions.get(1).getState());
+  }
+
+  public void testExpiredSessionIsNotUsed() {
+    manager.preload(INIT_DATA_1);
+    FakeSession session = sessionFactory.sessions.get(0);
+    session.loadKeys();
+
+    clock.timeMs += SESSION_TIME_TO_LIVE_MS + 1;
+    manager.open(INIT_DATA_1);
+    assertEquals(2, sessionFactory.sessions.size());
+    assertEquals(DrmSessionManager.STATE_CLOSED, session.getState());
+  }
+
+  public void testFailedSessionIsNotUsed() {
+    manager.preload(INIT_DATA_1);
+    FakeSession session = sessionFactory.sessions.get(0);
+    session.fail(new KeysExpiredException());
+    assertEquals(0, manager.getIdleSessionCount());
+    assertEquals(DrmSessionManager.STATE_CLOSED, session.getState());
+
+    manager.open(INIT_DATA_1);
+    assertEquals(2, sessionFactory.sessions.size());
+  }
+
+  public void testReleaseClosesIdleSessions() {
+    manager.preload(INIT_DATA_1);
+    manager.open(INIT_DATA_2);
+    sessionFactory.sessions.get(1).loadKeys();
+    manager.release();
+    assertEquals(DrmSessionManager.STATE_CLOSED, sessionFactory.sessions.get(0).getState());
+
+    // The session in use is closed rather than returned to the pool.
+    manager.close();
+    assertEquals(DrmSessionManager.STATE_CLOSED, sessionFactory.sessions.get(1).getState());
+    assertEquals(0, manager.getIdleSessionCount());
+  }
+
+  private static DrmInitData buildDrmInitData(int id) {
+    return new DrmInitData.Universal(new SchemeInitData(MimeTypes.VIDEO_MP4, new byte[] {
+        (byte) id}));
+  }
+
+  private static final class FakeSessionFactory implements PooledDrmSessionManager.SessionFactory {
+
+    public final List<FakeSession> sessions = new ArrayList<>();
+
+    @Override
+    public DrmSessionManager createSession(StreamingDrmSessionManager.EventListener listener) {
+      FakeSession session = new FakeSession(listener);
+      sessions.add(session);
+      return session;
+    }
+
+  }
+
+  /**
+   * A session that obtains keys and fails when instructed.
+   */
+  private static final class FakeSession implements DrmSessionManager {
+
+    private final StreamingDrmSessionManager.EventListener listener;
+
+    private int state;
+    private Exception error;
+
+    public FakeSession(StreamingDrmSessionManager.EventListener listener) {
+      this.listener = listener;
+      state = STATE_CLOSED;
+    }
+
+    public void loadKeys() {
+      state = STATE_OPENED_WITH_KEYS;
+      listener.onDrmKeysLoaded();
+    }
+
+    public void fail(Exception e) {
+      state = STATE_ERROR;
+      error = e;
+      listener.onDrmSessionManagerError(e);
+    }
+
+    @Override
+    public void open(DrmInitData drmInitData) {
+      assertEquals(STATE_CLOSED, state);
+      state = STATE_OPENED;
+    }
+
+    @Override
+    public void close() {
+      assertTrue(state != STATE_CLOSED);
+      state = STATE_CLOSED;
+    }
+
+    @Override
+    public int getState() {
+      return state;
+    }
+
+    @Override
+    public MediaCrypto getMediaCrypto() {
+      return null;
+    }
+
+    @Override
+    public boolean requiresSecureDecoderComponent(String mimeType) {
+      return false;
+    }
+
+    @Override
+    public Exception getError() {
+      return error;
+    }
+
+  }
+
+  private static final class ManualClock implements Clock {
+
+    public long timeMs;
+
+    @Override
+    public long elapsedRealtime() {
+      return timeMs;
+    }
+
+  }
+
+}
@@ -385,6 +385,25 @@ public class DefaultExtractorInputTest extends TestCase {
     }
   }
 
+  public void testPeekFullyAcrossEndOfInputRetainsPeekedData()
+      throws IOException, InterruptedException {
+    DefaultExtractorInput input = createDefaultExtractorInput();
+    byte[] target = new byte[TEST_DATA.length + 1];
+
+    // Check peeking past the end of input with allowEndOfInput throws.
+    try {
+      input.peekFully(target, 0, TEST_DATA.length + 1, true);
+      fail();
+    } catch (EOFException e) {
+      // Expected.
+    }
+    // Check the data peeked before the end of input is still read correctly.
+    input.resetPeekPosition();
+    assertTrue(input.readFully(target, 0, TEST_DATA.length, true));
+    assertTrue(Arrays.equals(TEST_DATA, Arrays.copyOf(target, TEST_DATA.length)));
+    assertFalse(input.readFully(target, 0, 1, true));
+  }
+
   private static FakeDataSource buildDataSource() throws IOException {
     FakeDataSource.Builder builder = new FakeDataSource.Builder();
     builder.appendReadData(Arrays.copyOfRange(TEST_DATA, 0, 3));
@@ -0,0 +1,195 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer.extractor;
+
+import com.google.android.exoplayer.drm.DrmInitData;
+import com.google.android.exoplayer.extractor.ExtractorSampleSource.ExtractorHolder;
+import com.google.android.exoplayer.extractor.ts.TsExtractor;
+import com.google.android.exoplayer.extractor.webm.WebmExtractor;
+import com.google.android.exoplayer.testutil.FakeExtractorInput;
+import com.google.android.exoplayer.util.Util;
+
+import android.net.Uri;
+
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Tests for {@link ExtractorHolder}.
+ */
+public class ExtractorHolderTest extends TestCase {
+
+  // Each test uses its own URIs, since the extractor selected for a URI is remembered statically.
+  private static final Uri TS_URI = Uri.parse("http://example.com/ts");
+  private static final Uri CACHED_URI = Uri.parse("http://example.com/cached");
+  private static final Uri WEBM_URI = Uri.parse("http://example.com/webm");
+  private static final Uri UNRECOGNIZED_URI = Uri.parse("http://example.com/unrecognized");
+
+  private ExtractorOutput extractorOutput;
+
+  @Override
+  protected void setUp() {
+    RejectingExtractor.instanceCount = 0;
+    AcceptingExtractor.instanceCount = 0;
+    extractorOutput = new NoOpExtractorOutput();
+  }
+
+  public void testSignatureCandidateIsSniffedFirst() throws Exception {
+    ExtractorHolder holder = new ExtractorHolder(TS_URI,
+        buildExtractorClasses(AcceptingExtractor.class, TsExtractor.class), extractorOutput);
+    Extractor extractor = holder.selectExtractor(buildInput(buildTsData()));
+    assertTrue(extractor instanceof TsExtractor);
+    // Extractors that don't need to sniff the stream aren't instantiated.
+    assertEquals(0, AcceptingExtractor.instanceCount);
+  }
+
+  public void testSelectedExtractorIsRememberedForUri() throws Exception {
+    byte[] data = new byte[FormatSniffer.PREFIX_LENGTH];
+    List<Class<? extends Extractor>> extractorClasses =
+        buildExtractorClasses(RejectingExtractor.class, AcceptingExtractor.class);
+    ExtractorHolder holder = new ExtractorHolder(CACHED_URI, extractorClasses, extractorOutput);
+    assertTrue(holder.selectExtractor(buildInput(data)) instanceof AcceptingExtractor);
+    assertEquals(1, RejectingExtractor.instanceCount);
+    // A later holder for the same URI tries the remembered extractor first.
+    holder = new ExtractorHolder(CACHED_URI, extractorClasses, extractorOutput);
+    assertTrue(holder.selectExtractor(buildInput(data)) instanceof AcceptingExtractor);
+    assertEquals(1, RejectingExtractor.instanceCount);
+    assertEquals(2, AcceptingExtractor.instanceCount);
+  }
+
+  public void testFallbackWhenSignatureCandidateRejectsStream() throws Exception {
+    // The stream starts with an EBML header ID, but isn't a WebM stream.
+    byte[] data = Arrays.copyOf(Util.getBytesFromHexString("1a45dfa3"),
+        FormatSniffer.PREFIX_LENGTH);
+    ExtractorHolder holder = new ExtractorHolder(WEBM_URI,
+        buildExtractorClasses(WebmExtractor.class, RejectingExtractor.class,
+            AcceptingExtractor.class), extractorOutput);
+    assertTrue(holder.selectExtractor(buildInput(data)) instanceof AcceptingExtractor);
+    assertEquals(1, RejectingExtractor.instanceCount);
+  }
+
+  public void testUnrecognizedInput() throws Exception {
+    ExtractorHolder holder = new ExtractorHolder(UNRECOGNIZED_URI,
+        buildExtractorClasses(RejectingExtractor.class), extractorOutput);
+    try {
+      holder.selectExtractor(buildInput(new byte[FormatSniffer.PREFIX_LENGTH]));
+      fail();
+    } catch (ExtractorSampleSource.UnrecognizedInputFormatException e) {
+      // Expected.
+    }
+  }
+
+  @SafeVarargs
+  private static List<Class<? extends Extractor>> buildExtractorClasses(
+      Class<? extends Extractor>... extractorClasses) {
+    return new ArrayList<>(Arrays.asList(extractorClasses));
+  }
+
+  private static byte[] buildTsData() {
+    byte[] data = new byte[188 * 5];
+    for (int i = 0; i < data.length; i += 188) {
+      data[i] = 0x47;
+    }
+    return data;
+  }
+
+  private static ExtractorInput buildInput(byte[] data) {
+    return new FakeExtractorInput.Builder().setData(data).build();
+  }
+
+  /**
+   * An extractor that never recognizes the input, and counts its instances.
+   */
+  public static final class RejectingExtractor extends FakeExtractor {
+
+    public static int instanceCount;
+
+    public RejectingExtractor() {
+      instanceCount++;
+    }
+
+    @Override
+    public boolean sniff(ExtractorInput input) {
+      return false;
+    }
+
+  }
+
+  /**
+   * An extractor that always recognizes the input, and counts its instances.
+   */
+  public static final class AcceptingExtractor extends FakeExtractor {
+
+    public static int instanceCount;
+
+    public AcceptingExtractor() {
+      instanceCount++;
+    }
+
+    @Override
+    public boolean sniff(ExtractorInput input) {
+      return true;
+    }
+
+  }
+
+  private abstract static class FakeExtractor implements Extractor {
+
+    @Override
+    public void init(ExtractorOutput output) {
+      // Do nothing.
+    }
+
+    @Override
+    public int read(ExtractorInput input, PositionHolder seekPosition) {
+      return RESULT_END_OF_INPUT;
+    }
+
+    @Override
+    public void seek() {
+      // Do nothing.
+    }
+
+  }
+
+  private static final class NoOpExtractorOutput implements ExtractorOutput {
+
+    @Override
+    public TrackOutput track(int trackId) {
+      return new DummyTrackOutput();
+    }
+
+    @Override
+    public void endTracks() {
+      // Do nothing.
+    }
+
+    @Override
+    public void seekMap(SeekMap seekMap) {
+      // Do nothing.
+    }
+
+    @Override
+    public void drmInitData(DrmInitData drmInitData) {
+      // Do nothing.
+    }
+
+  }
+
+}
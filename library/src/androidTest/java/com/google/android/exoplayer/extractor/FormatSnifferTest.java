@@ -0,0 +1,124 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer.extractor;
+
+import com.google.android.exoplayer.extractor.flv.FlvExtractor;
+import com.google.android.exoplayer.extractor.mp3.Mp3Extractor;
+import com.google.android.exoplayer.extractor.mp4.FragmentedMp4Extractor;
+import com.google.android.exoplayer.extractor.mp4.Mp4Extractor;
+import com.google.android.exoplayer.extractor.ts.AdtsExtractor;
+import com.google.android.exoplayer.extractor.ts.PsExtractor;
+import com.google.android.exoplayer.extractor.ts.TsExtractor;
+import com.google.android.exoplayer.extractor.webm.WebmExtractor;
+import com.google.android.exoplayer.testutil.FakeExtractorInput;
+import com.google.android.exoplayer.util.Util;
+
+import junit.framework.TestCase;
+
+import java.util.Arrays;
+
+/**
+ * Tests for {@link FormatSniffer}.
+ */
+public class FormatSnifferTest extends TestCase {
+
+  public void testWebm() {
+    assertCandidates("1a45dfa3", WebmExtractor.class);
+  }
+
+  public void testMp4() {
+    assertCandidates("0000001c66747970", FragmentedMp4Extractor.class, Mp4Extractor.class);
+    assertCandidates("000000086d6f6f76", FragmentedMp4Extractor.class, Mp4Extractor.class);
+  }
+
+  public void testId3Tag() {
+    assertCandidates("4944330400", Mp3Extractor.class, AdtsExtractor.class);
+  }
+
+  public void testMpegAudio() {
+    assertCandidates("fffb9064", Mp3Extractor.class);
+    assertCandidates("fff15080", AdtsExtractor.class);
+  }
+
+  public void testFlv() {
+    assertCandidates("464c5601", FlvExtractor.class);
+  }
+
+  public void testPs() {
+    assertCandidates("000001ba44", PsExtractor.class);
+  }
+
+  public void testTs() {
+    byte[] prefix = new byte[FormatSniffer.PREFIX_LENGTH];
+    for (int i = 0; i < prefix.length; i += 188) {
+      prefix[i] = 0x47;
+    }
+    assertCandidates(prefix, TsExtractor.class);
+    // A single missing sync byte rules out TS.
+    prefix[188 * 4] = 0;
+    assertNull(FormatSniffer.getCandidateExtractorClassNames(prefix));
+  }
+
+  public void testSniffShortestTs() throws Exception {
+    // Five packets, as checked by TsExtractor.
+    byte[] data = new byte[188 * 5];
+    for (int i = 0; i < data.length; i += 188) {
+      data[i] = 0x47;
+    }
+    FakeExtractorInput input = new FakeExtractorInput.Builder().setData(data).build();
+    String[] candidates = new FormatSniffer().sniff(input);
+    assertTrue(Arrays.equals(new String[] {TsExtractor.class.getName()}, candidates));
+    assertTrue(new TsExtractor().sniff(new FakeExtractorInput.Builder().setData(data).build()));
+  }
+
+  public void testUnrecognizedFormat() {
+    assertNull(FormatSniffer.getCandidateExtractorClassNames(buildPrefix("0123456789abcdef")));
+  }
+
+  public void testShortInputIsUnrecognized() throws Exception {
+    byte[] data = Util.getBytesFromHexString("1a45dfa3");
+    FakeExtractorInput input = new FakeExtractorInput.Builder().setData(data).build();
+    assertNull(new FormatSniffer().sniff(input));
+  }
+
+  public void testSniffPeeksPrefix() throws Exception {
+    byte[] data = Arrays.copyOf(Util.getBytesFromHexString("1a45dfa3"),
+        FormatSniffer.PREFIX_LENGTH * 2);
+    FakeExtractorInput input = new FakeExtractorInput.Builder().setData(data).build();
+    String[] candidates = new FormatSniffer().sniff(input);
+    assertTrue(Arrays.equals(new String[] {WebmExtractor.class.getName()}, candidates));
+    assertEquals(0, input.getPosition());
+    assertEquals(FormatSniffer.PREFIX_LENGTH, input.getPeekPosition());
+  }
+
+  private static void assertCandidates(String prefixHex, Class<?>... expectedClasses) {
+    assertCandidates(buildPrefix(prefixHex), expectedClasses);
+  }
+
+  private static void assertCandidates(byte[] prefix, Class<?>... expectedClasses) {
+    String[] expectedClassNames = new String[expectedClasses.length];
+    for (int i = 0; i < expectedClasses.length; i++) {
+      expectedClassNames[i] = expectedClasses[i].getName();
+    }
+    String[] candidates = FormatSniffer.getCandidateExtractorClassNames(prefix);
+    assertTrue(Arrays.toString(candidates), Arrays.equals(expectedClassNames, candidates));
+  }
+
+  private static byte[] buildPrefix(String hexString) {
+    return Arrays.copyOf(Util.getBytesFromHexString(hexString), FormatSniffer.PREFIX_LENGTH);
+  }
+
+}
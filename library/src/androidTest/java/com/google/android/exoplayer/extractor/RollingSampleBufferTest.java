@@ -0,0 +1,282 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer.extractor;
+
+import com.google.android.exoplayer.C;
+import com.google.android.exoplayer.SampleHolder;
+import com.google.android.exoplayer.testutil.FakeExtractorInput;
+import com.google.android.exoplayer.testutil.TestUtil;
+import com.google.android.exoplayer.upstream.Allocator;
+import com.google.android.exoplayer.upstream.DefaultAllocator;
+import com.google.android.exoplayer.upstream.SlabAllocator;
+import com.google.android.exoplayer.util.ParsableByteArray;
+
+import junit.framework.TestCase;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Unit tests for {@link RollingSampleBuffer}.
+ */
+public class RollingSampleBufferTest extends TestCase {
+
+  private static final int ALLOCATION_LENGTH = 16;
+  private static final int WARM_UP_SAMPLE_COUNT = 3;
+
+  public void testReadSamplesFromHeapAllocations() throws Exception {
+    assertSamplesRoundTrip(new DefaultAllocator(ALLOCATION_LENGTH));
+  }
+
+  public void testReadSamplesFromDirectAllocations() throws Exception {
+    assertSamplesRoundTrip(new SlabAllocator(4 * ALLOCATION_LENGTH,
+        new int[] {ALLOCATION_LENGTH}, 0, true));
+  }
+
+  public void testDiscardUpstreamSamplesFromDirectAllocations() throws Exception {
+    Allocator allocator = new SlabAllocator(4 * ALLOCATION_LENGTH,
+        new int[] {ALLOCATION_LENGTH}, 0, true);
+    RollingSampleBuffer buffer = new RollingSampleBuffer(allocator);
+    byte[] first = TestUtil.buildTestData(20, 1);
+    byte[] second = TestUtil.buildTestData(30, 2);
+    byte[] third = TestUtil.buildTestData(5, 3);
+    buffer.appendData(new ParsableByteArray(first), first.length);
+    buffer.commitSample(0, C.SAMPLE_FLAG_SYNC, 0, first.length, null);
+    buffer.appendData(new ParsableByteArray(second), second.length);
+    buffer.commitSample(1, C.SAMPLE_FLAG_SYNC, first.length, second.length, null);
+
+    buffer.discardUpstreamSamples(1);
+    buffer.appendData(new ParsableByteArray(third), third.length);
+    buffer.commitSample(2, C.SAMPLE_FLAG_SYNC, first.length, third.length, null);
+
+    assertNextSample(buffer, first);
+    assertNextSample(buffer, third);
+  }
+
+  public void testSteadyStateReadsReuseHolder() {
+    RollingSampleBuffer buffer = new RollingSampleBuffer(new SlabAllocator(4 * ALLOCATION_LENGTH,
+        new int[] {ALLOCATION_LENGTH}, 0, true));
+    SampleHolder holder = new SampleHolder(SampleHolder.BUFFER_REPLACEMENT_MODE_DIRECT);
+    long position = 0;
+    ByteBuffer data = null;
+    for (int i = 0; i < 20; i++) {
+      byte[] sample = TestUtil.buildTestData(20 + i % 3, i);
+      buffer.appendData(new ParsableByteArray(sample), sample.length);
+      buffer.commitSample(i, C.SAMPLE_FLAG_SYNC, position, sample.length, null);
+      position += sample.length;
+      holder.clearData();
+      assertTrue(buffer.readSample(holder));
+      assertHolderData(sample, holder);
+      if (i > WARM_UP_SAMPLE_COUNT) {
+        // The holder settles on buffers that are large enough for all subsequent samples.
+        assertSame(data, holder.data);
+      }
+      data = holder.data;
+    }
+  }
+
+  public void testSteadyStateEncryptedReadsReuseHolder() {
+    RollingSampleBuffer buffer = new RollingSampleBuffer(new SlabAllocator(4 * ALLOCATION_LENGTH,
+        new int[] {ALLOCATION_LENGTH}, 0, true));
+    SampleHolder holder = new SampleHolder(SampleHolder.BUFFER_REPLACEMENT_MODE_DIRECT);
+    byte[] key = TestUtil.buildTestData(16);
+    long position = 0;
+    ByteBuffer data = null;
+    byte[] iv = null;
+    int[] clearDataSizes = null;
+    int[] encryptedDataSizes = null;
+    for (int i = 0; i < 20; i++) {
+      byte[] sample = TestUtil.buildTestData(20 + i % 3, i);
+      position += appendEncryptedSample(buffer, i, position, TestUtil.buildTestData(16, i), 4,
+          sample, key);
+      holder.clearData();
+      assertTrue(buffer.readSample(holder));
+      assertHolderData(sample, holder);
+      assertEquals(4, holder.cryptoInfo.numBytesOfClearData[0]);
+      assertEquals(sample.length - 4, holder.cryptoInfo.numBytesOfEncryptedData[0]);
+      assertSame(key, holder.cryptoInfo.key);
+      if (i > WARM_UP_SAMPLE_COUNT) {
+        // The holder settles on buffers that are large enough for all subsequent samples.
+        assertSame(data, holder.data);
+        assertSame(iv, holder.cryptoInfo.iv);
+        assertSame(clearDataSizes, holder.cryptoInfo.numBytesOfClearData);
+        assertSame(encryptedDataSizes, holder.cryptoInfo.numBytesOfEncryptedData);
+      }
+      data = holder.data;
+      iv = holder.cryptoInfo.iv;
+      clearDataSizes = holder.cryptoInfo.numBytesOfClearData;
+      encryptedDataSizes = holder.cryptoInfo.numBytesOfEncryptedData;
+    }
+  }
+
+  public void testShortInitializationVectorIsZeroPadded() {
+    RollingSampleBuffer buffer = new RollingSampleBuffer(new DefaultAllocator(ALLOCATION_LENGTH));
+    SampleHolder holder = new SampleHolder(SampleHolder.BUFFER_REPLACEMENT_MODE_NORMAL);
+    byte[] key = TestUtil.buildTestData(16);
+    byte[] sample = TestUtil.buildTestData(10);
+    byte[] longIv = TestUtil.buildTestData(16, 1);
+    byte[] shortIv = TestUtil.buildTestData(8, 2);
+    long position = appendEncryptedSample(buffer, 0, 0, longIv, 0, sample, key);
+    appendEncryptedSample(buffer, 1, position, shortIv, 0, sample, key);
+
+    assertTrue(buffer.readSample(holder));
+    assertTrue(Arrays.equals(longIv, holder.cryptoInfo.iv));
+    holder.clearData();
+    assertTrue(buffer.readSample(holder));
+    assertTrue(Arrays.equals(Arrays.copyOf(shortIv, 16), holder.cryptoInfo.iv));
+  }
+
+  public void testCommitSamplesBeyondInitialCapacity() {
+    RollingSampleBuffer buffer = new RollingSampleBuffer(new DefaultAllocator(ALLOCATION_LENGTH));
+    SampleHolder holder = new SampleHolder(SampleHolder.BUFFER_REPLACEMENT_MODE_NORMAL);
+    // Read some samples part way through, so that the unread samples wrap around the queue when
+    // its capacity is increased.
+    for (int i = 0; i < 1500; i++) {
+      appendSample(buffer, i, i, i % 10 == 0);
+    }
+    for (int i = 0; i < 1000; i++) {
+      assertNextSampleTime(buffer, holder, i);
+    }
+    for (int i = 1500; i < 5000; i++) {
+      appendSample(buffer, i, i, i % 10 == 0);
+    }
+    for (int i = 1000; i < 5000; i++) {
+      assertNextSampleTime(buffer, holder, i);
+    }
+    assertFalse(buffer.readSample(holder));
+  }
+
+  public void testSkipToKeyframeBefore() {
+    RollingSampleBuffer buffer = new RollingSampleBuffer(new DefaultAllocator(ALLOCATION_LENGTH));
+    SampleHolder holder = new SampleHolder(SampleHolder.BUFFER_REPLACEMENT_MODE_NORMAL);
+    for (int i = 0; i < 100; i++) {
+      appendSample(buffer, i, i * 1000, i % 10 == 0);
+    }
+    assertFalse(buffer.skipToKeyframeBefore(100000));
+    assertTrue(buffer.skipToKeyframeBefore(45500));
+    assertEquals(40, buffer.getReadIndex());
+    assertNextSampleTime(buffer, holder, 40000);
+    // The keyframe before the seek time has been read.
+    assertFalse(buffer.skipToKeyframeBefore(40500));
+    assertTrue(buffer.skipToKeyframeBefore(99000));
+    assertEquals(90, buffer.getReadIndex());
+  }
+
+  public void testConcurrentCommitAndRead() throws InterruptedException {
+    final RollingSampleBuffer buffer = new RollingSampleBuffer(
+        new DefaultAllocator(ALLOCATION_LENGTH));
+    final int sampleCount = 20000;
+    Thread loadingThread = new Thread() {
+      @Override
+      public void run() {
+        for (int i = 0; i < sampleCount; i++) {
+          appendSample(buffer, i, i, i % 10 == 0);
+        }
+      }
+    };
+    loadingThread.start();
+    SampleHolder holder = new SampleHolder(SampleHolder.BUFFER_REPLACEMENT_MODE_NORMAL);
+    for (int i = 0; i < sampleCount; i++) {
+      holder.clearData();
+      while (!buffer.readSample(holder)) {
+        Thread.yield();
+      }
+      assertEquals(i, holder.timeUs);
+      assertEquals(i % 10 == 0, holder.isSyncFrame());
+      assertEquals((byte) i, holder.data.get(0));
+    }
+    loadingThread.join();
+    assertFalse(buffer.readSample(holder));
+  }
+
+  private static void assertSamplesRoundTrip(Allocator allocator) throws Exception {
+    RollingSampleBuffer buffer = new RollingSampleBuffer(allocator);
+    byte[] first = TestUtil.buildTestData(10, 1);
+    byte[] second = TestUtil.buildTestData(40, 2);
+    byte[] third = TestUtil.buildTestData(7, 3);
+    buffer.appendData(new ParsableByteArray(first), first.length);
+    buffer.commitSample(0, C.SAMPLE_FLAG_SYNC, 0, first.length, null);
+    FakeExtractorInput input = new FakeExtractorInput.Builder().setData(second).build();
+    int bytesAppended = 0;
+    while (bytesAppended < second.length) {
+      bytesAppended += buffer.appendData(input, second.length - bytesAppended, false);
+    }
+    buffer.commitSample(1, 0, first.length, second.length, null);
+    buffer.appendData(new ParsableByteArray(third), third.length);
+    buffer.commitSample(2, 0, first.length + second.length, third.length, null);
+
+    assertNextSample(buffer, first);
+    assertNextSample(buffer, second);
+    assertNextSample(buffer, third);
+    buffer.clear();
+    assertEquals(0, allocator.getTotalBytesAllocated());
+  }
+
+  /**
+   * Appends and commits a single byte sample, whose value is the least significant byte of its
+   * index.
+   */
+  private static void appendSample(RollingSampleBuffer buffer, int index, long timeUs,
+      boolean keyframe) {
+    buffer.appendData(new ParsableByteArray(new byte[] {(byte) index}), 1);
+    buffer.commitSample(timeUs, keyframe ? C.SAMPLE_FLAG_SYNC : 0, index, 1, null);
+  }
+
+  private static void assertNextSampleTime(RollingSampleBuffer buffer, SampleHolder holder,
+      long timeUs) {
+    holder.clearData();
+    assertTrue(buffer.readSample(holder));
+    assertEquals(timeUs, holder.timeUs);
+  }
+
+  /**
+   * Appends and commits an encrypted sample with a single subsample.
+   *
+   * @return The number of bytes appended.
+   */
+  private static int appendEncryptedSample(RollingSampleBuffer buffer, long timeUs,
+      long position, byte[] iv, int clearDataSize, byte[] data, byte[] key) {
+    ParsableByteArray sample = new ParsableByteArray(1 + iv.length + 8 + data.length);
+    sample.data[0] = (byte) (0x80 | iv.length);
+    System.arraycopy(iv, 0, sample.data, 1, iv.length);
+    int offset = 1 + iv.length;
+    // A subsample count of one, followed by the clear and encrypted sizes of the subsample.
+    sample.data[offset + 1] = 1;
+    sample.data[offset + 3] = (byte) clearDataSize;
+    sample.data[offset + 7] = (byte) (data.length - clearDataSize);
+    System.arraycopy(data, 0, sample.data, offset + 8, data.length);
+    buffer.appendData(sample, sample.limit());
+    buffer.commitSample(timeUs, C.SAMPLE_FLAG_SYNC | C.SAMPLE_FLAG_ENCRYPTED, position,
+        sample.limit(), key);
+    return sample.limit();
+  }
+
+  private static void assertNextSample(RollingSampleBuffer buffer, byte[] expectedData) {
+    SampleHolder holder = new SampleHolder(SampleHolder.BUFFER_REPLACEMENT_MODE_DIRECT);
+    assertTrue(buffer.readSample(holder));
+    assertHolderData(expectedData, holder);
+  }
+
+  private static void assertHolderData(byte[] expectedData, SampleHolder holder) {
+    assertEquals(expectedData.length, holder.size);
+    ByteBuffer data = holder.data;
+    data.flip();
+    byte[] actualData = new byte[data.remaining()];
+    data.get(actualData);
+    assertTrue(Arrays.equals(expectedData, actualData));
+  }
+
+}
@@ -0,0 +1,289 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer.extractor.ts;
+
+import com.google.android.exoplayer.C;
+import com.google.android.exoplayer.extractor.Extractor;
+import com.google.android.exoplayer.extractor.KeyframeIndex;
+import com.google.android.exoplayer.extractor.PositionHolder;
+import com.google.android.exoplayer.testutil.FakeDataSource;
+import com.google.android.exoplayer.testutil.FakeExtractorInput;
+import com.google.android.exoplayer.testutil.FakeExtractorOutput;
+import com.google.android.exoplayer.testutil.FakeTrackOutput;
+import com.google.android.exoplayer.testutil.TestUtil;
+import com.google.android.exoplayer.upstream.ByteArrayDataSource;
+import com.google.android.exoplayer.upstream.DataSource;
+import com.google.android.exoplayer.upstream.cache.NoOpCacheEvictor;
+import com.google.android.exoplayer.upstream.cache.SimpleCache;
+
+import android.net.Uri;
+
+import junit.framework.TestCase;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+
+/**
+ * Unit tests for {@link KeyframeIndexer}.
+ */
+public class KeyframeIndexerTest extends TestCase {
+
+  private static final Uri URI = Uri.parse("http://example.com/stream");
+  private static final String CACHE_KEY = "stream";
+
+  private static final int FRAME_COUNT = 100;
+  private static final int FRAME_CONTENT_LENGTH = 7;
+  private static final int FRAME_LENGTH = 7 + FRAME_CONTENT_LENGTH;
+  private static final long FRAME_DURATION_US = 1024 * C.MICROS_PER_SECOND / 44100;
+  private static final int TS_PACKET_SIZE = 188;
+  private static final int TS_STREAM_TYPE_AAC = 0x0F;
+  private static final int PMT_PID = 0x100;
+  private static final int AAC_PID = 0x102;
+  private static final long FIRST_PTS = 900000; // 10s.
+  private static final long PTS_STEP = 2090; // The nearest 90kHz value to FRAME_DURATION_US.
+
+  // Entries are at least half a second apart, so every 22nd frame is indexed.
+  private static final int SEEK_FRAME = 44;
+  private static final long SEEK_TIME_US = 1100000;
+
+  private File cacheDir;
+
+  @Override
+  protected void setUp() throws Exception {
+    cacheDir = File.createTempFile("KeyframeIndexerTest", "");
+    assertTrue(cacheDir.delete());
+    assertTrue(cacheDir.mkdir());
+  }
+
+  @Override
+  protected void tearDown() {
+    File[] files = cacheDir.listFiles();
+    if (files != null) {
+      for (File file : files) {
+        file.delete();
+      }
+    }
+    cacheDir.delete();
+  }
+
+  public void testAdtsIndex() throws Exception {
+    byte[] id3Tag = TsExtractorTest.buildId3Sample(20);
+    KeyframeIndex index = buildIndex(TestUtil.joinByteArrays(id3Tag, buildAdtsStream()));
+
+    assertTrue(index.isSeekable());
+    assertEquals(4, index.getKeyframeCount());
+    assertEquals(FRAME_COUNT * FRAME_DURATION_US, index.getDurationUs());
+    // Seeking before the first entry starts from the beginning of the stream.
+    assertEquals(0, index.getPosition(100000));
+    long position = id3Tag.length + SEEK_FRAME * FRAME_LENGTH;
+    assertEquals(position, index.getPosition(SEEK_TIME_US));
+    assertEquals(SEEK_FRAME * FRAME_DURATION_US, index.getTimeUs(position));
+  }
+
+  public void testAdtsExtractorResumesAtIndexedPosition() throws Exception {
+    byte[] data = buildAdtsStream();
+    KeyframeIndex index = buildIndex(data);
+    AdtsExtractor extractor = new AdtsExtractor(index);
+    FakeExtractorOutput output = new FakeExtractorOutput();
+    extractor.init(output);
+    assertSame(index, output.seekMap);
+
+    FakeExtractorInput input = new FakeExtractorInput.Builder().setData(data).build();
+    input.setPosition((int) index.getPosition(SEEK_TIME_US));
+    consume(extractor, input);
+    output.trackOutputs.get(0).assertSampleCount(FRAME_COUNT - SEEK_FRAME);
+    output.trackOutputs.get(0).assertSample(0, buildFrameContent(SEEK_FRAME),
+        SEEK_FRAME * FRAME_DURATION_US, C.SAMPLE_FLAG_SYNC, null);
+  }
+
+  public void testTsIndex() throws Exception {
+    KeyframeIndex index = buildIndex(buildTsStream());
+
+    assertEquals(4, index.getKeyframeCount());
+    assertEquals(getTsFrameTimeUs(FRAME_COUNT - 1), index.getDurationUs());
+    // The PES packet of each frame follows the program tables, and the index holds the position of
+    // the preceding packet.
+    long position = (SEEK_FRAME + 1) * TS_PACKET_SIZE;
+    assertEquals(position, index.getPosition(SEEK_TIME_US));
+    assertEquals(getTsFrameTimeUs(SEEK_FRAME), index.getTimeUs(position));
+  }
+
+  public void testTsExtractorResumesAtIndexedPosition() throws Exception {
+    byte[] data = buildTsStream();
+    KeyframeIndex index = buildIndex(data);
+    TsExtractor extractor = new TsExtractor(index);
+    FakeExtractorOutput output = new FakeExtractorOutput();
+    extractor.init(output);
+    assertSame(index, output.seekMap);
+
+    FakeExtractorInput input = new FakeExtractorInput.Builder().setData(data).build();
+    consume(extractor, input);
+    extractor.seek();
+    input.setPosition((int) index.getPosition(SEEK_TIME_US));
+    consume(extractor, input);
+    // Reading resumes from the packet preceding the indexed frame, which carries the previous
+    // frame. Timestamps after seeking are consistent with those read from the start of the stream.
+    FakeTrackOutput trackOutput = output.trackOutputs.get(TS_STREAM_TYPE_AAC);
+    trackOutput.assertSampleCount(FRAME_COUNT + FRAME_COUNT - SEEK_FRAME + 1);
+    trackOutput.assertSample(FRAME_COUNT, buildFrameContent(SEEK_FRAME - 1),
+        getTsFrameTimeUs(SEEK_FRAME - 1), C.SAMPLE_FLAG_SYNC, null);
+    trackOutput.assertSample(FRAME_COUNT + 1, buildFrameContent(SEEK_FRAME),
+        getTsFrameTimeUs(SEEK_FRAME), C.SAMPLE_FLAG_SYNC, null);
+  }
+
+  public void testIndexIsReadFromCache() throws Exception {
+    SimpleCache cache = new SimpleCache(cacheDir, new NoOpCacheEvictor());
+    KeyframeIndex index = new KeyframeIndex();
+    KeyframeIndexer.IndexingLoadable loadable = new KeyframeIndexer.IndexingLoadable(URI,
+        new ByteArrayDataSource(buildAdtsStream()), cache, CACHE_KEY, index);
+    loadable.load();
+    assertFalse(loadable.isLoadedFromCache());
+    assertTrue(cache.getKeys().contains(CACHE_KEY + KeyframeIndexer.CACHE_KEY_SUFFIX));
+
+    // The stream is not read when the index is in the cache.
+    SimpleCache restoredCache = new SimpleCache(cacheDir, new NoOpCacheEvictor());
+    KeyframeIndex restoredIndex = new KeyframeIndex();
+    DataSource failingDataSource = new FakeDataSource.Builder().build();
+    loadable = new KeyframeIndexer.IndexingLoadable(URI, failingDataSource, restoredCache,
+        CACHE_KEY, restoredIndex);
+    loadable.load();
+    assertTrue(loadable.isLoadedFromCache());
+    assertEquals(index.getKeyframeCount(), restoredIndex.getKeyframeCount());
+    assertEquals(index.getDurationUs(), restoredIndex.getDurationUs());
+    assertEquals(index.getPosition(SEEK_TIME_US), restoredIndex.getPosition(SEEK_TIME_US));
+  }
+
+  public void testUnreadableCachedIndexIsRewritten() throws Exception {
+    String indexCacheKey = CACHE_KEY + KeyframeIndexer.CACHE_KEY_SUFFIX;
+    SimpleCache cache = new SimpleCache(cacheDir, new NoOpCacheEvictor());
+    KeyframeIndex index = new KeyframeIndex();
+    new KeyframeIndexer.IndexingLoadable(URI, new ByteArrayDataSource(buildAdtsStream()), cache,
+        CACHE_KEY, index).load();
+    // Truncate the cached index.
+    File indexFile = cache.getCachedSpans(indexCacheKey).first().file;
+    RandomAccessFile randomAccessFile = new RandomAccessFile(indexFile, "rw");
+    randomAccessFile.setLength(4);
+    randomAccessFile.close();
+
+    KeyframeIndex rebuiltIndex = new KeyframeIndex();
+    KeyframeIndexer.IndexingLoadable loadable = new KeyframeIndexer.IndexingLoadable(URI,
+        new ByteArrayDataSource(buildAdtsStream()), cache, CACHE_KEY, rebuiltIndex);
+    loadable.load();
+    assertFalse(loadable.isLoadedFromCache());
+    assertEquals(index.getKeyframeCount(), rebuiltIndex.getKeyframeCount());
+
+    // The rebuilt index is read from the cache.
+    KeyframeIndex restoredIndex = new KeyframeIndex();
+    loadable = new KeyframeIndexer.IndexingLoadable(URI, new FakeDataSource.Builder().build(),
+        cache, CACHE_KEY, restoredIndex);
+    loadable.load();
+    assertTrue(loadable.isLoadedFromCache());
+    assertEquals(index.getKeyframeCount(), restoredIndex.getKeyframeCount());
+  }
+
+  private static KeyframeIndex buildIndex(byte[] data) throws Exception {
+    KeyframeIndex index = new KeyframeIndex();
+    assertFalse(index.isSeekable());
+    new KeyframeIndexer.IndexingLoadable(URI, new ByteArrayDataSource(data), null, CACHE_KEY,
+        index).load();
+    return index;
+  }
+
+  private static void consume(Extractor extractor, FakeExtractorInput input) throws Exception {
+    PositionHolder seekPositionHolder = new PositionHolder();
+    int readResult = Extractor.RESULT_CONTINUE;
+    while (readResult != Extractor.RESULT_END_OF_INPUT) {
+      readResult = extractor.read(input, seekPositionHolder);
+    }
+  }
+
+  private static long getTsFrameTimeUs(int frameIndex) {
+    return (frameIndex * PTS_STEP * C.MICROS_PER_SECOND) / 90000;
+  }
+
+  private static byte[] buildAdtsStream() {
+    byte[][] frames = new byte[FRAME_COUNT][];
+    for (int i = 0; i < FRAME_COUNT; i++) {
+      frames[i] = buildAdtsFrame(i);
+    }
+    return TestUtil.joinByteArrays(frames);
+  }
+
+  /**
+   * Builds an MPEG-TS stream carrying each ADTS frame in its own PES packet, which fits in a single
+   * TS packet.
+   */
+  private static byte[] buildTsStream() {
+    byte[][] packets = new byte[FRAME_COUNT + 1][];
+    packets[0] = buildProgramTables();
+    for (int i = 0; i < FRAME_COUNT; i++) {
+      packets[i + 1] = buildAacPes(buildAdtsFrame(i), FIRST_PTS + i * PTS_STEP);
+    }
+    return TestUtil.joinByteArrays(packets);
+  }
+
+  /**
+   * Builds an AAC LC frame at 44.1kHz with two channels, whose content is filled with its index.
+   */
+  private static byte[] buildAdtsFrame(int frameIndex) {
+    byte[] header = TestUtil.createByteArray(0xFF, 0xF1, 0x50, 0x80 | (FRAME_LENGTH >> 11),
+        (FRAME_LENGTH >> 3) & 0xFF, ((FRAME_LENGTH & 0x07) << 5) | 0x1F, 0xFC);
+    return TestUtil.joinByteArrays(header, buildFrameContent(frameIndex));
+  }
+
+  private static byte[] buildFrameContent(int frameIndex) {
+    byte[] content = new byte[FRAME_CONTENT_LENGTH];
+    for (int i = 0; i < content.length; i++) {
+      content[i] = (byte) frameIndex;
+    }
+    return content;
+  }
+
+  /**
+   * Builds TS packets containing a program association table and a program map table that
+   * declares a single AAC stream.
+   */
+  private static byte[] buildProgramTables() {
+    byte[] pat = TestUtil.createByteArray(
+        0x00, // pointer_field
+        0x00, 0xB0, 13, // table_id, section_syntax_indicator, section_length
+        0x00, 0x01, 0xC1, 0x00, 0x00, // transport_stream_id, version, section numbers
+        0x00, 0x01, 0xE0 | (PMT_PID >> 8), PMT_PID & 0xFF, // program_number, program_map_PID
+        0x00, 0x00, 0x00, 0x00); // CRC_32
+    byte[] pmt = TestUtil.createByteArray(
+        0x00, // pointer_field
+        0x02, 0xB0, 18, // table_id, section_syntax_indicator, section_length
+        0x00, 0x01, 0xC1, 0x00, 0x00, // program_number, version, section numbers
+        0xE0 | (AAC_PID >> 8), AAC_PID & 0xFF, 0xF0, 0x00, // PCR_PID, program_info_length
+        TS_STREAM_TYPE_AAC, 0xE0 | (AAC_PID >> 8), AAC_PID & 0xFF, 0xF0, 0x00, // AAC stream
+        0x00, 0x00, 0x00, 0x00); // CRC_32
+    return TestUtil.joinByteArrays(TsExtractorTest.buildTsPackets(0, pat),
+        TsExtractorTest.buildTsPackets(PMT_PID, pmt));
+  }
+
+  private static byte[] buildAacPes(byte[] frame, long pts) {
+    int packetLength = 3 + 5 + frame.length;
+    byte[] header = TestUtil.createByteArray(
+        0x00, 0x00, 0x01, 0xC0, // packet_start_code_prefix, stream_id
+        (packetLength >> 8) & 0xFF, packetLength & 0xFF, // PES_packet_length
+        0x84, 0x80, 0x05, // data_alignment_indicator, PTS_DTS_flags, PES_header_data_length
+        (int) (0x21 | ((pts >> 29) & 0x0E)), (int) ((pts >> 22) & 0xFF),
+        (int) (((pts >> 14) & 0xFE) | 0x01), (int) ((pts >> 7) & 0xFF),
+        (int) (((pts << 1) & 0xFE) | 0x01));
+    return TsExtractorTest.buildTsPackets(AAC_PID, TestUtil.joinByteArrays(header, frame));
+  }
+
+}
@@ -0,0 +1,179 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer.extractor.ts;
+
+import com.google.android.exoplayer.C;
+import com.google.android.exoplayer.extractor.Extractor;
+import com.google.android.exoplayer.extractor.PositionHolder;
+import com.google.android.exoplayer.testutil.FakeExtractorInput;
+import com.google.android.exoplayer.testutil.FakeExtractorOutput;
+import com.google.android.exoplayer.testutil.FakeTrackOutput;
+import com.google.android.exoplayer.testutil.TestUtil;
+
+import junit.framework.TestCase;
+
+import java.io.ByteArrayOutputStream;
+
+/**
+ * Unit tests for {@link TsExtractor}.
+ */
+public class TsExtractorTest extends TestCase {
+
+  private static final int TS_PACKET_SIZE = 188;
+  private static final int TS_STREAM_TYPE_ID3 = 0x15;
+  private static final int PMT_PID = 0x100;
+  private static final int ID3_PID = 0x101;
+  private static final long PTS_STEP = 9000; // 100ms.
+
+  private static final byte[] FIRST_SAMPLE = buildId3Sample(300);
+  private static final byte[] SECOND_SAMPLE = buildId3Sample(1000);
+
+  public void testSamplesAreOutput() throws Exception {
+    byte[] data = TestUtil.joinByteArrays(buildProgramTables(),
+        buildId3Pes(FIRST_SAMPLE, 0, true), buildId3Pes(SECOND_SAMPLE, PTS_STEP, true));
+
+    assertSamples(consume(new FakeExtractorInput.Builder().setData(data).build()));
+  }
+
+  public void testPartialReads() throws Exception {
+    byte[] data = TestUtil.joinByteArrays(buildProgramTables(),
+        buildId3Pes(FIRST_SAMPLE, 0, true), buildId3Pes(SECOND_SAMPLE, PTS_STEP, true));
+
+    assertSamples(consume(new FakeExtractorInput.Builder().setData(data)
+        .setSimulatePartialReads(true).setSimulateUnknownLength(true).build()));
+  }
+
+  public void testResynchronizesAfterLostSync() throws Exception {
+    // Garbage that contains a sync byte, which is not followed by a further sync byte one packet
+    // later and so must not be mistaken for the start of a packet.
+    byte[] garbage = TestUtil.createByteArray(0x00, 0x47, 0x12, 0x34, 0x56);
+    byte[] firstPes = buildId3Pes(FIRST_SAMPLE, 0, true);
+    byte[] secondPes = buildId3Pes(SECOND_SAMPLE, PTS_STEP, true);
+    byte[] data = TestUtil.joinByteArrays(garbage, buildProgramTables(), garbage, firstPes,
+        garbage, secondPes);
+
+    assertSamples(consume(new FakeExtractorInput.Builder().setData(data).build()));
+  }
+
+  private static FakeExtractorOutput consume(FakeExtractorInput input) throws Exception {
+    TsExtractor extractor = new TsExtractor();
+    FakeExtractorOutput output = new FakeExtractorOutput();
+    extractor.init(output);
+    PositionHolder seekPositionHolder = new PositionHolder();
+    int readResult = Extractor.RESULT_CONTINUE;
+    while (readResult != Extractor.RESULT_END_OF_INPUT) {
+      readResult = extractor.read(input, seekPositionHolder);
+      assertTrue(readResult != Extractor.RESULT_SEEK);
+    }
+    return output;
+  }
+
+  private static void assertSamples(FakeExtractorOutput output) {
+    assertTrue(output.tracksEnded);
+    FakeTrackOutput id3Output = output.trackOutputs.get(TS_STREAM_TYPE_ID3);
+    id3Output.assertSampleCount(2);
+    id3Output.assertSample(0, FIRST_SAMPLE, 0, C.SAMPLE_FLAG_SYNC, null);
+    id3Output.assertSample(1, SECOND_SAMPLE, PTS_STEP * C.MICROS_PER_SECOND / 90000,
+        C.SAMPLE_FLAG_SYNC, null);
+  }
+
+  /**
+   * Builds an ID3 tag consisting of a header followed by {@code bodyLength} zero bytes.
+   */
+  /* package */ static byte[] buildId3Sample(int bodyLength) {
+    byte[] sample = new byte[10 + bodyLength];
+    sample[0] = 'I';
+    sample[1] = 'D';
+    sample[2] = '3';
+    sample[3] = 0x04;
+    // Synchsafe size.
+    sample[6] = (byte) ((bodyLength >> 21) & 0x7F);
+    sample[7] = (byte) ((bodyLength >> 14) & 0x7F);
+    sample[8] = (byte) ((bodyLength >> 7) & 0x7F);
+    sample[9] = (byte) (bodyLength & 0x7F);
+    return sample;
+  }
+
+  /**
+   * Builds TS packets containing a program association table and a program map table that
+   * declares a single ID3 stream.
+   */
+  /* package */ static byte[] buildProgramTables() {
+    byte[] pat = TestUtil.createByteArray(
+        0x00, // pointer_field
+        0x00, 0xB0, 13, // table_id, section_syntax_indicator, section_length
+        0x00, 0x01, 0xC1, 0x00, 0x00, // transport_stream_id, version, section numbers
+        0x00, 0x01, 0xE0 | (PMT_PID >> 8), PMT_PID & 0xFF, // program_number, program_map_PID
+        0x00, 0x00, 0x00, 0x00); // CRC_32
+    byte[] pmt = TestUtil.createByteArray(
+        0x00, // pointer_field
+        0x02, 0xB0, 18, // table_id, section_syntax_indicator, section_length
+        0x00, 0x01, 0xC1, 0x00, 0x00, // program_number, version, section numbers
+        0xE0 | (ID3_PID >> 8), ID3_PID & 0xFF, 0xF0, 0x00, // PCR_PID, program_info_length
+        TS_STREAM_TYPE_ID3, 0xE0 | (ID3_PID >> 8), ID3_PID & 0xFF, 0xF0, 0x00, // ID3 stream
+        0x00, 0x00, 0x00, 0x00); // CRC_32
+    return TestUtil.joinByteArrays(buildTsPackets(0, pat), buildTsPackets(PMT_PID, pmt));
+  }
+
+  /**
+   * Builds TS packets containing a PES packet that carries a single ID3 sample.
+   *
+   * @param sample The sample.
+   * @param pts The presentation timestamp of the sample, in 90kHz units.
+   * @param boundedLength Whether the PES packet length should be set. If false then the sample is
+   *     only output once the start of the following PES packet is read.
+   */
+  /* package */ static byte[] buildId3Pes(byte[] sample, long pts, boolean boundedLength) {
+    int packetLength = boundedLength ? 3 + 5 + sample.length : 0;
+    byte[] header = TestUtil.createByteArray(
+        0x00, 0x00, 0x01, 0xBD, // packet_start_code_prefix, stream_id
+        (packetLength >> 8) & 0xFF, packetLength & 0xFF, // PES_packet_length
+        0x84, 0x80, 0x05, // data_alignment_indicator, PTS_DTS_flags, PES_header_data_length
+        (int) (0x21 | ((pts >> 29) & 0x0E)), (int) ((pts >> 22) & 0xFF),
+        (int) (((pts >> 14) & 0xFE) | 0x01), (int) ((pts >> 7) & 0xFF),
+        (int) (((pts << 1) & 0xFE) | 0x01));
+    return buildTsPackets(ID3_PID, TestUtil.joinByteArrays(header, sample));
+  }
+
+  /**
+   * Splits a payload unit into TS packets, using adaptation field stuffing to fill the last one.
+   */
+  /* package */ static byte[] buildTsPackets(int pid, byte[] payloadUnit) {
+    ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+    int offset = 0;
+    while (offset < payloadUnit.length) {
+      int payloadLength = Math.min(TS_PACKET_SIZE - 4, payloadUnit.length - offset);
+      int stuffingLength = TS_PACKET_SIZE - 4 - payloadLength;
+      outputStream.write(0x47);
+      outputStream.write((offset == 0 ? 0x40 : 0x00) | (pid >> 8));
+      outputStream.write(pid & 0xFF);
+      outputStream.write(stuffingLength > 0 ? 0x30 : 0x10);
+      if (stuffingLength > 0) {
+        outputStream.write(stuffingLength - 1); // adaptation_field_length
+        if (stuffingLength > 1) {
+          outputStream.write(0x00); // Adaptation field flags.
+          for (int i = 2; i < stuffingLength; i++) {
+            outputStream.write(0xFF);
+          }
+        }
+      }
+      outputStream.write(payloadUnit, offset, payloadLength);
+      offset += payloadLength;
+    }
+    return outputStream.toByteArray();
+  }
+
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer.hls;
+
+import com.google.android.exoplayer.C;
+import com.google.android.exoplayer.testutil.TestUtil;
+import com.google.android.exoplayer.upstream.ByteArrayDataSource;
+import com.google.android.exoplayer.upstream.DataSpec;
+
+import android.net.Uri;
+
+import junit.framework.TestCase;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+import java.util.Random;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * Unit tests for {@link Aes128DataSource}.
+ */
+public class Aes128DataSourceTest extends TestCase {
+
+  private static final byte[] KEY = TestUtil.buildTestData(16, 1);
+  private static final byte[] IV = TestUtil.buildTestData(16, 2);
+
+  public void testDecryptWithLargeReads() throws Exception {
+    assertDecrypts(100000, 32 * 1024);
+    // Reads of this length are decrypted directly into the target, which has no spare space.
+    assertDecrypts(100000, 16 * 1024);
+    assertDecrypts(100000, 16 * 1024 + 7);
+  }
+
+  public void testDecryptWithSmallReads() throws Exception {
+    assertDecrypts(10000, 1);
+    assertDecrypts(10000, 7);
+    assertDecrypts(10000, 16);
+  }
+
+  public void testDecryptWithReadsNotAlignedToBlocks() throws Exception {
+    assertDecrypts(10000, 17);
+    assertDecrypts(10000, 33);
+    assertDecrypts(10000, 1000);
+  }
+
+  public void testDecryptBlockAlignedLengths() throws Exception {
+    // The padding of block aligned data is a whole block, which decrypts to nothing.
+    assertDecrypts(0, 100);
+    assertDecrypts(16, 100);
+    assertDecrypts(4096, 4096);
+  }
+
+  private static void assertDecrypts(int length, int readLength) throws Exception {
+    byte[] data = TestUtil.buildTestData(length, new Random(length));
+    Aes128DataSource dataSource = new Aes128DataSource(new ByteArrayDataSource(encrypt(data)),
+        KEY, IV);
+    assertEquals(C.LENGTH_UNBOUNDED, dataSource.open(new DataSpec(Uri.EMPTY)));
+    ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+    byte[] buffer = new byte[readLength + 2];
+    int bytesRead;
+    while ((bytesRead = dataSource.read(buffer, 1, readLength)) != -1) {
+      assertTrue(bytesRead > 0 && bytesRead <= readLength);
+      outputStream.write(buffer, 1, bytesRead);
+    }
+    dataSource.close();
+    assertTrue(Arrays.equals(data, outputStream.toByteArray()));
+  }
+
+  private static byte[] encrypt(byte[] data) throws Exception {
+    Cipher cipher = Cipher.getInstance("AES/CBC/PKCS5Padding");
+    cipher.init(Cipher.ENCRYPT_MODE, new SecretKeySpec(KEY, "AES"), new IvParameterSpec(IV));
+    return cipher.doFinal(data);
+  }
+
+}
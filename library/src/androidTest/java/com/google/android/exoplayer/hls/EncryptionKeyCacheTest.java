@@ -0,0 +1,60 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer.hls;
+
+import android.net.Uri;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit tests for {@link EncryptionKeyCache}.
+ */
+public class EncryptionKeyCacheTest extends TestCase {
+
+  private static final Uri KEY_URI_1 = Uri.parse("https://example.com/key1");
+  private static final Uri KEY_URI_2 = Uri.parse("https://example.com/key2");
+  private static final Uri KEY_URI_3 = Uri.parse("https://example.com/key3");
+  private static final byte[] KEY_1 = new byte[16];
+  private static final byte[] KEY_2 = new byte[16];
+  private static final byte[] KEY_3 = new byte[16];
+
+  public void testEvictsLeastRecentlyUsedKey() {
+    EncryptionKeyCache cache = new EncryptionKeyCache(2);
+    cache.put(KEY_URI_1, KEY_1);
+    cache.put(KEY_URI_2, KEY_2);
+    // Using the first key makes the second the least recently used.
+    assertSame(KEY_1, cache.get(KEY_URI_1));
+    cache.put(KEY_URI_3, KEY_3);
+
+    assertEquals(2, cache.size());
+    assertSame(KEY_1, cache.get(KEY_URI_1));
+    assertNull(cache.get(KEY_URI_2));
+    assertSame(KEY_3, cache.get(KEY_URI_3));
+  }
+
+  public void testContainsDoesNotAffectEviction() {
+    EncryptionKeyCache cache = new EncryptionKeyCache(2);
+    cache.put(KEY_URI_1, KEY_1);
+    cache.put(KEY_URI_2, KEY_2);
+    assertTrue(cache.contains(KEY_URI_1));
+    cache.put(KEY_URI_3, KEY_3);
+
+    assertFalse(cache.contains(KEY_URI_1));
+    assertTrue(cache.contains(KEY_URI_2));
+    assertTrue(cache.contains(KEY_URI_3));
+  }
+
+}
@@ -133,4 +133,116 @@ public class HlsMediaPlaylistParserTest extends TestCase {
     }
   }
 
+
+  public void testParseRefreshedMediaPlaylist() throws IOException {
+    String playlistUrl = "https://example.com/live.m3u8";
+    String previousPlaylistString = "#EXTM3U\n"
+        + "#EXT-X-TARGETDURATION:8\n"
+        + "#EXT-X-MEDIA-SEQUENCE:100\n"
+        + "#EXTINF:8.0,\n"
+        + "segment100.ts\n"
+        + "#EXTINF:8.0,\n"
+        + "segment101.ts\n"
+        + "#EXT-X-KEY:METHOD=AES-128,URI=\"key\"\n"
+        + "#EXTINF:8.0,\n"
+        + "#EXT-X-BYTERANGE:1000@0\n"
+        + "segment102.ts\n";
+    String playlistString = "#EXTM3U\r\n"
+        + "#EXT-X-TARGETDURATION:8\r\n"
+        + "#EXT-X-MEDIA-SEQUENCE:101\r\n"
+        + "#EXTINF:8.0,\r\n"
+        + "segment101.ts\r\n"
+        + "#EXT-X-KEY:METHOD=AES-128,URI=\"key\"\r\n"
+        + "#EXTINF:8.0,\r\n"
+        + "#EXT-X-BYTERANGE:1000@0\r\n"
+        + "segment102.ts\r\n"
+        + "#EXTINF:4.0,\r\n"
+        + "#EXT-X-BYTERANGE:500\r\n"
+        + "  segment102.ts  \r\n"
+        + "#EXT-X-DISCONTINUITY\r\n"
+        + "#EXTINF:8.0,\r\n"
+        + "segment103.ts\r\n";
+    HlsPlaylistParser parser = new HlsPlaylistParser();
+    HlsMediaPlaylist previousPlaylist = (HlsMediaPlaylist) parser.parse(playlistUrl,
+        new ByteArrayInputStream(previousPlaylistString.getBytes(Charset.forName(C.UTF8_NAME))));
+    byte[] data = playlistString.getBytes(Charset.forName(C.UTF8_NAME));
+
+    HlsMediaPlaylist playlist = parser.parseMediaPlaylist(playlistUrl, data, data.length,
+        previousPlaylist);
+    assertEquals(101, playlist.mediaSequence);
+    assertTrue(playlist.live);
+    List<HlsMediaPlaylist.Segment> segments = playlist.segments;
+    assertEquals(4, segments.size());
+    // Segments in the previous playlist are reused.
+    assertSame(previousPlaylist.segments.get(1), segments.get(0));
+    assertSame(previousPlaylist.segments.get(2), segments.get(1));
+    // Appended segments continue from the state of the previous segments.
+    assertEquals(24000000, segments.get(2).startTimeUs);
+    assertEquals(4.0, segments.get(2).durationSecs);
+    assertEquals(1000, segments.get(2).byterangeOffset);
+    assertEquals(500, segments.get(2).byterangeLength);
+    assertTrue(segments.get(2).isEncrypted);
+    assertEquals("key", segments.get(2).encryptionKeyUri);
+    assertEquals("segment102.ts", segments.get(2).url);
+    assertEquals(28000000, segments.get(3).startTimeUs);
+    assertEquals(0, segments.get(3).byterangeOffset);
+    assertEquals(C.LENGTH_UNBOUNDED, segments.get(3).byterangeLength);
+    assertEquals(1, segments.get(3).discontinuitySequenceNumber);
+    assertEquals("segment103.ts", segments.get(3).url);
+
+    // A playlist loaded from a different url is parsed in full.
+    playlist = parser.parseMediaPlaylist("https://example.com/other.m3u8", data, data.length,
+        previousPlaylist);
+    assertEquals(4, playlist.segments.size());
+    assertNotSame(previousPlaylist.segments.get(1), playlist.segments.get(0));
+    assertEquals(0, playlist.segments.get(0).startTimeUs);
+    assertEquals(16000000, playlist.segments.get(2).startTimeUs);
+  }
+
+  public void testRefreshedMediaPlaylistDoesNotReuseChangedSegments() throws IOException {
+    String playlistUrl = "https://example.com/live.m3u8";
+    String previousPlaylistString = "#EXTM3U\n"
+        + "#EXT-X-TARGETDURATION:8\n"
+        + "#EXT-X-MEDIA-SEQUENCE:100\n"
+        + "#EXTINF:8.0,\n"
+        + "segment100.ts\n"
+        + "#EXTINF:8.0,\n"
+        + "segment101.ts\n"
+        + "#EXTINF:8.0,\n"
+        + "segment102.ts\n"
+        + "#EXTINF:8.0,\n"
+        + "segment103.ts\n";
+    // The server has replaced segment 101, changed the duration of 102 and inserted a
+    // discontinuity before 103.
+    String playlistString = "#EXTM3U\n"
+        + "#EXT-X-TARGETDURATION:8\n"
+        + "#EXT-X-MEDIA-SEQUENCE:100\n"
+        + "#EXTINF:8.0,\n"
+        + "segment100.ts\n"
+        + "#EXTINF:8.0,\n"
+        + "segment101b.ts\n"
+        + "#EXTINF:6.0,\n"
+        + "segment102.ts\n"
+        + "#EXT-X-DISCONTINUITY\n"
+        + "#EXTINF:8.0,\n"
+        + "segment103.ts\n";
+    HlsPlaylistParser parser = new HlsPlaylistParser();
+    HlsMediaPlaylist previousPlaylist = (HlsMediaPlaylist) parser.parse(playlistUrl,
+        new ByteArrayInputStream(previousPlaylistString.getBytes(Charset.forName(C.UTF8_NAME))));
+    byte[] data = playlistString.getBytes(Charset.forName(C.UTF8_NAME));
+
+    HlsMediaPlaylist playlist = parser.parseMediaPlaylist(playlistUrl, data, data.length,
+        previousPlaylist);
+    List<HlsMediaPlaylist.Segment> segments = playlist.segments;
+    assertEquals(4, segments.size());
+    assertSame(previousPlaylist.segments.get(0), segments.get(0));
+    assertNotSame(previousPlaylist.segments.get(1), segments.get(1));
+    assertEquals("segment101b.ts", segments.get(1).url);
+    assertNotSame(previousPlaylist.segments.get(2), segments.get(2));
+    assertEquals(6.0, segments.get(2).durationSecs);
+    assertNotSame(previousPlaylist.segments.get(3), segments.get(3));
+    assertEquals(1, segments.get(3).discontinuitySequenceNumber);
+    assertEquals(22000000, segments.get(3).startTimeUs);
+  }
+
 }
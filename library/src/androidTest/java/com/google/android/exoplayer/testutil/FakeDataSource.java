@@ -67,7 +67,7 @@ public final class FakeDataSource implements DataSource {
     if (dataSpec.position >= totalLength) {
       throw new IOException("Unsatisfiable position");
     } else if (dataSpec.length != C.LENGTH_UNBOUNDED
-        && dataSpec.position + dataSpec.length >= totalLength) {
+        && dataSpec.position + dataSpec.length > totalLength) {
       throw new IOException("Unsatisfiable range");
     }
     // Scan through the segments, configuring them for the current read.
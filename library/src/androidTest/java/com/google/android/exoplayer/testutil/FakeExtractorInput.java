@@ -95,6 +95,9 @@ public final class FakeExtractorInput implements ExtractorInput {
   @Override
   public int read(byte[] target, int offset, int length) throws IOException {
     length = getReadLength(length);
+    if (length == 0 && isEof()) {
+      return C.RESULT_END_OF_INPUT;
+    }
     if (readFully(target, offset, length, true)) {
       return length;
     }
@@ -121,6 +124,9 @@ public final class FakeExtractorInput implements ExtractorInput {
   @Override
   public int skip(int length) throws IOException {
     length = getReadLength(length);
+    if (length == 0 && isEof()) {
+      return C.RESULT_END_OF_INPUT;
+    }
     if (skipFully(length, true)) {
       return length;
     }
@@ -199,7 +205,8 @@ public final class FakeExtractorInput implements ExtractorInput {
       peekPosition = readPosition;
       throw new SimulatedIOException("Simulated IO error at position: " + position);
     }
-    if (isEof()) {
+    if (length > 0 && isEof()) {
+      // As with DefaultExtractorInput, zero length operations succeed at the end of the input.
       if (allowEndOfInput) {
         return false;
       }
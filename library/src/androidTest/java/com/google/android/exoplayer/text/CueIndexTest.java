@@ -0,0 +1,92 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer.text;
+
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Unit tests for {@link CueIndex}.
+ */
+public class CueIndexTest extends TestCase {
+
+  private static final Cue FIRST_CUE = new Cue("first");
+  private static final Cue SECOND_CUE = new Cue("second");
+  private static final Cue THIRD_CUE = new Cue("third");
+
+  public void testActiveCuesAreReturnedInOrder() {
+    // first: [10, 40), second: [20, 30), third: [30, 50).
+    CueIndex cueIndex = new CueIndex(Arrays.asList(FIRST_CUE, SECOND_CUE, THIRD_CUE),
+        new long[] {10, 20, 30}, new long[] {40, 30, 50}, null);
+
+    assertEquals(6, cueIndex.getSegmentCount());
+    assertCues(cueIndex.getCues(0));
+    assertCues(cueIndex.getCues(10), FIRST_CUE);
+    assertCues(cueIndex.getCues(19), FIRST_CUE);
+    assertCues(cueIndex.getCues(20), FIRST_CUE, SECOND_CUE);
+    assertCues(cueIndex.getCues(30), FIRST_CUE, THIRD_CUE);
+    assertCues(cueIndex.getCues(45), THIRD_CUE);
+    assertCues(cueIndex.getCues(50));
+    assertCues(cueIndex.getCues(Long.MAX_VALUE));
+  }
+
+  public void testCuesAreBuiltOncePerSegment() {
+    final List<Long> segmentStartTimesUs = new ArrayList<>();
+    CueIndex cueIndex = new CueIndex(Arrays.asList(FIRST_CUE, SECOND_CUE),
+        new long[] {10, 10}, new long[] {20, 30}, new CueIndex.SegmentCueBuilder() {
+          @Override
+          public List<Cue> buildCues(long segmentStartTimeUs, List<Cue> activeCues) {
+            segmentStartTimesUs.add(segmentStartTimeUs);
+            return activeCues.isEmpty() ? null : Collections.singletonList(activeCues.get(0));
+          }
+        });
+
+    List<Cue> cues = cueIndex.getCues(15);
+    assertCues(cues, FIRST_CUE);
+    assertSame(cues, cueIndex.getCues(10));
+    assertSame(cues, cueIndex.getCues(19));
+    assertCues(cueIndex.getCues(25), SECOND_CUE);
+    assertCues(cueIndex.getCues(5));
+    assertCues(cueIndex.getCues(5));
+    assertEquals(Arrays.asList(10L, 20L, Long.MIN_VALUE), segmentStartTimesUs);
+  }
+
+  public void testIndexFromEventTimes() {
+    CueIndex cueIndex = new CueIndex(new long[] {10, 20, 20, 30},
+        new CueIndex.SegmentCueBuilder() {
+          @Override
+          public List<Cue> buildCues(long segmentStartTimeUs, List<Cue> activeCues) {
+            assertTrue(activeCues.isEmpty());
+            return segmentStartTimeUs == 20 ? Collections.singletonList(FIRST_CUE) : null;
+          }
+        });
+
+    assertEquals(4, cueIndex.getSegmentCount());
+    assertCues(cueIndex.getCues(15));
+    assertCues(cueIndex.getCues(20), FIRST_CUE);
+    assertCues(cueIndex.getCues(29), FIRST_CUE);
+    assertCues(cueIndex.getCues(30));
+  }
+
+  private static void assertCues(List<Cue> actual, Cue... expected) {
+    assertEquals(Arrays.asList(expected), actual);
+  }
+
+}
@@ -0,0 +1,94 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer.upstream;
+
+import com.google.android.exoplayer.upstream.BandwidthEstimator.EwmaEstimator;
+import com.google.android.exoplayer.upstream.BandwidthEstimator.HarmonicMeanEstimator;
+import com.google.android.exoplayer.upstream.BandwidthEstimator.PercentileEstimator;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit tests for {@link BandwidthEstimator} implementations.
+ */
+public class BandwidthEstimatorTest extends TestCase {
+
+  public void testNoEstimateWithoutSamples() {
+    assertNoEstimate(new PercentileEstimator());
+    assertNoEstimate(new EwmaEstimator());
+    assertNoEstimate(new HarmonicMeanEstimator());
+  }
+
+  public void testPercentileEstimator() {
+    PercentileEstimator estimator = new PercentileEstimator(300, 0.5f);
+    // 10000 bytes per second, with a weight of 100.
+    estimator.addSample(10000, 8000);
+    assertEquals(10000, estimator.getBitrateEstimate());
+    assertEquals(1f / 3, estimator.getConfidence(), 0.001f);
+    estimator.addSample(10000, 4000);
+    estimator.addSample(10000, 2000);
+    assertEquals(20000, estimator.getBitrateEstimate());
+    assertEquals(1f, estimator.getConfidence());
+  }
+
+  public void testEwmaEstimatorConstantBandwidth() {
+    EwmaEstimator estimator = new EwmaEstimator(2000, 5000);
+    estimator.addSample(1000, 1000);
+    // The estimate is not biased towards zero by the initial state of the averages.
+    assertEquals(8000, estimator.getBitrateEstimate());
+    estimator.addSample(2000, 2000);
+    assertEquals(8000, estimator.getBitrateEstimate());
+    assertEquals(1 - Math.pow(0.5, 3000d / 5000), estimator.getConfidence(), 0.001);
+  }
+
+  public void testEwmaEstimatorFollowsDrop() {
+    EwmaEstimator estimator = new EwmaEstimator(2000, 5000);
+    estimator.addSample(100000, 10000);
+    estimator.addSample(1000, 2000);
+    // The fast average has halved towards the new throughput, whereas the slow average is still
+    // closer to the previous throughput.
+    long estimate = estimator.getBitrateEstimate();
+    assertTrue(estimate < 50000);
+    assertTrue(estimate > 4000);
+  }
+
+  public void testHarmonicMeanEstimator() {
+    HarmonicMeanEstimator estimator = new HarmonicMeanEstimator(2);
+    estimator.addSample(1000, 1000);
+    assertEquals(8000, estimator.getBitrateEstimate());
+    assertEquals(0.5f, estimator.getConfidence());
+    estimator.addSample(1000, 3000);
+    // 2 / (1 / 8000 + 3 / 8000)
+    assertEquals(4000, estimator.getBitrateEstimate());
+    assertEquals(1f, estimator.getConfidence());
+    // The first sample drops out of the window.
+    estimator.addSample(3000, 1000);
+    // 2 / (3 / 8000 + 1 / 24000)
+    assertEquals(4800, estimator.getBitrateEstimate());
+  }
+
+  public void testHarmonicMeanEstimatorIgnoresEmptyTransfers() {
+    HarmonicMeanEstimator estimator = new HarmonicMeanEstimator();
+    estimator.addSample(0, 1000);
+    assertNoEstimate(estimator);
+  }
+
+  private static void assertNoEstimate(BandwidthEstimator estimator) {
+    assertEquals(BandwidthMeter.NO_ESTIMATE, estimator.getBitrateEstimate());
+    assertEquals(0f, estimator.getConfidence());
+  }
+
+}
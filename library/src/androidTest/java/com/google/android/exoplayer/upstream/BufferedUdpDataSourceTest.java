@@ -0,0 +1,158 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer.upstream;
+
+import com.google.android.exoplayer.C;
+import com.google.android.exoplayer.util.FakeClock;
+
+import android.net.Uri;
+
+import junit.framework.TestCase;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.util.Arrays;
+
+/**
+ * Unit tests for {@link BufferedUdpDataSource}, reading from a local sender.
+ */
+public class BufferedUdpDataSourceTest extends TestCase {
+
+  private static final int PAYLOAD_LENGTH = 7 * 188;
+
+  private DatagramSocket sender;
+  private InetAddress address;
+  private int port;
+
+  @Override
+  protected void setUp() throws IOException {
+    address = InetAddress.getByName("127.0.0.1");
+    // Find a free port for the data source to bind to.
+    DatagramSocket socket = new DatagramSocket(0, address);
+    port = socket.getLocalPort();
+    socket.close();
+    sender = new DatagramSocket();
+  }
+
+  @Override
+  protected void tearDown() {
+    sender.close();
+  }
+
+  public void testReorderedRtpPacketsAreReadInOrder() throws IOException {
+    BufferedUdpDataSource dataSource = new BufferedUdpDataSource(null, null, null,
+        BufferedUdpDataSource.DEFAULT_MAX_PACKET_SIZE, 16, 1000, new FakeClock(0));
+    DataSpec dataSpec = new DataSpec(Uri.parse("rtp://127.0.0.1:" + port));
+    assertEquals(C.LENGTH_UNBOUNDED, dataSource.open(dataSpec));
+    try {
+      int[] sequenceNumbers = new int[] {0, 1, 3, 2, 4, 6, 5, 7};
+      for (int sequenceNumber : sequenceNumbers) {
+        sendRtpPacket(sequenceNumber);
+      }
+      byte[] buffer = new byte[PAYLOAD_LENGTH];
+      for (int i = 0; i < sequenceNumbers.length; i++) {
+        readFully(dataSource, buffer);
+        assertEquals(0x47, buffer[0]);
+        assertEquals(i, buffer[1]);
+        assertEquals(i, buffer[PAYLOAD_LENGTH - 1]);
+      }
+    } finally {
+      dataSource.close();
+    }
+    assertEquals(8, dataSource.getReceivedPacketCount());
+    assertEquals(0, dataSource.getLostPacketCount());
+    assertEquals(2, dataSource.getReorderedPacketCount());
+    assertEquals(0, dataSource.getDiscardedPacketCount());
+  }
+
+  public void testReopenedSourceReadsIntactPayloads() throws IOException {
+    BufferedUdpDataSource dataSource = new BufferedUdpDataSource(null, null, null,
+        BufferedUdpDataSource.DEFAULT_MAX_PACKET_SIZE, 16, 1000, new FakeClock(0));
+    DataSpec dataSpec = new DataSpec(Uri.parse("rtp://127.0.0.1:" + port));
+    byte[] buffer = new byte[PAYLOAD_LENGTH];
+    for (int session = 0; session < 3; session++) {
+      dataSource.open(dataSpec);
+      try {
+        // Fill most of the buffer before reading, so that every slot of the ring is used.
+        int firstSequenceNumber = session * 1000;
+        for (int i = 0; i < 12; i++) {
+          sendRtpPacket(firstSequenceNumber + i);
+        }
+        for (int i = 0; i < 12; i++) {
+          readFully(dataSource, buffer);
+          assertTrue(Arrays.equals(buildPayload(firstSequenceNumber + i), buffer));
+        }
+      } finally {
+        dataSource.close();
+      }
+      assertEquals(12, dataSource.getReceivedPacketCount());
+      assertEquals(0, dataSource.getDiscardedPacketCount());
+    }
+  }
+
+  public void testCloseUnblocksRead() throws Exception {
+    final BufferedUdpDataSource dataSource = new BufferedUdpDataSource(null, null, null,
+        BufferedUdpDataSource.DEFAULT_MAX_PACKET_SIZE,
+        BufferedUdpDataSource.DEFAULT_BUFFER_PACKET_COUNT,
+        BufferedUdpDataSource.DEFAULT_JITTER_DELAY_MS, new FakeClock(0));
+    dataSource.open(new DataSpec(Uri.parse("127.0.0.1:" + port)));
+    Thread closeThread = new Thread() {
+      @Override
+      public void run() {
+        dataSource.close();
+      }
+    };
+    closeThread.start();
+    assertEquals(C.RESULT_END_OF_INPUT, dataSource.read(new byte[PAYLOAD_LENGTH], 0, 1));
+    closeThread.join();
+  }
+
+  private void sendRtpPacket(int sequenceNumber) throws IOException {
+    byte[] data = new byte[12 + PAYLOAD_LENGTH];
+    data[0] = (byte) 0x80;
+    data[1] = 33;
+    data[2] = (byte) (sequenceNumber >> 8);
+    data[3] = (byte) sequenceNumber;
+    System.arraycopy(buildPayload(sequenceNumber), 0, data, 12, PAYLOAD_LENGTH);
+    sender.send(new DatagramPacket(data, data.length, address, port));
+  }
+
+  /**
+   * Builds a payload starting with a TS sync byte, and otherwise unique to the sequence number.
+   */
+  private static byte[] buildPayload(int sequenceNumber) {
+    byte[] payload = new byte[PAYLOAD_LENGTH];
+    payload[0] = 0x47;
+    payload[1] = (byte) sequenceNumber;
+    for (int i = 2; i < PAYLOAD_LENGTH; i++) {
+      payload[i] = (byte) (sequenceNumber * 31 + i);
+    }
+    payload[PAYLOAD_LENGTH - 1] = (byte) sequenceNumber;
+    return payload;
+  }
+
+  private static void readFully(DataSource dataSource, byte[] buffer) throws IOException {
+    int position = 0;
+    while (position < buffer.length) {
+      int bytesRead = dataSource.read(buffer, position, buffer.length - position);
+      assertTrue(bytesRead != C.RESULT_END_OF_INPUT);
+      position += bytesRead;
+    }
+  }
+
+}
@@ -0,0 +1,138 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer.upstream;
+
+import com.google.android.exoplayer.upstream.BandwidthEstimator.HarmonicMeanEstimator;
+import com.google.android.exoplayer.util.Clock;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit tests for {@link DefaultBandwidthMeter}.
+ */
+public class DefaultBandwidthMeterTest extends TestCase {
+
+  private ManualClock clock;
+  private DefaultBandwidthMeter bandwidthMeter;
+
+  @Override
+  protected void setUp() {
+    clock = new ManualClock();
+    bandwidthMeter = new DefaultBandwidthMeter(null, null, clock, new HarmonicMeanEstimator());
+  }
+
+  public void testNoEstimateInitially() {
+    assertEquals(BandwidthMeter.NO_ESTIMATE, bandwidthMeter.getBitrateEstimate());
+    assertEquals(BandwidthMeter.NO_ESTIMATE, bandwidthMeter.getTimeToFirstByteEstimateMs());
+    assertEquals(0f, bandwidthMeter.getConfidence());
+  }
+
+  public void testSingleTransfer() {
+    bandwidthMeter.onTransferStart();
+    clock.timeMs += 200;
+    bandwidthMeter.onBytesTransferred(500);
+    clock.timeMs += 800;
+    bandwidthMeter.onBytesTransferred(500);
+    bandwidthMeter.onTransferEnd();
+    assertEquals(8000, bandwidthMeter.getBitrateEstimate());
+    assertEquals(200, bandwidthMeter.getTimeToFirstByteEstimateMs());
+    assertTrue(bandwidthMeter.getConfidence() > 0);
+  }
+
+  public void testTimeToFirstByteIsMeasuredFromRequest() {
+    bandwidthMeter.onTransferRequest();
+    clock.timeMs += 300;
+    bandwidthMeter.onTransferStart();
+    bandwidthMeter.onBytesTransferred(500);
+    clock.timeMs += 500;
+    bandwidthMeter.onBytesTransferred(500);
+    bandwidthMeter.onTransferEnd();
+    // The time spent connecting is excluded from the throughput sample.
+    assertEquals(16000, bandwidthMeter.getBitrateEstimate());
+    assertEquals(300, bandwidthMeter.getTimeToFirstByteEstimateMs());
+  }
+
+  public void testFailedRequestIsSuperseded() {
+    bandwidthMeter.onTransferRequest();
+    clock.timeMs += 5000;
+    // The connection failed, so the request is retried.
+    bandwidthMeter.onTransferRequest();
+    clock.timeMs += 100;
+    bandwidthMeter.onTransferStart();
+    bandwidthMeter.onBytesTransferred(1000);
+    bandwidthMeter.onTransferEnd();
+    assertEquals(100, bandwidthMeter.getTimeToFirstByteEstimateMs());
+  }
+
+  public void testFailedRequestIsDiscarded() {
+    bandwidthMeter.onTransferRequest();
+    clock.timeMs += 5000;
+    bandwidthMeter.onTransferRequestFailed();
+    clock.timeMs += 100;
+    // A transfer that doesn't notify requests starts on the same thread.
+    bandwidthMeter.onTransferStart();
+    clock.timeMs += 50;
+    bandwidthMeter.onBytesTransferred(1000);
+    bandwidthMeter.onTransferEnd();
+    assertEquals(50, bandwidthMeter.getTimeToFirstByteEstimateMs());
+  }
+
+  public void testConcurrentTransfersAreSampledSeparately() throws InterruptedException {
+    bandwidthMeter.onTransferStart();
+    clock.timeMs += 1000;
+    // A transfer on another thread starts and ends whilst the first is open.
+    Thread thread = new Thread() {
+      @Override
+      public void run() {
+        bandwidthMeter.onTransferStart();
+        bandwidthMeter.onBytesTransferred(1000);
+        clock.timeMs += 1000;
+        bandwidthMeter.onTransferEnd();
+      }
+    };
+    thread.start();
+    thread.join();
+    assertEquals(8000, bandwidthMeter.getBitrateEstimate());
+    bandwidthMeter.onBytesTransferred(6000);
+    bandwidthMeter.onTransferEnd();
+    // The first transfer is unaffected by the bytes of the second. 2 / (1 / 8000 + 1 / 24000).
+    assertEquals(12000, bandwidthMeter.getBitrateEstimate());
+  }
+
+  public void testNestedTransfersAreSampledOnce() {
+    bandwidthMeter.onTransferStart();
+    bandwidthMeter.onTransferStart();
+    bandwidthMeter.onBytesTransferred(1000);
+    clock.timeMs += 1000;
+    bandwidthMeter.onTransferEnd();
+    assertEquals(BandwidthMeter.NO_ESTIMATE, bandwidthMeter.getBitrateEstimate());
+    bandwidthMeter.onBytesTransferred(1000);
+    bandwidthMeter.onTransferEnd();
+    assertEquals(16000, bandwidthMeter.getBitrateEstimate());
+  }
+
+  private static final class ManualClock implements Clock {
+
+    public volatile long timeMs;
+
+    @Override
+    public long elapsedRealtime() {
+      return timeMs;
+    }
+
+  }
+
+}
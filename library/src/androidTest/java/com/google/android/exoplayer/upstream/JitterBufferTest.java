@@ -0,0 +1,218 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer.upstream;
+
+import com.google.android.exoplayer.upstream.JitterBuffer.Packet;
+import com.google.android.exoplayer.util.FakeClock;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit tests for {@link JitterBuffer}.
+ */
+public class JitterBufferTest extends TestCase {
+
+  private static final int CAPACITY = 8;
+  private static final int MAX_PACKET_SIZE = 64;
+
+  private FakeClock clock;
+  private Packet receivePacket;
+  private Packet readPacket;
+
+  @Override
+  protected void setUp() {
+    clock = new FakeClock(0);
+    receivePacket = new Packet(MAX_PACKET_SIZE);
+    readPacket = new Packet(MAX_PACKET_SIZE);
+  }
+
+  public void testInOrderRtpPackets() throws InterruptedException {
+    JitterBuffer buffer = new JitterBuffer(CAPACITY, MAX_PACKET_SIZE, 100, clock);
+    for (int i = 0; i < 20; i++) {
+      offerRtp(buffer, 1000 + i);
+      assertNextPayload(buffer, 1000 + i);
+    }
+    assertCounts(buffer, 20, 0, 0, 0);
+  }
+
+  public void testReorderedRtpPackets() throws InterruptedException {
+    JitterBuffer buffer = new JitterBuffer(CAPACITY, MAX_PACKET_SIZE, 100, clock);
+    offerRtp(buffer, 10);
+    offerRtp(buffer, 12);
+    offerRtp(buffer, 11);
+    offerRtp(buffer, 14);
+    offerRtp(buffer, 13);
+    for (int i = 10; i < 15; i++) {
+      assertNextPayload(buffer, i);
+    }
+    assertCounts(buffer, 5, 0, 2, 0);
+  }
+
+  public void testMissingRtpPacketIsLostAfterJitterDelay() throws InterruptedException {
+    JitterBuffer buffer = new JitterBuffer(CAPACITY, MAX_PACKET_SIZE, 0, clock);
+    offerRtp(buffer, 10);
+    offerRtp(buffer, 13);
+    assertNextPayload(buffer, 10);
+    assertNextPayload(buffer, 13);
+    assertCounts(buffer, 2, 2, 0, 0);
+  }
+
+  public void testMissingRtpPacketIsLostWhenBufferIsFull() throws InterruptedException {
+    JitterBuffer buffer = new JitterBuffer(CAPACITY, MAX_PACKET_SIZE, Long.MAX_VALUE / 2, clock);
+    offerRtp(buffer, 0);
+    assertNextPayload(buffer, 0);
+    // Sequence number 1 is missing, and the buffer can only hold 1 to 8.
+    for (int i = 2; i <= CAPACITY; i++) {
+      offerRtp(buffer, i);
+    }
+    // A packet that does not fit is discarded.
+    offerRtp(buffer, CAPACITY + 1);
+    for (int i = 2; i <= CAPACITY; i++) {
+      assertNextPayload(buffer, i);
+    }
+    assertCounts(buffer, CAPACITY, 1, 0, 1);
+  }
+
+  public void testDuplicateAndLateRtpPacketsAreDiscarded() throws InterruptedException {
+    JitterBuffer buffer = new JitterBuffer(CAPACITY, MAX_PACKET_SIZE, 100, clock);
+    offerRtp(buffer, 5);
+    offerRtp(buffer, 6);
+    offerRtp(buffer, 6);
+    assertNextPayload(buffer, 5);
+    offerRtp(buffer, 5);
+    assertNextPayload(buffer, 6);
+    assertCounts(buffer, 2, 0, 0, 2);
+  }
+
+  public void testRtpSequenceNumberWraps() throws InterruptedException {
+    JitterBuffer buffer = new JitterBuffer(CAPACITY, MAX_PACKET_SIZE, 100, clock);
+    offerRtp(buffer, 0xFFFE);
+    offerRtp(buffer, 0x0000);
+    offerRtp(buffer, 0xFFFF);
+    offerRtp(buffer, 0x0001);
+    assertNextPayload(buffer, 0xFFFE);
+    assertNextPayload(buffer, 0xFFFF);
+    assertNextPayload(buffer, 0x0000);
+    assertNextPayload(buffer, 0x0001);
+    assertCounts(buffer, 4, 0, 1, 0);
+  }
+
+  public void testSenderRestartResynchronizes() throws InterruptedException {
+    JitterBuffer buffer = new JitterBuffer(CAPACITY, MAX_PACKET_SIZE, 100, clock);
+    offerRtp(buffer, 100);
+    offerRtp(buffer, 101);
+    assertNextPayload(buffer, 100);
+    offerRtp(buffer, 20000);
+    assertNextPayload(buffer, 20000);
+    assertCounts(buffer, 3, 0, 0, 1);
+  }
+
+  public void testRtpHeaderIsRemoved() throws InterruptedException {
+    JitterBuffer buffer = new JitterBuffer(CAPACITY, MAX_PACKET_SIZE, 100, clock);
+    // Version 2, padding, extension, one CSRC. Payload type 33 (MP2T), sequence number 7.
+    byte[] data = new byte[] {
+        (byte) 0xB1, 33, 0, 7, 0, 0, 0, 0, 0, 0, 0, 0,
+        // CSRC.
+        0, 0, 0, 1,
+        // Header extension with one word.
+        0, 0, 0, 1, 0, 0, 0, 0,
+        // Payload.
+        0x47, 1, 2,
+        // Padding.
+        0, 0, 3};
+    System.arraycopy(data, 0, receivePacket.data, 0, data.length);
+    receivePacket.length = data.length;
+    receivePacket = buffer.offer(receivePacket);
+    Packet packet = take(buffer);
+    assertEquals(24, packet.payloadOffset);
+    assertEquals(3, packet.payloadLength);
+    assertEquals(0x47, packet.data[packet.payloadOffset]);
+  }
+
+  public void testMalformedRtpPacketIsDiscarded() throws InterruptedException {
+    JitterBuffer buffer = new JitterBuffer(CAPACITY, MAX_PACKET_SIZE, 100, clock);
+    offerRtp(buffer, 1);
+    // An RTP header with an extension, truncated before the extension header.
+    receivePacket.data[0] = (byte) 0x90;
+    receivePacket.length = 12;
+    receivePacket = buffer.offer(receivePacket);
+    assertCounts(buffer, 1, 0, 0, 1);
+  }
+
+  public void testRawPacketsAreReadInArrivalOrder() throws InterruptedException {
+    JitterBuffer buffer = new JitterBuffer(CAPACITY, MAX_PACKET_SIZE, 100, clock);
+    for (int i = 0; i < 20; i++) {
+      receivePacket.data[0] = 0x47;
+      receivePacket.data[1] = (byte) i;
+      receivePacket.length = 2;
+      receivePacket = buffer.offer(receivePacket);
+      Packet packet = take(buffer);
+      assertEquals(0, packet.payloadOffset);
+      assertEquals(2, packet.payloadLength);
+      assertEquals(i, packet.data[1]);
+    }
+    assertCounts(buffer, 20, 0, 0, 0);
+  }
+
+  public void testReleaseUnblocksReader() throws Exception {
+    final JitterBuffer buffer = new JitterBuffer(CAPACITY, MAX_PACKET_SIZE, 100, clock);
+    Thread releaseThread = new Thread() {
+      @Override
+      public void run() {
+        buffer.release();
+      }
+    };
+    releaseThread.start();
+    assertNull(buffer.take(readPacket));
+    releaseThread.join();
+  }
+
+  private void offerRtp(JitterBuffer buffer, int sequenceNumber) {
+    byte[] data = receivePacket.data;
+    data[0] = (byte) 0x80;
+    data[1] = 33;
+    data[2] = (byte) (sequenceNumber >> 8);
+    data[3] = (byte) sequenceNumber;
+    // Use the sequence number as the payload.
+    data[12] = (byte) (sequenceNumber >> 8);
+    data[13] = (byte) sequenceNumber;
+    receivePacket.length = 14;
+    receivePacket = buffer.offer(receivePacket);
+  }
+
+  private void assertNextPayload(JitterBuffer buffer, int sequenceNumber)
+      throws InterruptedException {
+    Packet packet = take(buffer);
+    assertEquals(12, packet.payloadOffset);
+    assertEquals(2, packet.payloadLength);
+    int payload = ((packet.data[12] & 0xFF) << 8) | (packet.data[13] & 0xFF);
+    assertEquals(sequenceNumber, payload);
+  }
+
+  private Packet take(JitterBuffer buffer) throws InterruptedException {
+    readPacket = buffer.take(readPacket);
+    return readPacket;
+  }
+
+  private static void assertCounts(JitterBuffer buffer, long received, long lost, long reordered,
+      long discarded) {
+    assertEquals(received, buffer.getReceivedPacketCount());
+    assertEquals(lost, buffer.getLostPacketCount());
+    assertEquals(reordered, buffer.getReorderedPacketCount());
+    assertEquals(discarded, buffer.getDiscardedPacketCount());
+  }
+
+}
@@ -0,0 +1,213 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer.upstream;
+
+import com.google.android.exoplayer.C;
+import com.google.android.exoplayer.testutil.FakeDataSource;
+import com.google.android.exoplayer.testutil.TestUtil;
+
+import android.net.Uri;
+
+import junit.framework.TestCase;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Unit tests for {@link ReadAheadDataSource}.
+ */
+public class ReadAheadDataSourceTest extends TestCase {
+
+  private static final int TIMEOUT_MS = 5000;
+  private static final int ALLOCATION_LENGTH = 256;
+  private static final int DATA_LENGTH = 1000;
+
+  private byte[] data;
+
+  @Override
+  protected void setUp() {
+    data = TestUtil.buildTestData(DATA_LENGTH);
+  }
+
+  public void testReadAheadRequestIsServedFromMemory() throws IOException {
+    assertReadAheadRequestIsServedFromMemory(
+        new SlabAllocator(ALLOCATION_LENGTH * 4, new int[] {ALLOCATION_LENGTH}));
+  }
+
+  public void testReadAheadRequestIsServedFromDirectMemory() throws IOException {
+    assertReadAheadRequestIsServedFromMemory(
+        new SlabAllocator(ALLOCATION_LENGTH * 4, new int[] {ALLOCATION_LENGTH}, 0, true));
+  }
+
+  public void testOtherRequestsAreReadFromUpstream() throws IOException {
+    SlabAllocator allocator = new SlabAllocator(ALLOCATION_LENGTH * 4, ALLOCATION_LENGTH);
+    // The read ahead source has no data, and so would fail any request.
+    ReadAheadDataSource dataSource = new ReadAheadDataSource(newDataSource(data),
+        newDataSourceFactory(new byte[0]), allocator, 2);
+    dataSource.readAhead(new DataSpec(Uri.parse("http://test/other"), 0, 100, null));
+
+    DataSpec dataSpec = new DataSpec(Uri.parse("http://test/segment"), 10, 100, null);
+    assertEquals(100, dataSource.open(dataSpec));
+    assertTrue(Arrays.equals(Arrays.copyOfRange(data, 10, 110), readToEnd(dataSource)));
+    dataSource.close();
+  }
+
+  public void testFailedReadAheadFallsBackToUpstream() throws IOException {
+    SlabAllocator allocator = new SlabAllocator(ALLOCATION_LENGTH * 4, ALLOCATION_LENGTH);
+    ReadAheadDataSource dataSource = new ReadAheadDataSource(newDataSource(data),
+        newDataSourceFactory(new byte[0]), allocator, 2);
+    DataSpec dataSpec = new DataSpec(Uri.parse("http://test/segment"), 0, DATA_LENGTH, null);
+    dataSource.readAhead(dataSpec);
+
+    assertEquals(DATA_LENGTH, dataSource.open(dataSpec));
+    assertTrue(Arrays.equals(data, readToEnd(dataSource)));
+    dataSource.close();
+  }
+
+  public void testCancelReadAheadReleasesMemory() throws Exception {
+    SlabAllocator allocator = new SlabAllocator(ALLOCATION_LENGTH * 4, ALLOCATION_LENGTH);
+    ReadAheadDataSource dataSource = new ReadAheadDataSource(newDataSource(new byte[0]),
+        newDataSourceFactory(data), allocator, 2);
+    dataSource.readAhead(new DataSpec(Uri.parse("http://test/segment0"), 0, DATA_LENGTH, null));
+    dataSource.readAhead(new DataSpec(Uri.parse("http://test/segment1"), 0, DATA_LENGTH, null));
+
+    dataSource.cancelReadAhead();
+    long deadlineMs = System.currentTimeMillis() + TIMEOUT_MS;
+    while (allocator.getTotalBytesAllocated() != 0 && System.currentTimeMillis() < deadlineMs) {
+      Thread.sleep(10);
+    }
+    assertEquals(0, allocator.getTotalBytesAllocated());
+  }
+
+  public void testInterruptedOpenReleasesMemory() throws Exception {
+    SlabAllocator allocator = new SlabAllocator(ALLOCATION_LENGTH * 4, ALLOCATION_LENGTH);
+    final CountDownLatch openLatch = new CountDownLatch(1);
+    final CountDownLatch closeLatch = new CountDownLatch(1);
+    // Opening the read ahead request blocks until the latch is released.
+    DataSourceFactory dataSourceFactory = new DataSourceFactory() {
+      @Override
+      public DataSource createDataSource() {
+        final DataSource upstream = newDataSource(data);
+        return new DataSource() {
+          @Override
+          public long open(DataSpec dataSpec) throws IOException {
+            try {
+              openLatch.await();
+            } catch (InterruptedException e) {
+              throw new InterruptedIOException();
+            }
+            return upstream.open(dataSpec);
+          }
+
+          @Override
+          public int read(byte[] buffer, int offset, int readLength) throws IOException {
+            return upstream.read(buffer, offset, readLength);
+          }
+
+          @Override
+          public void close() throws IOException {
+            upstream.close();
+            closeLatch.countDown();
+          }
+        };
+      }
+    };
+    final ReadAheadDataSource dataSource = new ReadAheadDataSource(newDataSource(data),
+        dataSourceFactory, allocator, 2);
+    final DataSpec dataSpec = new DataSpec(Uri.parse("http://test/segment"), 0, DATA_LENGTH,
+        null);
+    dataSource.readAhead(dataSpec);
+
+    final AtomicReference<Throwable> openError = new AtomicReference<>();
+    Thread openThread = new Thread() {
+      @Override
+      public void run() {
+        try {
+          dataSource.open(dataSpec);
+        } catch (Throwable e) {
+          openError.set(e);
+        }
+      }
+    };
+    openThread.start();
+    // Interrupt the thread whilst it waits for the read ahead request to be opened, as the loader
+    // does when a load is canceled.
+    while (openThread.getState() != Thread.State.WAITING) {
+      Thread.sleep(10);
+    }
+    openThread.interrupt();
+    openThread.join();
+    assertTrue(openError.get() instanceof InterruptedIOException);
+    dataSource.close();
+
+    // Once the read ahead request has finished loading, its memory should be released.
+    openLatch.countDown();
+    assertTrue(closeLatch.await(TIMEOUT_MS, TimeUnit.MILLISECONDS));
+    long deadlineMs = System.currentTimeMillis() + TIMEOUT_MS;
+    while (allocator.getTotalBytesAllocated() != 0 && System.currentTimeMillis() < deadlineMs) {
+      Thread.sleep(10);
+    }
+    assertEquals(0, allocator.getTotalBytesAllocated());
+  }
+
+  private void assertReadAheadRequestIsServedFromMemory(SlabAllocator allocator)
+      throws IOException {
+    // The upstream source has no data, and so would fail any request.
+    ReadAheadDataSource dataSource = new ReadAheadDataSource(newDataSource(new byte[0]),
+        newDataSourceFactory(data), allocator, 2);
+    DataSpec dataSpec = new DataSpec(Uri.parse("http://test/segment"), 0, C.LENGTH_UNBOUNDED,
+        null);
+    dataSource.readAhead(dataSpec);
+
+    assertEquals(DATA_LENGTH, dataSource.open(dataSpec));
+    assertTrue(Arrays.equals(data, readToEnd(dataSource)));
+    dataSource.close();
+    assertEquals(0, allocator.getTotalBytesAllocated());
+  }
+
+  private static DataSource newDataSource(byte[] data) {
+    FakeDataSource.Builder builder = new FakeDataSource.Builder();
+    if (data.length > 0) {
+      builder.appendReadData(data);
+    }
+    return builder.build();
+  }
+
+  private static DataSourceFactory newDataSourceFactory(final byte[] data) {
+    return new DataSourceFactory() {
+      @Override
+      public DataSource createDataSource() {
+        return newDataSource(data);
+      }
+    };
+  }
+
+  private static byte[] readToEnd(DataSource dataSource) throws IOException {
+    ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+    byte[] buffer = new byte[100];
+    int bytesRead;
+    while ((bytesRead = dataSource.read(buffer, 0, buffer.length)) != C.RESULT_END_OF_INPUT) {
+      outputStream.write(buffer, 0, bytesRead);
+    }
+    return outputStream.toByteArray();
+  }
+
+}
@@ -0,0 +1,141 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer.upstream;
+
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Unit tests for {@link SlabAllocator}.
+ */
+public class SlabAllocatorTest extends TestCase {
+
+  private static final int SLAB_LENGTH = 1024;
+  private static final int SMALL_LENGTH = 64;
+  private static final int LARGE_LENGTH = 256;
+
+  private SlabAllocator allocator;
+
+  @Override
+  protected void setUp() {
+    allocator = new SlabAllocator(SLAB_LENGTH, SMALL_LENGTH, LARGE_LENGTH);
+  }
+
+  public void testGetAllocatorSelectsSmallestSufficientSizeClass() {
+    assertEquals(SMALL_LENGTH, allocator.getAllocator(1).getIndividualAllocationLength());
+    assertEquals(SMALL_LENGTH, allocator.getAllocator(64).getIndividualAllocationLength());
+    assertEquals(LARGE_LENGTH, allocator.getAllocator(65).getIndividualAllocationLength());
+    assertEquals(LARGE_LENGTH, allocator.getAllocator(1000).getIndividualAllocationLength());
+    assertEquals(LARGE_LENGTH, allocator.getIndividualAllocationLength());
+  }
+
+  public void testAllocationsAreCarvedFromSlabs() {
+    Allocator smallAllocator = allocator.getAllocator(SMALL_LENGTH);
+    List<Allocation> allocations = new ArrayList<>();
+    for (int i = 0; i < SLAB_LENGTH / SMALL_LENGTH; i++) {
+      allocations.add(smallAllocator.allocate());
+    }
+    // All of the small allocations fit within a single slab, without overlapping.
+    assertEquals(SLAB_LENGTH, allocator.getTotalBytesReserved());
+    assertEquals(SLAB_LENGTH, allocator.getTotalBytesAllocated());
+    boolean[] used = new boolean[SLAB_LENGTH / SMALL_LENGTH];
+    for (Allocation allocation : allocations) {
+      assertSame(allocations.get(0).data, allocation.data);
+      int index = allocation.translateOffset(0) / SMALL_LENGTH;
+      assertFalse(used[index]);
+      used[index] = true;
+    }
+
+    // Allocating from the large size class requires a new slab.
+    allocator.allocate();
+    assertEquals(2 * SLAB_LENGTH, allocator.getTotalBytesReserved());
+    assertEquals(SLAB_LENGTH + LARGE_LENGTH, allocator.getTotalBytesAllocated());
+    assertEquals(SLAB_LENGTH, allocator.getBytesAllocated(SMALL_LENGTH));
+    assertEquals(LARGE_LENGTH, allocator.getBytesAllocated(LARGE_LENGTH));
+  }
+
+  public void testStatistics() {
+    Allocator smallAllocator = allocator.getAllocator(SMALL_LENGTH);
+    Allocation first = smallAllocator.allocate();
+    Allocation second = smallAllocator.allocate();
+    assertEquals(1f - (2f * SMALL_LENGTH) / SLAB_LENGTH, allocator.getFragmentation(), 0.0001f);
+
+    smallAllocator.release(first);
+    smallAllocator.release(second);
+    assertEquals(0, allocator.getTotalBytesAllocated());
+    assertEquals(2 * SMALL_LENGTH, allocator.getTotalBytesAllocatedHighWaterMark());
+    assertEquals(SLAB_LENGTH, allocator.getTotalBytesReservedHighWaterMark());
+    assertEquals(1f, allocator.getFragmentation(), 0.0001f);
+
+    allocator.resetHighWaterMarks();
+    assertEquals(0, allocator.getTotalBytesAllocatedHighWaterMark());
+  }
+
+  public void testTrimReleasesUnusedSlabs() {
+    Allocator smallAllocator = allocator.getAllocator(SMALL_LENGTH);
+    Allocation small = smallAllocator.allocate();
+    Allocation large = allocator.allocate();
+    allocator.release(large);
+    assertEquals(2 * SLAB_LENGTH, allocator.getTotalBytesReserved());
+
+    allocator.trim(0);
+    // The slab used by the large size class is discarded, but the one still in use is not.
+    assertEquals(SLAB_LENGTH, allocator.getTotalBytesReserved());
+    assertEquals(SLAB_LENGTH, allocator.getBytesReserved(SMALL_LENGTH));
+    assertEquals(0, allocator.getBytesReserved(LARGE_LENGTH));
+
+    smallAllocator.release(small);
+    allocator.trim(0);
+    assertEquals(0, allocator.getTotalBytesReserved());
+  }
+
+  public void testInitialSlabsAreReusedAcrossSizeClasses() {
+    allocator = new SlabAllocator(SLAB_LENGTH, new int[] {SMALL_LENGTH, LARGE_LENGTH}, 1, false);
+    assertEquals(SLAB_LENGTH, allocator.getTotalBytesReserved());
+    Allocation large = allocator.allocate();
+    allocator.release(large);
+    allocator.trim(0);
+    assertEquals(SLAB_LENGTH, allocator.getTotalBytesReserved());
+
+    Allocation small = allocator.getAllocator(SMALL_LENGTH).allocate();
+    assertSame(large.data, small.data);
+    assertEquals(SLAB_LENGTH, allocator.getTotalBytesReserved());
+  }
+
+  public void testDirectAllocationsAreDistinctRegionsOfSlab() {
+    allocator = new SlabAllocator(SLAB_LENGTH, new int[] {SMALL_LENGTH, LARGE_LENGTH}, 0, true);
+    Allocation first = allocator.allocate();
+    Allocation second = allocator.allocate();
+    assertTrue(first.isDirect());
+    assertNull(first.data);
+    assertTrue(first.buffer.isDirect());
+    assertEquals(LARGE_LENGTH, first.buffer.capacity());
+
+    first.buffer.duplicate().put(0, (byte) 1);
+    second.buffer.duplicate().put(0, (byte) 2);
+    assertEquals(1, first.buffer.get(0));
+    assertEquals(2, second.buffer.get(0));
+    assertEquals(SLAB_LENGTH, allocator.getTotalBytesReserved());
+
+    allocator.release(first);
+    allocator.release(second);
+    allocator.trim(0);
+    assertEquals(0, allocator.getTotalBytesReserved());
+  }
+
+}
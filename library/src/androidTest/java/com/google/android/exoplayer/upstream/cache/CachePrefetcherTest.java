@@ -0,0 +1,176 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer.upstream.cache;
+
+import com.google.android.exoplayer.C;
+import com.google.android.exoplayer.testutil.FakeDataSource;
+import com.google.android.exoplayer.testutil.TestUtil;
+import com.google.android.exoplayer.upstream.DataSource;
+import com.google.android.exoplayer.upstream.DataSourceFactory;
+import com.google.android.exoplayer.upstream.DataSpec;
+import com.google.android.exoplayer.upstream.NetworkLock;
+import com.google.android.exoplayer.upstream.NetworkLock.PriorityTooLowException;
+
+import android.net.Uri;
+
+import junit.framework.TestCase;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Unit tests for {@link CachePrefetcher}.
+ */
+public class CachePrefetcherTest extends TestCase {
+
+  private static final int TIMEOUT_MS = 5000;
+
+  private File cacheDir;
+  private SimpleCache cache;
+
+  @Override
+  protected void setUp() throws Exception {
+    cacheDir = File.createTempFile("CachePrefetcherTest", "");
+    assertTrue(cacheDir.delete());
+    assertTrue(cacheDir.mkdir());
+    cache = new SimpleCache(cacheDir, new NoOpCacheEvictor());
+  }
+
+  @Override
+  protected void tearDown() {
+    File[] files = cacheDir.listFiles();
+    if (files != null) {
+      for (File file : files) {
+        file.delete();
+      }
+    }
+    cacheDir.delete();
+  }
+
+  public void testPrefetchCachesAllRequests() throws Exception {
+    final byte[] data = TestUtil.buildTestData(100);
+    List<DataSpec> dataSpecs = new ArrayList<>();
+    for (int i = 0; i < 5; i++) {
+      dataSpecs.add(new DataSpec(Uri.parse("http://test/segment" + i), 0, C.LENGTH_UNBOUNDED,
+          null));
+    }
+    DataSourceFactory dataSourceFactory = new DataSourceFactory() {
+      @Override
+      public DataSource createDataSource() {
+        return new FakeDataSource.Builder().setSimulateUnknownLength(true)
+            .appendReadData(Arrays.copyOf(data, 40))
+            .appendReadData(Arrays.copyOfRange(data, 40, 100)).build();
+      }
+    };
+    CachePrefetcher prefetcher =
+        new CachePrefetcher(cache, dataSourceFactory, dataSpecs, 2, null, null);
+
+    prefetch(prefetcher);
+    assertEquals(5, prefetcher.getRequestsCompleted());
+    assertEquals(500, prefetcher.getBytesLoaded());
+    for (DataSpec dataSpec : dataSpecs) {
+      String key = dataSpec.uri.toString();
+      assertTrue(cache.isCached(key, 0, 100));
+      assertEquals(100, cache.getContentLength(key));
+      // The data should now be readable without touching the network.
+      assertTrue(Arrays.equals(data, readFromCache(dataSpec)));
+    }
+  }
+
+  public void testPrefetchResumesFromCachedData() throws Exception {
+    byte[] data = TestUtil.buildTestData(100);
+    final FakeDataSource upstream = new FakeDataSource.Builder()
+        .appendReadData(Arrays.copyOf(data, 40))
+        .appendReadError(new PriorityTooLowException(NetworkLock.DOWNLOAD_PRIORITY,
+            NetworkLock.STREAMING_PRIORITY))
+        .appendReadData(Arrays.copyOfRange(data, 40, 100)).build();
+    DataSpec dataSpec = new DataSpec(Uri.parse("http://test/segment"), 0, C.LENGTH_UNBOUNDED,
+        "key");
+    DataSourceFactory dataSourceFactory = new DataSourceFactory() {
+      @Override
+      public DataSource createDataSource() {
+        return upstream;
+      }
+    };
+    CachePrefetcher prefetcher = new CachePrefetcher(cache, dataSourceFactory,
+        Arrays.asList(dataSpec), 1, null, null);
+
+    prefetch(prefetcher);
+    assertEquals(1, prefetcher.getRequestsCompleted());
+    // The first 40 bytes were cached before the interruption, and are not requested again.
+    assertEquals(2, cache.getCachedSpans("key").size());
+    assertEquals(100, cache.getContentLength("key"));
+    assertTrue(Arrays.equals(data, readFromCache(dataSpec)));
+  }
+
+  public void testPrefetchSkipsCachedRequests() throws Exception {
+    byte[] data = TestUtil.buildTestData(100);
+    DataSpec dataSpec = new DataSpec(Uri.parse("http://test/segment"), 0, C.LENGTH_UNBOUNDED,
+        "key");
+    DataSource cacheDataSource = new CacheDataSource(cache,
+        new FakeDataSource.Builder().appendReadData(data).build(), true, false);
+    assertTrue(Arrays.equals(data, readToEnd(cacheDataSource, dataSpec)));
+
+    DataSourceFactory dataSourceFactory = new DataSourceFactory() {
+      @Override
+      public DataSource createDataSource() {
+        return new FakeDataSource.Builder().appendReadError(new IOException()).build();
+      }
+    };
+    CachePrefetcher prefetcher = new CachePrefetcher(cache, dataSourceFactory,
+        Arrays.asList(dataSpec), 1, null, null);
+
+    prefetch(prefetcher);
+    assertEquals(1, prefetcher.getRequestsCompleted());
+    assertEquals(100, prefetcher.getBytesLoaded());
+  }
+
+  private byte[] readFromCache(DataSpec dataSpec) throws IOException {
+    DataSource dataSource = new CacheDataSource(cache,
+        new FakeDataSource.Builder().appendReadError(new IOException("Not cached")).build(), true,
+        false);
+    return readToEnd(dataSource, dataSpec);
+  }
+
+  private static byte[] readToEnd(DataSource dataSource, DataSpec dataSpec) throws IOException {
+    ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+    byte[] buffer = new byte[16];
+    dataSource.open(dataSpec);
+    try {
+      int bytesRead;
+      while ((bytesRead = dataSource.read(buffer, 0, buffer.length)) != -1) {
+        outputStream.write(buffer, 0, bytesRead);
+      }
+    } finally {
+      dataSource.close();
+    }
+    return outputStream.toByteArray();
+  }
+
+  private static void prefetch(CachePrefetcher prefetcher) throws InterruptedException {
+    prefetcher.start();
+    long endTimeMs = System.currentTimeMillis() + TIMEOUT_MS;
+    while (!prefetcher.isFinished() && System.currentTimeMillis() < endTimeMs) {
+      Thread.sleep(10);
+    }
+    assertTrue(prefetcher.isFinished());
+  }
+
+}
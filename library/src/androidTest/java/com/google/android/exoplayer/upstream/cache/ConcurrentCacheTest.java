@@ -0,0 +1,178 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer.upstream.cache;
+
+import junit.framework.TestCase;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Unit tests for {@link ConcurrentCache}.
+ */
+public class ConcurrentCacheTest extends TestCase {
+
+  private static final String KEY_1 = "key1";
+  private static final String KEY_2 = "key2";
+
+  private File cacheDir;
+
+  @Override
+  protected void setUp() throws Exception {
+    cacheDir = File.createTempFile("ConcurrentCacheTest", "");
+    assertTrue(cacheDir.delete());
+    assertTrue(cacheDir.mkdir());
+  }
+
+  @Override
+  protected void tearDown() {
+    File[] files = cacheDir.listFiles();
+    if (files != null) {
+      for (File file : files) {
+        file.delete();
+      }
+    }
+    cacheDir.delete();
+  }
+
+  public void testReadAndWrite() throws Exception {
+    ConcurrentCache cache = new ConcurrentCache(cacheDir, new NoOpCacheEvictor());
+    assertNull(cache.getCachedSpans(KEY_1));
+    addCacheFile(cache, KEY_1, 0, 10);
+    addCacheFile(cache, KEY_1, 20, 10);
+
+    assertEquals(20, cache.getCacheSpace());
+    assertEquals(2, cache.getCachedSpans(KEY_1).size());
+    assertTrue(cache.isCached(KEY_1, 0, 10));
+    assertFalse(cache.isCached(KEY_1, 0, 30));
+    CacheSpan span = cache.startReadWrite(KEY_1, 5);
+    assertTrue(span.isCached);
+    assertEquals(0, span.position);
+    CacheSpan holeSpan = cache.startReadWrite(KEY_1, 15);
+    assertFalse(holeSpan.isCached);
+    assertEquals(15, holeSpan.position);
+    assertEquals(5, holeSpan.length);
+    cache.releaseHoleSpan(holeSpan);
+  }
+
+  public void testSpansAreRestored() throws Exception {
+    ConcurrentCache cache = new ConcurrentCache(cacheDir, new NoOpCacheEvictor());
+    addCacheFile(cache, KEY_1, 0, 10);
+    addCacheFile(cache, KEY_2, 0, 10);
+    cache.removeSpan(cache.getCachedSpans(KEY_2).first());
+
+    ConcurrentCache restoredCache = new ConcurrentCache(cacheDir, new NoOpCacheEvictor());
+    assertTrue(restoredCache.isCached(KEY_1, 0, 10));
+    assertNull(restoredCache.getCachedSpans(KEY_2));
+    assertEquals(10, restoredCache.getCacheSpace());
+  }
+
+  public void testLockedKeyDoesNotBlockOtherKeys() throws Exception {
+    ConcurrentCache cache = new ConcurrentCache(cacheDir, new NoOpCacheEvictor());
+    CacheSpan holeSpan = cache.startReadWrite(KEY_1, 0);
+    assertNull(cache.startReadWriteNonBlocking(KEY_1, 0));
+    addCacheFile(cache, KEY_2, 0, 10);
+    assertTrue(cache.isCached(KEY_2, 0, 10));
+    cache.releaseHoleSpan(holeSpan);
+  }
+
+  public void testBlockedWriterBecomesReaderWhenSpanIsCommitted() throws Exception {
+    final ConcurrentCache cache = new ConcurrentCache(cacheDir, new NoOpCacheEvictor());
+    CacheSpan holeSpan = cache.startReadWrite(KEY_1, 0);
+    final AtomicReference<CacheSpan> blockedSpan = new AtomicReference<>();
+    final CountDownLatch acquiredLatch = new CountDownLatch(1);
+    new Thread() {
+      @Override
+      public void run() {
+        try {
+          blockedSpan.set(cache.startReadWrite(KEY_1, 5));
+          acquiredLatch.countDown();
+        } catch (InterruptedException e) {
+          // Do nothing.
+        }
+      }
+    }.start();
+    assertFalse(acquiredLatch.await(50, TimeUnit.MILLISECONDS));
+
+    File file = cache.startFile(KEY_1, 0, 10);
+    writeFile(file, 10);
+    cache.commitFile(file);
+    assertTrue(acquiredLatch.await(1, TimeUnit.SECONDS));
+    assertTrue(blockedSpan.get().isCached);
+    cache.releaseHoleSpan(holeSpan);
+  }
+
+  public void testBlockedWriterAcquiresLockWhenHoleIsReleased() throws Exception {
+    final ConcurrentCache cache = new ConcurrentCache(cacheDir, new NoOpCacheEvictor());
+    CacheSpan holeSpan = cache.startReadWrite(KEY_1, 0);
+    final AtomicReference<CacheSpan> blockedSpan = new AtomicReference<>();
+    final CountDownLatch acquiredLatch = new CountDownLatch(1);
+    new Thread() {
+      @Override
+      public void run() {
+        try {
+          blockedSpan.set(cache.startReadWrite(KEY_1, 0));
+          acquiredLatch.countDown();
+        } catch (InterruptedException e) {
+          // Do nothing.
+        }
+      }
+    }.start();
+    assertFalse(acquiredLatch.await(50, TimeUnit.MILLISECONDS));
+
+    cache.releaseHoleSpan(holeSpan);
+    assertTrue(acquiredLatch.await(1, TimeUnit.SECONDS));
+    assertFalse(blockedSpan.get().isCached);
+    cache.releaseHoleSpan(blockedSpan.get());
+  }
+
+  public void testLeastRecentlyUsedEviction() throws Exception {
+    ConcurrentCache cache = new ConcurrentCache(cacheDir, new LeastRecentlyUsedCacheEvictor(20));
+    addCacheFile(cache, KEY_1, 0, 10);
+    Thread.sleep(2);
+    addCacheFile(cache, KEY_2, 0, 10);
+    Thread.sleep(2);
+    // Access the first span, so that the second becomes the least recently used.
+    assertTrue(cache.startReadWrite(KEY_1, 0).isCached);
+    addCacheFile(cache, KEY_2, 10, 10);
+
+    assertEquals(20, cache.getCacheSpace());
+    assertTrue(cache.isCached(KEY_1, 0, 10));
+    assertFalse(cache.isCached(KEY_2, 0, 10));
+    assertTrue(cache.isCached(KEY_2, 10, 10));
+  }
+
+  private static void addCacheFile(Cache cache, String key, long position, int length)
+      throws IOException, InterruptedException {
+    CacheSpan holeSpan = cache.startReadWrite(key, position);
+    assertFalse(holeSpan.isCached);
+    File file = cache.startFile(key, position, length);
+    writeFile(file, length);
+    cache.commitFile(file);
+    cache.releaseHoleSpan(holeSpan);
+  }
+
+  private static void writeFile(File file, int length) throws IOException {
+    FileOutputStream outputStream = new FileOutputStream(file);
+    outputStream.write(new byte[length]);
+    outputStream.close();
+  }
+
+}
@@ -0,0 +1,228 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer.upstream.cache;
+
+import com.google.android.exoplayer.C;
+
+import junit.framework.TestCase;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.NavigableSet;
+
+/**
+ * Unit tests for {@link SimpleCache}.
+ */
+public class SimpleCacheTest extends TestCase {
+
+  private static final String KEY_1 = "key1";
+  private static final String KEY_2 = "key2";
+
+  private File cacheDir;
+
+  @Override
+  protected void setUp() throws Exception {
+    cacheDir = File.createTempFile("SimpleCacheTest", "");
+    assertTrue(cacheDir.delete());
+    assertTrue(cacheDir.mkdir());
+  }
+
+  @Override
+  protected void tearDown() {
+    File[] files = cacheDir.listFiles();
+    if (files != null) {
+      for (File file : files) {
+        file.delete();
+      }
+    }
+    cacheDir.delete();
+  }
+
+  public void testCommittedSpansAreRestoredFromIndex() throws Exception {
+    SimpleCache cache = new SimpleCache(cacheDir, new NoOpCacheEvictor());
+    addCacheFile(cache, KEY_1, 0, 15);
+    addCacheFile(cache, KEY_1, 15, 5);
+    addCacheFile(cache, KEY_2, 0, 10);
+
+    SimpleCache restoredCache = new SimpleCache(cacheDir, new NoOpCacheEvictor());
+    assertEquals(30, restoredCache.getCacheSpace());
+    assertEquals(2, restoredCache.getKeys().size());
+    assertTrue(restoredCache.isCached(KEY_1, 0, 20));
+    assertTrue(restoredCache.isCached(KEY_2, 0, 10));
+  }
+
+  public void testTouchDoesNotRenameFile() throws Exception {
+    SimpleCache cache = new SimpleCache(cacheDir, new NoOpCacheEvictor());
+    addCacheFile(cache, KEY_1, 0, 10);
+    CacheSpan span = cache.getCachedSpans(KEY_1).first();
+
+    Thread.sleep(2);
+    CacheSpan touchedSpan = cache.startReadWrite(KEY_1, 0);
+    assertTrue(touchedSpan.isCached);
+    assertEquals(span.file, touchedSpan.file);
+    assertTrue(span.file.exists());
+    assertTrue(touchedSpan.lastAccessTimestamp > span.lastAccessTimestamp);
+  }
+
+  public void testRemovedSpansAreNotRestoredFromIndex() throws Exception {
+    SimpleCache cache = new SimpleCache(cacheDir, new NoOpCacheEvictor());
+    addCacheFile(cache, KEY_1, 0, 10);
+    addCacheFile(cache, KEY_2, 0, 10);
+    cache.removeSpan(cache.getCachedSpans(KEY_1).first());
+
+    SimpleCache restoredCache = new SimpleCache(cacheDir, new NoOpCacheEvictor());
+    assertNull(restoredCache.getCachedSpans(KEY_1));
+    assertEquals(10, restoredCache.getCacheSpace());
+  }
+
+  public void testMissingIndexIsRebuiltFromCacheDir() throws Exception {
+    addLegacyCacheFile(KEY_1, 0, 10);
+
+    SimpleCache restoredCache = new SimpleCache(cacheDir, new NoOpCacheEvictor());
+    assertTrue(restoredCache.isCached(KEY_1, 0, 10));
+    assertTrue(new File(cacheDir, CacheIndex.FILE_NAME).exists());
+    SimpleCache secondRestoredCache = new SimpleCache(cacheDir, new NoOpCacheEvictor());
+    assertTrue(secondRestoredCache.isCached(KEY_1, 0, 10));
+  }
+
+  public void testFilesNamedByKeyIdAreDeletedIfIndexIsMissing() throws Exception {
+    SimpleCache cache = new SimpleCache(cacheDir, new NoOpCacheEvictor());
+    addCacheFile(cache, KEY_1, 0, 10);
+    File file = cache.getCachedSpans(KEY_1).first().file;
+    assertTrue(new File(cacheDir, CacheIndex.FILE_NAME).delete());
+
+    SimpleCache restoredCache = new SimpleCache(cacheDir, new NoOpCacheEvictor());
+    assertNull(restoredCache.getCachedSpans(KEY_1));
+    assertFalse(file.exists());
+  }
+
+  public void testLongKeysAreRestoredFromIndex() throws Exception {
+    StringBuilder keyBuilder = new StringBuilder("http://test/");
+    while (keyBuilder.length() < 1000) {
+      keyBuilder.append("seg%20ment/");
+    }
+    String key = keyBuilder.toString();
+    SimpleCache cache = new SimpleCache(cacheDir, new NoOpCacheEvictor());
+    addCacheFile(cache, key, 0, 10);
+    addCacheFile(cache, KEY_1, 0, 10);
+    assertTrue(cache.getCachedSpans(key).first().file.getName().length() < 255);
+
+    SimpleCache restoredCache = new SimpleCache(cacheDir, new NoOpCacheEvictor());
+    assertTrue(restoredCache.isCached(key, 0, 10));
+    assertTrue(restoredCache.isCached(KEY_1, 0, 10));
+    // Keys added after restoring the index are assigned ids distinct from those restored.
+    addCacheFile(restoredCache, KEY_2, 0, 5);
+    assertTrue(restoredCache.isCached(key, 0, 10));
+    assertTrue(restoredCache.isCached(KEY_1, 0, 10));
+    assertTrue(restoredCache.isCached(KEY_2, 0, 5));
+  }
+
+  public void testTruncatedIndexIsRecovered() throws Exception {
+    SimpleCache cache = new SimpleCache(cacheDir, new NoOpCacheEvictor());
+    addCacheFile(cache, KEY_1, 0, 10);
+    addCacheFile(cache, KEY_2, 0, 10);
+    // Chop the end off the record for the second span.
+    File indexFile = new File(cacheDir, CacheIndex.FILE_NAME);
+    RandomAccessFile randomAccessFile = new RandomAccessFile(indexFile, "rw");
+    randomAccessFile.setLength(randomAccessFile.length() - 3);
+    randomAccessFile.close();
+
+    SimpleCache restoredCache = new SimpleCache(cacheDir, new NoOpCacheEvictor());
+    assertTrue(restoredCache.isCached(KEY_1, 0, 10));
+    assertNull(restoredCache.getCachedSpans(KEY_2));
+    // Spans added after recovery should be restored too.
+    addCacheFile(restoredCache, KEY_2, 0, 5);
+    SimpleCache secondRestoredCache = new SimpleCache(cacheDir, new NoOpCacheEvictor());
+    assertTrue(secondRestoredCache.isCached(KEY_1, 0, 10));
+    assertTrue(secondRestoredCache.isCached(KEY_2, 0, 5));
+  }
+
+  public void testIndexIsCompacted() throws Exception {
+    SimpleCache cache = new SimpleCache(cacheDir, new NoOpCacheEvictor());
+    addCacheFile(cache, KEY_1, 0, 10);
+    File indexFile = new File(cacheDir, CacheIndex.FILE_NAME);
+    long initialIndexLength = indexFile.length();
+    for (int i = 0; i < 5000; i++) {
+      cache.startReadWrite(KEY_1, 0);
+    }
+    NavigableSet<CacheSpan> spans = cache.getCachedSpans(KEY_1);
+
+    // The index is bounded in size, but retains the most recent access time.
+    assertTrue(indexFile.length() < initialIndexLength * 1000);
+    SimpleCache restoredCache = new SimpleCache(cacheDir, new NoOpCacheEvictor());
+    assertTrue(restoredCache.isCached(KEY_1, 0, 10));
+    assertTrue(restoredCache.getCachedSpans(KEY_1).first().lastAccessTimestamp
+        >= spans.first().lastAccessTimestamp - 1000);
+  }
+
+  public void testKeysWithUnsafeCharactersAreRestoredFromCacheDir() throws Exception {
+    String key = "http://test/seg%20ment?a=b.ts";
+    addLegacyCacheFile(key, 0, 10);
+
+    SimpleCache restoredCache = new SimpleCache(cacheDir, new NoOpCacheEvictor());
+    assertTrue(restoredCache.isCached(key, 0, 10));
+  }
+
+  public void testContentLengthIsRestoredFromIndex() throws Exception {
+    SimpleCache cache = new SimpleCache(cacheDir, new NoOpCacheEvictor());
+    addCacheFile(cache, KEY_1, 0, 10);
+    cache.setContentLength(KEY_1, 20);
+
+    SimpleCache restoredCache = new SimpleCache(cacheDir, new NoOpCacheEvictor());
+    assertEquals(20, restoredCache.getContentLength(KEY_1));
+    restoredCache.removeSpan(restoredCache.getCachedSpans(KEY_1).first());
+    assertEquals(C.LENGTH_UNBOUNDED, restoredCache.getContentLength(KEY_1));
+  }
+
+  public void testUncommittedFilesAreDeletedOnLoad() throws Exception {
+    SimpleCache cache = new SimpleCache(cacheDir, new NoOpCacheEvictor());
+    addCacheFile(cache, KEY_1, 0, 10);
+    // Simulate the process dying after a span was written but before it was committed.
+    cache.startReadWrite(KEY_1, 10);
+    File uncommittedFile = cache.startFile(KEY_1, 10, 10);
+    FileOutputStream outputStream = new FileOutputStream(uncommittedFile);
+    outputStream.write(new byte[10]);
+    outputStream.close();
+
+    SimpleCache restoredCache = new SimpleCache(cacheDir, new NoOpCacheEvictor());
+    assertTrue(restoredCache.isCached(KEY_1, 0, 10));
+    assertFalse(restoredCache.isCached(KEY_1, 10, 10));
+    assertFalse(uncommittedFile.exists());
+    assertEquals(10, restoredCache.getCacheSpace());
+  }
+
+  private void addLegacyCacheFile(String key, long position, int length) throws IOException {
+    File file = CacheSpan.getCacheFileName(cacheDir, key, position, System.currentTimeMillis());
+    FileOutputStream outputStream = new FileOutputStream(file);
+    outputStream.write(new byte[length]);
+    outputStream.close();
+  }
+
+  private static void addCacheFile(Cache cache, String key, long position, int length)
+      throws IOException, InterruptedException {
+    CacheSpan holeSpan = cache.startReadWrite(key, position);
+    assertFalse(holeSpan.isCached);
+    File file = cache.startFile(key, position, length);
+    FileOutputStream outputStream = new FileOutputStream(file);
+    outputStream.write(new byte[length]);
+    outputStream.close();
+    cache.commitFile(file);
+    cache.releaseHoleSpan(holeSpan);
+  }
+
+}
@@ -16,16 +16,25 @@
 package com.google.android.exoplayer.util;
 
 /**
- * A {@link Clock} that returns a fixed value specified in the constructor.
+ * A {@link Clock} that returns the value specified in the constructor, until it is advanced.
  */
 public class FakeClock implements Clock {
 
-  private final long timeMs;
+  private long timeMs;
 
   public FakeClock(long timeMs) {
     this.timeMs = timeMs;
   }
 
+  /**
+   * Advances the time returned by the clock.
+   *
+   * @param timeDiffMs The amount by which to advance the time, in milliseconds.
+   */
+  public void advanceTime(long timeDiffMs) {
+    timeMs += timeDiffMs;
+  }
+
   @Override
   public long elapsedRealtime() {
     return timeMs;
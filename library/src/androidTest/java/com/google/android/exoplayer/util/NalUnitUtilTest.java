@@ -19,6 +19,7 @@ import junit.framework.TestCase;
 
 import java.nio.ByteBuffer;
 import java.util.Arrays;
+import java.util.Random;
 
 /**
  * Tests for {@link NalUnitUtil}.
@@ -111,6 +112,43 @@ public class NalUnitUtilTest extends TestCase {
     assertPrefixFlagsCleared(prefixFlags);
   }
 
+  public void testFindNalUnitMatchesBytewiseSearch() {
+    byte[] data = buildRandomTestData();
+    for (int startOffset = 0; startOffset < 16; startOffset++) {
+      int offset = startOffset;
+      while (true) {
+        int expected = findNalUnitBytewise(data, offset, data.length);
+        assertEquals(expected, NalUnitUtil.findNalUnit(data, offset, data.length, null));
+        if (expected == data.length) {
+          break;
+        }
+        offset = expected + 3;
+      }
+    }
+  }
+
+  public void testFindNalUnitWithPrefixMatchesBytewiseSearch() {
+    byte[] data = buildRandomTestData();
+    for (int chunkLength = 1; chunkLength < 12; chunkLength++) {
+      boolean[] prefixFlags = new boolean[3];
+      int expected = findNalUnitBytewise(data, 0, data.length);
+      for (int chunkStart = 0; chunkStart < data.length; chunkStart += chunkLength) {
+        int chunkEnd = Math.min(chunkStart + chunkLength, data.length);
+        int offset = chunkStart;
+        while (offset < chunkEnd) {
+          int result = NalUnitUtil.findNalUnit(data, offset, chunkEnd, prefixFlags);
+          if (result == chunkEnd) {
+            break;
+          }
+          assertEquals(expected, result);
+          expected = findNalUnitBytewise(data, expected + 3, data.length);
+          offset = Math.max(result + 3, offset);
+        }
+      }
+      assertEquals(data.length, expected);
+    }
+  }
+
   public void testUnescapeDoesNotModifyBuffersWithoutStartCodes() {
     assertUnescapeDoesNotModify("");
     assertUnescapeDoesNotModify("0000");
@@ -155,6 +193,30 @@ public class NalUnitUtilTest extends TestCase {
     return data;
   }
 
+  /**
+   * Returns pseudo-random data containing start codes, partial start codes and runs of zeros.
+   */
+  private static byte[] buildRandomTestData() {
+    Random random = new Random(0);
+    byte[] data = new byte[4096];
+    for (int i = 0; i < data.length; i++) {
+      // Make zeros and ones common, so that every path through the search is taken.
+      int value = random.nextInt(8);
+      data[i] = (byte) (value < 3 ? 0 : value == 3 ? 1 : random.nextInt(256));
+    }
+    return data;
+  }
+
+  private static int findNalUnitBytewise(byte[] data, int startOffset, int endOffset) {
+    // The byte following the prefix must lie within the searched range.
+    for (int i = startOffset; i + 3 < endOffset; i++) {
+      if (data[i] == 0 && data[i + 1] == 0 && data[i + 2] == 1) {
+        return i;
+      }
+    }
+    return endOffset;
+  }
+
   private static void assertPrefixFlagsCleared(boolean[] flags) {
     assertEquals(false, flags[0] || flags[1] || flags[2]);
   }
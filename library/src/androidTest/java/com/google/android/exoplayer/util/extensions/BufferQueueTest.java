@@ -0,0 +1,85 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer.util.extensions;
+
+import junit.framework.TestCase;
+
+import java.util.concurrent.Semaphore;
+
+/**
+ * Unit tests for {@link BufferQueue}.
+ */
+public class BufferQueueTest extends TestCase {
+
+  private static final int POOL_SIZE = 5;
+
+  public void testBuffersArePolledInOfferOrder() {
+    BufferQueue<Integer> queue = new BufferQueue<>(POOL_SIZE);
+    assertTrue(queue.isEmpty());
+    assertNull(queue.poll());
+    for (int i = 0; i < 100; i++) {
+      queue.offer(i);
+      queue.offer(-i);
+      assertEquals(2, queue.size());
+      assertEquals(i, (int) queue.poll());
+      assertEquals(-i, (int) queue.poll());
+      assertTrue(queue.isEmpty());
+    }
+  }
+
+  public void testConcurrentProducers() throws InterruptedException {
+    final int producerCount = 3;
+    final int buffersPerProducer = 10000;
+    final BufferQueue<Integer> queue = new BufferQueue<>(POOL_SIZE);
+    // Models a pool of buffers, each of which may be in the queue at most once.
+    final Semaphore pool = new Semaphore(POOL_SIZE);
+    Thread[] producers = new Thread[producerCount];
+    for (int i = 0; i < producerCount; i++) {
+      final int producer = i;
+      producers[i] = new Thread() {
+        @Override
+        public void run() {
+          for (int j = 0; j < buffersPerProducer; j++) {
+            pool.acquireUninterruptibly();
+            queue.offer(j * producerCount + producer);
+          }
+        }
+      };
+      producers[i].start();
+    }
+
+    int[] nextValues = new int[producerCount];
+    int polledCount = 0;
+    while (polledCount < producerCount * buffersPerProducer) {
+      Integer value = queue.poll();
+      if (value == null) {
+        Thread.yield();
+        continue;
+      }
+      pool.release();
+      // Buffers from each producer are polled in the order in which they were offered.
+      int producer = value % producerCount;
+      assertEquals(nextValues[producer] * producerCount + producer, (int) value);
+      nextValues[producer]++;
+      polledCount++;
+    }
+    for (Thread producer : producers) {
+      producer.join();
+    }
+    assertTrue(queue.isEmpty());
+  }
+
+}
@@ -0,0 +1,280 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer.util.extensions;
+
+import com.google.android.exoplayer.C;
+
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Unit tests for {@link SimpleDecoder}, using a fake decoder.
+ */
+public class SimpleDecoderTest extends TestCase {
+
+  private static final int TIMEOUT_MS = 5000;
+  private static final int BUFFER_COUNT = 4;
+
+  private FakeDecoder decoder;
+
+  @Override
+  protected void setUp() {
+    decoder = new FakeDecoder();
+    decoder.start();
+  }
+
+  @Override
+  protected void tearDown() {
+    decoder.release();
+  }
+
+  public void testOutputIsInInputOrder() throws Exception {
+    int sampleCount = BUFFER_COUNT * 50;
+    int queuedSampleCount = 0;
+    List<Long> timestamps = new ArrayList<>();
+    long deadlineMs = System.currentTimeMillis() + TIMEOUT_MS;
+    while (timestamps.size() < sampleCount && System.currentTimeMillis() < deadlineMs) {
+      InputBuffer inputBuffer;
+      if (queuedSampleCount < sampleCount
+          && (inputBuffer = decoder.dequeueInputBuffer()) != null) {
+        inputBuffer.sampleHolder.timeUs = queuedSampleCount++;
+        decoder.queueInputBuffer(inputBuffer);
+      }
+      FakeOutputBuffer outputBuffer = decoder.dequeueOutputBuffer();
+      if (outputBuffer != null) {
+        timestamps.add(outputBuffer.timestampUs);
+        outputBuffer.release();
+      }
+    }
+    assertEquals(sampleCount, timestamps.size());
+    for (int i = 0; i < sampleCount; i++) {
+      assertEquals(i, (long) timestamps.get(i));
+    }
+    assertEquals(sampleCount, decoder.getDecodedBufferCount());
+    assertTrue(decoder.getMaxQueuedInputBufferCount() <= BUFFER_COUNT);
+    assertTrue(decoder.getMaxDecodeLatencyUs() <= decoder.getTotalDecodeLatencyUs());
+  }
+
+  public void testInputBuffersAreLimited() throws Exception {
+    decoder.blockDecoding();
+    for (int i = 0; i < BUFFER_COUNT; i++) {
+      queueSample(i);
+    }
+    assertNull(decoder.dequeueInputBuffer());
+    decoder.unblockDecoding();
+    for (int i = 0; i < BUFFER_COUNT; i++) {
+      assertNextOutputTimestamp(i);
+    }
+    assertNotNull(dequeueInputBuffer());
+  }
+
+  public void testFlushDiscardsQueuedAndDecodedBuffers() throws Exception {
+    decoder.blockDecoding();
+    queueSample(0);
+    queueSample(1);
+    queueSample(2);
+    // Wait for the decoder thread to start decoding the first sample.
+    assertTrue(decoder.decodeStarted.tryAcquire(TIMEOUT_MS, TimeUnit.MILLISECONDS));
+    decoder.flush();
+    decoder.unblockDecoding();
+
+    // All of the input buffers are returned once the decoder thread has caught up.
+    for (int i = 0; i < BUFFER_COUNT; i++) {
+      queueSample(10 + i, dequeueInputBuffer());
+    }
+    for (int i = 0; i < BUFFER_COUNT; i++) {
+      assertNextOutputTimestamp(10 + i);
+    }
+    assertNull(decoder.dequeueOutputBuffer());
+    // Only the first sample decoded after the flush resets the decoder.
+    assertEquals(1, decoder.resetCount);
+    assertEquals(10, decoder.lastResetTimeUs);
+  }
+
+  public void testFlushReturnsDequeuedInputBuffer() throws Exception {
+    decoder.blockDecoding();
+    for (int i = 0; i < BUFFER_COUNT - 1; i++) {
+      queueSample(i);
+    }
+    InputBuffer inputBuffer = decoder.dequeueInputBuffer();
+    assertNotNull(inputBuffer);
+    assertTrue(decoder.decodeStarted.tryAcquire(TIMEOUT_MS, TimeUnit.MILLISECONDS));
+    decoder.flush();
+    // The dequeued buffer is available again, whilst the queued buffers are still held by the
+    // blocked decoder thread.
+    assertSame(inputBuffer, decoder.dequeueInputBuffer());
+  }
+
+  public void testDecodeOnlyAndEndOfStream() throws Exception {
+    InputBuffer inputBuffer = dequeueInputBuffer();
+    inputBuffer.sampleHolder.timeUs = 0;
+    inputBuffer.sampleHolder.flags = C.SAMPLE_FLAG_DECODE_ONLY;
+    decoder.queueInputBuffer(inputBuffer);
+    queueSample(1);
+    inputBuffer = dequeueInputBuffer();
+    inputBuffer.setFlag(Buffer.FLAG_END_OF_STREAM);
+    decoder.queueInputBuffer(inputBuffer);
+
+    assertNextOutputTimestamp(1);
+    FakeOutputBuffer outputBuffer = dequeueOutputBuffer();
+    assertTrue(outputBuffer.getFlag(Buffer.FLAG_END_OF_STREAM));
+    outputBuffer.release();
+    assertEquals(2, decoder.decodeCount);
+  }
+
+  public void testDecoderExceptionIsThrown() throws Exception {
+    queueSample(FakeDecoder.ERROR_TIME_US);
+    long deadlineMs = System.currentTimeMillis() + TIMEOUT_MS;
+    while (System.currentTimeMillis() < deadlineMs) {
+      try {
+        decoder.dequeueOutputBuffer();
+      } catch (FakeDecoderException e) {
+        return;
+      }
+      Thread.sleep(1);
+    }
+    fail();
+  }
+
+  private void queueSample(long timeUs) throws Exception {
+    queueSample(timeUs, decoder.dequeueInputBuffer());
+  }
+
+  private void queueSample(long timeUs, InputBuffer inputBuffer) throws Exception {
+    inputBuffer.sampleHolder.timeUs = timeUs;
+    decoder.queueInputBuffer(inputBuffer);
+  }
+
+  private void assertNextOutputTimestamp(long timeUs) throws Exception {
+    FakeOutputBuffer outputBuffer = dequeueOutputBuffer();
+    assertEquals(timeUs, outputBuffer.timestampUs);
+    assertFalse(outputBuffer.getFlag(Buffer.FLAG_END_OF_STREAM));
+    outputBuffer.release();
+  }
+
+  private InputBuffer dequeueInputBuffer() throws Exception {
+    long deadlineMs = System.currentTimeMillis() + TIMEOUT_MS;
+    InputBuffer inputBuffer;
+    while ((inputBuffer = decoder.dequeueInputBuffer()) == null
+        && System.currentTimeMillis() < deadlineMs) {
+      Thread.sleep(1);
+    }
+    assertNotNull(inputBuffer);
+    return inputBuffer;
+  }
+
+  private FakeOutputBuffer dequeueOutputBuffer() throws Exception {
+    long deadlineMs = System.currentTimeMillis() + TIMEOUT_MS;
+    FakeOutputBuffer outputBuffer;
+    while ((outputBuffer = decoder.dequeueOutputBuffer()) == null
+        && System.currentTimeMillis() < deadlineMs) {
+      Thread.sleep(1);
+    }
+    assertNotNull(outputBuffer);
+    return outputBuffer;
+  }
+
+  private static final class FakeDecoderException extends Exception {}
+
+  private static final class FakeOutputBuffer extends OutputBuffer {
+
+    private final FakeDecoder owner;
+
+    public FakeOutputBuffer(FakeDecoder owner) {
+      this.owner = owner;
+    }
+
+    @Override
+    public void release() {
+      owner.releaseOutputBuffer(this);
+    }
+
+  }
+
+  private static final class FakeDecoder
+      extends SimpleDecoder<InputBuffer, FakeOutputBuffer, FakeDecoderException> {
+
+    public static final long ERROR_TIME_US = -1;
+
+    public final Semaphore decodeStarted;
+
+    public volatile int decodeCount;
+    public volatile int resetCount;
+    public volatile long lastResetTimeUs;
+
+    private boolean blocked;
+
+    public FakeDecoder() {
+      super(new InputBuffer[BUFFER_COUNT], new FakeOutputBuffer[BUFFER_COUNT]);
+      decodeStarted = new Semaphore(0);
+    }
+
+    public synchronized void blockDecoding() {
+      blocked = true;
+    }
+
+    public synchronized void unblockDecoding() {
+      blocked = false;
+      notifyAll();
+    }
+
+    @Override
+    public void release() {
+      unblockDecoding();
+      super.release();
+    }
+
+    @Override
+    protected InputBuffer createInputBuffer() {
+      return new InputBuffer(16);
+    }
+
+    @Override
+    protected FakeOutputBuffer createOutputBuffer() {
+      return new FakeOutputBuffer(this);
+    }
+
+    @Override
+    protected FakeDecoderException decode(InputBuffer inputBuffer, FakeOutputBuffer outputBuffer,
+        boolean reset) {
+      decodeStarted.release();
+      waitUntilUnblocked();
+      decodeCount++;
+      long timeUs = inputBuffer.sampleHolder.timeUs;
+      if (reset) {
+        resetCount++;
+        lastResetTimeUs = timeUs;
+      }
+      return timeUs == ERROR_TIME_US ? new FakeDecoderException() : null;
+    }
+
+    private synchronized void waitUntilUnblocked() {
+      while (blocked) {
+        try {
+          wait();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+      }
+    }
+
+  }
+
+}
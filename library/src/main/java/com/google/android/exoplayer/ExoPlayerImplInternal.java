@@ -60,13 +60,14 @@ import java.util.concurrent.atomic.AtomicInteger;
   private static final int MSG_CUSTOM = 9;
 
   private static final int PREPARE_INTERVAL_MS = 10;
-  private static final int RENDERING_INTERVAL_MS = 10;
+  private static final int BUFFERING_INTERVAL_MS = 10;
   private static final int IDLE_INTERVAL_MS = 1000;
 
   private final Handler handler;
   private final HandlerThread internalPlaybackThread;
   private final Handler eventHandler;
   private final StandaloneMediaClock standaloneMediaClock;
+  private final WorkScheduler workScheduler;
   private final AtomicInteger pendingSeekCount;
   private final List<TrackRenderer> enabledRenderers;
   private final MediaFormat[][] trackFormats;
@@ -103,6 +104,7 @@ import java.util.concurrent.atomic.AtomicInteger;
     this.bufferedPositionUs = TrackRenderer.UNKNOWN_TIME_US;
 
     standaloneMediaClock = new StandaloneMediaClock();
+    workScheduler = new WorkScheduler();
     pendingSeekCount = new AtomicInteger();
     enabledRenderers = new ArrayList<>(selectedTrackIndices.length);
     trackFormats = new MediaFormat[selectedTrackIndices.length][];
@@ -273,7 +275,7 @@ import java.util.concurrent.atomic.AtomicInteger;
   }
 
   private void incrementalPrepareInternal() throws ExoPlaybackException {
-    long operationStartTimeMs = SystemClock.elapsedRealtime();
+    workScheduler.onOperationStarted();
     boolean prepared = true;
     for (int rendererIndex = 0; rendererIndex < renderers.length; rendererIndex++) {
       TrackRenderer renderer = renderers[rendererIndex];
@@ -288,7 +290,8 @@ import java.util.concurrent.atomic.AtomicInteger;
 
     if (!prepared) {
       // We're still waiting for some sources to be prepared.
-      scheduleNextOperation(MSG_INCREMENTAL_PREPARE, operationStartTimeMs, PREPARE_INTERVAL_MS);
+      scheduleNextOperation(MSG_INCREMENTAL_PREPARE,
+          workScheduler.getDelayMs(PREPARE_INTERVAL_MS));
       return;
     }
 
@@ -417,7 +420,7 @@ import java.util.concurrent.atomic.AtomicInteger;
 
   private void doSomeWork() throws ExoPlaybackException {
     TraceUtil.beginSection("doSomeWork");
-    long operationStartTimeMs = SystemClock.elapsedRealtime();
+    workScheduler.onOperationStarted();
     long bufferedPositionUs = durationUs != TrackRenderer.UNKNOWN_TIME_US ? durationUs
         : Long.MAX_VALUE;
     boolean allRenderersEnded = true;
@@ -425,11 +428,12 @@ import java.util.concurrent.atomic.AtomicInteger;
     updatePositionUs();
     for (int i = 0; i < enabledRenderers.size(); i++) {
       TrackRenderer renderer = enabledRenderers.get(i);
-      // TODO: Each renderer should return the maximum delay before which it wishes to be
-      // invoked again. The minimum of these values should then be used as the delay before the next
-      // invocation of this method.
       renderer.doSomeWork(positionUs, elapsedRealtimeUs);
-      allRenderersEnded = allRenderersEnded && renderer.isEnded();
+      boolean rendererEnded = renderer.isEnded();
+      allRenderersEnded = allRenderersEnded && rendererEnded;
+      if (!rendererEnded) {
+        workScheduler.onRendererWorkDone(renderer.getMaxWorkDelayUs());
+      }
 
       // Determine whether the renderer is ready (or ended). If it's not, throw an error that's
       // preventing the renderer from making progress, if such an error exists.
@@ -475,19 +479,19 @@ import java.util.concurrent.atomic.AtomicInteger;
     }
 
     handler.removeMessages(MSG_DO_SOME_WORK);
-    if ((playWhenReady && state == ExoPlayer.STATE_READY) || state == ExoPlayer.STATE_BUFFERING) {
-      scheduleNextOperation(MSG_DO_SOME_WORK, operationStartTimeMs, RENDERING_INTERVAL_MS);
+    if (playWhenReady && state == ExoPlayer.STATE_READY) {
+      // Wake up when the renderers next need to do work.
+      scheduleNextOperation(MSG_DO_SOME_WORK, workScheduler.getRenderingDelayMs());
+    } else if (state == ExoPlayer.STATE_BUFFERING) {
+      scheduleNextOperation(MSG_DO_SOME_WORK, workScheduler.getDelayMs(BUFFERING_INTERVAL_MS));
     } else if (!enabledRenderers.isEmpty()) {
-      scheduleNextOperation(MSG_DO_SOME_WORK, operationStartTimeMs, IDLE_INTERVAL_MS);
+      scheduleNextOperation(MSG_DO_SOME_WORK, workScheduler.getDelayMs(IDLE_INTERVAL_MS));
     }
 
     TraceUtil.endSection();
   }
 
-  private void scheduleNextOperation(int operationType, long thisOperationStartTimeMs,
-      long intervalMs) {
-    long nextOperationStartTimeMs = thisOperationStartTimeMs + intervalMs;
-    long nextOperationDelayMs = nextOperationStartTimeMs - SystemClock.elapsedRealtime();
+  private void scheduleNextOperation(int operationType, long nextOperationDelayMs) {
     if (nextOperationDelayMs <= 0) {
       handler.sendEmptyMessage(operationType);
     } else {
@@ -417,6 +417,11 @@ public class MediaCodecAudioTrackRenderer extends MediaCodecTrackRenderer implem
       return true;
     }
 
+    // The AudioTrack is full. Wait for a quarter of it to drain before writing to it again.
+    long bufferSizeUs = audioTrack.getBufferSizeUs();
+    if (bufferSizeUs != C.UNKNOWN_TIME_US) {
+      setMaxWorkDelayUs(bufferSizeUs / 4);
+    }
     return false;
   }
 
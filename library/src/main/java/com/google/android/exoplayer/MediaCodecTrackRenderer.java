@@ -239,6 +239,7 @@ public abstract class MediaCodecTrackRenderer extends SampleSourceTrackRenderer
   private boolean outputStreamEnded;
   private boolean waitingForKeys;
   private boolean waitingForFirstSyncFrame;
+  private long maxWorkDelayUs;
 
   private final Logger log = new Logger(Logger.Module.AudioVideoCommon, TAG);
 
@@ -533,6 +534,7 @@ public abstract class MediaCodecTrackRenderer extends SampleSourceTrackRenderer
               + " elapsedRealtimeUs = " + elapsedRealtimeUs
               + " sourceIsReady = " + sourceIsReady);
     }
+    maxWorkDelayUs = DEFAULT_MAX_WORK_DELAY_US;
     if (format == null) {
       readFormat(positionUs);
     }
@@ -919,6 +921,25 @@ public abstract class MediaCodecTrackRenderer extends SampleSourceTrackRenderer
     return SystemClock.elapsedRealtime() < codecHotswapTimeMs + MAX_CODEC_HOTSWAP_TIME_MS;
   }
 
+  @Override
+  protected long getMaxWorkDelayUs() {
+    return maxWorkDelayUs;
+  }
+
+  /**
+   * Sets the value returned by {@link #getMaxWorkDelayUs()} until the next invocation of
+   * {@link #doSomeWork(long, long)}. May be called by
+   * {@link #processOutputBuffer(long, long, MediaCodec, ByteBuffer, MediaCodec.BufferInfo, int,
+   * boolean)} before it returns false, if it is known that the output buffer will not need to be
+   * processed again until after the specified delay.
+   *
+   * @param maxWorkDelayUs The maximum delay in microseconds, measured from the start of the current
+   *     iteration of the rendering loop.
+   */
+  protected final void setMaxWorkDelayUs(long maxWorkDelayUs) {
+    this.maxWorkDelayUs = maxWorkDelayUs;
+  }
+
   /**
    * Returns the maximum time to block whilst waiting for a decoded output buffer.
    *
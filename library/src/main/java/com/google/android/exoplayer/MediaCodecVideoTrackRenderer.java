@@ -478,7 +478,9 @@ public class MediaCodecVideoTrackRenderer extends MediaCodecTrackRenderer {
       }
     }
 
-    // We're either not playing, or it's not time to render the frame yet.
+    // It's not time to render the frame yet, so there's no need to process it again until it is.
+    long releaseThresholdUs = Util.SDK_INT >= 21 ? 50000 : 30000;
+    setMaxWorkDelayUs(elapsedSinceStartOfLoopUs + earlyUs - releaseThresholdUs);
     return false;
   }
 
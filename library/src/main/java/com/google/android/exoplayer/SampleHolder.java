@@ -78,7 +78,9 @@ public final class SampleHolder {
    * <p>
    * If the capacity of {@link #data} is sufficient this method does nothing. If the capacity is
    * insufficient then an attempt is made to replace {@link #data} with a new {@link ByteBuffer}
-   * whose capacity is sufficient. Data up to the current position is copied to the new buffer.
+   * whose capacity is sufficient. The new buffer may be larger than required, so that subsequent
+   * writes of a similar length can be accommodated without further replacement. Data up to the
+   * current position is copied to the new buffer.
    *
    * @param length The length of the write that must be accommodated, in bytes.
    * @throws IllegalStateException If there is insufficient capacity to accommodate the write and
@@ -139,12 +141,16 @@ public final class SampleHolder {
   }
 
   private ByteBuffer createReplacementBuffer(int requiredCapacity) {
+    int currentCapacity = data == null ? 0 : data.capacity();
+    // Grow the buffer by at least half of its current capacity, so that a holder that is reused
+    // for samples of slowly increasing size settles on a single buffer rather than replacing it
+    // for each sample.
+    int newCapacity = Math.max(requiredCapacity, currentCapacity + (currentCapacity >> 1));
     if (bufferReplacementMode == BUFFER_REPLACEMENT_MODE_NORMAL) {
-      return ByteBuffer.allocate(requiredCapacity);
+      return ByteBuffer.allocate(newCapacity);
     } else if (bufferReplacementMode == BUFFER_REPLACEMENT_MODE_DIRECT) {
-      return ByteBuffer.allocateDirect(requiredCapacity);
+      return ByteBuffer.allocateDirect(newCapacity);
     } else {
-      int currentCapacity = data == null ? 0 : data.capacity();
       throw new IllegalStateException("Buffer too small (" + currentCapacity + " < "
           + requiredCapacity + ")");
     }
@@ -44,6 +44,11 @@ public abstract class TrackRenderer implements ExoPlayerComponent {
    * Represents the time of the end of the track.
    */
   public static final long END_OF_TRACK_US = -3;
+  /**
+   * The value returned by {@link #getMaxWorkDelayUs()} when a renderer does not know when it will
+   * next need to do work.
+   */
+  public static final long DEFAULT_MAX_WORK_DELAY_US = 10000;
 
   /**
    * The renderer has been released and should not be used.
@@ -319,6 +324,25 @@ public abstract class TrackRenderer implements ExoPlayerComponent {
   protected abstract void doSomeWork(long positionUs, long elapsedRealtimeUs)
       throws ExoPlaybackException;
 
+  /**
+   * Returns the maximum delay before {@link #doSomeWork(long, long)} should next be invoked,
+   * measured from the start of the iteration of the rendering loop in which it was last invoked.
+   * <p>
+   * During playback the player waits for the smallest delay returned by its renderers before
+   * invoking them again. A renderer that knows when it will next need to do work, for example
+   * because it is waiting to release a video frame, can return a longer delay to reduce the number
+   * of times that the player wakes up. The default implementation returns
+   * {@link #DEFAULT_MAX_WORK_DELAY_US}.
+   * <p>
+   * This method may be called when the renderer is in the following states:
+   * {@link #STATE_ENABLED}, {@link #STATE_STARTED}
+   *
+   * @return The maximum delay in microseconds.
+   */
+  protected long getMaxWorkDelayUs() {
+    return DEFAULT_MAX_WORK_DELAY_US;
+  }
+
   /**
    * Throws an error that's preventing the renderer from making progress or buffering more data at
    * this point in time.
@@ -0,0 +1,98 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer;
+
+import com.google.android.exoplayer.util.Clock;
+import com.google.android.exoplayer.util.SystemClock;
+
+/**
+ * Determines when the operations of {@link ExoPlayerImplInternal} should next be performed.
+ * <p>
+ * During playback the delay before the next iteration of the rendering loop is the smallest of the
+ * delays returned by {@link TrackRenderer#getMaxWorkDelayUs()}, constrained to lie between
+ * {@link #MIN_RENDERING_INTERVAL_MS} and {@link #MAX_RENDERING_INTERVAL_MS}. Delays are measured
+ * from the start of the current operation, so that the time taken by the operation is accounted
+ * for.
+ */
+/* package */ final class WorkScheduler {
+
+  /**
+   * The minimum interval between iterations of the rendering loop during playback.
+   */
+  public static final int MIN_RENDERING_INTERVAL_MS = 10;
+
+  /**
+   * The maximum interval between iterations of the rendering loop during playback. Iterations
+   * update the playback position and detect the need to rebuffer, and so occur at least this often
+   * even if no renderer has work to do.
+   */
+  public static final int MAX_RENDERING_INTERVAL_MS = 100;
+
+  private final Clock clock;
+
+  private long operationStartTimeMs;
+  private long maxWorkDelayUs;
+
+  public WorkScheduler() {
+    this(new SystemClock());
+  }
+
+  /**
+   * @param clock The {@link Clock} used to measure the time taken by operations.
+   */
+  public WorkScheduler(Clock clock) {
+    this.clock = clock;
+  }
+
+  /**
+   * Invoked at the start of each operation.
+   */
+  public void onOperationStarted() {
+    operationStartTimeMs = clock.elapsedRealtime();
+    maxWorkDelayUs = MAX_RENDERING_INTERVAL_MS * 1000L;
+  }
+
+  /**
+   * Invoked for each renderer that may have further work to do, after it has done work during the
+   * current operation.
+   *
+   * @param maxWorkDelayUs The value returned by {@link TrackRenderer#getMaxWorkDelayUs()}.
+   */
+  public void onRendererWorkDone(long maxWorkDelayUs) {
+    this.maxWorkDelayUs = Math.min(this.maxWorkDelayUs, maxWorkDelayUs);
+  }
+
+  /**
+   * Returns the delay before the next iteration of the rendering loop during playback.
+   *
+   * @return The delay in milliseconds from now, or 0 if the next iteration is already due.
+   */
+  public long getRenderingDelayMs() {
+    return getDelayMs(Math.max(MIN_RENDERING_INTERVAL_MS, maxWorkDelayUs / 1000));
+  }
+
+  /**
+   * Returns the delay before the next operation, if operations are to be performed at a fixed
+   * interval.
+   *
+   * @param intervalMs The interval between the start of the current operation and the next.
+   * @return The delay in milliseconds from now, or 0 if the next operation is already due.
+   */
+  public long getDelayMs(long intervalMs) {
+    return Math.max(0, operationStartTimeMs + intervalMs - clock.elapsedRealtime());
+  }
+
+}
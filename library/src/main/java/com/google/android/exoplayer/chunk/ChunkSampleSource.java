@@ -24,14 +24,17 @@ import com.google.android.exoplayer.SampleSource;
 import com.google.android.exoplayer.SampleSource.SampleSourceReader;
 import com.google.android.exoplayer.TrackRenderer;
 import com.google.android.exoplayer.extractor.DefaultTrackOutput;
+import com.google.android.exoplayer.upstream.Allocator;
 import com.google.android.exoplayer.upstream.Loader;
 import com.google.android.exoplayer.upstream.Loader.Loadable;
+import com.google.android.exoplayer.upstream.ReadAheadDataSource;
 import com.google.android.exoplayer.util.Assertions;
 
 import android.os.Handler;
 import android.os.SystemClock;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.LinkedList;
 import java.util.List;
@@ -39,6 +42,12 @@ import java.util.List;
 /**
  * A {@link SampleSource} that loads media in {@link Chunk}s, which are themselves obtained from a
  * {@link ChunkSource}.
+ * <p>
+ * Chunks are loaded one at a time by default. If a {@link ReadAheadDataSource} is provided, then
+ * whilst a media chunk is loading, the source also obtains the media chunks that follow it and
+ * starts reading their data ahead of time, so that up to
+ * {@link ReadAheadDataSource#getMaxConcurrentRequests()} further chunks are requested
+ * concurrently. Chunks are still parsed, and their samples committed, strictly in order.
  */
 public class ChunkSampleSource implements SampleSource, SampleSourceReader, Loader.Callback {
 
@@ -70,6 +79,11 @@ public class ChunkSampleSource implements SampleSource, SampleSourceReader, Load
   private final Handler eventHandler;
   private final EventListener eventListener;
   private final int minLoadableRetryCount;
+  private final ReadAheadDataSource readAheadDataSource;
+  private final LinkedList<BaseMediaChunk> readAheadMediaChunks;
+  private final ArrayList<BaseMediaChunk> readAheadQueue;
+  private final List<BaseMediaChunk> readOnlyReadAheadQueue;
+  private final ChunkOperationHolder readAheadHolder;
 
   private int state;
   private long downstreamPositionUs;
@@ -85,6 +99,7 @@ public class ChunkSampleSource implements SampleSource, SampleSourceReader, Load
   private int currentLoadableExceptionCount;
   private long currentLoadableExceptionTimestamp;
   private long currentLoadStartTimeMs;
+  private boolean readAheadSuspended;
 
   private MediaFormat downstreamMediaFormat;
   private Format downstreamFormat;
@@ -129,6 +144,54 @@ public class ChunkSampleSource implements SampleSource, SampleSourceReader, Load
   public ChunkSampleSource(ChunkSource chunkSource, LoadControl loadControl,
       int bufferSizeContribution, Handler eventHandler, EventListener eventListener,
       int eventSourceId, int minLoadableRetryCount) {
+    this(chunkSource, loadControl, bufferSizeContribution, eventHandler, eventListener,
+        eventSourceId, minLoadableRetryCount, loadControl.getAllocator());
+  }
+
+  /**
+   * @param chunkSource A {@link ChunkSource} from which chunks to load are obtained.
+   * @param loadControl Controls when the source is permitted to load data.
+   * @param bufferSizeContribution The contribution of this source to the media buffer, in bytes.
+   * @param eventHandler A handler to use when delivering events to {@code eventListener}. May be
+   *     null if delivery of events is not required.
+   * @param eventListener A listener of events. May be null if delivery of events is not required.
+   * @param eventSourceId An identifier that gets passed to {@code eventListener} methods.
+   * @param minLoadableRetryCount The minimum number of times that the source should retry a load
+   *     before propagating an error.
+   * @param allocator The {@link Allocator} from which sample data is allocated. Must share its
+   *     accounting with {@code loadControl.getAllocator()}, for example by being obtained from
+   *     {@link com.google.android.exoplayer.upstream.SlabAllocator#getAllocator(int)}.
+   */
+  public ChunkSampleSource(ChunkSource chunkSource, LoadControl loadControl,
+      int bufferSizeContribution, Handler eventHandler, EventListener eventListener,
+      int eventSourceId, int minLoadableRetryCount, Allocator allocator) {
+    this(chunkSource, loadControl, bufferSizeContribution, eventHandler, eventListener,
+        eventSourceId, minLoadableRetryCount, allocator, null);
+  }
+
+  /**
+   * @param chunkSource A {@link ChunkSource} from which chunks to load are obtained.
+   * @param loadControl Controls when the source is permitted to load data.
+   * @param bufferSizeContribution The contribution of this source to the media buffer, in bytes.
+   * @param eventHandler A handler to use when delivering events to {@code eventListener}. May be
+   *     null if delivery of events is not required.
+   * @param eventListener A listener of events. May be null if delivery of events is not required.
+   * @param eventSourceId An identifier that gets passed to {@code eventListener} methods.
+   * @param minLoadableRetryCount The minimum number of times that the source should retry a load
+   *     before propagating an error.
+   * @param allocator The {@link Allocator} from which sample data is allocated. Must share its
+   *     accounting with {@code loadControl.getAllocator()}, for example by being obtained from
+   *     {@link com.google.android.exoplayer.upstream.SlabAllocator#getAllocator(int)}.
+   * @param readAheadDataSource The {@link ReadAheadDataSource} through which {@code chunkSource}
+   *     loads media chunks, if media chunks should be read ahead. May be null, in which case
+   *     chunks are loaded one at a time. Read ahead chunks are only requested whilst
+   *     {@code loadControl} permits this source to load, and so the control's buffering limits
+   *     still apply.
+   */
+  public ChunkSampleSource(ChunkSource chunkSource, LoadControl loadControl,
+      int bufferSizeContribution, Handler eventHandler, EventListener eventListener,
+      int eventSourceId, int minLoadableRetryCount, Allocator allocator,
+      ReadAheadDataSource readAheadDataSource) {
     this.chunkSource = chunkSource;
     this.loadControl = loadControl;
     this.bufferSizeContribution = bufferSizeContribution;
@@ -136,10 +199,15 @@ public class ChunkSampleSource implements SampleSource, SampleSourceReader, Load
     this.eventListener = eventListener;
     this.eventSourceId = eventSourceId;
     this.minLoadableRetryCount = minLoadableRetryCount;
+    this.readAheadDataSource = readAheadDataSource;
     currentLoadableHolder = new ChunkOperationHolder();
     mediaChunks = new LinkedList<>();
     readOnlyMediaChunks = Collections.unmodifiableList(mediaChunks);
-    sampleQueue = new DefaultTrackOutput(loadControl.getAllocator());
+    readAheadMediaChunks = new LinkedList<>();
+    readAheadQueue = new ArrayList<>();
+    readOnlyReadAheadQueue = Collections.unmodifiableList(readAheadQueue);
+    readAheadHolder = new ChunkOperationHolder();
+    sampleQueue = new DefaultTrackOutput(allocator);
     state = STATE_IDLE;
     pendingResetPositionUs = NO_RESET_PENDING;
   }
@@ -202,6 +270,7 @@ public class ChunkSampleSource implements SampleSource, SampleSourceReader, Load
       chunkSource.disable(mediaChunks);
     } finally {
       loadControl.unregister(this);
+      clearReadAhead();
       if (loader.isLoading()) {
         loader.cancelLoading();
       } else {
@@ -378,6 +447,8 @@ public class ChunkSampleSource implements SampleSource, SampleSourceReader, Load
 
   @Override
   public void onLoadError(Loadable loadable, IOException e) {
+    // The chunk source may choose different chunks when the load is resumed.
+    clearReadAhead();
     currentLoadableException = e;
     currentLoadableExceptionCount++;
     currentLoadableExceptionTimestamp = SystemClock.elapsedRealtime();
@@ -400,6 +471,7 @@ public class ChunkSampleSource implements SampleSource, SampleSourceReader, Load
   private void restartFrom(long positionUs) {
     pendingResetPositionUs = positionUs;
     loadingFinished = false;
+    clearReadAhead();
     if (loader.isLoading()) {
       loader.cancelLoading();
     } else {
@@ -426,12 +498,17 @@ public class ChunkSampleSource implements SampleSource, SampleSourceReader, Load
     boolean isBackedOff = currentLoadableException != null;
     boolean loadingOrBackedOff = loader.isLoading() || isBackedOff;
 
-    // If we're not loading or backed off, evaluate the operation if (a) we don't have the next
-    // chunk yet and we're not finished, or (b) if the last evaluation was over 2000ms ago.
-    if (!loadingOrBackedOff && ((currentLoadableHolder.chunk == null && nextLoadPositionUs != -1)
+    if (!loadingOrBackedOff && currentLoadableHolder.chunk == null
+        && !readAheadMediaChunks.isEmpty()) {
+      // The next chunk has already been obtained from the chunk source, and is being read ahead.
+      currentLoadableHolder.chunk = readAheadMediaChunks.removeFirst();
+    } else if (!loadingOrBackedOff
+        && ((currentLoadableHolder.chunk == null && nextLoadPositionUs != -1)
         || (now - lastPerformedBufferOperation > 2000))) {
-      // Perform the evaluation.
+      // If we're not loading or backed off, evaluate the operation if (a) we don't have the next
+      // chunk yet and we're not finished, or (b) if the last evaluation was over 2000ms ago.
       lastPerformedBufferOperation = now;
+      clearReadAhead();
       doChunkOperation();
       boolean chunksDiscarded = discardUpstreamMediaChunks(currentLoadableHolder.queueSize);
       // Update the next load position as appropriate.
@@ -458,6 +535,8 @@ public class ChunkSampleSource implements SampleSource, SampleSourceReader, Load
 
     if (!loader.isLoading() && nextLoader) {
       maybeStartLoading();
+    } else if (loader.isLoading() && nextLoader && readAheadDataSource != null) {
+      maybeReadAhead();
     }
   }
 
@@ -468,6 +547,8 @@ public class ChunkSampleSource implements SampleSource, SampleSourceReader, Load
   private long getNextLoadPositionUs() {
     if (isPendingReset()) {
       return pendingResetPositionUs;
+    } else if (!readAheadMediaChunks.isEmpty()) {
+      return readAheadMediaChunks.getLast().endTimeUs;
     } else {
       return loadingFinished ? -1 : mediaChunks.getLast().endTimeUs;
     }
@@ -534,6 +615,7 @@ public class ChunkSampleSource implements SampleSource, SampleSourceReader, Load
       return;
     }
     currentLoadStartTimeMs = SystemClock.elapsedRealtime();
+    readAheadSuspended = false;
     if (isMediaChunk(currentLoadable)) {
       BaseMediaChunk mediaChunk = (BaseMediaChunk) currentLoadable;
       mediaChunk.init(sampleQueue);
@@ -564,6 +646,43 @@ public class ChunkSampleSource implements SampleSource, SampleSourceReader, Load
     loadingFinished = currentLoadableHolder.endOfStream;
   }
 
+  /**
+   * Obtains the media chunk that follows the last chunk being loaded or read ahead, and starts
+   * reading it ahead. Reading ahead is suspended until the next chunk starts loading if the chunk
+   * source signals the end of the stream, or returns anything other than a new media chunk.
+   */
+  private void maybeReadAhead() {
+    if (readAheadSuspended || currentLoadableException != null
+        || !isMediaChunk(currentLoadableHolder.chunk)
+        || readAheadMediaChunks.size() >= readAheadDataSource.getMaxConcurrentRequests()) {
+      return;
+    }
+    readAheadQueue.addAll(mediaChunks);
+    readAheadQueue.addAll(readAheadMediaChunks);
+    readAheadHolder.endOfStream = false;
+    readAheadHolder.queueSize = readAheadQueue.size();
+    chunkSource.getChunkOperation(readOnlyReadAheadQueue, downstreamPositionUs, readAheadHolder);
+    boolean queueUnchanged = readAheadHolder.queueSize == readAheadQueue.size();
+    Chunk chunk = readAheadHolder.chunk;
+    readAheadHolder.chunk = null;
+    readAheadQueue.clear();
+    if (readAheadHolder.endOfStream || !queueUnchanged || !isMediaChunk(chunk)) {
+      readAheadSuspended = true;
+      return;
+    }
+    BaseMediaChunk mediaChunk = (BaseMediaChunk) chunk;
+    readAheadMediaChunks.add(mediaChunk);
+    readAheadDataSource.readAhead(mediaChunk.dataSpec);
+  }
+
+  private void clearReadAhead() {
+    readAheadSuspended = false;
+    if (readAheadDataSource != null) {
+      readAheadMediaChunks.clear();
+      readAheadDataSource.cancelReadAhead();
+    }
+  }
+
   /**
    * Discard upstream media chunks until the queue length is equal to the length specified.
    *
@@ -16,6 +16,8 @@
 package com.google.android.exoplayer.chunk;
 
 import com.google.android.exoplayer.upstream.BandwidthMeter;
+import com.google.android.exoplayer.upstream.ExtendedBandwidthMeter;
+import com.google.android.exoplayer.util.Assertions;
 
 import java.util.List;
 import java.util.Random;
@@ -224,8 +226,11 @@ public interface FormatEvaluator {
         Format[] formats, Evaluation evaluation) {
       long bufferedDurationUs = queue.isEmpty() ? 0
           : queue.get(queue.size() - 1).endTimeUs - playbackPositionUs;
+      long chunkDurationUs = queue.isEmpty() ? 0
+          : queue.get(queue.size() - 1).endTimeUs - queue.get(queue.size() - 1).startTimeUs;
       Format current = evaluation.format;
-      Format ideal = determineIdealFormat(formats, bandwidthMeter.getBitrateEstimate());
+      Format ideal = determineIdealFormat(formats, bandwidthMeter.getBitrateEstimate(),
+          getTimeToFirstByteEstimateMs(), chunkDurationUs);
       boolean isHigher = ideal != null && current != null && ideal.bitrate > current.bitrate;
       boolean isLower = ideal != null && current != null && ideal.bitrate < current.bitrate;
       if (isHigher) {
@@ -263,12 +268,27 @@ public interface FormatEvaluator {
       evaluation.format = ideal;
     }
 
+    private long getTimeToFirstByteEstimateMs() {
+      return bandwidthMeter instanceof ExtendedBandwidthMeter
+          ? ((ExtendedBandwidthMeter) bandwidthMeter).getTimeToFirstByteEstimateMs()
+          : BandwidthMeter.NO_ESTIMATE;
+    }
+
     /**
      * Compute the ideal format ignoring buffer health.
      */
-    private Format determineIdealFormat(Format[] formats, long bitrateEstimate) {
+    private Format determineIdealFormat(Format[] formats, long bitrateEstimate,
+        long timeToFirstByteEstimateMs, long chunkDurationUs) {
       long effectiveBitrate = bitrateEstimate == BandwidthMeter.NO_ESTIMATE
           ? maxInitialBitrate : (long) (bitrateEstimate * bandwidthFraction);
+      if (bitrateEstimate != BandwidthMeter.NO_ESTIMATE
+          && timeToFirstByteEstimateMs != BandwidthMeter.NO_ESTIMATE && chunkDurationUs > 0) {
+        // Time spent waiting for the first bytes of each chunk is unavailable for loading it, so
+        // the effective bitrate is reduced in proportion.
+        long timeToFirstByteUs = timeToFirstByteEstimateMs * 1000;
+        effectiveBitrate = effectiveBitrate * Math.max(0, chunkDurationUs - timeToFirstByteUs)
+            / chunkDurationUs;
+      }
       for (int i = 0; i < formats.length; i++) {
         Format format = formats[i];
         if (format.bitrate <= effectiveBitrate) {
@@ -281,4 +301,169 @@ public interface FormatEvaluator {
 
   }
 
+  /**
+   * An adaptive evaluator that selects formats according to the duration of buffered media, along
+   * the lines of the BOLA algorithm, falling back to the bandwidth estimate when the buffer is low.
+   * <p>
+   * Whilst less than {@code minBufferMs} of media is buffered, for example at the start of playback
+   * or after a seek, the buffer carries too little information and the format is selected from the
+   * bandwidth estimate alone. Once more media is buffered, selection is handed over to the buffer
+   * as soon as doing so does not cause a switch down.
+   * <p>
+   * When selecting from the buffer, each format is scored by trading off the utility of its
+   * quality, which is logarithmic in its bitrate, against the size of its chunks, which is assumed
+   * to be proportional to its bitrate. The more media that is buffered, the more the utility of
+   * higher quality formats outweighs the risk of loading larger chunks. The format with the highest
+   * score is selected, except that a switch up to a format that the bandwidth estimate cannot
+   * sustain is deferred, which prevents the selection from oscillating.
+   */
+  public static final class BufferBasedEvaluator implements FormatEvaluator {
+
+    public static final int DEFAULT_MAX_INITIAL_BITRATE = 800000;
+
+    public static final int DEFAULT_MIN_BUFFER_MS = 10000;
+    public static final int DEFAULT_BUFFER_TARGET_MS = 30000;
+    public static final float DEFAULT_BANDWIDTH_FRACTION = 0.75f;
+
+    /**
+     * The duration of media by which the buffer target is increased for each format, in
+     * milliseconds, if the specified target is too small to distinguish between the formats.
+     */
+    private static final int MIN_BUFFER_PER_FORMAT_MS = 2000;
+
+    private final BandwidthMeter bandwidthMeter;
+
+    private final int maxInitialBitrate;
+    private final long minBufferUs;
+    private final long bufferTargetUs;
+    private final float bandwidthFraction;
+
+    private boolean bufferBasedSelection;
+
+    /**
+     * @param bandwidthMeter Provides an estimate of the currently available bandwidth.
+     */
+    public BufferBasedEvaluator(BandwidthMeter bandwidthMeter) {
+      this(bandwidthMeter, DEFAULT_MAX_INITIAL_BITRATE, DEFAULT_MIN_BUFFER_MS,
+          DEFAULT_BUFFER_TARGET_MS, DEFAULT_BANDWIDTH_FRACTION);
+    }
+
+    /**
+     * @param bandwidthMeter Provides an estimate of the currently available bandwidth.
+     * @param maxInitialBitrate The maximum bitrate in bits per second that should be assumed
+     *     when bandwidthMeter cannot provide an estimate due to playback having only just started.
+     * @param minBufferMs The duration of buffered media below which formats are selected from the
+     *     bandwidth estimate alone. The lowest quality format is preferred when this much media is
+     *     buffered.
+     * @param bufferTargetMs The duration of buffered media at which the highest quality format is
+     *     preferred. Should not exceed the duration that the load control allows to be buffered.
+     * @param bandwidthFraction The fraction of the available bandwidth that the evaluator should
+     *     consider available for use. Setting to a value less than 1 is recommended to account
+     *     for inaccuracies in the bandwidth estimator.
+     */
+    public BufferBasedEvaluator(BandwidthMeter bandwidthMeter, int maxInitialBitrate,
+        int minBufferMs, int bufferTargetMs, float bandwidthFraction) {
+      Assertions.checkArgument(minBufferMs > 0 && bufferTargetMs > minBufferMs);
+      this.bandwidthMeter = bandwidthMeter;
+      this.maxInitialBitrate = maxInitialBitrate;
+      this.minBufferUs = minBufferMs * 1000L;
+      this.bufferTargetUs = bufferTargetMs * 1000L;
+      this.bandwidthFraction = bandwidthFraction;
+    }
+
+    @Override
+    public void enable() {
+      bufferBasedSelection = false;
+    }
+
+    @Override
+    public void disable() {
+      // Do nothing.
+    }
+
+    @Override
+    public void evaluate(List<? extends MediaChunk> queue, long playbackPositionUs,
+        Format[] formats, Evaluation evaluation) {
+      long bufferedDurationUs = queue.isEmpty() ? 0
+          : queue.get(queue.size() - 1).endTimeUs - playbackPositionUs;
+      Format current = evaluation.format;
+      Format sustainable = determineSustainableFormat(formats);
+      Format bufferBased = bufferedDurationUs < minBufferUs ? null
+          : determineBufferBasedFormat(formats, bufferedDurationUs);
+      if (bufferBased == null) {
+        bufferBasedSelection = false;
+      } else if (!bufferBasedSelection && bufferBased.bitrate >= sustainable.bitrate) {
+        // Hand over to buffer based selection once doing so will not cause a switch down.
+        bufferBasedSelection = true;
+      }
+      Format ideal = bufferBasedSelection ? bufferBased : sustainable;
+      if (bufferBasedSelection && current != null && ideal.bitrate > current.bitrate
+          && ideal.bitrate > sustainable.bitrate) {
+        // Defer switching up beyond what the bandwidth estimate can sustain.
+        ideal = current.bitrate > sustainable.bitrate ? current : sustainable;
+      }
+      if (current != null && ideal != current) {
+        evaluation.trigger = Chunk.TRIGGER_ADAPTIVE;
+      }
+      evaluation.format = ideal;
+    }
+
+    /**
+     * Compute the highest quality format that the bandwidth estimate can sustain.
+     */
+    private Format determineSustainableFormat(Format[] formats) {
+      long bitrateEstimate = bandwidthMeter.getBitrateEstimate();
+      long effectiveBitrate = bitrateEstimate == BandwidthMeter.NO_ESTIMATE
+          ? maxInitialBitrate : (long) (bitrateEstimate * bandwidthFraction);
+      for (int i = 0; i < formats.length; i++) {
+        Format format = formats[i];
+        if (format.bitrate <= effectiveBitrate) {
+          return format;
+        }
+      }
+      return formats[formats.length - 1];
+    }
+
+    /**
+     * Compute the format that maximizes the BOLA objective for the buffered duration. Formats are
+     * assumed to be ordered by decreasing bitrate.
+     *
+     * @return The selected format, or null if the formats cannot be scored.
+     */
+    private Format determineBufferBasedFormat(Format[] formats, long bufferedDurationUs) {
+      double minBitrate = formats[formats.length - 1].bitrate;
+      if (formats.length == 1 || minBitrate <= 0) {
+        // The formats cannot be traded off against one another.
+        return null;
+      }
+      // The utility of each format is offset so that the utility of the lowest quality is 1.
+      double maxUtility = Math.log(formats[0].bitrate / minBitrate) + 1;
+      if (maxUtility <= 1) {
+        return null;
+      }
+      double minBufferS = minBufferUs / 1000000d;
+      double bufferTargetS = Math.max(bufferTargetUs,
+          minBufferUs + MIN_BUFFER_PER_FORMAT_MS * 1000L * formats.length) / 1000000d;
+      // Choose the BOLA parameters such that the lowest quality is preferred at the minimum buffer
+      // and the highest quality is preferred at the buffer target.
+      double gamma = (maxUtility - 1) / (bufferTargetS / minBufferS - 1);
+      double v = minBufferS / gamma;
+      double bufferedDurationS = bufferedDurationUs / 1000000d;
+
+      Format bestFormat = formats[formats.length - 1];
+      double bestScore = -Double.MAX_VALUE;
+      for (int i = 0; i < formats.length; i++) {
+        Format format = formats[i];
+        double utility = Math.log(format.bitrate / minBitrate) + 1;
+        double score = (v * (utility + gamma) - bufferedDurationS) / format.bitrate;
+        if (score > bestScore) {
+          bestScore = score;
+          bestFormat = format;
+        }
+      }
+      return bestFormat;
+    }
+
+  }
+
 }
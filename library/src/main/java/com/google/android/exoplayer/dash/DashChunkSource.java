@@ -37,6 +37,7 @@ import com.google.android.exoplayer.dash.DashTrackSelector.Output;
 import com.google.android.exoplayer.dash.mpd.AdaptationSet;
 import com.google.android.exoplayer.dash.mpd.ContentProtection;
 import com.google.android.exoplayer.dash.mpd.MediaPresentationDescription;
+import com.google.android.exoplayer.dash.mpd.MediaPresentationDescriptionMerger;
 import com.google.android.exoplayer.dash.mpd.Period;
 import com.google.android.exoplayer.dash.mpd.RangedUri;
 import com.google.android.exoplayer.dash.mpd.Representation;
@@ -92,6 +93,27 @@ public class DashChunkSource implements ChunkSource, Output {
 
   }
 
+  /**
+   * Interface definition for a callback to be notified when a refreshed manifest has been merged
+   * into the previous one. An {@link EventListener} may optionally also implement this interface.
+   */
+  public interface ManifestMergeListener {
+
+    /**
+     * Invoked when a refreshed manifest has been merged into the previous one.
+     *
+     * @param sourceId The id of the reporting {@link DashChunkSource}.
+     * @param periodCount The number of periods in the refreshed manifest.
+     * @param reusedPeriodCount The number of unchanged periods reused from the previous manifest.
+     * @param representationCount The number of representations in the refreshed manifest.
+     * @param reusedRepresentationCount The number of unchanged representations reused from the
+     *     previous manifest.
+     */
+    public void onManifestMerged(int sourceId, int periodCount, int reusedPeriodCount,
+        int representationCount, int reusedRepresentationCount);
+
+  }
+
   /**
    * Thrown when an AdaptationSet is missing from the MPD.
    */
@@ -112,6 +134,7 @@ public class DashChunkSource implements ChunkSource, Output {
   private final FormatEvaluator adaptiveFormatEvaluator;
   private final Evaluation evaluation;
   private final ManifestFetcher<MediaPresentationDescription> manifestFetcher;
+  private final MediaPresentationDescriptionMerger manifestMerger;
   private final DashTrackSelector trackSelector;
   private final ArrayList<ExposedTrack> tracks;
   private final SparseArray<PeriodHolder> periodHolders;
@@ -258,6 +281,7 @@ public class DashChunkSource implements ChunkSource, Output {
       boolean startAtLiveEdge, Handler eventHandler, EventListener eventListener,
       int eventSourceId) {
     this.manifestFetcher = manifestFetcher;
+    this.manifestMerger = new MediaPresentationDescriptionMerger();
     this.currentManifest = initialManifest;
     this.trackSelector = trackSelector;
     this.dataSource = dataSource;
@@ -332,7 +356,7 @@ public class DashChunkSource implements ChunkSource, Output {
 
     MediaPresentationDescription newManifest = manifestFetcher.getManifest();
     if (newManifest != null && newManifest != processedManifest) {
-      processManifest(newManifest);
+      processManifest(mergeManifest(newManifest));
       // Manifests may be rejected, so the new manifest may not become the next currentManifest.
       // Track a manifest has been processed to avoid processing twice when it was discarded.
       processedManifest = newManifest;
@@ -687,7 +711,7 @@ public class DashChunkSource implements ChunkSource, Output {
       requestUri = indexUri;
     }
     DataSpec dataSpec = new DataSpec(requestUri.getUri(), requestUri.start, requestUri.length,
-        representation.getCacheKey());
+        representation.getCacheKey(requestUri));
     return new InitializationChunk(dataSource, dataSpec, trigger, representation.format,
         extractor, manifestIndex);
   }
@@ -701,7 +725,7 @@ public class DashChunkSource implements ChunkSource, Output {
     long endTimeUs = representationHolder.getSegmentEndTimeUs(segmentNum);
     RangedUri segmentUri = representationHolder.getSegmentUrl(segmentNum);
     DataSpec dataSpec = new DataSpec(segmentUri.getUri(), segmentUri.start, segmentUri.length,
-        representation.getCacheKey());
+        representation.getCacheKey(segmentUri));
 
     long sampleOffsetUs = periodHolder.startTimeUs - representation.presentationTimeOffsetUs;
     if (mimeTypeIsRawText(format.mimeType)) {
@@ -742,6 +766,13 @@ public class DashChunkSource implements ChunkSource, Output {
     return periodHolders.valueAt(periodHolders.size() - 1);
   }
 
+  private MediaPresentationDescription mergeManifest(MediaPresentationDescription manifest) {
+    MediaPresentationDescription mergedManifest = manifestMerger.merge(currentManifest, manifest);
+    notifyManifestMerged(manifestMerger.getPeriodCount(), manifestMerger.getReusedPeriodCount(),
+        manifestMerger.getRepresentationCount(), manifestMerger.getReusedRepresentationCount());
+    return mergedManifest;
+  }
+
   private void processManifest(MediaPresentationDescription manifest) {
     // Remove old periods.
     Period firstPeriod = manifest.getPeriod(0);
@@ -823,6 +854,19 @@ public class DashChunkSource implements ChunkSource, Output {
     }
   }
 
+  private void notifyManifestMerged(final int periodCount, final int reusedPeriodCount,
+      final int representationCount, final int reusedRepresentationCount) {
+    if (eventHandler != null && eventListener instanceof ManifestMergeListener) {
+      eventHandler.post(new Runnable() {
+        @Override
+        public void run() {
+          ((ManifestMergeListener) eventListener).onManifestMerged(eventSourceId, periodCount,
+              reusedPeriodCount, representationCount, reusedRepresentationCount);
+        }
+      });
+    }
+  }
+
   // Protected classes.
 
   protected static final class ExposedTrack {
@@ -892,6 +936,10 @@ public class DashChunkSource implements ChunkSource, Output {
 
     public void updateRepresentation(long newPeriodDurationUs, Representation newRepresentation)
         throws BehindLiveWindowException{
+      if (newRepresentation == representation && newPeriodDurationUs == periodDurationUs) {
+        // The representation was reused from the previous manifest, so nothing has changed.
+        return;
+      }
       DashSegmentIndex oldIndex = representation.getIndex();
       DashSegmentIndex newIndex = newRepresentation.getIndex();
 
@@ -972,6 +1020,8 @@ public class DashChunkSource implements ChunkSource, Output {
 
     private DrmInitData drmInitData;
 
+    private Period period;
+    private long periodDurationUs;
     private boolean indexIsUnbounded;
     private boolean indexIsExplicit;
     private long availableStartTimeUs;
@@ -988,6 +1038,8 @@ public class DashChunkSource implements ChunkSource, Output {
 
       startTimeUs = period.startMs * 1000;
       drmInitData = getDrmInitData(adaptationSet);
+      this.period = period;
+      this.periodDurationUs = periodDurationUs;
 
       if (!selectedTrack.isAdaptive()) {
         representationIndices = new int[] {
@@ -1017,6 +1069,15 @@ public class DashChunkSource implements ChunkSource, Output {
       long periodDurationUs = getPeriodDurationUs(manifest, manifestIndex);
       List<Representation> representations = period.adaptationSets
           .get(selectedTrack.adaptationSetIndex).representations;
+      if (period == this.period && periodDurationUs == this.periodDurationUs) {
+        // The period was reused from the previous manifest, so the segment numbering is unchanged.
+        // The segment indices of the representations may have been extended in place, however.
+        updateRepresentationIndependentProperties(periodDurationUs,
+            representations.get(representationIndices[0]));
+        return;
+      }
+      this.period = period;
+      this.periodDurationUs = periodDurationUs;
 
       for (int j = 0; j < representationIndices.length; j++) {
         Representation representation = representations.get(representationIndices[j]);
@@ -0,0 +1,101 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer.dash;
+
+import com.google.android.exoplayer.dash.mpd.RangedUri;
+import com.google.android.exoplayer.dash.mpd.Representation;
+import com.google.android.exoplayer.upstream.DataSpec;
+import com.google.android.exoplayer.upstream.cache.CachePrefetcher;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Builds {@link CachePrefetcher} requests for DASH content.
+ * <p>
+ * The requests use the same cache keys as {@link DashChunkSource}, so that prefetched data is
+ * read from the cache during playback.
+ */
+public final class DashPrefetchUtil {
+
+  private DashPrefetchUtil() {}
+
+  /**
+   * Builds requests for the initialization data of a representation, and for the segments that
+   * overlap a window of time within the enclosing period.
+   *
+   * @param representation The representation to prefetch.
+   * @param startTimeUs The start of the window, relative to the start of the period.
+   * @param endTimeUs The end of the window, relative to the start of the period.
+   * @param periodDurationUs The duration of the enclosing period in microseconds, or
+   *     {@link com.google.android.exoplayer.C#UNKNOWN_TIME_US} if it is not known.
+   * @return The requests. Only the initialization data is requested if the representation's
+   *     segment index is defined externally. Use
+   *     {@link #getDataSpecs(Representation, DashSegmentIndex, long, long, long)} in this case.
+   */
+  public static List<DataSpec> getDataSpecs(Representation representation, long startTimeUs,
+      long endTimeUs, long periodDurationUs) {
+    return getDataSpecs(representation, representation.getIndex(), startTimeUs, endTimeUs,
+        periodDurationUs);
+  }
+
+  /**
+   * Builds requests for the initialization data of a representation, and for the segments that
+   * overlap a window of time within the enclosing period.
+   *
+   * @param representation The representation to prefetch.
+   * @param segmentIndex The representation's segment index, for example as obtained by loading
+   *     {@link Representation#getIndexUri()}. If null then only initialization data is requested.
+   * @param startTimeUs The start of the window, relative to the start of the period.
+   * @param endTimeUs The end of the window, relative to the start of the period.
+   * @param periodDurationUs The duration of the enclosing period in microseconds, or
+   *     {@link com.google.android.exoplayer.C#UNKNOWN_TIME_US} if it is not known.
+   * @return The requests.
+   */
+  public static List<DataSpec> getDataSpecs(Representation representation,
+      DashSegmentIndex segmentIndex, long startTimeUs, long endTimeUs, long periodDurationUs) {
+    List<DataSpec> dataSpecs = new ArrayList<>();
+    RangedUri initializationUri = representation.getInitializationUri();
+    RangedUri indexUri = representation.getIndexUri();
+    RangedUri requestUri = initializationUri != null ? initializationUri.attemptMerge(indexUri)
+        : null;
+    if (requestUri != null) {
+      dataSpecs.add(newDataSpec(representation, requestUri));
+    } else {
+      if (initializationUri != null) {
+        dataSpecs.add(newDataSpec(representation, initializationUri));
+      }
+      if (indexUri != null) {
+        dataSpecs.add(newDataSpec(representation, indexUri));
+      }
+    }
+    if (segmentIndex == null || endTimeUs <= startTimeUs) {
+      return dataSpecs;
+    }
+    int firstSegmentNum = segmentIndex.getSegmentNum(startTimeUs, periodDurationUs);
+    int lastSegmentNum = segmentIndex.getSegmentNum(endTimeUs - 1, periodDurationUs);
+    for (int segmentNum = firstSegmentNum; segmentNum <= lastSegmentNum; segmentNum++) {
+      dataSpecs.add(newDataSpec(representation, segmentIndex.getSegmentUrl(segmentNum)));
+    }
+    return dataSpecs;
+  }
+
+  private static DataSpec newDataSpec(Representation representation, RangedUri rangedUri) {
+    return new DataSpec(rangedUri.getUri(), rangedUri.start, rangedUri.length,
+        representation.getCacheKey(rangedUri));
+  }
+
+}
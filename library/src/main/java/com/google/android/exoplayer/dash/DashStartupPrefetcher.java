@@ -0,0 +1,189 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer.dash;
+
+import com.google.android.exoplayer.C;
+import com.google.android.exoplayer.dash.mpd.AdaptationSet;
+import com.google.android.exoplayer.dash.mpd.MediaPresentationDescription;
+import com.google.android.exoplayer.dash.mpd.Representation;
+import com.google.android.exoplayer.upstream.Allocator;
+import com.google.android.exoplayer.upstream.DataSource;
+import com.google.android.exoplayer.upstream.DataSourceFactory;
+import com.google.android.exoplayer.upstream.DataSpec;
+import com.google.android.exoplayer.upstream.ReadAheadDataSource;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Loads the first requests that a {@link DashChunkSource} will make as soon as the manifest is
+ * available, rather than once the player has been prepared.
+ * <p>
+ * Without prefetching, the initialization data and first media segment are requested one after the
+ * other, and only once the renderers have been built and the source has been prepared. Calling
+ * {@link #prefetch(MediaPresentationDescription, Representation)} starts loading both in parallel,
+ * so that they are loaded whilst the renderers and any DRM session are being set up. The source
+ * returned by {@link #getDataSource()} should be passed to the {@link DashChunkSource}, which then
+ * reads the prefetched data from memory if it selects the prefetched representation. Requests for
+ * anything else are read from the upstream source as normal.
+ * <p>
+ * Prefetched data is held in memory obtained from the allocator, which is typically shared with
+ * the player's {@link com.google.android.exoplayer.LoadControl}. Data that the chunk source does
+ * not request is therefore released once the chunk source has completed as many loads as were
+ * prefetched, since by then it has either read the prefetched data or selected a different
+ * representation. It is also released if {@link #cancel()} is called.
+ */
+public final class DashStartupPrefetcher {
+
+  private static final int MAX_CONCURRENT_REQUESTS = 2;
+
+  private final ReadAheadDataSource readAheadDataSource;
+  private final PrefetchDataSource dataSource;
+
+  private int pendingLoadCount;
+
+  /**
+   * @param upstream The source from which requests that have not been prefetched are read.
+   * @param dataSourceFactory A factory for the {@link DataSource} instances used to prefetch.
+   * @param allocator The {@link Allocator} from which to obtain memory for prefetched data.
+   */
+  public DashStartupPrefetcher(DataSource upstream, DataSourceFactory dataSourceFactory,
+      Allocator allocator) {
+    readAheadDataSource = new ReadAheadDataSource(upstream, dataSourceFactory, allocator,
+        MAX_CONCURRENT_REQUESTS);
+    dataSource = new PrefetchDataSource();
+  }
+
+  /**
+   * Returns the {@link DataSource} that should be passed to the {@link DashChunkSource}.
+   */
+  public DataSource getDataSource() {
+    return dataSource;
+  }
+
+  /**
+   * Starts loading the initialization data and first media segment of a representation in the
+   * first period of a manifest.
+   * <p>
+   * Nothing is loaded for dynamic manifests, since playback of these starts from a segment that
+   * depends on the live edge at the time the source is prepared. Only initialization data is loaded
+   * if the representation's segment index is defined externally.
+   *
+   * @param manifest The manifest.
+   * @param representation The representation in the first period that is expected to be selected.
+   * @return Whether any data is being loaded.
+   */
+  public boolean prefetch(MediaPresentationDescription manifest, Representation representation) {
+    if (manifest.dynamic) {
+      return false;
+    }
+    long periodDurationMs = manifest.getPeriodDuration(0);
+    long periodDurationUs = periodDurationMs == -1 ? C.UNKNOWN_TIME_US : periodDurationMs * 1000;
+    // DashChunkSource requests the segment containing the start of the period, and first requests
+    // the same initialization data as DashPrefetchUtil.
+    List<DataSpec> dataSpecs = DashPrefetchUtil.getDataSpecs(representation, 0, 1,
+        periodDurationUs);
+    synchronized (this) {
+      pendingLoadCount += dataSpecs.size();
+    }
+    for (int i = 0; i < dataSpecs.size(); i++) {
+      readAheadDataSource.readAhead(dataSpecs.get(i));
+    }
+    return !dataSpecs.isEmpty();
+  }
+
+  /**
+   * Cancels loading, and releases any prefetched data that has not been requested.
+   */
+  public void cancel() {
+    synchronized (this) {
+      pendingLoadCount = 0;
+    }
+    readAheadDataSource.cancelReadAhead();
+  }
+
+  /**
+   * Returns the representation of an adaptation set that an
+   * {@link com.google.android.exoplayer.chunk.FormatEvaluator.AdaptiveEvaluator} selects before
+   * a bandwidth estimate is available. This is the representation with the highest bitrate that
+   * does not exceed {@code maxInitialBitrate}, or the one with the lowest bitrate if all exceed it.
+   *
+   * @param adaptationSet The adaptation set.
+   * @param maxInitialBitrate The evaluator's maximum initial bitrate, in bits per second.
+   * @return The representation.
+   */
+  public static Representation getInitialRepresentation(AdaptationSet adaptationSet,
+      int maxInitialBitrate) {
+    Representation highestWithinBitrate = null;
+    Representation lowest = null;
+    for (int i = 0; i < adaptationSet.representations.size(); i++) {
+      Representation representation = adaptationSet.representations.get(i);
+      int bitrate = representation.format.bitrate;
+      if (bitrate <= maxInitialBitrate && (highestWithinBitrate == null
+          || bitrate > highestWithinBitrate.format.bitrate)) {
+        highestWithinBitrate = representation;
+      }
+      if (lowest == null || bitrate < lowest.format.bitrate) {
+        lowest = representation;
+      }
+    }
+    return highestWithinBitrate != null ? highestWithinBitrate : lowest;
+  }
+
+  private void onLoadCompleted() {
+    boolean loadsCompleted;
+    synchronized (this) {
+      loadsCompleted = pendingLoadCount > 0 && --pendingLoadCount == 0;
+    }
+    if (loadsCompleted) {
+      readAheadDataSource.cancelReadAhead();
+    }
+  }
+
+  /**
+   * Reads from the {@link ReadAheadDataSource}, releasing prefetched data that has not been
+   * requested once the expected number of loads have completed.
+   */
+  private final class PrefetchDataSource implements DataSource {
+
+    private boolean opened;
+
+    @Override
+    public long open(DataSpec dataSpec) throws IOException {
+      opened = true;
+      return readAheadDataSource.open(dataSpec);
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int readLength) throws IOException {
+      return readAheadDataSource.read(buffer, offset, readLength);
+    }
+
+    @Override
+    public void close() throws IOException {
+      try {
+        readAheadDataSource.close();
+      } finally {
+        if (opened) {
+          opened = false;
+          onLoadCompleted();
+        }
+      }
+    }
+
+  }
+
+}
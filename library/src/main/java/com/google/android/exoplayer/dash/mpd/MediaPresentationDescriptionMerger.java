@@ -0,0 +1,246 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer.dash.mpd;
+
+import com.google.android.exoplayer.util.Util;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Merges a refreshed {@link MediaPresentationDescription} into the one that it replaces.
+ * <p>
+ * Periods, adaptation sets and representations of the refreshed manifest that are unchanged are
+ * replaced by the equivalent instances from the previous manifest. A representation whose segment
+ * timeline starts with the timeline of the previous one, as is the case when segments are added to
+ * a live stream, is also replaced by the previous representation, whose timeline is extended in
+ * place with the added segments. Other components that have changed are taken from the refreshed
+ * manifest. Consumers of the merged manifest can detect reused components by identity, and skip
+ * any work that would otherwise be repeated on each refresh. Note that a reused representation's
+ * segment index may have been extended, and so its last segment may have changed.
+ * <p>
+ * The counts of the last merge are retained, so that reuse can be monitored.
+ */
+public final class MediaPresentationDescriptionMerger {
+
+  private int periodCount;
+  private int reusedPeriodCount;
+  private int representationCount;
+  private int reusedRepresentationCount;
+
+  // Lists into which merged components are collected, retained to avoid allocations when the
+  // previous components are reused, as is normally the case.
+  private final ArrayList<Period> mergedPeriods;
+  private final ArrayList<AdaptationSet> mergedAdaptationSets;
+  private final ArrayList<Representation> mergedRepresentations;
+
+  public MediaPresentationDescriptionMerger() {
+    mergedPeriods = new ArrayList<>();
+    mergedAdaptationSets = new ArrayList<>();
+    mergedRepresentations = new ArrayList<>();
+  }
+
+  /**
+   * Merges a refreshed manifest into the one that it replaces.
+   *
+   * @param previous The previous manifest, or null.
+   * @param manifest The refreshed manifest.
+   * @return A manifest equivalent to {@code manifest}, containing components of {@code previous}
+   *     wherever they are unchanged. If no components are reused then {@code manifest} is returned.
+   */
+  public MediaPresentationDescription merge(MediaPresentationDescription previous,
+      MediaPresentationDescription manifest) {
+    periodCount = manifest.getPeriodCount();
+    reusedPeriodCount = 0;
+    representationCount = 0;
+    reusedRepresentationCount = 0;
+
+    mergedPeriods.clear();
+    boolean reusedAny = false;
+    int previousPeriodIndex = 0;
+    for (int i = 0; i < periodCount; i++) {
+      Period period = manifest.getPeriod(i);
+      Period previousPeriod = null;
+      if (previous != null) {
+        // Periods are ordered, so the search for each one continues from the previous match.
+        for (int j = previousPeriodIndex; j < previous.getPeriodCount(); j++) {
+          if (isSamePeriod(previous.getPeriod(j), period)) {
+            previousPeriod = previous.getPeriod(j);
+            previousPeriodIndex = j + 1;
+            break;
+          }
+        }
+      }
+      Period mergedPeriod = mergePeriod(previousPeriod, period);
+      reusedAny |= mergedPeriod != period;
+      mergedPeriods.add(mergedPeriod);
+    }
+
+    if (!reusedAny) {
+      return manifest;
+    }
+    return new MediaPresentationDescription(manifest.availabilityStartTime, manifest.duration,
+        manifest.minBufferTime, manifest.dynamic, manifest.minUpdatePeriod,
+        manifest.timeShiftBufferDepth, manifest.utcTiming, manifest.location,
+        new ArrayList<>(mergedPeriods));
+  }
+
+  /**
+   * Returns the number of periods in the manifest passed to the last call to
+   * {@link #merge(MediaPresentationDescription, MediaPresentationDescription)}.
+   */
+  public int getPeriodCount() {
+    return periodCount;
+  }
+
+  /**
+   * Returns the number of periods reused from the previous manifest by the last merge.
+   */
+  public int getReusedPeriodCount() {
+    return reusedPeriodCount;
+  }
+
+  /**
+   * Returns the number of representations in the manifest passed to the last call to
+   * {@link #merge(MediaPresentationDescription, MediaPresentationDescription)}.
+   */
+  public int getRepresentationCount() {
+    return representationCount;
+  }
+
+  /**
+   * Returns the number of representations reused from the previous manifest by the last merge.
+   */
+  public int getReusedRepresentationCount() {
+    return reusedRepresentationCount;
+  }
+
+  private Period mergePeriod(Period previousPeriod, Period period) {
+    List<AdaptationSet> adaptationSets = period.adaptationSets;
+    int adaptationSetCount = adaptationSets.size();
+    boolean canReusePeriod = previousPeriod != null
+        && previousPeriod.adaptationSets.size() == adaptationSetCount;
+    boolean reusedAny = false;
+    mergedAdaptationSets.clear();
+    for (int i = 0; i < adaptationSetCount; i++) {
+      AdaptationSet adaptationSet = adaptationSets.get(i);
+      AdaptationSet previousAdaptationSet = previousPeriod == null ? null
+          : getAdaptationSet(previousPeriod, adaptationSet.id, i);
+      AdaptationSet mergedAdaptationSet = mergeAdaptationSet(previousAdaptationSet, adaptationSet);
+      canReusePeriod = canReusePeriod
+          && mergedAdaptationSet == previousPeriod.adaptationSets.get(i);
+      reusedAny |= mergedAdaptationSet != adaptationSet;
+      mergedAdaptationSets.add(mergedAdaptationSet);
+    }
+
+    if (canReusePeriod) {
+      reusedPeriodCount++;
+      return previousPeriod;
+    } else if (reusedAny) {
+      return new Period(period.id, period.startMs, new ArrayList<>(mergedAdaptationSets));
+    } else {
+      return period;
+    }
+  }
+
+  private AdaptationSet mergeAdaptationSet(AdaptationSet previousAdaptationSet,
+      AdaptationSet adaptationSet) {
+    List<Representation> representations = adaptationSet.representations;
+    int count = representations.size();
+    representationCount += count;
+    if (previousAdaptationSet == null) {
+      return adaptationSet;
+    }
+
+    List<Representation> previousRepresentations = previousAdaptationSet.representations;
+    boolean canReuseAdaptationSet = previousAdaptationSet.type == adaptationSet.type
+        && previousRepresentations.size() == count
+        && previousAdaptationSet.contentProtections.equals(adaptationSet.contentProtections);
+    boolean reusedAny = false;
+    mergedRepresentations.clear();
+    for (int i = 0; i < count; i++) {
+      Representation representation = representations.get(i);
+      Representation previousRepresentation =
+          getRepresentation(previousRepresentations, representation.format.id, i);
+      if (canReuseRepresentation(previousRepresentation, representation)) {
+        reusedRepresentationCount++;
+        reusedAny = true;
+        canReuseAdaptationSet &= previousRepresentation == previousRepresentations.get(i);
+        mergedRepresentations.add(previousRepresentation);
+      } else {
+        canReuseAdaptationSet = false;
+        mergedRepresentations.add(representation);
+      }
+    }
+
+    if (canReuseAdaptationSet) {
+      return previousAdaptationSet;
+    } else if (reusedAny) {
+      return new AdaptationSet(adaptationSet.id, adaptationSet.type,
+          new ArrayList<>(mergedRepresentations), adaptationSet.contentProtections);
+    } else {
+      return adaptationSet;
+    }
+  }
+
+  private static boolean canReuseRepresentation(Representation previousRepresentation,
+      Representation representation) {
+    if (previousRepresentation == null) {
+      return false;
+    }
+    // The timeline of a live stream typically has segments added on each refresh, in which case the
+    // previous representation is extended in place rather than replaced.
+    return representation.isEquivalentTo(previousRepresentation)
+        || previousRepresentation.extendIndex(representation);
+  }
+
+  private static boolean isSamePeriod(Period previousPeriod, Period period) {
+    return previousPeriod.startMs == period.startMs && Util.areEqual(previousPeriod.id, period.id);
+  }
+
+  private static AdaptationSet getAdaptationSet(Period period, int id, int index) {
+    List<AdaptationSet> adaptationSets = period.adaptationSets;
+    // Adaptation sets are usually listed in the same order in each refresh.
+    if (index < adaptationSets.size() && adaptationSets.get(index).id == id) {
+      return adaptationSets.get(index);
+    }
+    if (id == -1) {
+      return null;
+    }
+    for (int i = 0; i < adaptationSets.size(); i++) {
+      if (adaptationSets.get(i).id == id) {
+        return adaptationSets.get(i);
+      }
+    }
+    return null;
+  }
+
+  private static Representation getRepresentation(List<Representation> representations,
+      String formatId, int index) {
+    // Representations are usually listed in the same order in each refresh.
+    if (index < representations.size()
+        && Util.areEqual(representations.get(index).format.id, formatId)) {
+      return representations.get(index);
+    }
+    for (int i = 0; i < representations.size(); i++) {
+      if (Util.areEqual(representations.get(i).format.id, formatId)) {
+        return representations.get(i);
+      }
+    }
+    return null;
+  }
+
+}
@@ -19,7 +19,7 @@ import com.google.android.exoplayer.ParserException;
 import com.google.android.exoplayer.chunk.Format;
 import com.google.android.exoplayer.dash.mpd.SegmentBase.SegmentList;
 import com.google.android.exoplayer.dash.mpd.SegmentBase.SegmentTemplate;
-import com.google.android.exoplayer.dash.mpd.SegmentBase.SegmentTimelineElement;
+import com.google.android.exoplayer.dash.mpd.SegmentBase.SegmentTimeline;
 import com.google.android.exoplayer.dash.mpd.SegmentBase.SingleSegmentBase;
 import com.google.android.exoplayer.drm.DrmInitData.SchemeInitData;
 import com.google.android.exoplayer.extractor.mp4.PsshAtomUtil;
@@ -44,6 +44,7 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.text.ParseException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
@@ -61,6 +62,8 @@ public class MediaPresentationDescriptionParser extends DefaultHandler
 
   private static final Pattern FRAME_RATE_PATTERN = Pattern.compile("(\\d+)(?:/(\\d+))?");
 
+  private static final int INITIAL_TIMELINE_RUN_CAPACITY = 4;
+
   private final String contentId;
   private final XmlPullParserFactory xmlParserFactory;
 
@@ -466,7 +469,7 @@ public class MediaPresentationDescriptionParser extends DefaultHandler
     int startNumber = parseInt(xpp, "startNumber", parent != null ? parent.startNumber : 1);
 
     RangedUri initialization = null;
-    List<SegmentTimelineElement> timeline = null;
+    SegmentTimeline timeline = null;
     List<RangedUri> segments = null;
 
     do {
@@ -495,7 +498,7 @@ public class MediaPresentationDescriptionParser extends DefaultHandler
 
   protected SegmentList buildSegmentList(RangedUri initialization, long timescale,
       long presentationTimeOffset, int startNumber, long duration,
-      List<SegmentTimelineElement> timeline, List<RangedUri> segments) {
+      SegmentTimeline timeline, List<RangedUri> segments) {
     return new SegmentList(initialization, timescale, presentationTimeOffset,
         startNumber, duration, timeline, segments);
   }
@@ -514,7 +517,7 @@ public class MediaPresentationDescriptionParser extends DefaultHandler
         parent != null ? parent.initializationTemplate : null);
 
     RangedUri initialization = null;
-    List<SegmentTimelineElement> timeline = null;
+    SegmentTimeline timeline = null;
 
     do {
       xpp.next();
@@ -536,15 +539,19 @@ public class MediaPresentationDescriptionParser extends DefaultHandler
 
   protected SegmentTemplate buildSegmentTemplate(RangedUri initialization, long timescale,
       long presentationTimeOffset, int startNumber, long duration,
-      List<SegmentTimelineElement> timeline, UrlTemplate initializationTemplate,
+      SegmentTimeline timeline, UrlTemplate initializationTemplate,
       UrlTemplate mediaTemplate, String baseUrl) {
     return new SegmentTemplate(initialization, timescale, presentationTimeOffset,
         startNumber, duration, timeline, initializationTemplate, mediaTemplate, baseUrl);
   }
 
-  protected List<SegmentTimelineElement> parseSegmentTimeline(XmlPullParser xpp)
+  protected SegmentTimeline parseSegmentTimeline(XmlPullParser xpp)
       throws XmlPullParserException, IOException {
-    List<SegmentTimelineElement> segmentTimeline = new ArrayList<>();
+    // Each S element is stored as a single run, however many times it's repeated.
+    long[] startTimes = new long[INITIAL_TIMELINE_RUN_CAPACITY];
+    long[] durations = new long[INITIAL_TIMELINE_RUN_CAPACITY];
+    int[] segmentCounts = new int[INITIAL_TIMELINE_RUN_CAPACITY];
+    int runCount = 0;
     long elapsedTime = 0;
     do {
       xpp.next();
@@ -552,17 +559,27 @@ public class MediaPresentationDescriptionParser extends DefaultHandler
         elapsedTime = parseLong(xpp, "t", elapsedTime);
         long duration = parseLong(xpp, "d");
         int count = 1 + parseInt(xpp, "r", 0);
-        for (int i = 0; i < count; i++) {
-          segmentTimeline.add(buildSegmentTimelineElement(elapsedTime, duration));
-          elapsedTime += duration;
+        if (count > 0) {
+          if (runCount == startTimes.length) {
+            startTimes = Arrays.copyOf(startTimes, runCount * 2);
+            durations = Arrays.copyOf(durations, runCount * 2);
+            segmentCounts = Arrays.copyOf(segmentCounts, runCount * 2);
+          }
+          startTimes[runCount] = elapsedTime;
+          durations[runCount] = duration;
+          segmentCounts[runCount] = count;
+          runCount++;
+          elapsedTime += duration * count;
         }
       }
     } while (!ParserUtil.isEndTag(xpp, "SegmentTimeline"));
-    return segmentTimeline;
+    return buildSegmentTimeline(Arrays.copyOf(startTimes, runCount),
+        Arrays.copyOf(durations, runCount), Arrays.copyOf(segmentCounts, runCount));
   }
 
-  protected SegmentTimelineElement buildSegmentTimelineElement(long elapsedTime, long duration) {
-    return new SegmentTimelineElement(elapsedTime, duration);
+  protected SegmentTimeline buildSegmentTimeline(long[] startTimes, long[] durations,
+      int[] segmentCounts) {
+    return new SegmentTimeline(startTimes, durations, segmentCounts);
   }
 
   protected UrlTemplate parseUrlTemplate(XmlPullParser xpp, String name,
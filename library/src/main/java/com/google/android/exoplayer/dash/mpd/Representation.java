@@ -20,6 +20,7 @@ import com.google.android.exoplayer.chunk.FormatWrapper;
 import com.google.android.exoplayer.dash.DashSegmentIndex;
 import com.google.android.exoplayer.dash.mpd.SegmentBase.MultiSegmentBase;
 import com.google.android.exoplayer.dash.mpd.SegmentBase.SingleSegmentBase;
+import com.google.android.exoplayer.util.Util;
 
 import android.net.Uri;
 
@@ -55,6 +56,7 @@ public abstract class Representation implements FormatWrapper {
 
   private final String cacheKey;
   private final RangedUri initializationUri;
+  private final SegmentBase segmentBase;
 
   /**
    * Constructs a new instance.
@@ -103,6 +105,7 @@ public abstract class Representation implements FormatWrapper {
         : contentId + "." + format.id + "." + revisionId;
     initializationUri = segmentBase.getInitialization(this);
     presentationTimeOffsetUs = segmentBase.getPresentationTimeOffsetUs();
+    this.segmentBase = segmentBase;
   }
 
   @Override
@@ -146,6 +149,62 @@ public abstract class Representation implements FormatWrapper {
     return cacheKey;
   }
 
+  /**
+   * A cache key for a request for data belonging to the {@link Representation}.
+   * <p>
+   * Data belonging to a representation consisting of a single segment is stored under
+   * {@link #getCacheKey()}. The segments of a multi-segment representation are generally located
+   * at different URIs, each of which is stored under a distinct key derived from
+   * {@link #getCacheKey()}.
+   *
+   * @param rangedUri The location of the data being requested.
+   * @return A cache key.
+   */
+  public String getCacheKey(RangedUri rangedUri) {
+    return cacheKey;
+  }
+
+  /**
+   * Returns whether this representation is the same as another, in which case either can be used
+   * in place of the other. Used to determine whether parts of a refreshed manifest can be reused.
+   *
+   * @param other The other {@link Representation}.
+   * @return Whether the two representations are the same.
+   */
+  /* package */ boolean isEquivalentTo(Representation other) {
+    return isSameMedia(other) && segmentBase.isEquivalentTo(other.segmentBase);
+  }
+
+  /**
+   * Extends the segment index of this representation with the segments of another that follow its
+   * own, if the other is the same as this representation except for having a segment timeline to
+   * which further segments have been added. Used to reuse parts of a refreshed manifest whose
+   * segment timelines have grown.
+   *
+   * @param other The other {@link Representation}.
+   * @return Whether the segment index of this representation was extended.
+   */
+  /* package */ boolean extendIndex(Representation other) {
+    return isSameMedia(other) && segmentBase.extendTimeline(other.segmentBase);
+  }
+
+  private boolean isSameMedia(Representation other) {
+    return other != null && getClass() == other.getClass() && revisionId == other.revisionId
+        && cacheKey.equals(other.cacheKey) && Util.areEqual(contentId, other.contentId)
+        && areFormatsEquivalent(format, other.format);
+  }
+
+  private static boolean areFormatsEquivalent(Format format, Format other) {
+    // Format.equals only compares ids, so the remaining fields are compared explicitly.
+    return format.id.equals(other.id) && format.bitrate == other.bitrate
+        && format.width == other.width && format.height == other.height
+        && format.frameRate == other.frameRate && format.audioChannels == other.audioChannels
+        && format.audioSamplingRate == other.audioSamplingRate
+        && Util.areEqual(format.mimeType, other.mimeType)
+        && Util.areEqual(format.codecs, other.codecs)
+        && Util.areEqual(format.language, other.language);
+  }
+
   /**
    * A DASH representation consisting of a single segment.
    */
@@ -217,6 +276,12 @@ public abstract class Representation implements FormatWrapper {
       return segmentIndex;
     }
 
+    @Override
+    /* package */ boolean isEquivalentTo(Representation other) {
+      return super.isEquivalentTo(other)
+          && contentLength == ((SingleSegmentRepresentation) other).contentLength;
+    }
+
   }
 
   /**
@@ -250,6 +315,11 @@ public abstract class Representation implements FormatWrapper {
       return this;
     }
 
+    @Override
+    public String getCacheKey(RangedUri rangedUri) {
+      return getCacheKey() + "." + rangedUri.getUriString();
+    }
+
     // DashSegmentIndex implementation.
 
     @Override
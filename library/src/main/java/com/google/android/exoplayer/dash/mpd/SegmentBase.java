@@ -17,8 +17,10 @@ package com.google.android.exoplayer.dash.mpd;
 
 import com.google.android.exoplayer.C;
 import com.google.android.exoplayer.dash.DashSegmentIndex;
+import com.google.android.exoplayer.util.Assertions;
 import com.google.android.exoplayer.util.Util;
 
+import java.util.Arrays;
 import java.util.List;
 
 /**
@@ -63,6 +65,31 @@ public abstract class SegmentBase {
     return Util.scaleLargeTimestamp(presentationTimeOffset, C.MICROS_PER_SECOND, timescale);
   }
 
+  /**
+   * Returns whether this instance defines the same segments as another. Used to determine whether
+   * parts of a refreshed manifest can be reused.
+   *
+   * @param other The other {@link SegmentBase}.
+   * @return Whether the two instances define the same segments.
+   */
+  /* package */ boolean isEquivalentTo(SegmentBase other) {
+    return other != null && getClass() == other.getClass() && timescale == other.timescale
+        && presentationTimeOffset == other.presentationTimeOffset
+        && Util.areEqual(initialization, other.initialization);
+  }
+
+  /**
+   * Extends this instance with the segments of another that follow its own, if the other defines
+   * the same segments as this instance followed by further segments, and is otherwise equivalent.
+   * Used to reuse parts of a refreshed manifest whose segment timeline has grown.
+   *
+   * @param other The other {@link SegmentBase}.
+   * @return Whether this instance was extended.
+   */
+  /* package */ boolean extendTimeline(SegmentBase other) {
+    return false;
+  }
+
   /**
    * A {@link SegmentBase} that defines a single segment.
    */
@@ -105,6 +132,16 @@ public abstract class SegmentBase {
       return indexLength <= 0 ? null : new RangedUri(uri, null, indexStart, indexLength);
     }
 
+    @Override
+    /* package */ boolean isEquivalentTo(SegmentBase other) {
+      if (!super.isEquivalentTo(other)) {
+        return false;
+      }
+      SingleSegmentBase otherBase = (SingleSegmentBase) other;
+      return indexStart == otherBase.indexStart && indexLength == otherBase.indexLength
+          && uri.equals(otherBase.uri);
+    }
+
   }
 
   /**
@@ -114,7 +151,7 @@ public abstract class SegmentBase {
 
     /* package */ final int startNumber;
     /* package */ final long duration;
-    /* package */ final List<SegmentTimelineElement> segmentTimeline;
+    /* package */ final SegmentTimeline segmentTimeline;
 
     /**
      * @param initialization A {@link RangedUri} corresponding to initialization data, if such data
@@ -131,7 +168,7 @@ public abstract class SegmentBase {
      *     parameter.
      */
     public MultiSegmentBase(RangedUri initialization, long timescale, long presentationTimeOffset,
-        int startNumber, long duration, List<SegmentTimelineElement> segmentTimeline) {
+        int startNumber, long duration, SegmentTimeline segmentTimeline) {
       super(initialization, timescale, presentationTimeOffset);
       this.startNumber = startNumber;
       this.duration = duration;
@@ -154,19 +191,19 @@ public abstract class SegmentBase {
             : highIndex != DashSegmentIndex.INDEX_UNBOUNDED && segmentNum > highIndex ? highIndex
             : segmentNum;
       } else {
-        // The high index cannot be unbounded. Identify the segment using binary search.
-        while (lowIndex <= highIndex) {
-          int midIndex = (lowIndex + highIndex) / 2;
-          long midTimeUs = getSegmentTimeUs(midIndex);
-          if (midTimeUs < timeUs) {
-            lowIndex = midIndex + 1;
-          } else if (midTimeUs > timeUs) {
-            highIndex = midIndex - 1;
-          } else {
-            return midIndex;
-          }
+        // Identify the segment by searching the runs of the timeline. The conversion of timeUs
+        // into the timeline's timescale may round, so the result is then corrected to be the last
+        // segment that starts at or before timeUs.
+        long time = Util.scaleLargeTimestamp(timeUs, timescale, C.MICROS_PER_SECOND)
+            + presentationTimeOffset;
+        int segmentNum = startNumber + segmentTimeline.getSegmentIndex(time);
+        while (segmentNum < highIndex && getSegmentTimeUs(segmentNum + 1) <= timeUs) {
+          segmentNum++;
+        }
+        while (segmentNum > lowIndex && getSegmentTimeUs(segmentNum) > timeUs) {
+          segmentNum--;
         }
-        return lowIndex == firstSegmentNum ? lowIndex : highIndex;
+        return segmentNum;
       }
     }
 
@@ -175,7 +212,7 @@ public abstract class SegmentBase {
      */
     public final long getSegmentDurationUs(int sequenceNumber, long periodDurationUs) {
       if (segmentTimeline != null) {
-        long duration = segmentTimeline.get(sequenceNumber - startNumber).duration;
+        long duration = segmentTimeline.getDuration(sequenceNumber - startNumber);
         return (duration * C.MICROS_PER_SECOND) / timescale;
       } else {
         return sequenceNumber == getLastSegmentNum(periodDurationUs)
@@ -190,7 +227,7 @@ public abstract class SegmentBase {
     public final long getSegmentTimeUs(int sequenceNumber) {
       long unscaledSegmentTime;
       if (segmentTimeline != null) {
-        unscaledSegmentTime = segmentTimeline.get(sequenceNumber - startNumber).startTime
+        unscaledSegmentTime = segmentTimeline.getStartTime(sequenceNumber - startNumber)
             - presentationTimeOffset;
       } else {
         unscaledSegmentTime = (sequenceNumber - startNumber) * duration;
@@ -210,7 +247,8 @@ public abstract class SegmentBase {
      * @see DashSegmentIndex#getFirstSegmentNum()
      */
     public int getFirstSegmentNum() {
-      return startNumber;
+      return segmentTimeline == null ? startNumber
+          : startNumber + segmentTimeline.getFirstSegmentIndex();
     }
 
     /**
@@ -225,6 +263,64 @@ public abstract class SegmentBase {
       return segmentTimeline != null;
     }
 
+    @Override
+    /* package */ boolean isEquivalentTo(SegmentBase other) {
+      if (!isEquivalentIgnoringTimeline(other)) {
+        return false;
+      }
+      MultiSegmentBase otherBase = (MultiSegmentBase) other;
+      return startNumber == otherBase.startNumber
+          && Util.areEqual(segmentTimeline, otherBase.segmentTimeline);
+    }
+
+    @Override
+    /* package */ final boolean extendTimeline(SegmentBase other) {
+      if (segmentTimeline == null || !isEquivalentIgnoringTimeline(other)) {
+        return false;
+      }
+      MultiSegmentBase otherBase = (MultiSegmentBase) other;
+      SegmentTimeline otherTimeline = otherBase.segmentTimeline;
+      if (otherTimeline == null) {
+        return false;
+      }
+      int firstSegmentIndex = segmentTimeline.getExtensionStartIndex(otherTimeline);
+      if (firstSegmentIndex == -1) {
+        return false;
+      }
+      // Segments keep their numbers when the timeline is extended. If the other instance numbers
+      // them differently, for example because its start number was not advanced as segments were
+      // removed from the start of the timeline, then this is only valid if segments are not
+      // addressed by number.
+      if (otherBase.startNumber != startNumber + firstSegmentIndex
+          && (otherBase.startNumber != startNumber || addressesSegmentsByNumber())) {
+        return false;
+      }
+      segmentTimeline.extend(otherTimeline, firstSegmentIndex);
+      return true;
+    }
+
+    /**
+     * Returns whether this instance is equivalent to another, disregarding their segment
+     * timelines and start numbers.
+     *
+     * @param other The other {@link SegmentBase}.
+     * @return Whether the two instances are equivalent other than in their segment timelines and
+     *     start numbers.
+     */
+    /* package */ boolean isEquivalentIgnoringTimeline(SegmentBase other) {
+      if (!super.isEquivalentTo(other)) {
+        return false;
+      }
+      return duration == ((MultiSegmentBase) other).duration;
+    }
+
+    /**
+     * Returns whether the location of a segment depends on its sequence number.
+     */
+    /* package */ boolean addressesSegmentsByNumber() {
+      return true;
+    }
+
   }
 
   /**
@@ -250,7 +346,7 @@ public abstract class SegmentBase {
      * @param mediaSegments A list of {@link RangedUri}s indicating the locations of the segments.
      */
     public SegmentList(RangedUri initialization, long timescale, long presentationTimeOffset,
-        int startNumber, long duration, List<SegmentTimelineElement> segmentTimeline,
+        int startNumber, long duration, SegmentTimeline segmentTimeline,
         List<RangedUri> mediaSegments) {
       super(initialization, timescale, presentationTimeOffset, startNumber, duration,
           segmentTimeline);
@@ -272,6 +368,14 @@ public abstract class SegmentBase {
       return true;
     }
 
+    @Override
+    /* package */ boolean isEquivalentIgnoringTimeline(SegmentBase other) {
+      // The media segments are listed explicitly, so a list whose timeline has been extended
+      // differs in its media segments too, and is never extended in place.
+      return super.isEquivalentIgnoringTimeline(other)
+          && mediaSegments.equals(((SegmentList) other).mediaSegments);
+    }
+
   }
 
   /**
@@ -305,7 +409,7 @@ public abstract class SegmentBase {
      * @param baseUrl A url to use as the base for relative urls generated by the templates.
      */
     public SegmentTemplate(RangedUri initialization, long timescale, long presentationTimeOffset,
-        int startNumber, long duration, List<SegmentTimelineElement> segmentTimeline,
+        int startNumber, long duration, SegmentTimeline segmentTimeline,
         UrlTemplate initializationTemplate, UrlTemplate mediaTemplate, String baseUrl) {
       super(initialization, timescale, presentationTimeOffset, startNumber,
           duration, segmentTimeline);
@@ -329,7 +433,7 @@ public abstract class SegmentBase {
     public RangedUri getSegmentUrl(Representation representation, int sequenceNumber) {
       long time = 0;
       if (segmentTimeline != null) {
-        time = segmentTimeline.get(sequenceNumber - startNumber).startTime;
+        time = segmentTimeline.getStartTime(sequenceNumber - startNumber);
       } else {
         time = (sequenceNumber - startNumber) * duration;
       }
@@ -341,7 +445,8 @@ public abstract class SegmentBase {
     @Override
     public int getLastSegmentNum(long periodDurationUs) {
       if (segmentTimeline != null) {
-        return segmentTimeline.size() + startNumber - 1;
+        return startNumber + segmentTimeline.getFirstSegmentIndex()
+            + segmentTimeline.getSegmentCount() - 1;
       } else if (periodDurationUs == C.UNKNOWN_TIME_US) {
         return DashSegmentIndex.INDEX_UNBOUNDED;
       } else {
@@ -350,25 +455,256 @@ public abstract class SegmentBase {
       }
     }
 
+    @Override
+    /* package */ boolean isEquivalentIgnoringTimeline(SegmentBase other) {
+      if (!super.isEquivalentIgnoringTimeline(other)) {
+        return false;
+      }
+      SegmentTemplate otherTemplate = (SegmentTemplate) other;
+      return Util.areEqual(initializationTemplate, otherTemplate.initializationTemplate)
+          && Util.areEqual(mediaTemplate, otherTemplate.mediaTemplate)
+          && Util.areEqual(baseUrl, otherTemplate.baseUrl);
+    }
+
+    @Override
+    /* package */ boolean addressesSegmentsByNumber() {
+      return mediaTemplate.containsSegmentNumber();
+    }
+
   }
 
   /**
-   * Represents a timeline segment from the MPD's SegmentTimeline list.
+   * A run-length encoded representation of the MPD's SegmentTimeline element. Each run describes a
+   * sequence of consecutive segments of equal duration, as defined by an S element and its repeat
+   * count, so the size of the timeline is proportional to the number of S elements rather than to
+   * the number of segments.
+   * <p>
+   * A timeline can be extended in place by a refreshed timeline whose segments continue its own, as
+   * happens for live streams. The refreshed timeline may omit segments from the start, as when a
+   * live window slides forward. The runs are replaced atomically, so a timeline may be read by one
+   * thread whilst being extended by another. Segments keep their indices when the timeline is
+   * extended, so the index of the first segment is only zero until segments are removed from the
+   * start.
    */
-  public static class SegmentTimelineElement {
+  public static final class SegmentTimeline {
 
-    /* package */ long startTime;
-    /* package */ long duration;
+    private volatile Runs runs;
 
     /**
-     * @param startTime The start time of the element. The value in seconds is the division of this
-     *     value and the {@code timescale} of the enclosing element.
-     * @param duration The duration of the element. The value in seconds is the division of this
-     *     value and the {@code timescale} of the enclosing element.
+     * @param runStartTimes The start time of the first segment in each run, in increasing order.
+     *     The value in seconds is the division of each value and the {@code timescale} of the
+     *     enclosing element.
+     * @param runDurations The duration of each segment in each run. The value in seconds is the
+     *     division of each value and the {@code timescale} of the enclosing element.
+     * @param runSegmentCounts The number of segments in each run. Each run must contain at least
+     *     one segment.
      */
-    public SegmentTimelineElement(long startTime, long duration) {
-      this.startTime = startTime;
-      this.duration = duration;
+    public SegmentTimeline(long[] runStartTimes, long[] runDurations, int[] runSegmentCounts) {
+      runs = new Runs(runStartTimes, runDurations, runSegmentCounts);
+    }
+
+    /**
+     * Returns the index of the first segment in the timeline.
+     */
+    public int getFirstSegmentIndex() {
+      return runs.firstSegmentIndex;
+    }
+
+    /**
+     * Returns the number of segments in the timeline.
+     */
+    public int getSegmentCount() {
+      return runs.segmentCount;
+    }
+
+    /**
+     * Returns the start time of a segment.
+     *
+     * @param index The index of the segment in the timeline.
+     * @return The start time of the segment, in the timescale of the enclosing element.
+     */
+    public long getStartTime(int index) {
+      Runs runs = this.runs;
+      return runs.getStartTime(runs.getPosition(index));
+    }
+
+    /**
+     * Returns the duration of a segment.
+     *
+     * @param index The index of the segment in the timeline.
+     * @return The duration of the segment, in the timescale of the enclosing element.
+     */
+    public long getDuration(int index) {
+      Runs runs = this.runs;
+      return runs.getDuration(runs.getPosition(index));
+    }
+
+    /**
+     * Returns the index of the last segment that starts at or before the specified time, or the
+     * index of the first segment if the time is before its start.
+     *
+     * @param time The time, in the timescale of the enclosing element.
+     * @return The index of the segment in the timeline.
+     */
+    public int getSegmentIndex(long time) {
+      Runs runs = this.runs;
+      int run = Util.binarySearchFloor(runs.startTimes, time, true, false);
+      if (run < 0) {
+        return runs.firstSegmentIndex;
+      }
+      long duration = runs.durations[run];
+      long offset = duration == 0 ? 0 : (time - runs.startTimes[run]) / duration;
+      return runs.firstSegmentIndex + runs.firstSegmentPositions[run]
+          + (int) Math.min(offset, runs.segmentCounts[run] - 1);
+    }
+
+    /**
+     * Returns the index in this timeline of the first segment of another, if the other timeline
+     * can extend this one. This is the case if the other timeline's first segment is one of the
+     * segments of this timeline, if the two timelines match from that segment to the end of this
+     * timeline, and if the other timeline then continues with further segments.
+     *
+     * @param other The other timeline.
+     * @return The index in this timeline of the other timeline's first segment, or -1 if the other
+     *     timeline cannot extend this one.
+     */
+    /* package */ int getExtensionStartIndex(SegmentTimeline other) {
+      Runs runs = this.runs;
+      Runs otherRuns = other.runs;
+      // Find the other timeline's first segment.
+      long startTime = otherRuns.startTimes[0];
+      int run = Util.binarySearchFloor(runs.startTimes, startTime, true, false);
+      if (run < 0) {
+        return -1;
+      }
+      long duration = runs.durations[run];
+      long offset = startTime - runs.startTimes[run];
+      if (duration == 0 ? offset != 0 : offset % duration != 0) {
+        return -1;
+      }
+      long segmentInRun = duration == 0 ? 0 : offset / duration;
+      if (segmentInRun >= runs.segmentCounts[run]) {
+        return -1;
+      }
+      // Check that the segments from there to the end of this timeline match, and that at least
+      // one segment follows them.
+      int startPosition = runs.firstSegmentPositions[run] + (int) segmentInRun;
+      int overlapCount = runs.segmentCount - startPosition;
+      if (otherRuns.segmentCount <= overlapCount) {
+        return -1;
+      }
+      for (int i = 0; i < overlapCount; i++) {
+        if (runs.getStartTime(startPosition + i) != otherRuns.getStartTime(i)
+            || runs.getDuration(startPosition + i) != otherRuns.getDuration(i)) {
+          return -1;
+        }
+      }
+      return runs.firstSegmentIndex + startPosition;
+    }
+
+    /**
+     * Replaces the segments of this timeline with those of another that extends it.
+     *
+     * @param other The other timeline.
+     * @param firstSegmentIndex The index in this timeline of the other timeline's first segment, as
+     *     returned by {@link #getExtensionStartIndex(SegmentTimeline)}.
+     */
+    /* package */ void extend(SegmentTimeline other, int firstSegmentIndex) {
+      runs = new Runs(other.runs, firstSegmentIndex);
+    }
+
+    @Override
+    public int hashCode() {
+      Runs runs = this.runs;
+      int result = 17;
+      result = 31 * result + runs.firstSegmentIndex;
+      result = 31 * result + Arrays.hashCode(runs.startTimes);
+      result = 31 * result + Arrays.hashCode(runs.durations);
+      result = 31 * result + Arrays.hashCode(runs.segmentCounts);
+      return result;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if (this == obj) {
+        return true;
+      }
+      if (obj == null || getClass() != obj.getClass()) {
+        return false;
+      }
+      Runs runs = this.runs;
+      Runs otherRuns = ((SegmentTimeline) obj).runs;
+      return runs.firstSegmentIndex == otherRuns.firstSegmentIndex
+          && Arrays.equals(runs.startTimes, otherRuns.startTimes)
+          && Arrays.equals(runs.durations, otherRuns.durations)
+          && Arrays.equals(runs.segmentCounts, otherRuns.segmentCounts);
+    }
+
+    /**
+     * The immutable runs of a {@link SegmentTimeline}. The position of a segment is its index
+     * relative to the first segment.
+     */
+    private static final class Runs {
+
+      public final int firstSegmentIndex;
+      public final long[] startTimes;
+      public final long[] durations;
+      public final int[] segmentCounts;
+      public final int[] firstSegmentPositions;
+      public final int segmentCount;
+
+      public Runs(long[] startTimes, long[] durations, int[] segmentCounts) {
+        Assertions.checkArgument(startTimes.length == durations.length
+            && startTimes.length == segmentCounts.length);
+        firstSegmentIndex = 0;
+        this.startTimes = startTimes;
+        this.durations = durations;
+        this.segmentCounts = segmentCounts;
+        firstSegmentPositions = new int[startTimes.length];
+        int segmentCount = 0;
+        for (int i = 0; i < startTimes.length; i++) {
+          Assertions.checkArgument(segmentCounts[i] > 0);
+          firstSegmentPositions[i] = segmentCount;
+          segmentCount += segmentCounts[i];
+        }
+        this.segmentCount = segmentCount;
+      }
+
+      /**
+       * Shares the runs of another instance, whose first segment has a different index.
+       */
+      public Runs(Runs runs, int firstSegmentIndex) {
+        this.firstSegmentIndex = firstSegmentIndex;
+        startTimes = runs.startTimes;
+        durations = runs.durations;
+        segmentCounts = runs.segmentCounts;
+        firstSegmentPositions = runs.firstSegmentPositions;
+        segmentCount = runs.segmentCount;
+      }
+
+      public int getPosition(int index) {
+        int position = index - firstSegmentIndex;
+        if (position < 0 || position >= segmentCount) {
+          throw new IndexOutOfBoundsException("Index: " + index + ", first index: "
+              + firstSegmentIndex + ", segment count: " + segmentCount);
+        }
+        return position;
+      }
+
+      public long getStartTime(int position) {
+        int run = getRunIndex(position);
+        return startTimes[run] + (position - firstSegmentPositions[run]) * durations[run];
+      }
+
+      public long getDuration(int position) {
+        return durations[getRunIndex(position)];
+      }
+
+      private int getRunIndex(int position) {
+        int run = Arrays.binarySearch(firstSegmentPositions, position);
+        return run < 0 ? -(run + 2) : run;
+      }
+
     }
 
   }
@@ -0,0 +1,458 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer.drm;
+
+import com.google.android.exoplayer.drm.DrmInitData.SchemeInitData;
+import com.google.android.exoplayer.util.Assertions;
+import com.google.android.exoplayer.util.Clock;
+import com.google.android.exoplayer.util.SystemClock;
+
+import android.annotation.TargetApi;
+import android.media.MediaCrypto;
+import android.os.Handler;
+import android.os.Looper;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.UUID;
+
+/**
+ * A {@link DrmSessionManager} that keeps a bounded pool of open sessions, so that licenses can be
+ * acquired before they are needed and reused.
+ * <p>
+ * {@link #preload(DrmInitData)} opens a session and requests its keys ahead of time, for example
+ * for the next item in a playlist. When {@link #open(DrmInitData)} is later invoked with the same
+ * initialization data, the preloaded session is used, and playback does not wait for a license
+ * round trip. When the manager is closed its session is returned to the pool, so that switching
+ * back to recently played content is also fast.
+ * <p>
+ * Sessions that are not in use are closed once they have been open for longer than the configured
+ * time to live since their keys were last loaded, and when they fail, which includes their keys
+ * expiring. If the pool is full then the least recently used session is closed.
+ */
+@TargetApi(18)
+public final class PooledDrmSessionManager implements DrmSessionManager {
+
+  /**
+   * Interface definition for a callback to be notified of {@link PooledDrmSessionManager} events.
+   * <p>
+   * {@link #onDrmKeysLoaded()} and {@link #onDrmSessionManagerError(Exception)} are only invoked
+   * for the session that is in use.
+   */
+  public interface EventListener extends StreamingDrmSessionManager.EventListener {
+
+    /**
+     * Invoked when the manager is opened.
+     *
+     * @param pooled Whether a session from the pool was used, rather than a new session opened.
+     */
+    void onDrmSessionAcquired(boolean pooled);
+
+    /**
+     * Invoked when keys are first loaded into a session, including preloaded sessions.
+     *
+     * @param licenseLatencyMs The time from when the session was opened to when its keys were
+     *     loaded.
+     * @param preloaded Whether the session was opened by
+     *     {@link PooledDrmSessionManager#preload(DrmInitData)}.
+     */
+    void onDrmLicenseLoaded(long licenseLatencyMs, boolean preloaded);
+
+  }
+
+  /**
+   * Creates the sessions held by a {@link PooledDrmSessionManager}.
+   */
+  public interface SessionFactory {
+
+    /**
+     * Creates a closed session.
+     *
+     * @param listener A listener of the session's events. Must be invoked on the thread on which
+     *     the session's responses are handled.
+     * @return The session.
+     * @throws UnsupportedDrmException If the DRM scheme is not supported.
+     */
+    DrmSessionManager createSession(StreamingDrmSessionManager.EventListener listener)
+        throws UnsupportedDrmException;
+
+  }
+
+  /**
+   * A {@link SessionFactory} that creates {@link StreamingDrmSessionManager} instances.
+   */
+  public static final class StreamingSessionFactory implements SessionFactory {
+
+    private final UUID uuid;
+    private final Looper playbackLooper;
+    private final MediaDrmCallback callback;
+    private final HashMap<String, String> optionalKeyRequestParameters;
+    private final Handler sessionEventHandler;
+
+    /**
+     * @param uuid The UUID of the drm scheme.
+     * @param playbackLooper The looper associated with the media playback thread, on which the
+     *     sessions handle responses.
+     * @param callback Performs key and provisioning requests. Tests may provide a local fake.
+     * @param optionalKeyRequestParameters An optional map of parameters to pass to each key
+     *     request. May be null.
+     */
+    public StreamingSessionFactory(UUID uuid, Looper playbackLooper, MediaDrmCallback callback,
+        HashMap<String, String> optionalKeyRequestParameters) {
+      this.uuid = uuid;
+      this.playbackLooper = playbackLooper;
+      this.callback = callback;
+      this.optionalKeyRequestParameters = optionalKeyRequestParameters;
+      sessionEventHandler = new Handler(playbackLooper);
+    }
+
+    @Override
+    public DrmSessionManager createSession(StreamingDrmSessionManager.EventListener listener)
+        throws UnsupportedDrmException {
+      return new StreamingDrmSessionManager(uuid, playbackLooper, callback,
+          optionalKeyRequestParameters, sessionEventHandler, listener);
+    }
+
+  }
+
+  public static final int DEFAULT_MAX_IDLE_SESSIONS = 3;
+  public static final long DEFAULT_SESSION_TIME_TO_LIVE_MS = 10 * 60 * 1000;
+
+  private final UUID uuid;
+  private final SessionFactory sessionFactory;
+  private final int maxIdleSessions;
+  private final long sessionTimeToLiveMs;
+  private final Clock clock;
+  private final Handler eventHandler;
+  private final EventListener eventListener;
+  private final LinkedList<Session> idleSessions;
+
+  private int openCount;
+  private Session activeSession;
+  private Exception sessionCreationError;
+  private boolean released;
+
+  /**
+   * Instantiates a new instance using the Widevine scheme.
+   *
+   * @param playbackLooper The looper associated with the media playback thread. Should usually be
+   *     obtained using {@link com.google.android.exoplayer.ExoPlayer#getPlaybackLooper()}.
+   * @param callback Performs key and provisioning requests.
+   * @param optionalKeyRequestParameters An optional map of parameters to pass to each key request.
+   *     May be null.
+   * @param eventHandler A handler to use when delivering events to {@code eventListener}. May be
+   *     null if delivery of events is not required.
+   * @param eventListener A listener of events. May be null if delivery of events is not required.
+   */
+  public static PooledDrmSessionManager newWidevineInstance(Looper playbackLooper,
+      MediaDrmCallback callback, HashMap<String, String> optionalKeyRequestParameters,
+      Handler eventHandler, EventListener eventListener) {
+    UUID uuid = StreamingDrmSessionManager.WIDEVINE_UUID;
+    return new PooledDrmSessionManager(uuid, new StreamingSessionFactory(uuid, playbackLooper,
+        callback, optionalKeyRequestParameters), eventHandler, eventListener);
+  }
+
+  /**
+   * @param uuid The UUID of the drm scheme.
+   * @param sessionFactory Creates the pooled sessions.
+   * @param eventHandler A handler to use when delivering events to {@code eventListener}. May be
+   *     null if delivery of events is not required.
+   * @param eventListener A listener of events. May be null if delivery of events is not required.
+   */
+  public PooledDrmSessionManager(UUID uuid, SessionFactory sessionFactory, Handler eventHandler,
+      EventListener eventListener) {
+    this(uuid, sessionFactory, DEFAULT_MAX_IDLE_SESSIONS, DEFAULT_SESSION_TIME_TO_LIVE_MS,
+        new SystemClock(), eventHandler, eventListener);
+  }
+
+  /**
+   * @param uuid The UUID of the drm scheme.
+   * @param sessionFactory Creates the pooled sessions.
+   * @param maxIdleSessions The maximum number of sessions to keep open whilst they are not in use.
+   * @param sessionTimeToLiveMs The time for which a session that is not in use is kept open after
+   *     its keys were last loaded. Should not exceed the duration of the licenses.
+   * @param clock The clock used to measure time.
+   * @param eventHandler A handler to use when delivering events to {@code eventListener}. May be
+   *     null if delivery of events is not required.
+   * @param eventListener A listener of events. May be null if delivery of events is not required.
+   */
+  public PooledDrmSessionManager(UUID uuid, SessionFactory sessionFactory, int maxIdleSessions,
+      long sessionTimeToLiveMs, Clock clock, Handler eventHandler, EventListener eventListener) {
+    Assertions.checkArgument(maxIdleSessions >= 0);
+    this.uuid = uuid;
+    this.sessionFactory = sessionFactory;
+    this.maxIdleSessions = maxIdleSessions;
+    this.sessionTimeToLiveMs = sessionTimeToLiveMs;
+    this.clock = clock;
+    this.eventHandler = eventHandler;
+    this.eventListener = eventListener;
+    idleSessions = new LinkedList<>();
+  }
+
+  /**
+   * Opens a session and requests its keys, unless a session for the same initialization data is
+   * already open. May be invoked from any thread.
+   *
+   * @param drmInitData DRM initialization data.
+   * @return Whether a session for the initialization data is open or opening.
+   */
+  public synchronized boolean preload(DrmInitData drmInitData) {
+    Assertions.checkState(!released);
+    SchemeInitData schemeInitData = drmInitData.get(uuid);
+    if (schemeInitData == null) {
+      return false;
+    }
+    removeStaleSessions();
+    if (activeSession != null && schemeInitData.equals(activeSession.schemeInitData)) {
+      return true;
+    }
+    Session session = removeIdleSession(schemeInitData);
+    if (session == null) {
+      try {
+        session = openSession(schemeInitData, drmInitData, true);
+      } catch (UnsupportedDrmException e) {
+        return false;
+      }
+    }
+    addIdleSession(session);
+    return true;
+  }
+
+  /**
+   * Closes all sessions that are not in use. The session that is in use is closed when the manager
+   * is closed. Sessions may not be preloaded after this method is invoked.
+   */
+  public synchronized void release() {
+    released = true;
+    while (!idleSessions.isEmpty()) {
+      idleSessions.removeFirst().manager.close();
+    }
+  }
+
+  /**
+   * Returns the number of sessions that are open but not in use.
+   */
+  public synchronized int getIdleSessionCount() {
+    return idleSessions.size();
+  }
+
+  @Override
+  public synchronized void open(DrmInitData drmInitData) {
+    if (++openCount != 1) {
+      return;
+    }
+    SchemeInitData schemeInitData = drmInitData.get(uuid);
+    removeStaleSessions();
+    Session session = schemeInitData == null ? null : removeIdleSession(schemeInitData);
+    if (session != null) {
+      activeSession = session;
+      notifySessionAcquired(true);
+      if (session.manager.getState() == STATE_OPENED_WITH_KEYS) {
+        notifyKeysLoaded();
+      }
+      return;
+    }
+    try {
+      // If the media does not support the scheme then the session reports the error.
+      activeSession = openSession(schemeInitData, drmInitData, false);
+      notifySessionAcquired(false);
+    } catch (UnsupportedDrmException e) {
+      sessionCreationError = e;
+      notifyError(e);
+    }
+  }
+
+  @Override
+  public synchronized void close() {
+    if (--openCount != 0) {
+      return;
+    }
+    Session session = activeSession;
+    activeSession = null;
+    sessionCreationError = null;
+    if (session == null) {
+      return;
+    }
+    if (!released && session.schemeInitData != null
+        && session.manager.getState() == STATE_OPENED_WITH_KEYS) {
+      addIdleSession(session);
+    } else {
+      session.manager.close();
+    }
+  }
+
+  @Override
+  public synchronized int getState() {
+    if (activeSession == null) {
+      return sessionCreationError != null ? STATE_ERROR : STATE_CLOSED;
+    }
+    return activeSession.manager.getState();
+  }
+
+  @Override
+  public synchronized MediaCrypto getMediaCrypto() {
+    if (activeSession == null) {
+      throw new IllegalStateException();
+    }
+    return activeSession.manager.getMediaCrypto();
+  }
+
+  @Override
+  public synchronized boolean requiresSecureDecoderComponent(String mimeType) {
+    if (activeSession == null) {
+      throw new IllegalStateException();
+    }
+    return activeSession.manager.requiresSecureDecoderComponent(mimeType);
+  }
+
+  @Override
+  public synchronized Exception getError() {
+    return activeSession == null ? sessionCreationError : activeSession.manager.getError();
+  }
+
+  // Internal methods.
+
+  private Session openSession(SchemeInitData schemeInitData, DrmInitData drmInitData,
+      boolean preloaded) throws UnsupportedDrmException {
+    Session session = new Session(schemeInitData, preloaded);
+    session.manager = sessionFactory.createSession(session);
+    session.openTimeMs = clock.elapsedRealtime();
+    session.refreshTimeMs = session.openTimeMs;
+    session.manager.open(drmInitData);
+    return session;
+  }
+
+  private Session removeIdleSession(SchemeInitData schemeInitData) {
+    Iterator<Session> iterator = idleSessions.iterator();
+    while (iterator.hasNext()) {
+      Session session = iterator.next();
+      if (schemeInitData.equals(session.schemeInitData)) {
+        iterator.remove();
+        return session;
+      }
+    }
+    return null;
+  }
+
+  private void addIdleSession(Session session) {
+    // The most recently used session is kept at the end of the list.
+    idleSessions.add(session);
+    while (idleSessions.size() > maxIdleSessions) {
+      idleSessions.removeFirst().manager.close();
+    }
+  }
+
+  private void removeStaleSessions() {
+    long nowMs = clock.elapsedRealtime();
+    Iterator<Session> iterator = idleSessions.iterator();
+    while (iterator.hasNext()) {
+      Session session = iterator.next();
+      if (session.manager.getState() == STATE_ERROR
+          || nowMs - session.refreshTimeMs > sessionTimeToLiveMs) {
+        iterator.remove();
+        session.manager.close();
+      }
+    }
+  }
+
+  private void notifySessionAcquired(final boolean pooled) {
+    if (eventHandler != null && eventListener != null) {
+      eventHandler.post(new Runnable() {
+        @Override
+        public void run() {
+          eventListener.onDrmSessionAcquired(pooled);
+        }
+      });
+    }
+  }
+
+  private void notifyKeysLoaded() {
+    if (eventHandler != null && eventListener != null) {
+      eventHandler.post(new Runnable() {
+        @Override
+        public void run() {
+          eventListener.onDrmKeysLoaded();
+        }
+      });
+    }
+  }
+
+  private void notifyLicenseLoaded(final long licenseLatencyMs, final boolean preloaded) {
+    if (eventHandler != null && eventListener != null) {
+      eventHandler.post(new Runnable() {
+        @Override
+        public void run() {
+          eventListener.onDrmLicenseLoaded(licenseLatencyMs, preloaded);
+        }
+      });
+    }
+  }
+
+  private void notifyError(final Exception e) {
+    if (eventHandler != null && eventListener != null) {
+      eventHandler.post(new Runnable() {
+        @Override
+        public void run() {
+          eventListener.onDrmSessionManagerError(e);
+        }
+      });
+    }
+  }
+
+  private final class Session implements StreamingDrmSessionManager.EventListener {
+
+    public final SchemeInitData schemeInitData;
+    public final boolean preloaded;
+
+    public DrmSessionManager manager;
+    public long openTimeMs;
+    public long refreshTimeMs;
+    public boolean keysLoaded;
+
+    public Session(SchemeInitData schemeInitData, boolean preloaded) {
+      this.schemeInitData = schemeInitData;
+      this.preloaded = preloaded;
+    }
+
+    @Override
+    public void onDrmKeysLoaded() {
+      synchronized (PooledDrmSessionManager.this) {
+        refreshTimeMs = clock.elapsedRealtime();
+        if (!keysLoaded) {
+          keysLoaded = true;
+          notifyLicenseLoaded(refreshTimeMs - openTimeMs, preloaded);
+        }
+        if (this == activeSession) {
+          notifyKeysLoaded();
+        }
+      }
+    }
+
+    @Override
+    public void onDrmSessionManagerError(Exception e) {
+      synchronized (PooledDrmSessionManager.this) {
+        if (this == activeSession) {
+          notifyError(e);
+        } else if (idleSessions.remove(this)) {
+          manager.close();
+        }
+      }
+    }
+
+  }
+
+}
@@ -102,7 +102,8 @@ public class StreamingDrmSessionManager implements DrmSessionManager {
 
   private int openCount;
   private boolean provisioningInProgress;
-  private int state;
+  // Read from other threads when the session is held by a PooledDrmSessionManager.
+  private volatile int state;
   private MediaCrypto mediaCrypto;
   private Exception lastException;
   private SchemeInitData schemeInitData;
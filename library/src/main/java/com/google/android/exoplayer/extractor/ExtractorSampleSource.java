@@ -39,7 +39,9 @@ import android.util.SparseArray;
 import java.io.EOFException;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * A {@link SampleSource} that extracts sample data using an {@link Extractor}.
@@ -60,7 +62,14 @@ import java.util.List;
  * <li>FLV ({@link com.google.android.exoplayer.extractor.flv.FlvExtractor}</li>
  * </ul>
  *
- * <p>Seeking in AAC, MPEG TS and FLV streams is not supported.
+ * <p>The format is detected by checking the signatures of all of these formats against a single
+ * prefix of the stream. Only the extractors for a matching format are instantiated and asked to
+ * sniff the stream, unless none of them can read it. The extractor selected for each URI is
+ * remembered, and tried first when the same URI is read again.
+ *
+ * <p>Seeking in AAC, MPEG TS and FLV streams is not supported, unless an AAC or MPEG TS extractor
+ * is given a {@link KeyframeIndex} built by a
+ * {@link com.google.android.exoplayer.extractor.ts.KeyframeIndexer}.
  *
  * <p>To override the default extractors, pass one or more {@link Extractor} instances to the
  * constructor. When reading a new stream, the first {@link Extractor} that returns {@code true}
@@ -236,18 +245,10 @@ public final class ExtractorSampleSource implements SampleSource, SampleSourceRe
     this.requestedBufferSize = requestedBufferSize;
     this.minLoadableRetryCount = minLoadableRetryCount;
     if (extractors == null || extractors.length == 0) {
-      extractors = new Extractor[DEFAULT_EXTRACTOR_CLASSES.size()];
-      for (int i = 0; i < extractors.length; i++) {
-        try {
-          extractors[i] = DEFAULT_EXTRACTOR_CLASSES.get(i).newInstance();
-        } catch (InstantiationException e) {
-          throw new IllegalStateException("Unexpected error creating default extractor", e);
-        } catch (IllegalAccessException e) {
-          throw new IllegalStateException("Unexpected error creating default extractor", e);
-        }
-      }
+      extractorHolder = new ExtractorHolder(uri, DEFAULT_EXTRACTOR_CLASSES, this);
+    } else {
+      extractorHolder = new ExtractorHolder(extractors, this);
     }
-    extractorHolder = new ExtractorHolder(extractors, this);
     sampleQueues = new SparseArray<>();
     pendingResetPositionUs = NO_RESET_PENDING;
   }
@@ -278,6 +279,11 @@ public final class ExtractorSampleSource implements SampleSource, SampleSourceRe
       maxTrackDurationUs = C.UNKNOWN_TIME_US;
       for (int i = 0; i < trackCount; i++) {
         MediaFormat format = sampleQueues.valueAt(i).getFormat();
+        if (format.durationUs == C.UNKNOWN_TIME_US && seekMap instanceof KeyframeIndex
+            && seekMap.isSeekable()) {
+          // The container does not specify a duration, but indexing the stream has determined it.
+          format = format.copyWithDurationUs(((KeyframeIndex) seekMap).getDurationUs());
+        }
         mediaFormats[i] = format;
         if (format.durationUs != C.UNKNOWN_TIME_US && format.durationUs > maxTrackDurationUs) {
           maxTrackDurationUs = format.durationUs;
@@ -748,9 +754,29 @@ public final class ExtractorSampleSource implements SampleSource, SampleSourceRe
   /**
    * Stores a list of extractors and a selected extractor when the format has been detected.
    */
-  private static final class ExtractorHolder {
+  /* package */ static final class ExtractorHolder {
+
+    /**
+     * The maximum number of {@link Uri}s for which the selected default extractor is remembered.
+     */
+    private static final int MAX_CACHED_FORMAT_COUNT = 16;
 
+    /**
+     * The names of the default extractor classes selected for recently read {@link Uri}s. Guarded
+     * by itself.
+     */
+    private static final LinkedHashMap<Uri, String> cachedExtractorClassNames =
+        new LinkedHashMap<Uri, String>(MAX_CACHED_FORMAT_COUNT + 1, 1, true) {
+          @Override
+          protected boolean removeEldestEntry(Map.Entry<Uri, String> eldest) {
+            return size() > MAX_CACHED_FORMAT_COUNT;
+          }
+        };
+
+    private final Uri uri;
+    private final List<Class<? extends Extractor>> extractorClasses;
     private final Extractor[] extractors;
+    private final boolean[] sniffedExtractors;
     private final ExtractorOutput extractorOutput;
     private Extractor extractor;
 
@@ -763,6 +789,30 @@ public final class ExtractorSampleSource implements SampleSource, SampleSourceRe
     public ExtractorHolder(Extractor[] extractors, ExtractorOutput extractorOutput) {
       this.extractors = extractors;
       this.extractorOutput = extractorOutput;
+      uri = null;
+      extractorClasses = null;
+      sniffedExtractors = new boolean[extractors.length];
+    }
+
+    /**
+     * Creates a holder that will select one of the specified extractor classes and initialize an
+     * instance of it using the specified output.
+     * <p>
+     * The format of the stream is first detected from a single prefix by a {@link FormatSniffer},
+     * so that only matching extractors sniff it, and the extractor selected for each {@link Uri} is
+     * remembered for later holders. Extractors are only instantiated when they are needed.
+     *
+     * @param uri The {@link Uri} of the stream.
+     * @param extractorClasses One or more extractor classes to choose from.
+     * @param extractorOutput The output that will be used to initialize the selected extractor.
+     */
+    public ExtractorHolder(Uri uri, List<Class<? extends Extractor>> extractorClasses,
+        ExtractorOutput extractorOutput) {
+      this.uri = uri;
+      this.extractorClasses = extractorClasses;
+      this.extractorOutput = extractorOutput;
+      extractors = new Extractor[extractorClasses.size()];
+      sniffedExtractors = new boolean[extractors.length];
     }
 
     /**
@@ -779,24 +829,78 @@ public final class ExtractorSampleSource implements SampleSource, SampleSourceRe
       if (extractor != null) {
         return extractor;
       }
-      for (Extractor extractor : extractors) {
-        try {
-          if (extractor.sniff(input)) {
-            this.extractor = extractor;
-            break;
+      if (extractorClasses != null) {
+        String cachedExtractorClassName;
+        synchronized (cachedExtractorClassNames) {
+          cachedExtractorClassName = cachedExtractorClassNames.get(uri);
+        }
+        if (cachedExtractorClassName != null) {
+          sniff(getExtractorIndex(cachedExtractorClassName), input);
+        }
+        if (extractor == null) {
+          String[] candidateClassNames = new FormatSniffer().sniff(input);
+          input.resetPeekPosition();
+          for (int i = 0; candidateClassNames != null && i < candidateClassNames.length
+              && extractor == null; i++) {
+            sniff(getExtractorIndex(candidateClassNames[i]), input);
           }
-        } catch (EOFException e) {
-          // Do nothing.
         }
-        input.resetPeekPosition();
+      }
+      // Fall back to sniffing with each of the remaining extractors in turn.
+      for (int i = 0; i < extractors.length && extractor == null; i++) {
+        sniff(i, input);
       }
       if (extractor == null) {
         throw new UnrecognizedInputFormatException(extractors);
       }
+      if (extractorClasses != null) {
+        synchronized (cachedExtractorClassNames) {
+          cachedExtractorClassNames.put(uri, extractor.getClass().getName());
+        }
+      }
       extractor.init(extractorOutput);
       return extractor;
     }
 
+    private void sniff(int index, ExtractorInput input) throws IOException, InterruptedException {
+      if (index == -1 || sniffedExtractors[index]) {
+        return;
+      }
+      sniffedExtractors[index] = true;
+      Extractor candidate = getExtractor(index);
+      try {
+        if (candidate.sniff(input)) {
+          extractor = candidate;
+          return;
+        }
+      } catch (EOFException e) {
+        // Do nothing.
+      }
+      input.resetPeekPosition();
+    }
+
+    private Extractor getExtractor(int index) {
+      if (extractors[index] == null) {
+        try {
+          extractors[index] = extractorClasses.get(index).newInstance();
+        } catch (InstantiationException e) {
+          throw new IllegalStateException("Unexpected error creating default extractor", e);
+        } catch (IllegalAccessException e) {
+          throw new IllegalStateException("Unexpected error creating default extractor", e);
+        }
+      }
+      return extractors[index];
+    }
+
+    private int getExtractorIndex(String className) {
+      for (int i = 0; i < extractorClasses.size(); i++) {
+        if (extractorClasses.get(i).getName().equals(className)) {
+          return i;
+        }
+      }
+      return -1;
+    }
+
   }
 
 }
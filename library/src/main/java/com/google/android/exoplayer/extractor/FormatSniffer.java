@@ -0,0 +1,163 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer.extractor;
+
+import com.google.android.exoplayer.C;
+import com.google.android.exoplayer.util.Util;
+
+import java.io.EOFException;
+import java.io.IOException;
+
+/**
+ * Detects the container format of a stream from the signatures of the default extractors' formats,
+ * so that only the extractors that can read it need to sniff the stream.
+ * <p>
+ * The signatures are checked against a single prefix of the stream, peeked once. A match is only
+ * an indication of the format. The stream should still be sniffed by the candidate extractors,
+ * and by the remaining extractors if none of the candidates can read it.
+ */
+/* package */ final class FormatSniffer {
+
+  /**
+   * The number of bytes peeked from the start of the stream. This is the length of five MPEG TS
+   * packets, which is the number checked by the TS extractor, so that any stream the TS extractor
+   * can sniff is long enough to be matched.
+   */
+  public static final int PREFIX_LENGTH = 5 * 188;
+
+  private static final String WEBM_EXTRACTOR =
+      "com.google.android.exoplayer.extractor.webm.WebmExtractor";
+  private static final String FRAGMENTED_MP4_EXTRACTOR =
+      "com.google.android.exoplayer.extractor.mp4.FragmentedMp4Extractor";
+  private static final String MP4_EXTRACTOR =
+      "com.google.android.exoplayer.extractor.mp4.Mp4Extractor";
+  private static final String MP3_EXTRACTOR =
+      "com.google.android.exoplayer.extractor.mp3.Mp3Extractor";
+  private static final String ADTS_EXTRACTOR =
+      "com.google.android.exoplayer.extractor.ts.AdtsExtractor";
+  private static final String TS_EXTRACTOR =
+      "com.google.android.exoplayer.extractor.ts.TsExtractor";
+  private static final String FLV_EXTRACTOR =
+      "com.google.android.exoplayer.extractor.flv.FlvExtractor";
+  private static final String PS_EXTRACTOR =
+      "com.google.android.exoplayer.extractor.ts.PsExtractor";
+
+  private static final int TS_PACKET_SIZE = 188;
+  private static final int TS_SYNC_BYTE = 0x47;
+  private static final int EBML_HEADER_ID = 0x1A45DFA3;
+  private static final int PACK_START_CODE = 0x000001BA;
+  private static final int ID3_TAG = Util.getIntegerCodeForString("ID3");
+  private static final int FLV_TAG = Util.getIntegerCodeForString("FLV");
+  private static final int[] ISO_BMFF_ATOM_TYPES = new int[] {
+    Util.getIntegerCodeForString("ftyp"),
+    Util.getIntegerCodeForString("styp"),
+    Util.getIntegerCodeForString("moov"),
+    Util.getIntegerCodeForString("moof"),
+    Util.getIntegerCodeForString("sidx"),
+    Util.getIntegerCodeForString("mdat"),
+    Util.getIntegerCodeForString("free"),
+    Util.getIntegerCodeForString("skip"),
+    Util.getIntegerCodeForString("wide")
+  };
+
+  private final byte[] prefix;
+
+  public FormatSniffer() {
+    prefix = new byte[PREFIX_LENGTH];
+  }
+
+  /**
+   * Peeks a prefix of the input and returns the names of the extractor classes that may be able to
+   * read it, in decreasing order of priority.
+   * <p>
+   * The peek position is not reset when the method returns.
+   *
+   * @param input The {@link ExtractorInput} from which data should be peeked.
+   * @return The names of the candidate extractor classes, or null if the format was not recognized
+   *     or the input is shorter than {@link #PREFIX_LENGTH}.
+   * @throws IOException If an error occurred reading from the input.
+   * @throws InterruptedException If the thread was interrupted.
+   */
+  public String[] sniff(ExtractorInput input) throws IOException, InterruptedException {
+    long inputLength = input.getLength();
+    if (inputLength != C.LENGTH_UNBOUNDED && inputLength < PREFIX_LENGTH) {
+      return null;
+    }
+    try {
+      if (!input.peekFully(prefix, 0, PREFIX_LENGTH, true)) {
+        return null;
+      }
+    } catch (EOFException e) {
+      // The input is too short to be matched against the prefix.
+      return null;
+    }
+    return getCandidateExtractorClassNames(prefix);
+  }
+
+  /**
+   * Returns the names of the extractor classes that may be able to read a stream, in decreasing
+   * order of priority.
+   *
+   * @param prefix At least {@link #PREFIX_LENGTH} bytes from the start of the stream.
+   * @return The names of the candidate extractor classes, or null if the format was not recognized.
+   */
+  /* package */ static String[] getCandidateExtractorClassNames(byte[] prefix) {
+    int firstInt = readInt(prefix, 0);
+    int firstInt24 = firstInt >>> 8;
+    if (firstInt == EBML_HEADER_ID) {
+      return new String[] {WEBM_EXTRACTOR};
+    } else if (isIsoBmffAtomType(readInt(prefix, 4))) {
+      return new String[] {FRAGMENTED_MP4_EXTRACTOR, MP4_EXTRACTOR};
+    } else if (firstInt24 == ID3_TAG) {
+      return new String[] {MP3_EXTRACTOR, ADTS_EXTRACTOR};
+    } else if (firstInt24 == FLV_TAG) {
+      return new String[] {FLV_EXTRACTOR};
+    } else if (firstInt == PACK_START_CODE) {
+      return new String[] {PS_EXTRACTOR};
+    } else if (isTsPacketSequence(prefix)) {
+      return new String[] {TS_EXTRACTOR};
+    } else if ((prefix[0] & 0xFF) == 0xFF && (prefix[1] & 0xE0) == 0xE0) {
+      // An MPEG audio frame sync word. Layer zero indicates an ADTS frame.
+      return (prefix[1] & 0x06) == 0 ? new String[] {ADTS_EXTRACTOR}
+          : new String[] {MP3_EXTRACTOR};
+    }
+    return null;
+  }
+
+  private static boolean isIsoBmffAtomType(int type) {
+    for (int i = 0; i < ISO_BMFF_ATOM_TYPES.length; i++) {
+      if (ISO_BMFF_ATOM_TYPES[i] == type) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static boolean isTsPacketSequence(byte[] prefix) {
+    for (int i = 0; i < PREFIX_LENGTH; i += TS_PACKET_SIZE) {
+      if ((prefix[i] & 0xFF) != TS_SYNC_BYTE) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static int readInt(byte[] data, int offset) {
+    return ((data[offset] & 0xFF) << 24) | ((data[offset + 1] & 0xFF) << 16)
+        | ((data[offset + 2] & 0xFF) << 8) | (data[offset + 3] & 0xFF);
+  }
+
+}
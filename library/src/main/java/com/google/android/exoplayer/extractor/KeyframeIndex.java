@@ -0,0 +1,109 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer.extractor;
+
+import com.google.android.exoplayer.util.Assertions;
+import com.google.android.exoplayer.util.Util;
+
+/**
+ * A {@link SeekMap} backed by an index of keyframe times and byte positions, for containers that
+ * do not carry an index of their own.
+ * <p>
+ * The index is initially empty, in which case the stream is reported as unseekable. It becomes
+ * seekable once {@link #set(long[], long[], long)} has been called, which may happen on another
+ * thread after the index has been passed to an extractor.
+ */
+public final class KeyframeIndex implements SeekMap {
+
+  private volatile Entries entries;
+
+  /**
+   * Populates the index.
+   *
+   * @param timesUs The keyframe times in microseconds, in ascending order. Times are relative to
+   *     the start of the stream.
+   * @param positions The byte positions from which each keyframe can be read, in ascending order.
+   * @param durationUs The duration of the stream in microseconds.
+   */
+  public void set(long[] timesUs, long[] positions, long durationUs) {
+    Assertions.checkArgument(timesUs.length == positions.length);
+    entries = new Entries(timesUs, positions, durationUs);
+  }
+
+  /**
+   * Returns the number of keyframes in the index, or 0 if the index has not been populated.
+   */
+  public int getKeyframeCount() {
+    Entries entries = this.entries;
+    return entries == null ? 0 : entries.timesUs.length;
+  }
+
+  /**
+   * Returns the duration of the stream in microseconds, or 0 if the index has not been populated.
+   */
+  public long getDurationUs() {
+    Entries entries = this.entries;
+    return entries == null ? 0 : entries.durationUs;
+  }
+
+  /**
+   * Returns the time of the last keyframe at or before the specified byte position.
+   *
+   * @param position A byte position obtained from {@link #getPosition(long)}.
+   * @return The corresponding time in microseconds, relative to the start of the stream. Zero is
+   *     returned if there is no such keyframe.
+   */
+  public long getTimeUs(long position) {
+    Entries entries = this.entries;
+    if (entries == null) {
+      return 0;
+    }
+    int index = Util.binarySearchFloor(entries.positions, position, true, false);
+    return index == -1 ? 0 : entries.timesUs[index];
+  }
+
+  // SeekMap implementation.
+
+  @Override
+  public boolean isSeekable() {
+    return entries != null;
+  }
+
+  @Override
+  public long getPosition(long timeUs) {
+    Entries entries = this.entries;
+    if (entries == null) {
+      return 0;
+    }
+    int index = Util.binarySearchFloor(entries.timesUs, timeUs, true, false);
+    return index == -1 ? 0 : entries.positions[index];
+  }
+
+  private static final class Entries {
+
+    public final long[] timesUs;
+    public final long[] positions;
+    public final long durationUs;
+
+    public Entries(long[] timesUs, long[] positions, long durationUs) {
+      this.timesUs = timesUs;
+      this.positions = positions;
+      this.durationUs = durationUs;
+    }
+
+  }
+
+}
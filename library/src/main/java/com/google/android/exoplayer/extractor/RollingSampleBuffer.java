@@ -26,10 +26,21 @@ import com.google.android.exoplayer.util.ParsableByteArray;
 import java.io.EOFException;
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.util.Arrays;
 import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * A rolling buffer of sample data and corresponding sample information.
+ * <p>
+ * Sample data is held in {@link Allocation}s obtained from an {@link Allocator}. If the allocations
+ * are direct (see {@link Allocation#isDirect()}) then sample data is held outside of the Java heap,
+ * and is copied into the {@link SampleHolder} using bulk {@link ByteBuffer} copies.
+ * <p>
+ * {@link DataSource} and {@link ExtractorInput} only read into byte arrays, so data appended from
+ * them to direct allocations is copied twice: into a staging array, and from there into the
+ * allocation. The extra copy is the cost of keeping buffered media out of the Java heap, which
+ * then holds only the staging array, rather than the whole buffer.
  */
 /* package */ final class RollingSampleBuffer {
 
@@ -49,7 +60,9 @@ import java.util.concurrent.LinkedBlockingDeque;
   // Accessed only by the loading thread.
   private long totalBytesWritten;
   private Allocation lastAllocation;
+  private ByteBuffer lastAllocationBuffer;
   private int lastAllocationOffset;
+  private byte[] directWriteScratch;
 
   /**
    * @param allocator An {@link Allocator} from which allocations for sample data can be obtained.
@@ -77,6 +90,7 @@ import java.util.concurrent.LinkedBlockingDeque;
     totalBytesDropped = 0;
     totalBytesWritten = 0;
     lastAllocation = null;
+    lastAllocationBuffer = null;
     lastAllocationOffset = allocationLength;
   }
 
@@ -121,6 +135,12 @@ import java.util.concurrent.LinkedBlockingDeque;
     // Update lastAllocation and lastAllocationOffset to reflect the new position.
     lastAllocation = dataQueue.peekLast();
     lastAllocationOffset = allocationOffset == 0 ? allocationLength : allocationOffset;
+    lastAllocationBuffer = lastAllocation != null && lastAllocation.isDirect()
+        ? lastAllocation.getWriteBuffer() : null;
+    if (lastAllocationBuffer != null) {
+      lastAllocationBuffer.clear();
+      lastAllocationBuffer.position(lastAllocationOffset);
+    }
   }
 
   // Called by the consuming thread.
@@ -220,6 +240,9 @@ import java.util.concurrent.LinkedBlockingDeque;
     }
     readData(offset, sampleHolder.cryptoInfo.iv, ivSize);
     offset += ivSize;
+    // An 8 byte initialization vector is padded with zeros. The array is reused across samples, so
+    // bytes left over from a previous sample must be cleared.
+    Arrays.fill(sampleHolder.cryptoInfo.iv, ivSize, sampleHolder.cryptoInfo.iv.length, (byte) 0);
 
     // Read the subsample count, if present.
     int subsampleCount;
@@ -280,7 +303,11 @@ import java.util.concurrent.LinkedBlockingDeque;
       int positionInAllocation = (int) (absolutePosition - totalBytesDropped);
       int toCopy = Math.min(remaining, allocationLength - positionInAllocation);
       Allocation allocation = dataQueue.peek();
-      target.put(allocation.data, allocation.translateOffset(positionInAllocation), toCopy);
+      if (allocation.isDirect()) {
+        target.put(getReadBuffer(allocation, positionInAllocation, toCopy));
+      } else {
+        target.put(allocation.data, allocation.translateOffset(positionInAllocation), toCopy);
+      }
       absolutePosition += toCopy;
       remaining -= toCopy;
     }
@@ -301,13 +328,33 @@ import java.util.concurrent.LinkedBlockingDeque;
       int positionInAllocation = (int) (absolutePosition - totalBytesDropped);
       int toCopy = Math.min(length - bytesRead, allocationLength - positionInAllocation);
       Allocation allocation = dataQueue.peek();
-      System.arraycopy(allocation.data, allocation.translateOffset(positionInAllocation), target,
-          bytesRead, toCopy);
+      if (allocation.isDirect()) {
+        getReadBuffer(allocation, positionInAllocation, toCopy).get(target, bytesRead, toCopy);
+      } else {
+        System.arraycopy(allocation.data, allocation.translateOffset(positionInAllocation), target,
+            bytesRead, toCopy);
+      }
       absolutePosition += toCopy;
       bytesRead += toCopy;
     }
   }
 
+  /**
+   * Returns a buffer whose remaining content is a region of a direct allocation.
+   *
+   * @param allocation The allocation.
+   * @param position The position of the region within the allocation.
+   * @param length The length of the region.
+   * @return A buffer positioned at the start of the region, and limited to its end.
+   */
+  private ByteBuffer getReadBuffer(Allocation allocation, int position, int length) {
+    ByteBuffer readBuffer = allocation.getReadBuffer();
+    readBuffer.clear();
+    readBuffer.position(position);
+    readBuffer.limit(position + length);
+    return readBuffer;
+  }
+
   /**
    * Discard any allocations that hold data prior to the specified absolute position, returning
    * them to the allocator.
@@ -357,8 +404,16 @@ import java.util.concurrent.LinkedBlockingDeque;
   public int appendData(DataSource dataSource, int length, boolean allowEndOfInput)
       throws IOException {
     length = prepareForAppend(length);
-    int bytesAppended = dataSource.read(lastAllocation.data,
-        lastAllocation.translateOffset(lastAllocationOffset), length);
+    int bytesAppended;
+    if (lastAllocationBuffer == null) {
+      bytesAppended = dataSource.read(lastAllocation.data,
+          lastAllocation.translateOffset(lastAllocationOffset), length);
+    } else {
+      bytesAppended = dataSource.read(directWriteScratch, 0, length);
+      if (bytesAppended > 0) {
+        lastAllocationBuffer.put(directWriteScratch, 0, bytesAppended);
+      }
+    }
     if (bytesAppended == C.RESULT_END_OF_INPUT) {
       if (allowEndOfInput) {
         return C.RESULT_END_OF_INPUT;
@@ -385,8 +440,16 @@ import java.util.concurrent.LinkedBlockingDeque;
   public int appendData(ExtractorInput input, int length, boolean allowEndOfInput)
       throws IOException, InterruptedException {
     length = prepareForAppend(length);
-    int bytesAppended = input.read(lastAllocation.data,
-        lastAllocation.translateOffset(lastAllocationOffset), length);
+    int bytesAppended;
+    if (lastAllocationBuffer == null) {
+      bytesAppended = input.read(lastAllocation.data,
+          lastAllocation.translateOffset(lastAllocationOffset), length);
+    } else {
+      bytesAppended = input.read(directWriteScratch, 0, length);
+      if (bytesAppended > 0) {
+        lastAllocationBuffer.put(directWriteScratch, 0, bytesAppended);
+      }
+    }
     if (bytesAppended == C.RESULT_END_OF_INPUT) {
       if (allowEndOfInput) {
         return C.RESULT_END_OF_INPUT;
@@ -407,8 +470,13 @@ import java.util.concurrent.LinkedBlockingDeque;
   public void appendData(ParsableByteArray buffer, int length) {
     while (length > 0) {
       int thisAppendLength = prepareForAppend(length);
-      buffer.readBytes(lastAllocation.data, lastAllocation.translateOffset(lastAllocationOffset),
-          thisAppendLength);
+      if (lastAllocationBuffer == null) {
+        buffer.readBytes(lastAllocation.data,
+            lastAllocation.translateOffset(lastAllocationOffset), thisAppendLength);
+      } else {
+        lastAllocationBuffer.put(buffer.data, buffer.getPosition(), thisAppendLength);
+        buffer.skipBytes(thisAppendLength);
+      }
       lastAllocationOffset += thisAppendLength;
       totalBytesWritten += thisAppendLength;
       length -= thisAppendLength;
@@ -437,6 +505,17 @@ import java.util.concurrent.LinkedBlockingDeque;
     if (lastAllocationOffset == allocationLength) {
       lastAllocationOffset = 0;
       lastAllocation = allocator.allocate();
+      if (lastAllocation.isDirect()) {
+        lastAllocationBuffer = lastAllocation.getWriteBuffer();
+        lastAllocationBuffer.clear();
+        if (directWriteScratch == null) {
+          // Data read from a DataSource or ExtractorInput is staged here before being copied into
+          // the direct allocation.
+          directWriteScratch = new byte[allocationLength];
+        }
+      } else {
+        lastAllocationBuffer = null;
+      }
       dataQueue.add(lastAllocation);
     }
     return Math.min(length, allocationLength - lastAllocationOffset);
@@ -444,31 +523,29 @@ import java.util.concurrent.LinkedBlockingDeque;
 
   /**
    * Holds information about the samples in the rolling buffer.
+   * <p>
+   * Sample information is committed by the loading thread and consumed by the consuming thread
+   * without locking. Each thread owns one index into a ring of sample information. The loading
+   * thread writes a sample's information before publishing the advanced write index, and the
+   * consuming thread reads it before publishing the advanced read index, so neither thread ever
+   * observes a slot that the other is modifying. When the ring is full, the loading thread copies
+   * the unread samples into a ring of twice the capacity and publishes it before committing any
+   * further samples. A consuming thread that still holds the old ring continues to read valid
+   * information from it, since the old ring is never written to again.
    */
   private static final class InfoQueue {
 
-    private static final int SAMPLE_CAPACITY_INCREMENT = 1000;
-
-    private int capacity;
+    private static final int INITIAL_CAPACITY = 1024;
 
-    private long[] offsets;
-    private int[] sizes;
-    private int[] flags;
-    private long[] timesUs;
-    private byte[][] encryptionKeys;
+    private final AtomicInteger readIndex;
+    private final AtomicInteger writeIndex;
 
-    private int queueSize;
-    private int absoluteReadIndex;
-    private int relativeReadIndex;
-    private int relativeWriteIndex;
+    private volatile InfoRing ring;
 
     public InfoQueue() {
-      capacity = SAMPLE_CAPACITY_INCREMENT;
-      offsets = new long[capacity];
-      timesUs = new long[capacity];
-      flags = new int[capacity];
-      sizes = new int[capacity];
-      encryptionKeys = new byte[capacity][];
+      readIndex = new AtomicInteger();
+      writeIndex = new AtomicInteger();
+      ring = new InfoRing(INITIAL_CAPACITY);
     }
 
     // Called by the consuming thread, but only when there is no loading thread.
@@ -477,17 +554,15 @@ import java.util.concurrent.LinkedBlockingDeque;
      * Clears the queue.
      */
     public void clear() {
-      absoluteReadIndex = 0;
-      relativeReadIndex = 0;
-      relativeWriteIndex = 0;
-      queueSize = 0;
+      readIndex.set(0);
+      writeIndex.set(0);
     }
 
     /**
      * Returns the current absolute write index.
      */
     public int getWriteIndex() {
-      return absoluteReadIndex + queueSize;
+      return writeIndex.get();
     }
 
     /**
@@ -497,21 +572,22 @@ import java.util.concurrent.LinkedBlockingDeque;
      * @return The reduced total number of bytes written, after the samples have been discarded.
      */
     public long discardUpstreamSamples(int discardFromIndex) {
-      int discardCount = getWriteIndex() - discardFromIndex;
-      Assertions.checkArgument(0 <= discardCount && discardCount <= queueSize);
+      int writeIndex = this.writeIndex.get();
+      int discardCount = writeIndex - discardFromIndex;
+      Assertions.checkArgument(0 <= discardCount && discardCount <= writeIndex - readIndex.get());
 
+      InfoRing ring = this.ring;
       if (discardCount == 0) {
-        if (absoluteReadIndex == 0) {
-          // queueSize == absoluteReadIndex == 0, so nothing has been written to the queue.
+        if (writeIndex == 0) {
+          // Nothing has been written to the queue.
           return 0;
         }
-        int lastWriteIndex = (relativeWriteIndex == 0 ? capacity : relativeWriteIndex) - 1;
-        return offsets[lastWriteIndex] + sizes[lastWriteIndex];
+        int lastWriteSlot = ring.slot(writeIndex - 1);
+        return ring.offsets[lastWriteSlot] + ring.sizes[lastWriteSlot];
       }
 
-      queueSize -= discardCount;
-      relativeWriteIndex = (relativeWriteIndex + capacity - discardCount) % capacity;
-      return offsets[relativeWriteIndex];
+      this.writeIndex.set(discardFromIndex);
+      return ring.offsets[ring.slot(discardFromIndex)];
     }
 
     // Called by the consuming thread.
@@ -520,7 +596,7 @@ import java.util.concurrent.LinkedBlockingDeque;
      * Returns the current absolute read index.
      */
     public int getReadIndex() {
-      return absoluteReadIndex;
+      return readIndex.get();
     }
 
     /**
@@ -535,15 +611,19 @@ import java.util.concurrent.LinkedBlockingDeque;
      * @param extrasHolder The holder into which extra sample information should be written.
      * @return True if the holders were filled. False if there is no current sample.
      */
-    public synchronized boolean peekSample(SampleHolder holder, SampleExtrasHolder extrasHolder) {
-      if (queueSize == 0) {
+    public boolean peekSample(SampleHolder holder, SampleExtrasHolder extrasHolder) {
+      int readIndex = this.readIndex.get();
+      // The write index must be read before the ring, so that the ring contains the sample.
+      if (readIndex == writeIndex.get()) {
         return false;
       }
-      holder.timeUs = timesUs[relativeReadIndex];
-      holder.size = sizes[relativeReadIndex];
-      holder.flags = flags[relativeReadIndex];
-      extrasHolder.offset = offsets[relativeReadIndex];
-      extrasHolder.encryptionKeyId = encryptionKeys[relativeReadIndex];
+      InfoRing ring = this.ring;
+      int readSlot = ring.slot(readIndex);
+      holder.timeUs = ring.timesUs[readSlot];
+      holder.size = ring.sizes[readSlot];
+      holder.flags = ring.flags[readSlot];
+      extrasHolder.offset = ring.offsets[readSlot];
+      extrasHolder.encryptionKeyId = ring.encryptionKeys[readSlot];
       return true;
     }
 
@@ -553,16 +633,17 @@ import java.util.concurrent.LinkedBlockingDeque;
      * @return The absolute position of the first byte in the rolling buffer that may still be
      *     required after advancing the index. Data prior to this position can be dropped.
      */
-    public synchronized long moveToNextSample() {
-      queueSize--;
-      int lastReadIndex = relativeReadIndex++;
-      absoluteReadIndex++;
-      if (relativeReadIndex == capacity) {
-        // Wrap around.
-        relativeReadIndex = 0;
-      }
-      return queueSize > 0 ? offsets[relativeReadIndex]
-          : (sizes[lastReadIndex] + offsets[lastReadIndex]);
+    public long moveToNextSample() {
+      int readIndex = this.readIndex.get();
+      boolean haveNextSample = readIndex + 1 != writeIndex.get();
+      InfoRing ring = this.ring;
+      int lastReadSlot = ring.slot(readIndex);
+      long nextOffset = haveNextSample ? ring.offsets[ring.slot(readIndex + 1)]
+          : ring.sizes[lastReadSlot] + ring.offsets[lastReadSlot];
+      // Publish the advanced index only once the slot has been read, since the loading thread may
+      // then reuse it.
+      this.readIndex.lazySet(readIndex + 1);
+      return nextOffset;
     }
 
     /**
@@ -571,91 +652,120 @@ import java.util.concurrent.LinkedBlockingDeque;
      * @param timeUs The seek time.
      * @return The offset of the keyframe's data if the keyframe was present. -1 otherwise.
      */
-    public synchronized long skipToKeyframeBefore(long timeUs) {
-      if (queueSize == 0 || timeUs < timesUs[relativeReadIndex]) {
+    public long skipToKeyframeBefore(long timeUs) {
+      int readIndex = this.readIndex.get();
+      int sampleCount = writeIndex.get() - readIndex;
+      InfoRing ring = this.ring;
+      if (sampleCount == 0 || timeUs < ring.timesUs[ring.slot(readIndex)]
+          || timeUs > ring.timesUs[ring.slot(readIndex + sampleCount - 1)]) {
         return -1;
       }
 
-      int lastWriteIndex = (relativeWriteIndex == 0 ? capacity : relativeWriteIndex) - 1;
-      long lastTimeUs = timesUs[lastWriteIndex];
-      if (timeUs > lastTimeUs) {
-        return -1;
+      // Binary search for the last sample whose time is not after the seek time. Samples are held
+      // in decode order, so if frames are reordered then their times are only approximately
+      // sorted. The search then finds a nearby sample, and the keyframe located from it is still
+      // the latest one before the seek time within its group of pictures.
+      int low = 0;
+      int high = sampleCount - 1;
+      while (low < high) {
+        int mid = (low + high + 1) >>> 1;
+        if (ring.timesUs[ring.slot(readIndex + mid)] <= timeUs) {
+          low = mid;
+        } else {
+          high = mid - 1;
+        }
       }
 
-      // TODO: This can be optimized further using binary search, although the fact that the array
-      // is cyclic means we'd need to implement the binary search ourselves.
-      int sampleCount = 0;
-      int sampleCountToKeyframe = -1;
-      int searchIndex = relativeReadIndex;
-      while (searchIndex != relativeWriteIndex) {
-        if (timesUs[searchIndex] > timeUs) {
-          // We've gone too far.
+      // Search back from the sample found to the nearest keyframe.
+      int sampleCountToKeyframe = low;
+      while (sampleCountToKeyframe >= 0) {
+        int slot = ring.slot(readIndex + sampleCountToKeyframe);
+        if ((ring.flags[slot] & C.SAMPLE_FLAG_SYNC) != 0 && ring.timesUs[slot] <= timeUs) {
           break;
-        } else if ((flags[searchIndex] & C.SAMPLE_FLAG_SYNC) != 0) {
-          // We've found a keyframe, and we're still before the seek position.
-          sampleCountToKeyframe = sampleCount;
         }
-        searchIndex = (searchIndex + 1) % capacity;
-        sampleCount++;
+        sampleCountToKeyframe--;
       }
-
       if (sampleCountToKeyframe == -1) {
         return -1;
       }
 
-      queueSize -= sampleCountToKeyframe;
-      relativeReadIndex = (relativeReadIndex + sampleCountToKeyframe) % capacity;
-      absoluteReadIndex += sampleCountToKeyframe;
-      return offsets[relativeReadIndex];
+      int keyframeIndex = readIndex + sampleCountToKeyframe;
+      long keyframeOffset = ring.offsets[ring.slot(keyframeIndex)];
+      this.readIndex.lazySet(keyframeIndex);
+      return keyframeOffset;
     }
 
     // Called by the loading thread.
 
-    public synchronized void commitSample(long timeUs, int sampleFlags, long offset, int size,
+    public void commitSample(long timeUs, int sampleFlags, long offset, int size,
         byte[] encryptionKey) {
-      timesUs[relativeWriteIndex] = timeUs;
-      offsets[relativeWriteIndex] = offset;
-      sizes[relativeWriteIndex] = size;
-      flags[relativeWriteIndex] = sampleFlags;
-      encryptionKeys[relativeWriteIndex] = encryptionKey;
-      // Increment the write index.
-      queueSize++;
-      if (queueSize == capacity) {
-        // Increase the capacity.
-        int newCapacity = capacity + SAMPLE_CAPACITY_INCREMENT;
-        long[] newOffsets = new long[newCapacity];
-        long[] newTimesUs = new long[newCapacity];
-        int[] newFlags = new int[newCapacity];
-        int[] newSizes = new int[newCapacity];
-        byte[][] newEncryptionKeys = new byte[newCapacity][];
-        int beforeWrap = capacity - relativeReadIndex;
-        System.arraycopy(offsets, relativeReadIndex, newOffsets, 0, beforeWrap);
-        System.arraycopy(timesUs, relativeReadIndex, newTimesUs, 0, beforeWrap);
-        System.arraycopy(flags, relativeReadIndex, newFlags, 0, beforeWrap);
-        System.arraycopy(sizes, relativeReadIndex, newSizes, 0, beforeWrap);
-        System.arraycopy(encryptionKeys, relativeReadIndex, newEncryptionKeys, 0, beforeWrap);
-        int afterWrap = relativeReadIndex;
-        System.arraycopy(offsets, 0, newOffsets, beforeWrap, afterWrap);
-        System.arraycopy(timesUs, 0, newTimesUs, beforeWrap, afterWrap);
-        System.arraycopy(flags, 0, newFlags, beforeWrap, afterWrap);
-        System.arraycopy(sizes, 0, newSizes, beforeWrap, afterWrap);
-        System.arraycopy(encryptionKeys, 0, newEncryptionKeys, beforeWrap, afterWrap);
-        offsets = newOffsets;
-        timesUs = newTimesUs;
-        flags = newFlags;
-        sizes = newSizes;
-        encryptionKeys = newEncryptionKeys;
-        relativeReadIndex = 0;
-        relativeWriteIndex = capacity;
-        queueSize = capacity;
-        capacity = newCapacity;
-      } else {
-        relativeWriteIndex++;
-        if (relativeWriteIndex == capacity) {
-          // Wrap around.
-          relativeWriteIndex = 0;
+      int writeIndex = this.writeIndex.get();
+      InfoRing ring = this.ring;
+      int readIndex = this.readIndex.get();
+      if (writeIndex - readIndex == ring.capacity) {
+        // Increase the capacity, copying samples that the consuming thread has yet to read.
+        InfoRing newRing = new InfoRing(ring.capacity * 2);
+        for (int i = readIndex; i != writeIndex; i++) {
+          newRing.copyFrom(ring, i);
         }
+        this.ring = newRing;
+        ring = newRing;
       }
+      int writeSlot = ring.slot(writeIndex);
+      ring.timesUs[writeSlot] = timeUs;
+      ring.offsets[writeSlot] = offset;
+      ring.sizes[writeSlot] = size;
+      ring.flags[writeSlot] = sampleFlags;
+      ring.encryptionKeys[writeSlot] = encryptionKey;
+      // Publish the advanced index only once the slot has been written.
+      this.writeIndex.lazySet(writeIndex + 1);
+    }
+
+  }
+
+  /**
+   * Parallel arrays of sample information, indexed by absolute sample index modulo a power of two
+   * capacity.
+   */
+  private static final class InfoRing {
+
+    public final int capacity;
+    public final long[] offsets;
+    public final int[] sizes;
+    public final int[] flags;
+    public final long[] timesUs;
+    public final byte[][] encryptionKeys;
+
+    private final int mask;
+
+    public InfoRing(int capacity) {
+      this.capacity = capacity;
+      mask = capacity - 1;
+      offsets = new long[capacity];
+      sizes = new int[capacity];
+      flags = new int[capacity];
+      timesUs = new long[capacity];
+      encryptionKeys = new byte[capacity][];
+    }
+
+    /**
+     * Returns the slot holding information for the sample at the specified absolute index.
+     */
+    public int slot(int index) {
+      return index & mask;
+    }
+
+    /**
+     * Copies information for the sample at the specified absolute index from another ring.
+     */
+    public void copyFrom(InfoRing ring, int index) {
+      int sourceSlot = ring.slot(index);
+      int slot = slot(index);
+      offsets[slot] = ring.offsets[sourceSlot];
+      sizes[slot] = ring.sizes[sourceSlot];
+      flags[slot] = ring.flags[sourceSlot];
+      timesUs[slot] = ring.timesUs[sourceSlot];
+      encryptionKeys[slot] = ring.encryptionKeys[sourceSlot];
     }
 
   }
@@ -18,6 +18,7 @@ package com.google.android.exoplayer.extractor.ts;
 import com.google.android.exoplayer.extractor.Extractor;
 import com.google.android.exoplayer.extractor.ExtractorInput;
 import com.google.android.exoplayer.extractor.ExtractorOutput;
+import com.google.android.exoplayer.extractor.KeyframeIndex;
 import com.google.android.exoplayer.extractor.PositionHolder;
 import com.google.android.exoplayer.extractor.SeekMap;
 import com.google.android.exoplayer.util.ParsableBitArray;
@@ -41,6 +42,7 @@ public final class AdtsExtractor implements Extractor {
   private static final int MAX_SNIFF_BYTES = 8 * 1024;
 
   private final long firstSampleTimestampUs;
+  private final KeyframeIndex keyframeIndex;
   private final ParsableByteArray packetBuffer;
 
   // Accessed only by the loading thread.
@@ -52,7 +54,21 @@ public final class AdtsExtractor implements Extractor {
   }
 
   public AdtsExtractor(long firstSampleTimestampUs) {
+    this(firstSampleTimestampUs, null);
+  }
+
+  /**
+   * @param keyframeIndex An index of the stream, typically built by a {@link KeyframeIndexer}. The
+   *     index is output as the extractor's {@link SeekMap}, making the stream seekable once it has
+   *     been populated.
+   */
+  public AdtsExtractor(KeyframeIndex keyframeIndex) {
+    this(0, keyframeIndex);
+  }
+
+  private AdtsExtractor(long firstSampleTimestampUs, KeyframeIndex keyframeIndex) {
     this.firstSampleTimestampUs = firstSampleTimestampUs;
+    this.keyframeIndex = keyframeIndex;
     packetBuffer = new ParsableByteArray(MAX_PACKET_SIZE);
   }
 
@@ -111,7 +127,7 @@ public final class AdtsExtractor implements Extractor {
   public void init(ExtractorOutput output) {
     adtsReader = new AdtsReader(output.track(0), output.track(1));
     output.endTracks();
-    output.seekMap(SeekMap.UNSEEKABLE);
+    output.seekMap(keyframeIndex != null ? keyframeIndex : SeekMap.UNSEEKABLE);
   }
 
   @Override
@@ -136,7 +152,12 @@ public final class AdtsExtractor implements Extractor {
     // unnecessary to copy the data through packetBuffer.
     if (!startedPacket) {
       // Pass data to the reader as though it's contained within a single infinitely long packet.
-      adtsReader.packetStarted(firstSampleTimestampUs, true);
+      // ADTS frames carry no timestamps, so after seeking the time is obtained from the index.
+      long packetTimeUs = firstSampleTimestampUs;
+      if (keyframeIndex != null) {
+        packetTimeUs += keyframeIndex.getTimeUs(input.getPosition());
+      }
+      adtsReader.packetStarted(packetTimeUs, true);
       startedPacket = true;
     }
     adtsReader.consume(packetBuffer);
@@ -195,8 +195,10 @@ import java.util.List;
   }
 
   private void feedNalUnitTargetEnd(long pesTimeUs, int discardPadding) {
-    sps.endNalUnit(discardPadding);
-    pps.endNalUnit(discardPadding);
+    if (!hasOutputFormat) {
+      sps.endNalUnit(discardPadding);
+      pps.endNalUnit(discardPadding);
+    }
     if (sei.endNalUnit(discardPadding)) {
       int unescapedLength = NalUnitUtil.unescapeStream(sei.nalData, sei.nalLength);
       seiWrapper.reset(sei.nalData, unescapedLength);
@@ -0,0 +1,689 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer.extractor.ts;
+
+import com.google.android.exoplayer.C;
+import com.google.android.exoplayer.MediaFormat;
+import com.google.android.exoplayer.ParserException;
+import com.google.android.exoplayer.drm.DrmInitData;
+import com.google.android.exoplayer.extractor.DefaultExtractorInput;
+import com.google.android.exoplayer.extractor.Extractor;
+import com.google.android.exoplayer.extractor.ExtractorInput;
+import com.google.android.exoplayer.extractor.ExtractorOutput;
+import com.google.android.exoplayer.extractor.KeyframeIndex;
+import com.google.android.exoplayer.extractor.PositionHolder;
+import com.google.android.exoplayer.extractor.SeekMap;
+import com.google.android.exoplayer.extractor.TrackOutput;
+import com.google.android.exoplayer.upstream.DataSource;
+import com.google.android.exoplayer.upstream.DataSpec;
+import com.google.android.exoplayer.upstream.Loader;
+import com.google.android.exoplayer.upstream.Loader.Loadable;
+import com.google.android.exoplayer.upstream.cache.Cache;
+import com.google.android.exoplayer.upstream.cache.CacheDataSink;
+import com.google.android.exoplayer.upstream.cache.CacheSpan;
+import com.google.android.exoplayer.upstream.cache.ContentLengthCache;
+import com.google.android.exoplayer.util.Assertions;
+import com.google.android.exoplayer.util.CodecSpecificDataUtil;
+import com.google.android.exoplayer.util.MimeTypes;
+import com.google.android.exoplayer.util.ParsableBitArray;
+import com.google.android.exoplayer.util.ParsableByteArray;
+import com.google.android.exoplayer.util.Util;
+
+import android.net.Uri;
+import android.os.Handler;
+import android.util.SparseArray;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Builds a {@link KeyframeIndex} for an MPEG-TS or ADTS stream in the background, making the
+ * stream seekable when the index is passed to {@link TsExtractor#TsExtractor(KeyframeIndex)} or
+ * {@link AdtsExtractor#AdtsExtractor(KeyframeIndex)}.
+ * <p>
+ * The stream is read from start to end through a {@link DataSource} other than the one used for
+ * playback. MPEG-TS streams are demultiplexed with a {@link TsExtractor}, and the index holds the
+ * position of the packet preceding each keyframe of the video track (or the first audio track if
+ * there is no video). ADTS streams are indexed at the exact position of each frame. Entries are
+ * spaced at least {@link #MIN_ENTRY_INTERVAL_US} apart, and seeking to a time between entries
+ * starts from the preceding entry, with the intervening samples being decoded but not rendered.
+ * <p>
+ * If a {@link Cache} is provided, the index is stored in it alongside the stream so that it does
+ * not need to be rebuilt when the stream is played again.
+ */
+public final class KeyframeIndexer implements Loader.Callback {
+
+  /**
+   * Interface definition for a callback to be notified of {@link KeyframeIndexer} events.
+   */
+  public interface EventListener {
+
+    /**
+     * Invoked when the index has been populated.
+     *
+     * @param keyframeCount The number of entries in the index.
+     * @param durationUs The duration of the stream in microseconds.
+     * @param loadedFromCache Whether the index was read from the cache, rather than being built by
+     *     reading the stream.
+     */
+    void onKeyframeIndexCompleted(int keyframeCount, long durationUs, boolean loadedFromCache);
+
+    /**
+     * Invoked when the stream could not be indexed.
+     *
+     * @param e The cause of the failure.
+     */
+    void onKeyframeIndexError(IOException e);
+
+  }
+
+  /**
+   * The minimum interval between index entries.
+   */
+  public static final long MIN_ENTRY_INTERVAL_US = 500000;
+
+  /**
+   * The suffix appended to the stream's cache key to obtain the key under which the index is
+   * cached.
+   */
+  public static final String CACHE_KEY_SUFFIX = ".keyframes";
+
+  private final Uri uri;
+  private final DataSource dataSource;
+  private final Cache cache;
+  private final String cacheKey;
+  private final Handler eventHandler;
+  private final EventListener eventListener;
+  private final KeyframeIndex index;
+
+  private Loader loader;
+
+  /**
+   * @param uri The {@link Uri} of the stream.
+   * @param dataSource A {@link DataSource} from which the stream is read. This should not be the
+   *     source used for playback.
+   */
+  public KeyframeIndexer(Uri uri, DataSource dataSource) {
+    this(uri, dataSource, null, null, null, null);
+  }
+
+  /**
+   * @param uri The {@link Uri} of the stream.
+   * @param dataSource A {@link DataSource} from which the stream is read. This should not be the
+   *     source used for playback.
+   * @param cache A cache in which the index is stored, or null if the index should not be stored.
+   * @param cacheKey The key under which the stream is cached, or null to use the {@link Uri}.
+   * @param eventHandler A handler to use when delivering events to {@code eventListener}. May be
+   *     null if delivery of events is not required.
+   * @param eventListener A listener of events. May be null if delivery of events is not required.
+   */
+  public KeyframeIndexer(Uri uri, DataSource dataSource, Cache cache, String cacheKey,
+      Handler eventHandler, EventListener eventListener) {
+    this.uri = Assertions.checkNotNull(uri);
+    this.dataSource = Assertions.checkNotNull(dataSource);
+    this.cache = cache;
+    this.cacheKey = cacheKey != null ? cacheKey : uri.toString();
+    this.eventHandler = eventHandler;
+    this.eventListener = eventListener;
+    index = new KeyframeIndex();
+  }
+
+  /**
+   * Returns the index, which is populated once indexing completes.
+   */
+  public KeyframeIndex getIndex() {
+    return index;
+  }
+
+  /**
+   * Starts building the index on a background thread. Must be called from a thread that has a
+   * {@link android.os.Looper}, on which completion is reported.
+   */
+  public void start() {
+    Assertions.checkState(loader == null);
+    loader = new Loader("Loader:KeyframeIndexer");
+    loader.startLoading(new IndexingLoadable(uri, dataSource, cache, cacheKey, index), this);
+  }
+
+  /**
+   * Cancels indexing if it is in progress, and releases the indexer's thread.
+   */
+  public void release() {
+    if (loader != null) {
+      loader.release();
+      loader = null;
+    }
+  }
+
+  // Loader.Callback implementation.
+
+  @Override
+  public void onLoadCompleted(Loadable loadable) {
+    notifyIndexCompleted(index.getKeyframeCount(), index.getDurationUs(),
+        ((IndexingLoadable) loadable).isLoadedFromCache());
+  }
+
+  @Override
+  public void onLoadCanceled(Loadable loadable) {
+    // Do nothing.
+  }
+
+  @Override
+  public void onLoadError(Loadable loadable, IOException e) {
+    notifyIndexError(e);
+  }
+
+  private void notifyIndexCompleted(final int keyframeCount, final long durationUs,
+      final boolean loadedFromCache) {
+    if (eventHandler != null && eventListener != null) {
+      eventHandler.post(new Runnable() {
+        @Override
+        public void run() {
+          eventListener.onKeyframeIndexCompleted(keyframeCount, durationUs, loadedFromCache);
+        }
+      });
+    }
+  }
+
+  private void notifyIndexError(final IOException e) {
+    if (eventHandler != null && eventListener != null) {
+      eventHandler.post(new Runnable() {
+        @Override
+        public void run() {
+          eventListener.onKeyframeIndexError(e);
+        }
+      });
+    }
+  }
+
+  /**
+   * Reads the index from the cache if possible, and else builds it by reading the stream.
+   */
+  /* package */ static final class IndexingLoadable implements Loadable {
+
+    private static final int CACHE_FORMAT_VERSION = 1;
+    private static final int ID3_TAG = Util.getIntegerCodeForString("ID3");
+
+    private final Uri uri;
+    private final DataSource dataSource;
+    private final Cache cache;
+    private final String cacheKey;
+    private final String indexCacheKey;
+    private final KeyframeIndex index;
+
+    private volatile boolean loadCanceled;
+    private boolean loadedFromCache;
+
+    public IndexingLoadable(Uri uri, DataSource dataSource, Cache cache, String cacheKey,
+        KeyframeIndex index) {
+      this.uri = uri;
+      this.dataSource = dataSource;
+      this.cache = cache;
+      this.cacheKey = cacheKey;
+      this.index = index;
+      indexCacheKey = cacheKey + CACHE_KEY_SUFFIX;
+    }
+
+    public boolean isLoadedFromCache() {
+      return loadedFromCache;
+    }
+
+    @Override
+    public void cancelLoad() {
+      loadCanceled = true;
+    }
+
+    @Override
+    public boolean isLoadCanceled() {
+      return loadCanceled;
+    }
+
+    @Override
+    public void load() throws IOException, InterruptedException {
+      CacheSpan span = cache == null ? null : cache.startReadWriteNonBlocking(indexCacheKey, 0);
+      try {
+        if (span != null && span.isCached) {
+          if (readFromCache(span)) {
+            loadedFromCache = true;
+            return;
+          }
+          // The cached index could not be used, and is no longer in the cache. Lock the entry so
+          // that the index is written once it has been rebuilt.
+          span = cache.startReadWriteNonBlocking(indexCacheKey, 0);
+        }
+        IndexBuilder builder = new IndexBuilder();
+        long contentLength = buildIndex(builder);
+        if (loadCanceled) {
+          return;
+        }
+        if (span != null && !span.isCached) {
+          writeToCache(contentLength, builder);
+        }
+        index.set(builder.getTimesUs(), builder.getPositions(), builder.durationUs);
+      } finally {
+        if (span != null && !span.isCached) {
+          cache.releaseHoleSpan(span);
+        }
+      }
+    }
+
+    private long buildIndex(IndexBuilder builder) throws IOException, InterruptedException {
+      DataSource packetBoundaryDataSource = new PacketBoundaryDataSource(dataSource);
+      try {
+        long length = packetBoundaryDataSource.open(
+            new DataSpec(uri, 0, C.LENGTH_UNBOUNDED, cacheKey));
+        ExtractorInput input = new DefaultExtractorInput(packetBoundaryDataSource, 0, length);
+        if (new TsExtractor().sniff(input)) {
+          input.resetPeekPosition();
+          buildTsIndex(input, builder);
+        } else {
+          input.resetPeekPosition();
+          if (!new AdtsExtractor().sniff(input)) {
+            throw new ParserException("Stream is neither MPEG-TS nor ADTS");
+          }
+          input.resetPeekPosition();
+          buildAdtsIndex(input, builder);
+        }
+        return length;
+      } finally {
+        packetBoundaryDataSource.close();
+      }
+    }
+
+    private void buildTsIndex(ExtractorInput input, IndexBuilder builder)
+        throws IOException, InterruptedException {
+      TsExtractor extractor = new TsExtractor();
+      IndexingExtractorOutput output = new IndexingExtractorOutput();
+      extractor.init(output);
+      PositionHolder positionHolder = new PositionHolder();
+      // Reads are limited to packet boundaries, so for packet aligned streams each read
+      // demultiplexes a single packet. A sample is attributed to the position of the read
+      // preceding the one in which it started, which is at or before the start of the packet
+      // containing its first byte even if the stream is not packet aligned.
+      long previousReadPosition = 0;
+      int result = Extractor.RESULT_CONTINUE;
+      while (result == Extractor.RESULT_CONTINUE && !loadCanceled) {
+        long readPosition = input.getPosition();
+        output.packetPosition = previousReadPosition;
+        result = extractor.read(input, positionHolder);
+        previousReadPosition = readPosition;
+      }
+      output.copyIndexTo(builder);
+    }
+
+    private void buildAdtsIndex(ExtractorInput input, IndexBuilder builder)
+        throws IOException, InterruptedException {
+      ParsableByteArray scratch = new ParsableByteArray(10);
+      // Skip any ID3 headers.
+      while (input.peekFully(scratch.data, 0, 10, true)) {
+        scratch.setPosition(0);
+        if (scratch.readUnsignedInt24() != ID3_TAG) {
+          break;
+        }
+        scratch.setPosition(6);
+        input.skipFully(10 + scratch.readSynchSafeInt());
+      }
+      input.resetPeekPosition();
+
+      ParsableBitArray header = new ParsableBitArray(scratch.data);
+      long sampleDurationUs = 0;
+      long frameCount = 0;
+      while (!loadCanceled && input.peekFully(scratch.data, 0, 7, true)) {
+        input.resetPeekPosition();
+        header.setPosition(0);
+        if ((header.readBits(16) & 0xFFF6) != 0xFFF0) {
+          // Not a frame header, so resynchronize.
+          input.skipFully(1);
+          continue;
+        }
+        int audioObjectType = header.readBits(2) + 1;
+        int sampleRateIndex = header.readBits(4);
+        header.skipBits(1);
+        int channelConfig = header.readBits(3);
+        header.skipBits(4);
+        int frameLength = header.readBits(13);
+        if (frameLength < 7) {
+          input.skipFully(1);
+          continue;
+        }
+        if (sampleDurationUs == 0) {
+          // Samples are timed as by AdtsReader, which takes the rate from the first header.
+          int sampleRate = CodecSpecificDataUtil.parseAacAudioSpecificConfig(
+              CodecSpecificDataUtil.buildAacAudioSpecificConfig(audioObjectType, sampleRateIndex,
+              channelConfig)).first;
+          sampleDurationUs = (C.MICROS_PER_SECOND * 1024) / sampleRate;
+        }
+        builder.maybeAddEntry(frameCount * sampleDurationUs, input.getPosition());
+        frameCount++;
+        if (!input.skipFully(frameLength, true)) {
+          break;
+        }
+      }
+      builder.durationUs = frameCount * sampleDurationUs;
+    }
+
+    private boolean readFromCache(CacheSpan span) {
+      DataInputStream inputStream;
+      try {
+        inputStream = new DataInputStream(new BufferedInputStream(new FileInputStream(span.file)));
+      } catch (FileNotFoundException e) {
+        // The span has been evicted.
+        return false;
+      }
+      try {
+        if (inputStream.readInt() != CACHE_FORMAT_VERSION) {
+          cache.removeSpan(span);
+          return false;
+        }
+        long contentLength = inputStream.readLong();
+        long cachedContentLength = cache instanceof ContentLengthCache
+            ? ((ContentLengthCache) cache).getContentLength(cacheKey) : C.LENGTH_UNBOUNDED;
+        if (cachedContentLength != C.LENGTH_UNBOUNDED && cachedContentLength != contentLength) {
+          // The stream has changed since it was indexed.
+          cache.removeSpan(span);
+          return false;
+        }
+        long durationUs = inputStream.readLong();
+        int count = inputStream.readInt();
+        long[] timesUs = new long[count];
+        long[] positions = new long[count];
+        for (int i = 0; i < count; i++) {
+          timesUs[i] = inputStream.readLong();
+          positions[i] = inputStream.readLong();
+        }
+        index.set(timesUs, positions, durationUs);
+        return true;
+      } catch (IOException e) {
+        // Treat an unreadable index as absent, so that it is rebuilt.
+        cache.removeSpan(span);
+        return false;
+      } finally {
+        Util.closeQuietly(inputStream);
+      }
+    }
+
+    private void writeToCache(long contentLength, IndexBuilder builder) throws IOException {
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      DataOutputStream outputStream = new DataOutputStream(bytes);
+      outputStream.writeInt(CACHE_FORMAT_VERSION);
+      outputStream.writeLong(contentLength);
+      outputStream.writeLong(builder.durationUs);
+      outputStream.writeInt(builder.count);
+      for (int i = 0; i < builder.count; i++) {
+        outputStream.writeLong(builder.timesUs[i]);
+        outputStream.writeLong(builder.positions[i]);
+      }
+      outputStream.close();
+      byte[] data = bytes.toByteArray();
+      CacheDataSink sink = new CacheDataSink(cache, Long.MAX_VALUE);
+      sink.open(new DataSpec(uri, 0, data.length, indexCacheKey));
+      sink.write(data, 0, data.length);
+      sink.close();
+      if (cache instanceof ContentLengthCache) {
+        ((ContentLengthCache) cache).setContentLength(indexCacheKey, data.length);
+      }
+    }
+
+  }
+
+  /**
+   * Accumulates index entries, discarding those that are too close to the previous entry.
+   */
+  private static final class IndexBuilder {
+
+    public long[] timesUs;
+    public long[] positions;
+    public int count;
+    public long durationUs;
+
+    public IndexBuilder() {
+      timesUs = new long[64];
+      positions = new long[64];
+    }
+
+    public void maybeAddEntry(long timeUs, long position) {
+      long lastTimeUs = count == 0 ? 0 : timesUs[count - 1];
+      long lastPosition = count == 0 ? 0 : positions[count - 1];
+      if (timeUs < lastTimeUs + MIN_ENTRY_INTERVAL_US || position <= lastPosition) {
+        return;
+      }
+      if (count == timesUs.length) {
+        timesUs = Arrays.copyOf(timesUs, count * 2);
+        positions = Arrays.copyOf(positions, count * 2);
+      }
+      timesUs[count] = timeUs;
+      positions[count] = position;
+      count++;
+    }
+
+    public long[] getTimesUs() {
+      return Arrays.copyOf(timesUs, count);
+    }
+
+    public long[] getPositions() {
+      return Arrays.copyOf(positions, count);
+    }
+
+  }
+
+  /**
+   * Receives the output of a {@link TsExtractor}, recording the position of each keyframe.
+   */
+  private static final class IndexingExtractorOutput implements ExtractorOutput {
+
+    private final SparseArray<IndexingTrackOutput> tracks;
+
+    /**
+     * The position attributed to data output by the current read.
+     */
+    public long packetPosition;
+
+    public IndexingExtractorOutput() {
+      tracks = new SparseArray<>();
+    }
+
+    /**
+     * Copies the entries of the video track, or of the first audio track if there is no video
+     * track, to the specified builder.
+     */
+    public void copyIndexTo(IndexBuilder builder) {
+      IndexingTrackOutput indexedTrack = null;
+      for (int i = 0; i < tracks.size(); i++) {
+        IndexingTrackOutput track = tracks.valueAt(i);
+        if (track.mimeType == null) {
+          continue;
+        }
+        if (MimeTypes.isVideo(track.mimeType)) {
+          indexedTrack = track;
+          break;
+        } else if (indexedTrack == null && MimeTypes.isAudio(track.mimeType)) {
+          indexedTrack = track;
+        }
+      }
+      if (indexedTrack != null) {
+        for (int i = 0; i < indexedTrack.entries.count; i++) {
+          builder.maybeAddEntry(indexedTrack.entries.timesUs[i],
+              indexedTrack.entries.positions[i]);
+        }
+        builder.durationUs = indexedTrack.lastSampleTimeUs;
+      }
+    }
+
+    @Override
+    public TrackOutput track(int id) {
+      IndexingTrackOutput track = tracks.get(id);
+      if (track == null) {
+        track = new IndexingTrackOutput(this);
+        tracks.put(id, track);
+      }
+      return track;
+    }
+
+    @Override
+    public void endTracks() {
+      // Do nothing.
+    }
+
+    @Override
+    public void seekMap(SeekMap seekMap) {
+      // Do nothing.
+    }
+
+    @Override
+    public void drmInitData(DrmInitData drmInitData) {
+      // Do nothing.
+    }
+
+  }
+
+  /**
+   * Discards sample data, recording the position of each keyframe. The position at which each
+   * read's data was output is retained until the samples to which the data belongs are committed.
+   */
+  private static final class IndexingTrackOutput implements TrackOutput {
+
+    private final IndexingExtractorOutput extractorOutput;
+    private final IndexBuilder entries;
+
+    private String mimeType;
+    private long lastSampleTimeUs;
+    private long bytesWritten;
+    // The value of bytesWritten, and the corresponding position, for each read outputting data.
+    private long[] readStartBytes;
+    private long[] readPositions;
+    private int readCount;
+
+    public IndexingTrackOutput(IndexingExtractorOutput extractorOutput) {
+      this.extractorOutput = extractorOutput;
+      entries = new IndexBuilder();
+      readStartBytes = new long[16];
+      readPositions = new long[16];
+    }
+
+    @Override
+    public void format(MediaFormat format) {
+      mimeType = format.mimeType;
+    }
+
+    @Override
+    public int sampleData(ExtractorInput input, int length, boolean allowEndOfInput)
+        throws IOException, InterruptedException {
+      onSampleData();
+      int bytesSkipped = input.skip(length);
+      if (bytesSkipped == C.RESULT_END_OF_INPUT) {
+        if (allowEndOfInput) {
+          return C.RESULT_END_OF_INPUT;
+        }
+        throw new IOException("Unexpected end of input");
+      }
+      bytesWritten += bytesSkipped;
+      return bytesSkipped;
+    }
+
+    @Override
+    public void sampleData(ParsableByteArray data, int length) {
+      onSampleData();
+      data.skipBytes(length);
+      bytesWritten += length;
+    }
+
+    @Override
+    public void sampleMetadata(long timeUs, int flags, int size, int offset, byte[] encryptionKey) {
+      lastSampleTimeUs = Math.max(lastSampleTimeUs, timeUs);
+      if (readCount == 0) {
+        // The sample is empty.
+        return;
+      }
+      long sampleStartBytes = bytesWritten - offset - size;
+      int readIndex = readCount - 1;
+      while (readIndex > 0 && readStartBytes[readIndex] > sampleStartBytes) {
+        readIndex--;
+      }
+      if ((flags & C.SAMPLE_FLAG_SYNC) != 0) {
+        entries.maybeAddEntry(timeUs, readPositions[readIndex]);
+      }
+      // Discard reads whose data belongs only to committed samples.
+      int discardCount = readIndex;
+      while (discardCount < readCount - 1
+          && readStartBytes[discardCount + 1] <= bytesWritten - offset) {
+        discardCount++;
+      }
+      readCount -= discardCount;
+      System.arraycopy(readStartBytes, discardCount, readStartBytes, 0, readCount);
+      System.arraycopy(readPositions, discardCount, readPositions, 0, readCount);
+    }
+
+    private void onSampleData() {
+      long position = extractorOutput.packetPosition;
+      if (readCount > 0 && readPositions[readCount - 1] == position) {
+        return;
+      }
+      if (readCount == readStartBytes.length) {
+        readStartBytes = Arrays.copyOf(readStartBytes, readCount * 2);
+        readPositions = Arrays.copyOf(readPositions, readCount * 2);
+      }
+      readStartBytes[readCount] = bytesWritten;
+      readPositions[readCount] = position;
+      readCount++;
+    }
+
+  }
+
+  /**
+   * Limits each read so that it does not cross a {@link TsExtractor} packet boundary.
+   */
+  private static final class PacketBoundaryDataSource implements DataSource {
+
+    private static final int TS_PACKET_SIZE = 188;
+
+    private final DataSource upstream;
+
+    private long position;
+
+    public PacketBoundaryDataSource(DataSource upstream) {
+      this.upstream = upstream;
+    }
+
+    @Override
+    public long open(DataSpec dataSpec) throws IOException {
+      position = 0;
+      return upstream.open(dataSpec);
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int readLength) throws IOException {
+      int bytesToPacketBoundary = TS_PACKET_SIZE - (int) (position % TS_PACKET_SIZE);
+      int bytesRead = upstream.read(buffer, offset, Math.min(readLength, bytesToPacketBoundary));
+      if (bytesRead > 0) {
+        position += bytesRead;
+      }
+      return bytesRead;
+    }
+
+    @Override
+    public void close() throws IOException {
+      upstream.close();
+    }
+
+  }
+
+}
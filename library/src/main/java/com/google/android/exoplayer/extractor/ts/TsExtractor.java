@@ -15,10 +15,12 @@
  */
 package com.google.android.exoplayer.extractor.ts;
 
+import com.google.android.exoplayer.C;
 import com.google.android.exoplayer.extractor.DummyTrackOutput;
 import com.google.android.exoplayer.extractor.Extractor;
 import com.google.android.exoplayer.extractor.ExtractorInput;
 import com.google.android.exoplayer.extractor.ExtractorOutput;
+import com.google.android.exoplayer.extractor.KeyframeIndex;
 import com.google.android.exoplayer.extractor.PositionHolder;
 import com.google.android.exoplayer.extractor.SeekMap;
 import com.google.android.exoplayer.util.ParsableBitArray;
@@ -26,13 +28,17 @@ import com.google.android.exoplayer.util.ParsableByteArray;
 import com.google.android.exoplayer.util.Util;
 
 import android.util.Log;
-import android.util.SparseArray;
 import android.util.SparseBooleanArray;
 
 import java.io.IOException;
 
 /**
  * Facilitates the extraction of data from the MPEG-2 TS container format.
+ * <p>
+ * Packets are read from the input in batches of up to {@link #BUFFER_PACKET_COUNT}, and all of the
+ * complete packets in the buffer are demultiplexed by each call to
+ * {@link #read(ExtractorInput, PositionHolder)}. If a packet does not start with a sync byte then
+ * the extractor resynchronizes by searching for the next position at which packets start.
  */
 public final class TsExtractor implements Extractor {
 
@@ -42,9 +48,15 @@ public final class TsExtractor implements Extractor {
 
   private static final String TAG = "TsExtractor";
 
+  /**
+   * The maximum number of packets read from the input at a time.
+   */
+  public static final int BUFFER_PACKET_COUNT = 50;
+
   private static final int TS_PACKET_SIZE = 188;
   private static final int TS_SYNC_BYTE = 0x47; // First byte of each TS packet.
   private static final int TS_PAT_PID = 0;
+  private static final int MAX_PID_PLUS_ONE = 0x2000;
 
   private static final int TS_STREAM_TYPE_MPA = 0x03;
   private static final int TS_STREAM_TYPE_MPA_LSF = 0x04;
@@ -66,8 +78,8 @@ public final class TsExtractor implements Extractor {
   private final PtsTimestampAdjuster ptsTimestampAdjuster;
   private final int workaroundFlags;
   private final ParsableByteArray tsPacketBuffer;
-  private final ParsableBitArray tsScratch;
-  /* package */ final SparseArray<TsPayloadReader> tsPayloadReaders; // Indexed by pid
+  private final KeyframeIndex keyframeIndex;
+  /* package */ final TsPayloadReader[] tsPayloadReaders; // Indexed by pid
   /* package */ final SparseBooleanArray streamTypes;
 
   // Accessed only by the loading thread.
@@ -83,12 +95,40 @@ public final class TsExtractor implements Extractor {
   }
 
   public TsExtractor(PtsTimestampAdjuster ptsTimestampAdjuster, int workaroundFlags) {
+    this(ptsTimestampAdjuster, workaroundFlags, null);
+  }
+
+  /**
+   * @param keyframeIndex An index of the stream, typically built by a {@link KeyframeIndexer}. The
+   *     index is output as the extractor's {@link SeekMap}, making the stream seekable once it has
+   *     been populated.
+   */
+  public TsExtractor(KeyframeIndex keyframeIndex) {
+    this(new PtsTimestampAdjuster(0), 0, keyframeIndex);
+  }
+
+  private TsExtractor(PtsTimestampAdjuster ptsTimestampAdjuster, int workaroundFlags,
+      KeyframeIndex keyframeIndex) {
+    this(ptsTimestampAdjuster, workaroundFlags, keyframeIndex, BUFFER_PACKET_COUNT);
+  }
+
+  /**
+   * @param bufferPacketCount The maximum number of packets to read from the input at a time. A
+   *     value of one reads each packet separately, as the extractor did before reads were batched,
+   *     and is used as a baseline when benchmarking.
+   */
+  /* package */ TsExtractor(int bufferPacketCount) {
+    this(new PtsTimestampAdjuster(0), 0, null, bufferPacketCount);
+  }
+
+  private TsExtractor(PtsTimestampAdjuster ptsTimestampAdjuster, int workaroundFlags,
+      KeyframeIndex keyframeIndex, int bufferPacketCount) {
     this.ptsTimestampAdjuster = ptsTimestampAdjuster;
     this.workaroundFlags = workaroundFlags;
-    tsPacketBuffer = new ParsableByteArray(TS_PACKET_SIZE);
-    tsScratch = new ParsableBitArray(new byte[3]);
-    tsPayloadReaders = new SparseArray<>();
-    tsPayloadReaders.put(TS_PAT_PID, new PatReader());
+    this.keyframeIndex = keyframeIndex;
+    tsPacketBuffer = new ParsableByteArray(new byte[TS_PACKET_SIZE * bufferPacketCount], 0);
+    tsPayloadReaders = new TsPayloadReader[MAX_PID_PLUS_ONE];
+    tsPayloadReaders[TS_PAT_PID] = new PatReader();
     streamTypes = new SparseBooleanArray();
   }
 
@@ -110,60 +150,105 @@ public final class TsExtractor implements Extractor {
   @Override
   public void init(ExtractorOutput output) {
     this.output = output;
-    output.seekMap(SeekMap.UNSEEKABLE);
+    output.seekMap(keyframeIndex != null ? keyframeIndex : SeekMap.UNSEEKABLE);
   }
 
   @Override
   public void seek() {
-    ptsTimestampAdjuster.reset();
-    for (int i = 0; i < tsPayloadReaders.size(); i++) {
-      tsPayloadReaders.valueAt(i).seek();
+    if (keyframeIndex == null) {
+      ptsTimestampAdjuster.reset();
+    }
+    // Else the adjuster retains the offset established at the start of the stream, so that samples
+    // read after seeking have the same timestamps as those from which the index was built.
+    tsPacketBuffer.reset();
+    for (int i = 0; i < tsPayloadReaders.length; i++) {
+      if (tsPayloadReaders[i] != null) {
+        tsPayloadReaders[i].seek();
+      }
     }
   }
 
   @Override
   public int read(ExtractorInput input, PositionHolder seekPosition)
       throws IOException, InterruptedException {
-    if (!input.readFully(tsPacketBuffer.data, 0, TS_PACKET_SIZE, true)) {
-      return RESULT_END_OF_INPUT;
-    }
-
-    // Note: see ISO/IEC 13818-1, section 2.4.3.2 for detailed information on the format of
-    // the header.
-    tsPacketBuffer.setPosition(0);
-    tsPacketBuffer.setLimit(TS_PACKET_SIZE);
-    int syncByte = tsPacketBuffer.readUnsignedByte();
-    if (syncByte != TS_SYNC_BYTE) {
-      return RESULT_CONTINUE;
+    byte[] data = tsPacketBuffer.data;
+    if (tsPacketBuffer.bytesLeft() < TS_PACKET_SIZE) {
+      // Move any partial packet to the start of the buffer, and fill the remainder from the input.
+      int bytesLeft = tsPacketBuffer.bytesLeft();
+      if (bytesLeft > 0) {
+        System.arraycopy(data, tsPacketBuffer.getPosition(), data, 0, bytesLeft);
+      }
+      tsPacketBuffer.reset(data, bytesLeft);
+      while (tsPacketBuffer.bytesLeft() < TS_PACKET_SIZE) {
+        int limit = tsPacketBuffer.limit();
+        int bytesRead = input.read(data, limit, data.length - limit);
+        if (bytesRead == C.RESULT_END_OF_INPUT) {
+          return RESULT_END_OF_INPUT;
+        }
+        tsPacketBuffer.setLimit(limit + bytesRead);
+      }
     }
 
-    tsPacketBuffer.readBytes(tsScratch, 3);
-    tsScratch.skipBits(1); // transport_error_indicator
-    boolean payloadUnitStartIndicator = tsScratch.readBit();
-    tsScratch.skipBits(1); // transport_priority
-    int pid = tsScratch.readBits(13);
-    tsScratch.skipBits(2); // transport_scrambling_control
-    boolean adaptationFieldExists = tsScratch.readBit();
-    boolean payloadExists = tsScratch.readBit();
-    // Last 4 bits of scratch are skipped: continuity_counter
-
-    // Skip the adaptation field.
-    if (adaptationFieldExists) {
-      int adaptationFieldLength = tsPacketBuffer.readUnsignedByte();
-      tsPacketBuffer.skipBytes(adaptationFieldLength);
-    }
+    int limit = tsPacketBuffer.limit();
+    int position = tsPacketBuffer.getPosition();
+    while (true) {
+      if (data[position] != TS_SYNC_BYTE) {
+        int syncPosition = findSyncPosition(data, position, limit);
+        Log.w(TAG, "Lost sync: skipped " + (syncPosition - position) + " bytes");
+        position = syncPosition;
+      }
+      if (limit - position < TS_PACKET_SIZE) {
+        break;
+      }
+      int packetEnd = position + TS_PACKET_SIZE;
+
+      // Note: see ISO/IEC 13818-1, section 2.4.3.2 for detailed information on the format of
+      // the header. The continuity_counter is ignored.
+      int header = ((data[position + 1] & 0xFF) << 16) | ((data[position + 2] & 0xFF) << 8)
+          | (data[position + 3] & 0xFF);
+      boolean payloadUnitStartIndicator = (header & 0x400000) != 0;
+      int pid = (header >> 8) & 0x1FFF;
+      boolean adaptationFieldExists = (header & 0x20) != 0;
+      boolean payloadExists = (header & 0x10) != 0;
+
+      // Skip the adaptation field.
+      int payloadStart = position + 4;
+      if (adaptationFieldExists) {
+        payloadStart += 1 + (data[payloadStart] & 0xFF);
+      }
 
-    // Read the payload.
-    if (payloadExists) {
-      TsPayloadReader payloadReader = tsPayloadReaders.get(pid);
-      if (payloadReader != null) {
+      // Read the payload.
+      TsPayloadReader payloadReader = payloadExists ? tsPayloadReaders[pid] : null;
+      if (payloadReader != null && payloadStart < packetEnd) {
+        tsPacketBuffer.setLimit(packetEnd);
+        tsPacketBuffer.setPosition(payloadStart);
         payloadReader.consume(tsPacketBuffer, payloadUnitStartIndicator, output);
+        tsPacketBuffer.setLimit(limit);
+      }
+      position = packetEnd;
+      if (position == limit) {
+        break;
       }
     }
-
+    tsPacketBuffer.setPosition(position);
     return RESULT_CONTINUE;
   }
 
+  /**
+   * Returns the position of the first sync byte in {@code data} that is followed by a further sync
+   * byte one packet later, or by fewer than a packet of data. Returns {@code limit} if there is no
+   * such position.
+   */
+  private static int findSyncPosition(byte[] data, int position, int limit) {
+    for (int i = position; i < limit; i++) {
+      if (data[i] == TS_SYNC_BYTE
+          && (i + TS_PACKET_SIZE >= limit || data[i + TS_PACKET_SIZE] == TS_SYNC_BYTE)) {
+        return i;
+      }
+    }
+    return limit;
+  }
+
   // Internals.
 
   /**
@@ -233,7 +318,7 @@ public final class TsExtractor implements Extractor {
           patScratch.skipBits(13); // network_PID (13)
         } else {
           int pid = patScratch.readBits(13);
-          tsPayloadReaders.put(pid, new PmtReader());
+          tsPayloadReaders[pid] = new PmtReader();
         }
       }
 
@@ -377,8 +462,7 @@ public final class TsExtractor implements Extractor {
 
         if (pesPayloadReader != null) {
           streamTypes.put(streamType, true);
-          tsPayloadReaders.put(elementaryPid,
-              new PesReader(pesPayloadReader, ptsTimestampAdjuster));
+          tsPayloadReaders[elementaryPid] = new PesReader(pesPayloadReader, ptsTimestampAdjuster);
         }
       }
 
@@ -17,19 +17,14 @@ package com.google.android.exoplayer.hls;
 
 import com.google.android.exoplayer.C;
 import com.google.android.exoplayer.upstream.DataSource;
-import com.google.android.exoplayer.upstream.DataSourceInputStream;
 import com.google.android.exoplayer.upstream.DataSpec;
 import com.google.android.exoplayer.util.Assertions;
 
 import java.io.IOException;
-import java.security.InvalidAlgorithmParameterException;
-import java.security.InvalidKeyException;
-import java.security.Key;
+import java.security.GeneralSecurityException;
 import java.security.NoSuchAlgorithmException;
-import java.security.spec.AlgorithmParameterSpec;
 
 import javax.crypto.Cipher;
-import javax.crypto.CipherInputStream;
 import javax.crypto.NoSuchPaddingException;
 import javax.crypto.spec.IvParameterSpec;
 import javax.crypto.spec.SecretKeySpec;
@@ -38,17 +33,30 @@ import javax.crypto.spec.SecretKeySpec;
  * A {@link DataSource} that decrypts data read from an upstream source, encrypted with AES-128 with
  * a 128-bit key and PKCS7 padding.
  * <p>
+ * Data is read from upstream in blocks of up to {@link #BUFFER_SIZE} bytes, each of which is
+ * decrypted with a single call to the cipher. Reads of at least {@link #BUFFER_SIZE} bytes are
+ * decrypted directly into the caller's buffer. Shorter reads are served from an internal buffer
+ * of decrypted data, so that the cost of each call to the cipher is spread over several reads.
+ * <p>
  * Note that this {@link DataSource} does not support being opened from arbitrary offsets. It is
  * designed specifically for reading whole files as defined in an HLS media playlist. For this
  * reason the implementation is private to the HLS package.
  */
 /* package */ final class Aes128DataSource implements DataSource {
 
+  private static final int BLOCK_SIZE = 16;
+  private static final int BUFFER_SIZE = 16 * 1024;
+
   private final DataSource upstream;
   private final byte[] encryptionKey;
   private final byte[] encryptionIv;
 
-  private CipherInputStream cipherInputStream;
+  private Cipher cipher;
+  private byte[] inputBuffer;
+  private byte[] outputBuffer;
+  private int outputOffset;
+  private int outputLength;
+  private boolean finished;
 
   /**
    * @param upstream The upstream {@link DataSource}.
@@ -63,46 +71,107 @@ import javax.crypto.spec.SecretKeySpec;
 
   @Override
   public long open(DataSpec dataSpec) throws IOException {
-    Cipher cipher;
+    Cipher cipher = getCipher();
     try {
-      cipher = Cipher.getInstance("AES/CBC/PKCS7Padding");
-    } catch (NoSuchAlgorithmException e) {
-      throw new RuntimeException(e);
-    } catch (NoSuchPaddingException e) {
+      cipher.init(Cipher.DECRYPT_MODE, new SecretKeySpec(encryptionKey, "AES"),
+          new IvParameterSpec(encryptionIv));
+    } catch (GeneralSecurityException e) {
       throw new RuntimeException(e);
     }
-
-    Key cipherKey = new SecretKeySpec(encryptionKey, "AES");
-    AlgorithmParameterSpec cipherIV = new IvParameterSpec(encryptionIv);
-
-    try {
-      cipher.init(Cipher.DECRYPT_MODE, cipherKey, cipherIV);
-    } catch (InvalidKeyException e) {
-      throw new RuntimeException(e);
-    } catch (InvalidAlgorithmParameterException e) {
-      throw new RuntimeException(e);
+    upstream.open(dataSpec);
+    this.cipher = cipher;
+    if (inputBuffer == null) {
+      inputBuffer = new byte[BUFFER_SIZE];
     }
-
-    cipherInputStream = new CipherInputStream(
-        new DataSourceInputStream(upstream, dataSpec), cipher);
-
+    outputLength = 0;
+    finished = false;
     return C.LENGTH_UNBOUNDED;
   }
 
   @Override
   public void close() throws IOException {
-    cipherInputStream = null;
+    cipher = null;
     upstream.close();
   }
 
   @Override
   public int read(byte[] buffer, int offset, int readLength) throws IOException {
-    Assertions.checkState(cipherInputStream != null);
-    int bytesRead = cipherInputStream.read(buffer, offset, readLength);
-    if (bytesRead < 0) {
-      return -1;
+    Assertions.checkState(cipher != null);
+    if (readLength == 0) {
+      return 0;
+    }
+    if (outputLength == 0) {
+      if (readLength >= BUFFER_SIZE) {
+        return decrypt(buffer, offset, readLength);
+      }
+      if (outputBuffer == null) {
+        outputBuffer = new byte[BUFFER_SIZE];
+      }
+      outputOffset = 0;
+      outputLength = decrypt(outputBuffer, 0, BUFFER_SIZE);
+      if (outputLength == -1) {
+        outputLength = 0;
+        return -1;
+      }
     }
+    int bytesRead = Math.min(readLength, outputLength);
+    System.arraycopy(outputBuffer, outputOffset, buffer, offset, bytesRead);
+    outputOffset += bytesRead;
+    outputLength -= bytesRead;
     return bytesRead;
   }
 
+  /**
+   * Reads from upstream and decrypts into {@code target}.
+   *
+   * @param target The array into which decrypted data is written.
+   * @param offset The offset in {@code target} at which to write.
+   * @param length The space available in {@code target}. Must be at least twice
+   *     {@link #BLOCK_SIZE}.
+   * @return The number of bytes written, or -1 if the end of the data has been reached.
+   */
+  private int decrypt(byte[] target, int offset, int length) throws IOException {
+    try {
+      while (!finished) {
+        // The cipher may output data that it has buffered from earlier calls, as well as the
+        // input. Limit the input so that the output is guaranteed to fit.
+        int inputLength = Math.min(length, inputBuffer.length);
+        int outputSize;
+        while ((outputSize = cipher.getOutputSize(inputLength)) > length) {
+          inputLength -= outputSize - length;
+        }
+        int bytesRead = upstream.read(inputBuffer, 0, inputLength);
+        int bytesDecrypted;
+        if (bytesRead == -1) {
+          finished = true;
+          bytesDecrypted = cipher.doFinal(target, offset);
+        } else {
+          bytesDecrypted = cipher.update(inputBuffer, 0, bytesRead, target, offset);
+        }
+        if (bytesDecrypted > 0) {
+          return bytesDecrypted;
+        }
+        // The cipher is holding back input until it has a whole block. Read more.
+      }
+      return -1;
+    } catch (GeneralSecurityException e) {
+      throw new IOException(e);
+    }
+  }
+
+  private static Cipher getCipher() {
+    try {
+      return Cipher.getInstance("AES/CBC/PKCS7Padding");
+    } catch (NoSuchAlgorithmException e) {
+      // Providers other than those on Android may only recognize the equivalent PKCS5 name.
+      try {
+        return Cipher.getInstance("AES/CBC/PKCS5Padding");
+      } catch (GeneralSecurityException e2) {
+        throw new RuntimeException(e);
+      }
+    } catch (NoSuchPaddingException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
 }
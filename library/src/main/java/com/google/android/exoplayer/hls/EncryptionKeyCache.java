@@ -0,0 +1,94 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer.hls;
+
+import com.google.android.exoplayer.util.Assertions;
+
+import android.net.Uri;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A bounded cache of AES-128 encryption keys, keyed by the key URI and evicting the least recently
+ * used key when full.
+ * <p>
+ * Only the key data is cached. The initialization vector applied to each segment is usually
+ * different for every segment, and is derived from the playlist whenever a segment is loaded.
+ */
+/* package */ final class EncryptionKeyCache {
+
+  private final LinkedHashMap<Uri, byte[]> keys;
+
+  /**
+   * @param maxSize The maximum number of keys to hold.
+   */
+  public EncryptionKeyCache(final int maxSize) {
+    Assertions.checkArgument(maxSize > 0);
+    keys = new LinkedHashMap<Uri, byte[]>(maxSize + 1, 1, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<Uri, byte[]> eldest) {
+        return size() > maxSize;
+      }
+    };
+  }
+
+  /**
+   * Returns the key for the specified URI, or null if it is not cached. The key becomes the most
+   * recently used.
+   *
+   * @param keyUri The URI of the key.
+   * @return The key, or null.
+   */
+  public byte[] get(Uri keyUri) {
+    return keys.get(keyUri);
+  }
+
+  /**
+   * Adds a key, evicting the least recently used key if the cache is full.
+   *
+   * @param keyUri The URI of the key.
+   * @param key The key.
+   */
+  public void put(Uri keyUri, byte[] key) {
+    keys.put(keyUri, key);
+  }
+
+  /**
+   * Returns whether a key for the specified URI is cached, without affecting the order of eviction.
+   *
+   * @param keyUri The URI of the key.
+   * @return Whether the key is cached.
+   */
+  public boolean contains(Uri keyUri) {
+    return keys.containsKey(keyUri);
+  }
+
+  /**
+   * Returns the number of cached keys.
+   */
+  public int size() {
+    return keys.size();
+  }
+
+  /**
+   * Removes all keys.
+   */
+  public void clear() {
+    keys.clear();
+  }
+
+}
@@ -23,6 +23,8 @@ import com.google.android.exoplayer.chunk.Chunk;
 import com.google.android.exoplayer.chunk.ChunkOperationHolder;
 import com.google.android.exoplayer.chunk.DataChunk;
 import com.google.android.exoplayer.chunk.Format;
+import com.google.android.exoplayer.chunk.FormatEvaluator;
+import com.google.android.exoplayer.chunk.FormatEvaluator.Evaluation;
 import com.google.android.exoplayer.extractor.Extractor;
 import com.google.android.exoplayer.extractor.mp3.Mp3Extractor;
 import com.google.android.exoplayer.extractor.ts.AdtsExtractor;
@@ -30,8 +32,12 @@ import com.google.android.exoplayer.extractor.ts.PtsTimestampAdjuster;
 import com.google.android.exoplayer.extractor.ts.TsExtractor;
 import com.google.android.exoplayer.upstream.BandwidthMeter;
 import com.google.android.exoplayer.upstream.DataSource;
+import com.google.android.exoplayer.upstream.DataSourceFactory;
 import com.google.android.exoplayer.upstream.DataSpec;
+import com.google.android.exoplayer.upstream.ExtendedBandwidthMeter;
 import com.google.android.exoplayer.upstream.HttpDataSource.InvalidResponseCodeException;
+import com.google.android.exoplayer.upstream.Loader;
+import com.google.android.exoplayer.upstream.Loader.Loadable;
 import com.google.android.exoplayer.util.Assertions;
 import com.google.android.exoplayer.util.MimeTypes;
 import com.google.android.exoplayer.util.UriUtil;
@@ -119,6 +125,7 @@ public class HlsChunkSource implements HlsTrackSelector.Output {
   private static final String VTT_FILE_EXTENSION = ".vtt";
   private static final String WEBVTT_FILE_EXTENSION = ".webvtt";
   private static final float BANDWIDTH_FRACTION = 0.8f;
+  private static final int ENCRYPTION_KEY_CACHE_SIZE = 8;
 
   private final boolean isMaster;
   private final DataSource dataSource;
@@ -131,6 +138,11 @@ public class HlsChunkSource implements HlsTrackSelector.Output {
   private final String baseUri;
   private final long minBufferDurationToSwitchUpUs;
   private final long maxBufferDurationToSwitchDownUs;
+  private final EncryptionKeyCache encryptionKeyCache;
+  private final DataSourceFactory keyPrefetchDataSourceFactory;
+  private final KeyPrefetchCallback keyPrefetchCallback;
+  private final FormatEvaluator formatEvaluator;
+  private final Evaluation evaluation;
 
   // TODO: Expose tracks.
   private final ArrayList<ExposedTrack> tracks;
@@ -160,6 +172,10 @@ public class HlsChunkSource implements HlsTrackSelector.Output {
   private byte[] encryptionIv;
   private int initialStartingBitrate; //AMZN_CHANGE_ONELINE
 
+  private Loader keyPrefetchLoader;
+  private EncryptionKeyChunk keyPrefetchChunk;
+  private boolean formatEvaluatorEnabled;
+
   /**
    * @param isMaster True if this is the master source for the playback. False otherwise. Each
    *     playback must have exactly one master source, which should be the source providing video
@@ -213,7 +229,90 @@ public class HlsChunkSource implements HlsTrackSelector.Output {
       PtsTimestampAdjusterProvider timestampAdjusterProvider, int adaptiveMode,
       long minBufferDurationToSwitchUpMs, long maxBufferDurationToSwitchDownMs,
       int startingBitrate) { //AMZN_CHANGE_ONELINE
+    this(isMaster, dataSource, playlistUrl, playlist, trackSelector, bandwidthMeter,
+        timestampAdjusterProvider, adaptiveMode, minBufferDurationToSwitchUpMs,
+        maxBufferDurationToSwitchDownMs, startingBitrate, null);
+  }
+
+  /**
+   * @param isMaster True if this is the master source for the playback. False otherwise. Each
+   *     playback must have exactly one master source, which should be the source providing video
+   *     chunks (or audio chunks for audio only playbacks).
+   * @param dataSource A {@link DataSource} suitable for loading the media data.
+   * @param playlistUrl The playlist URL.
+   * @param playlist The hls playlist.
+   * @param trackSelector Selects tracks to be exposed by this source.
+   * @param bandwidthMeter Provides an estimate of the currently available bandwidth.
+   * @param timestampAdjusterProvider A provider of {@link PtsTimestampAdjuster} instances. If
+   *     multiple {@link HlsChunkSource}s are used for a single playback, they should all share the
+   *     same provider.
+   * @param adaptiveMode The mode for switching from one variant to another. One of
+   *     {@link #ADAPTIVE_MODE_NONE}, {@link #ADAPTIVE_MODE_ABRUPT} and
+   *     {@link #ADAPTIVE_MODE_SPLICE}.
+   * @param minBufferDurationToSwitchUpMs The minimum duration of media that needs to be buffered
+   *     for a switch to a higher quality variant to be considered.
+   * @param maxBufferDurationToSwitchDownMs The maximum duration of media that needs to be buffered
+   *     for a switch to a lower quality variant to be considered.
+   * @param startingBitrate The bitrate (bits per second) that should be considered for initial
+   *     variant selection. If 0, the first variant in the playlist is selected.
+   * @param keyPrefetchDataSourceFactory If not null, creates the {@link DataSource} with which the
+   *     encryption key of the segment following each segment is loaded whilst that segment loads,
+   *     if the key changes between the two segments and is not already cached. If null, keys are
+   *     only loaded when they are first needed.
+   */
+  public HlsChunkSource(boolean isMaster, DataSource dataSource, String playlistUrl,
+      HlsPlaylist playlist, HlsTrackSelector trackSelector, BandwidthMeter bandwidthMeter,
+      PtsTimestampAdjusterProvider timestampAdjusterProvider, int adaptiveMode,
+      long minBufferDurationToSwitchUpMs, long maxBufferDurationToSwitchDownMs,
+      int startingBitrate, DataSourceFactory keyPrefetchDataSourceFactory) {
+    this(isMaster, dataSource, playlistUrl, playlist, trackSelector, bandwidthMeter,
+        timestampAdjusterProvider, adaptiveMode, minBufferDurationToSwitchUpMs,
+        maxBufferDurationToSwitchDownMs, startingBitrate, keyPrefetchDataSourceFactory, null);
+  }
+
+  /**
+   * @param isMaster True if this is the master source for the playback. False otherwise. Each
+   *     playback must have exactly one master source, which should be the source providing video
+   *     chunks (or audio chunks for audio only playbacks).
+   * @param dataSource A {@link DataSource} suitable for loading the media data.
+   * @param playlistUrl The playlist URL.
+   * @param playlist The hls playlist.
+   * @param trackSelector Selects tracks to be exposed by this source.
+   * @param bandwidthMeter Provides an estimate of the currently available bandwidth.
+   * @param timestampAdjusterProvider A provider of {@link PtsTimestampAdjuster} instances. If
+   *     multiple {@link HlsChunkSource}s are used for a single playback, they should all share the
+   *     same provider.
+   * @param adaptiveMode The mode for switching from one variant to another. One of
+   *     {@link #ADAPTIVE_MODE_NONE}, {@link #ADAPTIVE_MODE_ABRUPT} and
+   *     {@link #ADAPTIVE_MODE_SPLICE}.
+   * @param minBufferDurationToSwitchUpMs The minimum duration of media that needs to be buffered
+   *     for a switch to a higher quality variant to be considered. Unused if
+   *     {@code formatEvaluator} is not null.
+   * @param maxBufferDurationToSwitchDownMs The maximum duration of media that needs to be buffered
+   *     for a switch to a lower quality variant to be considered. Unused if
+   *     {@code formatEvaluator} is not null.
+   * @param startingBitrate The bitrate (bits per second) that should be considered for initial
+   *     variant selection. If 0, the first variant in the playlist is selected.
+   * @param keyPrefetchDataSourceFactory If not null, creates the {@link DataSource} with which the
+   *     encryption key of the segment following each segment is loaded whilst that segment loads,
+   *     if the key changes between the two segments and is not already cached. If null, keys are
+   *     only loaded when they are first needed.
+   * @param formatEvaluator If not null, selects the variant of each segment after the first from
+   *     the formats of the variants that are not blacklisted. If null, variants are selected from
+   *     the bandwidth estimate and the minimum and maximum buffer durations.
+   */
+  public HlsChunkSource(boolean isMaster, DataSource dataSource, String playlistUrl,
+      HlsPlaylist playlist, HlsTrackSelector trackSelector, BandwidthMeter bandwidthMeter,
+      PtsTimestampAdjusterProvider timestampAdjusterProvider, int adaptiveMode,
+      long minBufferDurationToSwitchUpMs, long maxBufferDurationToSwitchDownMs,
+      int startingBitrate, DataSourceFactory keyPrefetchDataSourceFactory,
+      FormatEvaluator formatEvaluator) {
     initialStartingBitrate = startingBitrate; //AMZN_CHANGE_ONELINE
+    this.keyPrefetchDataSourceFactory = keyPrefetchDataSourceFactory;
+    this.formatEvaluator = formatEvaluator;
+    evaluation = new Evaluation();
+    encryptionKeyCache = new EncryptionKeyCache(ENCRYPTION_KEY_CACHE_SIZE);
+    keyPrefetchCallback = new KeyPrefetchCallback();
     this.isMaster = isMaster;
     this.dataSource = dataSource;
     this.trackSelector = trackSelector;
@@ -342,6 +441,10 @@ public class HlsChunkSource implements HlsTrackSelector.Output {
     variantPlaylists = new HlsMediaPlaylist[variants.length];
     variantLastPlaylistLoadTimesMs = new long[variants.length];
     variantBlacklistTimes = new long[variants.length];
+    if (formatEvaluator != null && !formatEvaluatorEnabled) {
+      formatEvaluator.enable();
+      formatEvaluatorEnabled = true;
+    }
   }
 
   /**
@@ -362,6 +465,24 @@ public class HlsChunkSource implements HlsTrackSelector.Output {
    */
   public void reset() {
     fatalError = null;
+    if (keyPrefetchLoader != null && keyPrefetchLoader.isLoading()) {
+      keyPrefetchLoader.cancelLoading();
+    }
+  }
+
+  /**
+   * Releases the source.
+   */
+  public void release() {
+    if (formatEvaluatorEnabled) {
+      formatEvaluator.disable();
+      formatEvaluatorEnabled = false;
+    }
+    if (keyPrefetchLoader != null) {
+      keyPrefetchLoader.release();
+      keyPrefetchLoader = null;
+      keyPrefetchChunk = null;
+    }
   }
 
   /**
@@ -438,10 +559,17 @@ public class HlsChunkSource implements HlsTrackSelector.Output {
       Uri keyUri = UriUtil.resolveToUri(mediaPlaylist.baseUri, segment.encryptionKeyUri);
       if (!keyUri.equals(encryptionKeyUri)) {
         // Encryption is specified and the key has changed.
-        out.chunk = newEncryptionKeyChunk(keyUri, segment.encryptionIV, selectedVariantIndex);
-        return;
-      }
-      if (!Util.areEqual(segment.encryptionIV, encryptionIvString)) {
+        byte[] cachedKey = encryptionKeyCache.get(keyUri);
+        if (cachedKey != null) {
+          setEncryptionData(keyUri, segment.encryptionIV, cachedKey);
+        } else if (isPrefetchingEncryptionKey(keyUri)) {
+          // Wait for the key that's already being loaded.
+          return;
+        } else {
+          out.chunk = newEncryptionKeyChunk(keyUri, segment.encryptionIV, selectedVariantIndex);
+          return;
+        }
+      } else if (!Util.areEqual(segment.encryptionIV, encryptionIvString)) {
         setEncryptionData(keyUri, segment.encryptionIV, encryptionKey);
       }
     } else {
@@ -531,6 +659,10 @@ public class HlsChunkSource implements HlsTrackSelector.Output {
     out.chunk = new TsChunk(dataSource, dataSpec, trigger, format, startTimeUs, endTimeUs,
         chunkMediaSequence, segment.discontinuitySequenceNumber, extractorWrapper, encryptionKey,
         encryptionIv);
+
+    if (keyPrefetchDataSourceFactory != null && chunkIndex + 1 < mediaPlaylist.segments.size()) {
+      maybePrefetchEncryptionKey(mediaPlaylist, mediaPlaylist.segments.get(chunkIndex + 1));
+    }
   }
 
   /**
@@ -547,6 +679,7 @@ public class HlsChunkSource implements HlsTrackSelector.Output {
     } else if (chunk instanceof EncryptionKeyChunk) {
       EncryptionKeyChunk encryptionKeyChunk = (EncryptionKeyChunk) chunk;
       scratchSpace = encryptionKeyChunk.getDataHolder();
+      encryptionKeyCache.put(encryptionKeyChunk.dataSpec.uri, encryptionKeyChunk.getResult());
       setEncryptionData(encryptionKeyChunk.dataSpec.uri, encryptionKeyChunk.iv,
           encryptionKeyChunk.getResult());
     }
@@ -659,7 +792,10 @@ public class HlsChunkSource implements HlsTrackSelector.Output {
 
   private int getNextVariantIndex(TsChunk previousTsChunk, long playbackPositionUs) {
     clearStaleBlacklistedVariants();
-    long bitrateEstimate = bandwidthMeter.getBitrateEstimate();
+    if (formatEvaluator != null) {
+      return getVariantIndexFromEvaluator(previousTsChunk, playbackPositionUs);
+    }
+    long bitrateEstimate = getEffectiveBitrateEstimate(previousTsChunk);
     if (variantBlacklistTimes[selectedVariantIndex] != 0) {
       // The current variant has been blacklisted, so we have no choice but to re-evaluate.
       return getVariantIndexForBandwidth(bitrateEstimate);
@@ -692,6 +828,56 @@ public class HlsChunkSource implements HlsTrackSelector.Output {
     return selectedVariantIndex;
   }
 
+  private int getVariantIndexFromEvaluator(TsChunk previousTsChunk, long playbackPositionUs) {
+    if (previousTsChunk == null && variantBlacklistTimes[selectedVariantIndex] == 0) {
+      // The first variant is determined by the track selection and the starting bitrate.
+      return selectedVariantIndex;
+    }
+    int enabledVariantCount = 0;
+    for (int i = 0; i < variants.length; i++) {
+      if (variantBlacklistTimes[i] == 0) {
+        enabledVariantCount++;
+      }
+    }
+    // At least one variant should always be enabled.
+    Assertions.checkState(enabledVariantCount > 0);
+    Format[] formats = new Format[enabledVariantCount];
+    for (int i = 0, j = 0; i < variants.length; i++) {
+      if (variantBlacklistTimes[i] == 0) {
+        formats[j++] = variants[i].format;
+      }
+    }
+    List<TsChunk> queue = previousTsChunk == null ? Collections.<TsChunk>emptyList()
+        : Collections.singletonList(previousTsChunk);
+    evaluation.format = variants[selectedVariantIndex].format;
+    formatEvaluator.evaluate(queue, playbackPositionUs, formats, evaluation);
+    for (int i = 0; i < variants.length; i++) {
+      if (variants[i].format == evaluation.format) {
+        return i;
+      }
+    }
+    throw new IllegalStateException("Evaluator selected an unknown format");
+  }
+
+  private long getEffectiveBitrateEstimate(TsChunk previousTsChunk) {
+    long bitrateEstimate = bandwidthMeter.getBitrateEstimate();
+    long timeToFirstByteEstimateMs = bandwidthMeter instanceof ExtendedBandwidthMeter
+        ? ((ExtendedBandwidthMeter) bandwidthMeter).getTimeToFirstByteEstimateMs()
+        : BandwidthMeter.NO_ESTIMATE;
+    if (bitrateEstimate == BandwidthMeter.NO_ESTIMATE
+        || timeToFirstByteEstimateMs == BandwidthMeter.NO_ESTIMATE || previousTsChunk == null) {
+      return bitrateEstimate;
+    }
+    // Time spent waiting for the first bytes of each chunk is unavailable for loading it, so the
+    // effective bitrate is reduced in proportion.
+    long chunkDurationUs = previousTsChunk.endTimeUs - previousTsChunk.startTimeUs;
+    if (chunkDurationUs <= 0) {
+      return bitrateEstimate;
+    }
+    long timeToFirstByteUs = timeToFirstByteEstimateMs * 1000;
+    return bitrateEstimate * Math.max(0, chunkDurationUs - timeToFirstByteUs) / chunkDurationUs;
+  }
+
   private int getVariantIndexForBandwidth(long bitrateEstimate) {
     if (bitrateEstimate == BandwidthMeter.NO_ESTIMATE) {
       // Select the lowest quality.
@@ -733,10 +919,35 @@ public class HlsChunkSource implements HlsTrackSelector.Output {
         DataSpec.FLAG_ALLOW_GZIP);
     //AMZN_CHANGE_BEGIN
     return new MediaPlaylistChunk(dataSource, dataSpec, scratchSpace, playlistParser, variantIndex,
-        mediaPlaylistUri.toString(), variants[variantIndex].getFormat());
+        mediaPlaylistUri.toString(), variants[variantIndex].getFormat(),
+        variantPlaylists[variantIndex]);
     //AMZN_CHANGE_END
   }
 
+  private void maybePrefetchEncryptionKey(HlsMediaPlaylist mediaPlaylist,
+      HlsMediaPlaylist.Segment nextSegment) {
+    if (!nextSegment.isEncrypted) {
+      return;
+    }
+    Uri keyUri = UriUtil.resolveToUri(mediaPlaylist.baseUri, nextSegment.encryptionKeyUri);
+    if (keyUri.equals(encryptionKeyUri) || encryptionKeyCache.contains(keyUri)
+        || (keyPrefetchLoader != null && keyPrefetchLoader.isLoading())) {
+      return;
+    }
+    if (keyPrefetchLoader == null) {
+      keyPrefetchLoader = new Loader("Loader:HlsKeyPrefetch");
+    }
+    DataSpec dataSpec = new DataSpec(keyUri, 0, C.LENGTH_UNBOUNDED, null, DataSpec.FLAG_ALLOW_GZIP);
+    keyPrefetchChunk = new EncryptionKeyChunk(keyPrefetchDataSourceFactory.createDataSource(),
+        dataSpec, null, nextSegment.encryptionIV, selectedVariantIndex);
+    keyPrefetchLoader.startLoading(keyPrefetchChunk, keyPrefetchCallback);
+  }
+
+  private boolean isPrefetchingEncryptionKey(Uri keyUri) {
+    return keyPrefetchLoader != null && keyPrefetchLoader.isLoading()
+        && keyPrefetchChunk.dataSpec.uri.equals(keyUri);
+  }
+
   private EncryptionKeyChunk newEncryptionKeyChunk(Uri keyUri, String iv, int variantIndex) {
     DataSpec dataSpec = new DataSpec(keyUri, 0, C.LENGTH_UNBOUNDED, null, DataSpec.FLAG_ALLOW_GZIP);
     return new EncryptionKeyChunk(dataSource, dataSpec, scratchSpace, iv, variantIndex);
@@ -838,29 +1049,38 @@ public class HlsChunkSource implements HlsTrackSelector.Output {
 
     private final HlsPlaylistParser playlistParser;
     private final String playlistUrl;
+    private final HlsMediaPlaylist previousPlaylist;
 
     private HlsMediaPlaylist result;
 
     //AMZN_CHANGE_BEGIN
     public MediaPlaylistChunk(DataSource dataSource, DataSpec dataSpec, byte[] scratchSpace,
         HlsPlaylistParser playlistParser, int variantIndex, String playlistUrl) {
-      this(dataSource, dataSpec, scratchSpace, playlistParser, variantIndex, playlistUrl, null);
+      this(dataSource, dataSpec, scratchSpace, playlistParser, variantIndex, playlistUrl, null,
+          null);
     }
 
     public MediaPlaylistChunk(DataSource dataSource, DataSpec dataSpec, byte[] scratchSpace,
-                              HlsPlaylistParser playlistParser, int variantIndex, String playlistUrl, Format format) {
+        HlsPlaylistParser playlistParser, int variantIndex, String playlistUrl, Format format,
+        HlsMediaPlaylist previousPlaylist) {
       super(dataSource, dataSpec, Chunk.TYPE_MANIFEST, Chunk.TRIGGER_UNSPECIFIED, format,
           Chunk.NO_PARENT_ID, scratchSpace);
       this.variantIndex = variantIndex;
       this.playlistParser = playlistParser;
       this.playlistUrl = playlistUrl;
+      this.previousPlaylist = previousPlaylist;
     }
     //AMZN_CHANGE_END
 
     @Override
     protected void consume(byte[] data, int limit) throws IOException {
-      result = (HlsMediaPlaylist) playlistParser.parse(playlistUrl,
-          new ByteArrayInputStream(data, 0, limit));
+      if (previousPlaylist != null && previousPlaylist.live) {
+        // Refreshing a live playlist. Only the segments that have been appended are parsed.
+        result = playlistParser.parseMediaPlaylist(playlistUrl, data, limit, previousPlaylist);
+      } else {
+        result = (HlsMediaPlaylist) playlistParser.parse(playlistUrl,
+            new ByteArrayInputStream(data, 0, limit));
+      }
     }
 
     public HlsMediaPlaylist getResult() {
@@ -869,6 +1089,27 @@ public class HlsChunkSource implements HlsTrackSelector.Output {
 
   }
 
+  private final class KeyPrefetchCallback implements Loader.Callback {
+
+    @Override
+    public void onLoadCompleted(Loadable loadable) {
+      EncryptionKeyChunk chunk = (EncryptionKeyChunk) loadable;
+      encryptionKeyCache.put(chunk.dataSpec.uri, chunk.getResult());
+    }
+
+    @Override
+    public void onLoadCanceled(Loadable loadable) {
+      // Do nothing.
+    }
+
+    @Override
+    public void onLoadError(Loadable loadable, IOException e) {
+      // The key will be loaded again when it's needed, and any error reported then.
+      Log.w(TAG, "Failed to prefetch encryption key", e);
+    }
+
+  }
+
   private static final class EncryptionKeyChunk extends DataChunk {
 
     public final String iv;
@@ -21,11 +21,13 @@ import com.google.android.exoplayer.chunk.Format;
 import com.google.android.exoplayer.hls.HlsMediaPlaylist.Segment;
 import com.google.android.exoplayer.upstream.UriLoadable;
 import com.google.android.exoplayer.util.MimeTypes;
+import com.google.android.exoplayer.util.Util;
 
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.nio.charset.Charset;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.LinkedList;
@@ -116,7 +118,7 @@ public final class HlsPlaylistParser implements UriLoadable.Parser<HlsPlaylist>
           // Do nothing.
         } else if (line.startsWith(STREAM_INF_TAG)) {
           extraLines.add(line);
-          return parseMasterPlaylist(new LineIterator(extraLines, reader), connectionUrl);
+          return parseMasterPlaylist(new ReaderLineIterator(extraLines, reader), connectionUrl);
         } else if (line.startsWith(TARGET_DURATION_TAG)
             || line.startsWith(MEDIA_SEQUENCE_TAG)
             || line.startsWith(MEDIA_DURATION_TAG)
@@ -126,7 +128,8 @@ public final class HlsPlaylistParser implements UriLoadable.Parser<HlsPlaylist>
             || line.equals(DISCONTINUITY_SEQUENCE_TAG)
             || line.equals(ENDLIST_TAG)) {
           extraLines.add(line);
-          return parseMediaPlaylist(new LineIterator(extraLines, reader), connectionUrl);
+          return parseMediaPlaylist(new ReaderLineIterator(extraLines, reader), connectionUrl,
+              null);
         } else {
           extraLines.add(line);
         }
@@ -137,6 +140,34 @@ public final class HlsPlaylistParser implements UriLoadable.Parser<HlsPlaylist>
     throw new ParserException("Failed to parse the playlist, could not identify any tags.");
   }
 
+  /**
+   * Parses a refreshed media playlist, reusing the segments of the previously loaded playlist.
+   * <p>
+   * Segments whose media sequence numbers are present in {@code previousPlaylist} are taken from
+   * it, and the lines that describe them are skipped without being decoded. Only segments that have
+   * been appended since the previous load are parsed, so allocation is proportional to the number
+   * of new segments rather than to the length of the playlist. The start times of the segments
+   * continue the timeline of {@code previousPlaylist}, rather than starting from zero.
+   *
+   * @param connectionUrl The url of the playlist.
+   * @param data An array containing the playlist.
+   * @param length The length of the playlist in {@code data}.
+   * @param previousPlaylist The playlist that was previously loaded from {@code connectionUrl}, or
+   *     null. If null, or if the previous playlist was loaded from a different url, then the
+   *     playlist is parsed in full.
+   * @return The parsed playlist.
+   * @throws IOException If an error occurs parsing the playlist.
+   */
+  public HlsMediaPlaylist parseMediaPlaylist(String connectionUrl, byte[] data, int length,
+      HlsMediaPlaylist previousPlaylist) throws IOException {
+    if (previousPlaylist != null && !previousPlaylist.baseUri.equals(connectionUrl)) {
+      // Segment urls may be relative to the playlist url, so the segments can't be reused.
+      previousPlaylist = null;
+    }
+    return parseMediaPlaylist(new ByteArrayLineIterator(data, length), connectionUrl,
+        previousPlaylist);
+  }
+
   private static HlsMasterPlaylist parseMasterPlaylist(LineIterator iterator, String baseUri)
       throws IOException {
     ArrayList<Variant> variants = new ArrayList<>();
@@ -205,13 +236,14 @@ public final class HlsPlaylistParser implements UriLoadable.Parser<HlsPlaylist>
     return new HlsMasterPlaylist(baseUri, variants, subtitles);
   }
 
-  private static HlsMediaPlaylist parseMediaPlaylist(LineIterator iterator, String baseUri)
-      throws IOException {
+  private static HlsMediaPlaylist parseMediaPlaylist(LineIterator iterator, String baseUri,
+      HlsMediaPlaylist previousPlaylist) throws IOException {
     int mediaSequence = 0;
     int targetDurationSecs = 0;
     int version = 1; // Default version == 1.
     boolean live = true;
-    List<Segment> segments = new ArrayList<>();
+    List<Segment> segments = previousPlaylist == null ? new ArrayList<Segment>()
+        : new ArrayList<Segment>(previousPlaylist.segments.size() + 1);
 
     double segmentDurationSecs = 0.0;
     int discontinuitySequenceNumber = 0;
@@ -226,6 +258,35 @@ public final class HlsPlaylistParser implements UriLoadable.Parser<HlsPlaylist>
 
     String line;
     while (iterator.hasNext()) {
+      if (previousPlaylist != null && iterator.nextStartsWith(MEDIA_DURATION_TAG)) {
+        // Most segments of a refreshed playlist are reused, so their durations are parsed without
+        // decoding the line where possible.
+        double durationSecs = iterator.peekDecimal(MEDIA_DURATION_TAG.length() + 1);
+        if (!Double.isNaN(durationSecs)) {
+          iterator.skip();
+          segmentDurationSecs = durationSecs;
+          continue;
+        }
+      } else if (previousPlaylist != null && !iterator.nextStartsWith("#")) {
+        Segment previousSegment = getSegment(previousPlaylist, segmentMediaSequence);
+        if (previousSegment != null && iterator.nextEquals(previousSegment.url)
+            && isSameSegment(previousSegment, segmentDurationSecs, discontinuitySequenceNumber,
+                isEncrypted, encryptionKeyUri, encryptionIV, segmentMediaSequence,
+                segmentByterangeOffset, segmentByterangeLength)) {
+          // The segment is unchanged from the previous playlist, so it's reused without its url
+          // being decoded. Its start time continues the timeline of the previous playlist.
+          iterator.skip();
+          segments.add(previousSegment);
+          segmentMediaSequence++;
+          segmentStartTimeUs = previousSegment.startTimeUs
+              + (long) (previousSegment.durationSecs * C.MICROS_PER_SECOND);
+          segmentDurationSecs = 0.0;
+          segmentByterangeOffset = previousSegment.byterangeLength == C.LENGTH_UNBOUNDED ? 0
+              : previousSegment.byterangeOffset + previousSegment.byterangeLength;
+          segmentByterangeLength = C.LENGTH_UNBOUNDED;
+          continue;
+        }
+      }
       line = iterator.next();
       if (line.startsWith(TARGET_DURATION_TAG)) {
         targetDurationSecs = HlsParserUtil.parseIntAttr(line, TARGET_DURATION_REGEX,
@@ -260,14 +321,8 @@ public final class HlsPlaylistParser implements UriLoadable.Parser<HlsPlaylist>
       } else if (line.equals(DISCONTINUITY_TAG)) {
         discontinuitySequenceNumber++;
       } else if (!line.startsWith("#")) {
-        String segmentEncryptionIV;
-        if (!isEncrypted) {
-          segmentEncryptionIV = null;
-        } else if (encryptionIV != null) {
-          segmentEncryptionIV = encryptionIV;
-        } else {
-          segmentEncryptionIV = Integer.toHexString(segmentMediaSequence);
-        }
+        String segmentEncryptionIV = getSegmentEncryptionIV(isEncrypted, encryptionIV,
+            segmentMediaSequence);
         segmentMediaSequence++;
         if (segmentByterangeLength == C.LENGTH_UNBOUNDED) {
           segmentByterangeOffset = 0;
@@ -290,18 +345,104 @@ public final class HlsPlaylistParser implements UriLoadable.Parser<HlsPlaylist>
         Collections.unmodifiableList(segments));
   }
 
-  private static class LineIterator {
+  /**
+   * Returns whether a segment of a previous playlist has the properties parsed for a segment with
+   * the same media sequence number and url in a refreshed playlist. The start time is not compared,
+   * since a refreshed playlist's timeline starts from its first segment.
+   */
+  private static boolean isSameSegment(Segment segment, double durationSecs,
+      int discontinuitySequenceNumber, boolean isEncrypted, String encryptionKeyUri,
+      String encryptionIV, int mediaSequence, int byterangeOffset, int byterangeLength) {
+    if (byterangeLength == C.LENGTH_UNBOUNDED) {
+      byterangeOffset = 0;
+    }
+    return segment.durationSecs == durationSecs
+        && segment.discontinuitySequenceNumber == discontinuitySequenceNumber
+        && segment.isEncrypted == isEncrypted
+        && segment.byterangeOffset == byterangeOffset
+        && segment.byterangeLength == byterangeLength
+        && Util.areEqual(segment.encryptionKeyUri, encryptionKeyUri)
+        && Util.areEqual(segment.encryptionIV,
+            getSegmentEncryptionIV(isEncrypted, encryptionIV, mediaSequence));
+  }
+
+  private static String getSegmentEncryptionIV(boolean isEncrypted, String encryptionIV,
+      int mediaSequence) {
+    if (!isEncrypted) {
+      return null;
+    } else if (encryptionIV != null) {
+      return encryptionIV;
+    } else {
+      return Integer.toHexString(mediaSequence);
+    }
+  }
+
+  /**
+   * Returns the segment of {@code playlist} with the specified media sequence number, or null if
+   * {@code playlist} is null or does not contain the segment.
+   */
+  private static Segment getSegment(HlsMediaPlaylist playlist, int mediaSequence) {
+    if (playlist == null) {
+      return null;
+    }
+    int segmentIndex = mediaSequence - playlist.mediaSequence;
+    return segmentIndex >= 0 && segmentIndex < playlist.segments.size()
+        ? playlist.segments.get(segmentIndex) : null;
+  }
+
+  /**
+   * Iterates over the non-empty lines of a playlist, with leading and trailing whitespace removed.
+   */
+  private abstract static class LineIterator {
+
+    public abstract boolean hasNext() throws IOException;
+
+    public abstract String next() throws IOException;
+
+    /**
+     * Returns whether there is a next line that starts with the specified prefix. The line is not
+     * consumed.
+     */
+    public abstract boolean nextStartsWith(String prefix) throws IOException;
+
+    /**
+     * Returns whether there is a next line that is equal to the specified string. The line is not
+     * consumed.
+     */
+    public abstract boolean nextEquals(String line) throws IOException;
+
+    /**
+     * Returns the value of an unsigned decimal number in the next line, if it can be determined
+     * without decoding the line. The line is not consumed.
+     *
+     * @param offset The offset of the number in the line.
+     * @return The value of the number, or {@link Double#NaN} if the line must be decoded to parse
+     *     it.
+     */
+    public double peekDecimal(int offset) throws IOException {
+      return Double.NaN;
+    }
+
+    /**
+     * Consumes the next line without returning it.
+     */
+    public abstract void skip() throws IOException;
+
+  }
+
+  private static final class ReaderLineIterator extends LineIterator {
 
     private final BufferedReader reader;
     private final Queue<String> extraLines;
 
     private String next;
 
-    public LineIterator(Queue<String> extraLines, BufferedReader reader) {
+    public ReaderLineIterator(Queue<String> extraLines, BufferedReader reader) {
       this.extraLines = extraLines;
       this.reader = reader;
     }
 
+    @Override
     public boolean hasNext() throws IOException {
       if (next != null) {
         return true;
@@ -319,6 +460,7 @@ public final class HlsPlaylistParser implements UriLoadable.Parser<HlsPlaylist>
       return false;
     }
 
+    @Override
     public String next() throws IOException {
       String result = null;
       if (hasNext()) {
@@ -328,6 +470,177 @@ public final class HlsPlaylistParser implements UriLoadable.Parser<HlsPlaylist>
       return result;
     }
 
+    @Override
+    public boolean nextStartsWith(String prefix) throws IOException {
+      return hasNext() && next.startsWith(prefix);
+    }
+
+    @Override
+    public boolean nextEquals(String line) throws IOException {
+      return hasNext() && next.equals(line);
+    }
+
+    @Override
+    public void skip() throws IOException {
+      next();
+    }
+
+  }
+
+  /**
+   * A {@link LineIterator} over a playlist held in a byte array. Lines are only decoded when they
+   * are returned by {@link #next()}, so lines that are skipped cause no allocation.
+   */
+  private static final class ByteArrayLineIterator extends LineIterator {
+
+    private static final Charset UTF8 = Charset.forName(C.UTF8_NAME);
+    /**
+     * Powers of ten that are exactly representable as doubles.
+     */
+    private static final double[] POWERS_OF_TEN = new double[] {1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6,
+        1e7, 1e8, 1e9, 1e10, 1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21,
+        1e22};
+    /**
+     * Integers up to this value are exactly representable as doubles.
+     */
+    private static final long MAX_EXACT_MANTISSA = 1L << 53;
+
+    private final byte[] data;
+    private final int limit;
+
+    private int position;
+    private int lineStart;
+    private int lineEnd;
+    private boolean hasLine;
+
+    public ByteArrayLineIterator(byte[] data, int limit) {
+      this.data = data;
+      this.limit = limit;
+    }
+
+    @Override
+    public boolean hasNext() {
+      while (!hasLine && position < limit) {
+        int start = position;
+        while (position < limit && data[position] != '\n' && data[position] != '\r') {
+          position++;
+        }
+        int end = position;
+        if (position < limit) {
+          // Skip the line terminator.
+          position++;
+        }
+        while (start < end && isWhitespace(data[start])) {
+          start++;
+        }
+        while (end > start && isWhitespace(data[end - 1])) {
+          end--;
+        }
+        if (start < end) {
+          lineStart = start;
+          lineEnd = end;
+          hasLine = true;
+        }
+      }
+      return hasLine;
+    }
+
+    @Override
+    public String next() {
+      if (!hasNext()) {
+        return null;
+      }
+      hasLine = false;
+      return new String(data, lineStart, lineEnd - lineStart, UTF8);
+    }
+
+    @Override
+    public boolean nextStartsWith(String prefix) {
+      if (!hasNext() || lineEnd - lineStart < prefix.length()) {
+        return false;
+      }
+      for (int i = 0; i < prefix.length(); i++) {
+        if (data[lineStart + i] != prefix.charAt(i)) {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    @Override
+    public boolean nextEquals(String line) {
+      if (!hasNext()) {
+        return false;
+      } else if (!isAscii(line)) {
+        // The line is decoded for comparison with a string containing multi-byte characters.
+        return line.equals(new String(data, lineStart, lineEnd - lineStart, UTF8));
+      }
+      return lineEnd - lineStart == line.length() && nextStartsWith(line);
+    }
+
+    @Override
+    public void skip() {
+      hasNext();
+      hasLine = false;
+    }
+
+    @Override
+    public double peekDecimal(int offset) {
+      if (!hasNext() || lineEnd - lineStart <= offset) {
+        return Double.NaN;
+      }
+      int position = lineStart + offset;
+      long mantissa = 0;
+      int integerDigits = 0;
+      int fractionDigits = -1;
+      for (; position < lineEnd; position++) {
+        byte b = data[position];
+        if (b == '.' && fractionDigits == -1 && integerDigits > 0) {
+          fractionDigits = 0;
+        } else if (b >= '0' && b <= '9') {
+          mantissa = mantissa * 10 + (b - '0');
+          if (mantissa > MAX_EXACT_MANTISSA) {
+            return Double.NaN;
+          }
+          if (fractionDigits == -1) {
+            integerDigits++;
+          } else {
+            fractionDigits++;
+          }
+        } else {
+          break;
+        }
+      }
+      if (integerDigits == 0 || fractionDigits == 0
+          || (position < lineEnd && isWordCharacter(data[position]))) {
+        // The number is empty, has a trailing point, or is followed by unexpected characters.
+        return Double.NaN;
+      }
+      // The mantissa and the power of ten are exact, and division is correctly rounded, so the
+      // result is the same as that of Double.parseDouble.
+      return fractionDigits <= 0 ? mantissa : mantissa / POWERS_OF_TEN[fractionDigits];
+    }
+
+    private static boolean isWordCharacter(byte b) {
+      // Bytes of multi-byte characters are conservatively treated as word characters.
+      return (b >= '0' && b <= '9') || (b >= 'a' && b <= 'z') || (b >= 'A' && b <= 'Z') || b == '_'
+          || b == '.' || b < 0;
+    }
+
+    private static boolean isAscii(String string) {
+      for (int i = 0; i < string.length(); i++) {
+        if (string.charAt(i) > 0x7F) {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    private static boolean isWhitespace(byte b) {
+      // Matches the characters removed by String.trim().
+      return (b & 0xFF) <= ' ';
+    }
+
   }
 
 }
@@ -0,0 +1,61 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer.hls;
+
+import com.google.android.exoplayer.C;
+import com.google.android.exoplayer.upstream.DataSpec;
+import com.google.android.exoplayer.upstream.cache.CachePrefetcher;
+import com.google.android.exoplayer.util.UriUtil;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Builds {@link CachePrefetcher} requests for HLS content.
+ * <p>
+ * The requests match those made by {@link HlsChunkSource}, which does not specify cache keys, and
+ * so the prefetched data is cached under the segment uris. Encryption keys are not prefetched, so
+ * that they are never written to disk. Segments are cached in their encrypted form.
+ */
+public final class HlsPrefetchUtil {
+
+  private HlsPrefetchUtil() {}
+
+  /**
+   * Builds requests for the segments of a media playlist that overlap a window of time.
+   *
+   * @param mediaPlaylist The media playlist of the variant to prefetch.
+   * @param startTimeUs The start of the window, relative to the start of the playlist.
+   * @param endTimeUs The end of the window, relative to the start of the playlist.
+   * @return The requests.
+   */
+  public static List<DataSpec> getDataSpecs(HlsMediaPlaylist mediaPlaylist, long startTimeUs,
+      long endTimeUs) {
+    List<DataSpec> dataSpecs = new ArrayList<>();
+    for (HlsMediaPlaylist.Segment segment : mediaPlaylist.segments) {
+      long segmentEndTimeUs = segment.startTimeUs
+          + (long) (segment.durationSecs * C.MICROS_PER_SECOND);
+      if (segment.startTimeUs >= endTimeUs) {
+        break;
+      } else if (segmentEndTimeUs > startTimeUs) {
+        dataSpecs.add(new DataSpec(UriUtil.resolveToUri(mediaPlaylist.baseUri, segment.url),
+            segment.byterangeOffset, segment.byterangeLength, null));
+      }
+    }
+    return dataSpecs;
+  }
+
+}
@@ -29,6 +29,7 @@ import com.google.android.exoplayer.chunk.ChunkOperationHolder;
 import com.google.android.exoplayer.chunk.Format;
 import com.google.android.exoplayer.upstream.Loader;
 import com.google.android.exoplayer.upstream.Loader.Loadable;
+import com.google.android.exoplayer.upstream.ReadAheadDataSource;
 import com.google.android.exoplayer.util.Assertions;
 import com.google.android.exoplayer.util.MimeTypes;
 
@@ -41,6 +42,13 @@ import java.util.LinkedList;
 
 /**
  * A {@link SampleSource} for HLS streams.
+ * <p>
+ * Segments are loaded one at a time by default. If a {@link ReadAheadDataSource} is provided, then
+ * it must be the {@link com.google.android.exoplayer.upstream.DataSource} through which the
+ * {@link HlsChunkSource} loads segments. Whilst a segment is loading, up to
+ * {@link ReadAheadDataSource#getMaxConcurrentRequests()} of the segments that follow it are then
+ * read ahead concurrently, for as long as the {@link LoadControl} permits this source to load.
+ * Segments are still parsed, and their samples committed, strictly in order.
  */
 public final class HlsSampleSource implements SampleSource, SampleSourceReader, Loader.Callback {
 
@@ -66,6 +74,8 @@ public final class HlsSampleSource implements SampleSource, SampleSourceReader,
   private final int minLoadableRetryCount;
   private final int bufferSizeContribution;
   private final ChunkOperationHolder chunkOperationHolder;
+  private final ReadAheadDataSource readAheadDataSource;
+  private final LinkedList<TsChunk> readAheadTsChunks;
 
   private final int eventSourceId;
   private final LoadControl loadControl;
@@ -102,6 +112,7 @@ public final class HlsSampleSource implements SampleSource, SampleSourceReader,
   private Chunk currentLoadable;
   private TsChunk currentTsLoadable;
   private TsChunk previousTsLoadable;
+  private boolean readAheadSuspended;
 
   private Loader loader;
   private IOException currentLoadableException;
@@ -124,6 +135,29 @@ public final class HlsSampleSource implements SampleSource, SampleSourceReader,
   public HlsSampleSource(HlsChunkSource chunkSource, LoadControl loadControl,
       int bufferSizeContribution, Handler eventHandler, EventListener eventListener,
       int eventSourceId, int minLoadableRetryCount) {
+    this(chunkSource, loadControl, bufferSizeContribution, eventHandler, eventListener,
+        eventSourceId, minLoadableRetryCount, null);
+  }
+
+  /**
+   * @param chunkSource A {@link HlsChunkSource} from which chunks to load are obtained.
+   * @param loadControl Controls when the source is permitted to load data.
+   * @param bufferSizeContribution The contribution of this source to the media buffer, in bytes.
+   * @param eventHandler A handler to use when delivering events to {@code eventListener}. May be
+   *     null if delivery of events is not required.
+   * @param eventListener A listener of events. May be null if delivery of events is not required.
+   * @param eventSourceId An identifier that gets passed to {@code eventListener} methods.
+   * @param minLoadableRetryCount The minimum number of times that the source should retry a load
+   *     before propagating an error.
+   * @param readAheadDataSource The {@link ReadAheadDataSource} through which {@code chunkSource}
+   *     loads media segments, if media segments should be read ahead. May be null, in which case
+   *     segments are loaded one at a time. Read ahead segments are only requested whilst
+   *     {@code loadControl} permits this source to load, and so the control's buffering limits
+   *     still apply.
+   */
+  public HlsSampleSource(HlsChunkSource chunkSource, LoadControl loadControl,
+      int bufferSizeContribution, Handler eventHandler, EventListener eventListener,
+      int eventSourceId, int minLoadableRetryCount, ReadAheadDataSource readAheadDataSource) {
     this.chunkSource = chunkSource;
     this.loadControl = loadControl;
     this.bufferSizeContribution = bufferSizeContribution;
@@ -131,9 +165,11 @@ public final class HlsSampleSource implements SampleSource, SampleSourceReader,
     this.eventHandler = eventHandler;
     this.eventListener = eventListener;
     this.eventSourceId = eventSourceId;
+    this.readAheadDataSource = readAheadDataSource;
     this.pendingResetPositionUs = NO_RESET_PENDING;
     extractors = new LinkedList<>();
     chunkOperationHolder = new ChunkOperationHolder();
+    readAheadTsChunks = new LinkedList<>();
   }
 
   @Override
@@ -406,6 +442,7 @@ public final class HlsSampleSource implements SampleSource, SampleSourceReader,
       }
       loader.release();
       loader = null;
+      chunkSource.release();
     }
   }
 
@@ -444,6 +481,8 @@ public final class HlsSampleSource implements SampleSource, SampleSourceReader,
 
   @Override
   public void onLoadError(Loadable loadable, IOException e) {
+    // The chunk source may choose different segments when loading resumes.
+    clearReadAhead();
     if (chunkSource.onChunkLoadError(currentLoadable, e)) {
       // Error handled by source.
       if (previousTsLoadable == null && !isPendingReset()) {
@@ -661,6 +700,7 @@ public final class HlsSampleSource implements SampleSource, SampleSourceReader,
     }
     extractors.clear();
     clearCurrentLoadable();
+    clearReadAhead();
     previousTsLoadable = null;
   }
 
@@ -690,27 +730,39 @@ public final class HlsSampleSource implements SampleSource, SampleSourceReader,
       return;
     }
 
-    if (loader.isLoading() || !nextLoader || (prepared && enabledTrackCount == 0)) {
+    if (loader.isLoading() && nextLoader && readAheadDataSource != null) {
+      maybeReadAhead();
       return;
     }
 
-    chunkSource.getChunkOperation(previousTsLoadable,
-        pendingResetPositionUs != NO_RESET_PENDING ? pendingResetPositionUs : downstreamPositionUs,
-        chunkOperationHolder);
-    boolean endOfStream = chunkOperationHolder.endOfStream;
-    Chunk nextLoadable = chunkOperationHolder.chunk;
-    chunkOperationHolder.clear();
-
-    if (endOfStream) {
-      loadingFinished = true;
-      loadControl.update(this, downstreamPositionUs, -1, false);
+    if (loader.isLoading() || !nextLoader || (prepared && enabledTrackCount == 0)) {
       return;
     }
-    if (nextLoadable == null) {
-      return;
+
+    Chunk nextLoadable;
+    if (!readAheadTsChunks.isEmpty()) {
+      // The next segment has already been obtained from the chunk source, and is being read ahead.
+      nextLoadable = readAheadTsChunks.removeFirst();
+    } else {
+      chunkSource.getChunkOperation(previousTsLoadable,
+          pendingResetPositionUs != NO_RESET_PENDING ? pendingResetPositionUs
+          : downstreamPositionUs, chunkOperationHolder);
+      boolean endOfStream = chunkOperationHolder.endOfStream;
+      nextLoadable = chunkOperationHolder.chunk;
+      chunkOperationHolder.clear();
+
+      if (endOfStream) {
+        loadingFinished = true;
+        loadControl.update(this, downstreamPositionUs, -1, false);
+        return;
+      }
+      if (nextLoadable == null) {
+        return;
+      }
     }
 
     currentLoadStartTimeMs = now;
+    readAheadSuspended = false;
     currentLoadable = nextLoadable;
     if (isTsChunk(currentLoadable)) {
       TsChunk tsChunk = (TsChunk) currentLoadable;
@@ -732,6 +784,39 @@ public final class HlsSampleSource implements SampleSource, SampleSourceReader,
     loader.startLoading(currentLoadable, this);
   }
 
+  /**
+   * Obtains the segment that follows the last segment being loaded or read ahead, and starts
+   * reading it ahead. Reading ahead is suspended until the next segment starts loading if the
+   * chunk source signals the end of the stream, or returns anything other than a segment.
+   */
+  private void maybeReadAhead() {
+    if (readAheadSuspended || currentTsLoadable == null || (prepared && enabledTrackCount == 0)
+        || readAheadTsChunks.size() >= readAheadDataSource.getMaxConcurrentRequests()) {
+      return;
+    }
+    TsChunk previousTsChunk = readAheadTsChunks.isEmpty() ? currentTsLoadable
+        : readAheadTsChunks.getLast();
+    chunkSource.getChunkOperation(previousTsChunk, downstreamPositionUs, chunkOperationHolder);
+    boolean endOfStream = chunkOperationHolder.endOfStream;
+    Chunk chunk = chunkOperationHolder.chunk;
+    chunkOperationHolder.clear();
+    if (endOfStream || !isTsChunk(chunk)) {
+      readAheadSuspended = true;
+      return;
+    }
+    TsChunk tsChunk = (TsChunk) chunk;
+    readAheadTsChunks.add(tsChunk);
+    readAheadDataSource.readAhead(tsChunk.dataSpec);
+  }
+
+  private void clearReadAhead() {
+    readAheadSuspended = false;
+    if (readAheadDataSource != null) {
+      readAheadTsChunks.clear();
+      readAheadDataSource.cancelReadAhead();
+    }
+  }
+
   /**
    * Gets the next load time, assuming that the next load starts where the previous chunk ended (or
    * from the pending reset time, if there is one).
@@ -739,6 +824,8 @@ public final class HlsSampleSource implements SampleSource, SampleSourceReader,
   private long getNextLoadPositionUs() {
     if (isPendingReset()) {
       return pendingResetPositionUs;
+    } else if (!readAheadTsChunks.isEmpty()) {
+      return readAheadTsChunks.getLast().endTimeUs;
     } else {
       return loadingFinished || (prepared && enabledTrackCount == 0) ? -1
           : currentTsLoadable != null ? currentTsLoadable.endTimeUs : previousTsLoadable.endTimeUs;
@@ -0,0 +1,60 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer.smoothstreaming;
+
+import com.google.android.exoplayer.C;
+import com.google.android.exoplayer.smoothstreaming.SmoothStreamingManifest.StreamElement;
+import com.google.android.exoplayer.upstream.DataSpec;
+import com.google.android.exoplayer.upstream.cache.CachePrefetcher;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Builds {@link CachePrefetcher} requests for SmoothStreaming content.
+ * <p>
+ * The requests match those made by {@link SmoothStreamingChunkSource}, which does not specify
+ * cache keys, and so the prefetched data is cached under the chunk uris.
+ */
+public final class SmoothStreamingPrefetchUtil {
+
+  private SmoothStreamingPrefetchUtil() {}
+
+  /**
+   * Builds requests for the chunks of a track that overlap a window of time.
+   *
+   * @param streamElement The stream element containing the track.
+   * @param trackIndex The index of the track to prefetch within the stream element.
+   * @param startTimeUs The start of the window, in microseconds.
+   * @param endTimeUs The end of the window, in microseconds.
+   * @return The requests.
+   */
+  public static List<DataSpec> getDataSpecs(StreamElement streamElement, int trackIndex,
+      long startTimeUs, long endTimeUs) {
+    List<DataSpec> dataSpecs = new ArrayList<>();
+    if (streamElement.chunkCount == 0 || endTimeUs <= startTimeUs) {
+      return dataSpecs;
+    }
+    int firstChunkIndex = streamElement.getChunkIndex(startTimeUs);
+    int lastChunkIndex = streamElement.getChunkIndex(endTimeUs - 1);
+    for (int chunkIndex = firstChunkIndex; chunkIndex <= lastChunkIndex; chunkIndex++) {
+      dataSpecs.add(new DataSpec(streamElement.buildRequestUri(trackIndex, chunkIndex), 0,
+          C.LENGTH_UNBOUNDED, null));
+    }
+    return dataSpecs;
+  }
+
+}
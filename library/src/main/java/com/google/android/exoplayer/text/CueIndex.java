@@ -0,0 +1,176 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer.text;
+
+import com.google.android.exoplayer.util.Assertions;
+import com.google.android.exoplayer.util.Util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Maps times to the cues of a {@link Subtitle} that should be displayed at them.
+ * <p>
+ * The distinct event times of the subtitle divide the timeline into segments, during each of which
+ * the displayed cues are constant. The segment containing a given time is found using a binary
+ * search, and the cues for each segment are built the first time that they are requested and then
+ * cached, so repeated calls to {@link #getCues(long)} do not allocate.
+ */
+public final class CueIndex {
+
+  /**
+   * Builds the cues that are displayed during a segment.
+   */
+  public interface SegmentCueBuilder {
+
+    /**
+     * Builds the cues that are displayed during a segment. Invoked at most once per segment.
+     *
+     * @param segmentStartTimeUs The start time of the segment in microseconds, or
+     *     {@link Long#MIN_VALUE} for the segment that precedes the first event time.
+     * @param activeCues The indexed cues that are active throughout the segment, in the order in
+     *     which they were passed to the index. Always empty if the index was built from event
+     *     times alone.
+     * @return The cues to display during the segment.
+     */
+    List<Cue> buildCues(long segmentStartTimeUs, List<Cue> activeCues);
+
+  }
+
+  private final long[] eventTimesUs;
+  private final SegmentCueBuilder segmentCueBuilder;
+  private final List<? extends Cue> cues;
+  private final int[] segmentOffsets;
+  private final int[] segmentCueIndices;
+  private final List<List<Cue>> segmentCues; // Cues of each segment, or null if not yet built.
+
+  /**
+   * Builds an index of cues, each of which is active from its start time (inclusive) until its end
+   * time (exclusive).
+   *
+   * @param cues The cues to index.
+   * @param startTimesUs The start time of each cue, in microseconds.
+   * @param endTimesUs The end time of each cue, in microseconds.
+   * @param segmentCueBuilder Builds the cues to display during each segment from the cues that are
+   *     active during it. May be null, in which case the active cues are displayed as they are.
+   */
+  public CueIndex(List<? extends Cue> cues, long[] startTimesUs, long[] endTimesUs,
+      SegmentCueBuilder segmentCueBuilder) {
+    Assertions.checkArgument(startTimesUs.length == cues.size());
+    Assertions.checkArgument(endTimesUs.length == cues.size());
+    this.cues = cues;
+    this.segmentCueBuilder = segmentCueBuilder;
+    int cueCount = cues.size();
+    long[] sortedTimesUs = new long[2 * cueCount];
+    System.arraycopy(startTimesUs, 0, sortedTimesUs, 0, cueCount);
+    System.arraycopy(endTimesUs, 0, sortedTimesUs, cueCount, cueCount);
+    eventTimesUs = getDistinctSortedTimes(sortedTimesUs);
+
+    // Count the cues in each segment, then fill them in cue order.
+    int segmentCount = eventTimesUs.length + 1;
+    segmentOffsets = new int[segmentCount + 1];
+    int[] firstSegments = new int[cueCount];
+    int[] endSegments = new int[cueCount];
+    for (int i = 0; i < cueCount; i++) {
+      firstSegments[i] = Arrays.binarySearch(eventTimesUs, startTimesUs[i]) + 1;
+      endSegments[i] = Arrays.binarySearch(eventTimesUs, endTimesUs[i]) + 1;
+      for (int segment = firstSegments[i]; segment < endSegments[i]; segment++) {
+        segmentOffsets[segment + 1]++;
+      }
+    }
+    for (int segment = 0; segment < segmentCount; segment++) {
+      segmentOffsets[segment + 1] += segmentOffsets[segment];
+    }
+    segmentCueIndices = new int[segmentOffsets[segmentCount]];
+    int[] segmentSizes = new int[segmentCount];
+    for (int i = 0; i < cueCount; i++) {
+      for (int segment = firstSegments[i]; segment < endSegments[i]; segment++) {
+        segmentCueIndices[segmentOffsets[segment] + segmentSizes[segment]++] = i;
+      }
+    }
+    segmentCues = new ArrayList<>(Collections.<List<Cue>>nCopies(segmentCount, null));
+  }
+
+  /**
+   * Builds an index from event times alone. The cues for each segment are built entirely by
+   * {@code segmentCueBuilder}.
+   *
+   * @param eventTimesUs The sorted event times, in microseconds. May contain duplicates.
+   * @param segmentCueBuilder Builds the cues to display during each segment.
+   */
+  public CueIndex(long[] eventTimesUs, SegmentCueBuilder segmentCueBuilder) {
+    this.eventTimesUs = getDistinctSortedTimes(Arrays.copyOf(eventTimesUs, eventTimesUs.length));
+    this.segmentCueBuilder = Assertions.checkNotNull(segmentCueBuilder);
+    cues = Collections.emptyList();
+    int segmentCount = this.eventTimesUs.length + 1;
+    segmentOffsets = new int[segmentCount + 1];
+    segmentCueIndices = new int[0];
+    segmentCues = new ArrayList<>(Collections.<List<Cue>>nCopies(segmentCount, null));
+  }
+
+  /**
+   * Returns the number of segments, which is one more than the number of distinct event times.
+   */
+  public int getSegmentCount() {
+    return segmentCues.size();
+  }
+
+  /**
+   * Retrieves the cues that should be displayed at a given time.
+   *
+   * @param timeUs The time in microseconds.
+   * @return An unmodifiable list of the cues that should be displayed, possibly empty.
+   */
+  public List<Cue> getCues(long timeUs) {
+    int segment = Util.binarySearchFloor(eventTimesUs, timeUs, true, false) + 1;
+    List<Cue> cues = segmentCues.get(segment);
+    if (cues == null) {
+      cues = buildSegmentCues(segment);
+      segmentCues.set(segment, cues);
+    }
+    return cues;
+  }
+
+  private List<Cue> buildSegmentCues(int segment) {
+    int activeCueCount = segmentOffsets[segment + 1] - segmentOffsets[segment];
+    List<Cue> activeCues = new ArrayList<>(activeCueCount);
+    for (int i = segmentOffsets[segment]; i < segmentOffsets[segment + 1]; i++) {
+      activeCues.add(this.cues.get(segmentCueIndices[i]));
+    }
+    List<Cue> cues = activeCues;
+    if (segmentCueBuilder != null) {
+      long segmentStartTimeUs = segment == 0 ? Long.MIN_VALUE : eventTimesUs[segment - 1];
+      cues = segmentCueBuilder.buildCues(segmentStartTimeUs,
+          Collections.unmodifiableList(activeCues));
+    }
+    return cues == null || cues.isEmpty() ? Collections.<Cue>emptyList()
+        : Collections.unmodifiableList(cues);
+  }
+
+  private static long[] getDistinctSortedTimes(long[] timesUs) {
+    Arrays.sort(timesUs);
+    int distinctCount = 0;
+    for (int i = 0; i < timesUs.length; i++) {
+      if (i == 0 || timesUs[i] != timesUs[i - 1]) {
+        timesUs[distinctCount++] = timesUs[i];
+      }
+    }
+    return Arrays.copyOf(timesUs, distinctCount);
+  }
+
+}
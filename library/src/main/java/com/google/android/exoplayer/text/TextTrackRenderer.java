@@ -122,6 +122,7 @@ public final class TextTrackRenderer extends SampleSourceTrackRenderer implement
   private SubtitleParserHelper parserHelper;
   private HandlerThread parserThread;
   private int nextSubtitleEventIndex;
+  private long maxWorkDelayUs;
 
   /**
    * @param source A source from which samples containing subtitle data can be read.
@@ -209,6 +210,7 @@ public final class TextTrackRenderer extends SampleSourceTrackRenderer implement
       }
     }
 
+    maxWorkDelayUs = DEFAULT_MAX_WORK_DELAY_US;
     if (getState() != TrackRenderer.STATE_STARTED) {
       return;
     }
@@ -252,6 +254,21 @@ public final class TextTrackRenderer extends SampleSourceTrackRenderer implement
         inputStreamEnded = true;
       }
     }
+
+    if ((nextSubtitle != null || inputStreamEnded) && !parserHelper.isParsing()) {
+      // Nothing needs to be read or parsed, so there's no work to do until the next event.
+      long nextEventTimeUs = subtitle != null ? getNextEventTime() : Long.MAX_VALUE;
+      if (nextSubtitle != null) {
+        nextEventTimeUs = Math.min(nextEventTimeUs, nextSubtitle.startTimeUs);
+      }
+      maxWorkDelayUs = nextEventTimeUs == Long.MAX_VALUE ? Long.MAX_VALUE
+          : Math.max(0, nextEventTimeUs - positionUs);
+    }
+  }
+
+  @Override
+  protected long getMaxWorkDelayUs() {
+    return maxWorkDelayUs;
   }
 
   @Override
@@ -16,11 +16,13 @@
 package com.google.android.exoplayer.text.subrip;
 
 import com.google.android.exoplayer.text.Cue;
+import com.google.android.exoplayer.text.CueIndex;
 import com.google.android.exoplayer.text.Subtitle;
 import com.google.android.exoplayer.util.Assertions;
 import com.google.android.exoplayer.util.Util;
 
-import java.util.Collections;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 /**
@@ -28,16 +30,30 @@ import java.util.List;
  */
 /* package */ final class SubripSubtitle implements Subtitle {
 
-  private final Cue[] cues;
   private final long[] cueTimesUs;
+  private final CueIndex cueIndex;
 
   /**
    * @param cues The cues in the subtitle. Null entries may be used to represent empty cues.
    * @param cueTimesUs The cue times, in microseconds.
    */
   public SubripSubtitle(Cue[] cues, long[] cueTimesUs) {
-    this.cues = cues;
     this.cueTimesUs = cueTimesUs;
+    // Each cue is displayed until the time that follows it.
+    ArrayList<Cue> indexedCues = new ArrayList<>();
+    long[] startTimesUs = new long[cues.length];
+    long[] endTimesUs = new long[cues.length];
+    for (int i = 0; i < cues.length; i++) {
+      if (cues[i] != null) {
+        startTimesUs[indexedCues.size()] = cueTimesUs[i];
+        endTimesUs[indexedCues.size()] = i + 1 < cueTimesUs.length ? cueTimesUs[i + 1]
+            : Long.MAX_VALUE;
+        indexedCues.add(cues[i]);
+      }
+    }
+    int cueCount = indexedCues.size();
+    cueIndex = new CueIndex(indexedCues, Arrays.copyOf(startTimesUs, cueCount),
+        Arrays.copyOf(endTimesUs, cueCount), null);
   }
 
   @Override
@@ -68,13 +84,7 @@ import java.util.List;
 
   @Override
   public List<Cue> getCues(long timeUs) {
-    int index = Util.binarySearchFloor(cueTimesUs, timeUs, true, false);
-    if (index == -1 || cues[index] == null) {
-      // timeUs is earlier than the start of the first cue, or we have an empty cue.
-      return Collections.<Cue>emptyList();
-    } else {
-      return Collections.singletonList(cues[index]);
-    }
+    return cueIndex.getCues(timeUs);
   }
 
 }
@@ -16,6 +16,7 @@
 package com.google.android.exoplayer.text.ttml;
 
 import com.google.android.exoplayer.text.Cue;
+import com.google.android.exoplayer.text.CueIndex;
 import com.google.android.exoplayer.text.Subtitle;
 import com.google.android.exoplayer.util.Util;
 
@@ -31,12 +32,21 @@ public final class TtmlSubtitle implements Subtitle {
   private final TtmlNode root;
   private final long[] eventTimesUs;
   private final Map<String, TtmlStyle> globalStyles;
+  private final CueIndex cueIndex;
 
   public TtmlSubtitle(TtmlNode root, Map<String, TtmlStyle> globalStyles) {
     this.root = root;
     this.globalStyles = globalStyles != null
         ? Collections.unmodifiableMap(globalStyles) : Collections.<String, TtmlStyle>emptyMap();
     this.eventTimesUs = root.getEventTimesUs();
+    // The text is constant between consecutive event times.
+    cueIndex = new CueIndex(eventTimesUs, new CueIndex.SegmentCueBuilder() {
+      @Override
+      public List<Cue> buildCues(long segmentStartTimeUs, List<Cue> activeCues) {
+        CharSequence cueText = root.getText(segmentStartTimeUs, globalStyles);
+        return cueText == null ? null : Collections.singletonList(new Cue(cueText));
+      }
+    });
   }
 
   @Override
@@ -67,13 +77,7 @@ public final class TtmlSubtitle implements Subtitle {
 
   @Override
   public List<Cue> getCues(long timeUs) {
-    CharSequence cueText = root.getText(timeUs, globalStyles);
-    if (cueText == null) {
-      return Collections.<Cue>emptyList();
-    } else {
-      Cue cue = new Cue(cueText);
-      return Collections.singletonList(cue);
-    }
+    return cueIndex.getCues(timeUs);
   }
 
   /* @VisibleForTesting */
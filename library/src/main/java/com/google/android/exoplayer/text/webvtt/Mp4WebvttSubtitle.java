@@ -16,10 +16,11 @@
 package com.google.android.exoplayer.text.webvtt;
 
 import com.google.android.exoplayer.text.Cue;
+import com.google.android.exoplayer.text.CueIndex;
 import com.google.android.exoplayer.text.Subtitle;
 import com.google.android.exoplayer.util.Assertions;
 
-import java.util.Collections;
+import java.util.Arrays;
 import java.util.List;
 
 /**
@@ -27,10 +28,14 @@ import java.util.List;
  */
 /* package */ final class Mp4WebvttSubtitle implements Subtitle {
 
-  private final List<Cue> cues;
+  private final CueIndex cueIndex;
 
   public Mp4WebvttSubtitle(List<Cue> cueList) {
-    cues = Collections.unmodifiableList(cueList);
+    // All of the cues are displayed from the start of the sample.
+    long[] startTimesUs = new long[cueList.size()];
+    long[] endTimesUs = new long[cueList.size()];
+    Arrays.fill(endTimesUs, Long.MAX_VALUE);
+    cueIndex = new CueIndex(cueList, startTimesUs, endTimesUs, null);
   }
 
   @Override
@@ -56,6 +61,6 @@ import java.util.List;
 
   @Override
   public List<Cue> getCues(long timeUs) {
-    return timeUs >= 0 ? cues : Collections.<Cue>emptyList();
+    return cueIndex.getCues(timeUs);
   }
 }
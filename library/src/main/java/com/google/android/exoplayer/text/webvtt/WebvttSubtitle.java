@@ -16,6 +16,7 @@
 package com.google.android.exoplayer.text.webvtt;
 
 import com.google.android.exoplayer.text.Cue;
+import com.google.android.exoplayer.text.CueIndex;
 import com.google.android.exoplayer.text.Subtitle;
 import com.google.android.exoplayer.util.Assertions;
 import com.google.android.exoplayer.util.Util;
@@ -24,7 +25,6 @@ import android.text.SpannableStringBuilder;
 
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Collections;
 import java.util.List;
 
 /**
@@ -32,26 +32,26 @@ import java.util.List;
  */
 public final class WebvttSubtitle implements Subtitle {
 
-  private final List<WebvttCue> cues;
-  private final int numCues;
-  private final long[] cueTimesUs;
   private final long[] sortedCueTimesUs;
+  private final CueIndex cueIndex;
 
   /**
    * @param cues A list of the cues in this subtitle.
    */
   public WebvttSubtitle(List<WebvttCue> cues) {
-    this.cues = cues;
-    numCues = cues.size();
-    cueTimesUs = new long[2 * numCues];
-    for (int cueIndex = 0; cueIndex < numCues; cueIndex++) {
-      WebvttCue cue = cues.get(cueIndex);
-      int arrayIndex = cueIndex * 2;
-      cueTimesUs[arrayIndex] = cue.startTime;
-      cueTimesUs[arrayIndex + 1] = cue.endTime;
+    int numCues = cues.size();
+    long[] startTimesUs = new long[numCues];
+    long[] endTimesUs = new long[numCues];
+    sortedCueTimesUs = new long[2 * numCues];
+    for (int i = 0; i < numCues; i++) {
+      WebvttCue cue = cues.get(i);
+      startTimesUs[i] = cue.startTime;
+      endTimesUs[i] = cue.endTime;
+      sortedCueTimesUs[i * 2] = cue.startTime;
+      sortedCueTimesUs[i * 2 + 1] = cue.endTime;
     }
-    sortedCueTimesUs = Arrays.copyOf(cueTimesUs, cueTimesUs.length);
     Arrays.sort(sortedCueTimesUs);
+    cueIndex = new CueIndex(cues, startTimesUs, endTimesUs, new NormalCueMerger());
   }
 
   @Override
@@ -82,20 +82,25 @@ public final class WebvttSubtitle implements Subtitle {
 
   @Override
   public List<Cue> getCues(long timeUs) {
-    ArrayList<Cue> list = null;
-    WebvttCue firstNormalCue = null;
-    SpannableStringBuilder normalCueTextBuilder = null;
+    return cueIndex.getCues(timeUs);
+  }
 
-    for (int i = 0; i < numCues; i++) {
-      if ((cueTimesUs[i * 2] <= timeUs) && (timeUs < cueTimesUs[i * 2 + 1])) {
-        if (list == null) {
-          list = new ArrayList<>();
-        }
-        WebvttCue cue = cues.get(i);
+  /**
+   * Merges the active normal cues of each segment into a single cue, to ensure they are drawn
+   * correctly (i.e. don't overlap) and to emulate roll-up.
+   */
+  private static final class NormalCueMerger implements CueIndex.SegmentCueBuilder {
+
+    @Override
+    public List<Cue> buildCues(long segmentStartTimeUs, List<Cue> activeCues) {
+      ArrayList<Cue> list = new ArrayList<>();
+      WebvttCue firstNormalCue = null;
+      SpannableStringBuilder normalCueTextBuilder = null;
+      for (int i = 0; i < activeCues.size(); i++) {
+        WebvttCue cue = (WebvttCue) activeCues.get(i);
         if (cue.isNormalCue()) {
-          // we want to merge all of the normal cues into a single cue to ensure they are drawn
-          // correctly (i.e. don't overlap) and to emulate roll-up, but only if there are multiple
-          // normal cues, otherwise we can just append the single normal cue
+          // Only merge if there are multiple normal cues, otherwise we can just append the single
+          // normal cue.
           if (firstNormalCue == null) {
             firstNormalCue = cue;
           } else if (normalCueTextBuilder == null) {
@@ -108,20 +113,16 @@ public final class WebvttSubtitle implements Subtitle {
           list.add(cue);
         }
       }
-    }
-    if (normalCueTextBuilder != null) {
-      // there were multiple normal cues, so create a new cue with all of the text
-      list.add(new WebvttCue(normalCueTextBuilder));
-    } else if (firstNormalCue != null) {
-      // there was only a single normal cue, so just add it to the list
-      list.add(firstNormalCue);
-    }
-
-    if (list != null) {
+      if (normalCueTextBuilder != null) {
+        // there were multiple normal cues, so create a new cue with all of the text
+        list.add(new WebvttCue(normalCueTextBuilder));
+      } else if (firstNormalCue != null) {
+        // there was only a single normal cue, so just add it to the list
+        list.add(firstNormalCue);
+      }
       return list;
-    } else {
-      return Collections.<Cue>emptyList();
     }
+
   }
 
 }
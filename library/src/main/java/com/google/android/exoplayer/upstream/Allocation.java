@@ -15,8 +15,10 @@
  */
 package com.google.android.exoplayer.upstream;
 
+import java.nio.ByteBuffer;
+
 /**
- * An allocation within a byte array.
+ * An allocation within a byte array, or within a direct {@link ByteBuffer}.
  * <p>
  * The allocation's length is obtained by calling {@link Allocator#getIndividualAllocationLength()}
  * on the {@link Allocator} from which it was obtained.
@@ -24,13 +26,25 @@ package com.google.android.exoplayer.upstream;
 public final class Allocation {
 
   /**
-   * The array containing the allocated space. The allocated space may not be at the start of the
-   * array, and so {@link #translateOffset(int)} method must be used when indexing into it.
+   * The array containing the allocated space, or null if the allocation is backed by
+   * {@link #buffer}. The allocated space may not be at the start of the array, and so
+   * {@link #translateOffset(int)} method must be used when indexing into it.
    */
   public final byte[] data;
 
+  /**
+   * A direct buffer whose content is the allocated space, or null if the allocation is backed by
+   * {@link #data}. The buffer's position and limit must not be modified. Callers should instead
+   * operate on a {@link ByteBuffer#duplicate()}, or on the views returned by
+   * {@link #getReadBuffer()} and {@link #getWriteBuffer()}.
+   */
+  public final ByteBuffer buffer;
+
   private final int offset;
 
+  private ByteBuffer readBuffer;
+  private ByteBuffer writeBuffer;
+
   /**
    * @param data The array containing the allocated space.
    * @param offset The offset of the allocated space within the array.
@@ -38,6 +52,55 @@ public final class Allocation {
   public Allocation(byte[] data, int offset) {
     this.data = data;
     this.offset = offset;
+    this.buffer = null;
+  }
+
+  /**
+   * @param buffer A direct buffer whose content is the allocated space.
+   */
+  public Allocation(ByteBuffer buffer) {
+    this.buffer = buffer;
+    this.data = null;
+    this.offset = 0;
+  }
+
+  /**
+   * Returns whether the allocation is backed by {@link #buffer} rather than {@link #data}.
+   */
+  public boolean isDirect() {
+    return buffer != null;
+  }
+
+  /**
+   * Returns a view of {@link #buffer} for use by the thread reading from the allocation. The same
+   * view is returned by every call, so that reading from a recycled allocation does not allocate.
+   * Its position and limit may be modified freely, but must be set before each use.
+   * <p>
+   * Must only be called on direct allocations, and by at most one reader at a time.
+   *
+   * @return A view of {@link #buffer}.
+   */
+  public ByteBuffer getReadBuffer() {
+    if (readBuffer == null) {
+      readBuffer = buffer.duplicate();
+    }
+    return readBuffer;
+  }
+
+  /**
+   * Returns a view of {@link #buffer} for use by the thread writing to the allocation. The same
+   * view is returned by every call, so that writing to a recycled allocation does not allocate.
+   * Its position and limit may be modified freely, but must be set before each use.
+   * <p>
+   * Must only be called on direct allocations, and by at most one writer at a time.
+   *
+   * @return A view of {@link #buffer}.
+   */
+  public ByteBuffer getWriteBuffer() {
+    if (writeBuffer == null) {
+      writeBuffer = buffer.duplicate();
+    }
+    return writeBuffer;
   }
 
   /**
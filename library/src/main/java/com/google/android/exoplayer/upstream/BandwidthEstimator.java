@@ -0,0 +1,242 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer.upstream;
+
+import com.google.android.exoplayer.util.Assertions;
+import com.google.android.exoplayer.util.SlidingPercentile;
+
+/**
+ * Derives a bandwidth estimate from throughput samples, each of which describes a single completed
+ * transfer.
+ * <p>
+ * Implementations need not be thread safe. {@link DefaultBandwidthMeter} only invokes an estimator
+ * whilst holding its own lock.
+ */
+public interface BandwidthEstimator {
+
+  /**
+   * Adds a throughput sample.
+   *
+   * @param bytes The number of bytes transferred.
+   * @param elapsedMs The time taken to transfer the bytes, in milliseconds. Always greater than 0.
+   */
+  void addSample(long bytes, long elapsedMs);
+
+  /**
+   * Gets the estimated bandwidth, in bits/sec.
+   *
+   * @return Estimated bandwidth in bits/sec, or {@link BandwidthMeter#NO_ESTIMATE} if no estimate
+   *     is available.
+   */
+  long getBitrateEstimate();
+
+  /**
+   * Gets the confidence in the current estimate, as a value in the range [0, 1]. The confidence is
+   * 0 if no estimate is available, and increases towards 1 as the samples that the estimator
+   * considers are accumulated.
+   *
+   * @return The confidence in the current estimate.
+   */
+  float getConfidence();
+
+  /**
+   * Estimates the bandwidth as a percentile of recent samples, each weighted by the square root of
+   * its size in bytes.
+   */
+  public static final class PercentileEstimator implements BandwidthEstimator {
+
+    public static final int DEFAULT_MAX_WEIGHT = 2000;
+    public static final float DEFAULT_PERCENTILE = 0.5f;
+
+    private final SlidingPercentile slidingPercentile;
+    private final int maxWeight;
+    private final float percentile;
+
+    private long bitrateEstimate;
+    private int totalWeight;
+
+    public PercentileEstimator() {
+      this(DEFAULT_MAX_WEIGHT, DEFAULT_PERCENTILE);
+    }
+
+    /**
+     * @param maxWeight The maximum total weight of the samples considered. Once exceeded, the
+     *     oldest samples are discarded.
+     * @param percentile The percentile to estimate, expressed as a fraction in the range (0, 1].
+     */
+    public PercentileEstimator(int maxWeight, float percentile) {
+      Assertions.checkArgument(percentile > 0 && percentile <= 1);
+      this.slidingPercentile = new SlidingPercentile(maxWeight);
+      this.maxWeight = maxWeight;
+      this.percentile = percentile;
+      bitrateEstimate = BandwidthMeter.NO_ESTIMATE;
+    }
+
+    @Override
+    public void addSample(long bytes, long elapsedMs) {
+      int weight = (int) Math.sqrt(bytes);
+      float bitsPerSecond = (bytes * 8000) / elapsedMs;
+      slidingPercentile.addSample(weight, bitsPerSecond);
+      totalWeight = Math.min(totalWeight + weight, maxWeight);
+      float bandwidthEstimateFloat = slidingPercentile.getPercentile(percentile);
+      bitrateEstimate = Float.isNaN(bandwidthEstimateFloat) ? BandwidthMeter.NO_ESTIMATE
+          : (long) bandwidthEstimateFloat;
+    }
+
+    @Override
+    public long getBitrateEstimate() {
+      return bitrateEstimate;
+    }
+
+    @Override
+    public float getConfidence() {
+      return bitrateEstimate == BandwidthMeter.NO_ESTIMATE ? 0 : (float) totalWeight / maxWeight;
+    }
+
+  }
+
+  /**
+   * Estimates the bandwidth as the lesser of two exponentially weighted moving averages, each
+   * weighting samples by the time taken to transfer them.
+   * <p>
+   * The average with the shorter half-life follows sudden drops in bandwidth quickly, whilst the
+   * average with the longer half-life prevents brief increases from being reflected in the
+   * estimate.
+   */
+  public static final class EwmaEstimator implements BandwidthEstimator {
+
+    public static final int DEFAULT_FAST_HALF_LIFE_MS = 2000;
+    public static final int DEFAULT_SLOW_HALF_LIFE_MS = 5000;
+
+    private final double fastHalfLifeMs;
+    private final double slowHalfLifeMs;
+
+    private double fastEstimate;
+    private double slowEstimate;
+    private long totalElapsedMs;
+
+    public EwmaEstimator() {
+      this(DEFAULT_FAST_HALF_LIFE_MS, DEFAULT_SLOW_HALF_LIFE_MS);
+    }
+
+    /**
+     * @param fastHalfLifeMs The half-life of the fast moving average, in milliseconds of transfer.
+     * @param slowHalfLifeMs The half-life of the slow moving average, in milliseconds of transfer.
+     */
+    public EwmaEstimator(int fastHalfLifeMs, int slowHalfLifeMs) {
+      Assertions.checkArgument(fastHalfLifeMs > 0 && fastHalfLifeMs <= slowHalfLifeMs);
+      this.fastHalfLifeMs = fastHalfLifeMs;
+      this.slowHalfLifeMs = slowHalfLifeMs;
+    }
+
+    @Override
+    public void addSample(long bytes, long elapsedMs) {
+      double bitsPerSecond = (bytes * 8000d) / elapsedMs;
+      fastEstimate = addSample(fastEstimate, fastHalfLifeMs, bitsPerSecond, elapsedMs);
+      slowEstimate = addSample(slowEstimate, slowHalfLifeMs, bitsPerSecond, elapsedMs);
+      totalElapsedMs += elapsedMs;
+    }
+
+    @Override
+    public long getBitrateEstimate() {
+      if (totalElapsedMs == 0) {
+        return BandwidthMeter.NO_ESTIMATE;
+      }
+      return Math.round(Math.min(getUnbiasedEstimate(fastEstimate, fastHalfLifeMs),
+          getUnbiasedEstimate(slowEstimate, slowHalfLifeMs)));
+    }
+
+    @Override
+    public float getConfidence() {
+      return (float) getTotalWeight(slowHalfLifeMs);
+    }
+
+    private static double addSample(double estimate, double halfLifeMs, double value,
+        long elapsedMs) {
+      double alpha = Math.pow(0.5, elapsedMs / halfLifeMs);
+      return alpha * estimate + (1 - alpha) * value;
+    }
+
+    private double getUnbiasedEstimate(double estimate, double halfLifeMs) {
+      // Both averages start from zero, so until enough samples have been added the averages are
+      // biased towards zero. Dividing by the total weight of the samples removes the bias.
+      return estimate / getTotalWeight(halfLifeMs);
+    }
+
+    private double getTotalWeight(double halfLifeMs) {
+      return 1 - Math.pow(0.5, totalElapsedMs / halfLifeMs);
+    }
+
+  }
+
+  /**
+   * Estimates the bandwidth as the harmonic mean of the throughput of recent samples.
+   * <p>
+   * The harmonic mean is dominated by the smallest samples, and so is robust to the occasional
+   * sample whose throughput is much higher than that of the others.
+   */
+  public static final class HarmonicMeanEstimator implements BandwidthEstimator {
+
+    public static final int DEFAULT_WINDOW_SIZE = 5;
+
+    private final double[] samples;
+
+    private int sampleCount;
+    private int nextSampleIndex;
+
+    public HarmonicMeanEstimator() {
+      this(DEFAULT_WINDOW_SIZE);
+    }
+
+    /**
+     * @param windowSize The number of most recent samples considered.
+     */
+    public HarmonicMeanEstimator(int windowSize) {
+      Assertions.checkArgument(windowSize > 0);
+      samples = new double[windowSize];
+    }
+
+    @Override
+    public void addSample(long bytes, long elapsedMs) {
+      if (bytes == 0) {
+        // The harmonic mean is undefined if any sample is zero.
+        return;
+      }
+      samples[nextSampleIndex] = (bytes * 8000d) / elapsedMs;
+      nextSampleIndex = (nextSampleIndex + 1) % samples.length;
+      sampleCount = Math.min(sampleCount + 1, samples.length);
+    }
+
+    @Override
+    public long getBitrateEstimate() {
+      if (sampleCount == 0) {
+        return BandwidthMeter.NO_ESTIMATE;
+      }
+      double reciprocalSum = 0;
+      for (int i = 0; i < sampleCount; i++) {
+        reciprocalSum += 1 / samples[i];
+      }
+      return Math.round(sampleCount / reciprocalSum);
+    }
+
+    @Override
+    public float getConfidence() {
+      return (float) sampleCount / samples.length;
+    }
+
+  }
+
+}
@@ -0,0 +1,391 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer.upstream;
+
+import com.google.android.exoplayer.C;
+import com.google.android.exoplayer.upstream.JitterBuffer.Packet;
+import com.google.android.exoplayer.upstream.UdpDataSource.UdpDataSourceException;
+import com.google.android.exoplayer.util.Clock;
+import com.google.android.exoplayer.util.SystemClock;
+
+import android.net.Uri;
+import android.os.Handler;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.MulticastSocket;
+
+/**
+ * A UDP {@link DataSource} for high bitrate unicast and multicast streams, such as MPEG TS over
+ * UDP or RTP.
+ * <p>
+ * Unlike {@link UdpDataSource}, datagrams are received on a dedicated thread into a ring of
+ * preallocated buffers, so that bursts of datagrams are drained from the socket whilst the loading
+ * thread is busy extracting samples. If the stream is carried over RTP then the RTP headers are
+ * removed, and datagrams are put back in order by a jitter buffer, which waits for up to a
+ * configurable delay for missing datagrams. The numbers of lost, reordered and discarded
+ * datagrams are reported to an optional {@link EventListener}.
+ * <p>
+ * The URI of the stream is either of the form {@code host:port}, as for {@link UdpDataSource}, or
+ * a URI with a host and port such as {@code udp://239.0.0.1:1234} or {@code rtp://239.0.0.1:1234}.
+ */
+public final class BufferedUdpDataSource implements UriDataSource {
+
+  /**
+   * Interface definition for a callback to be notified of {@link BufferedUdpDataSource} events.
+   */
+  public interface EventListener {
+
+    /**
+     * Invoked periodically whilst the source is read, and when it is closed.
+     *
+     * @param receivedPacketCount The number of datagrams buffered since the source was opened.
+     * @param lostPacketCount The number of RTP datagrams that were not received in time.
+     * @param reorderedPacketCount The number of RTP datagrams that were received out of order.
+     * @param discardedPacketCount The number of datagrams that were discarded because they were
+     *     malformed, duplicated or late, or because the buffer was full.
+     */
+    void onPacketCountsUpdated(long receivedPacketCount, long lostPacketCount,
+        long reorderedPacketCount, long discardedPacketCount);
+
+  }
+
+  /**
+   * The default maximum datagram size, in bytes.
+   */
+  public static final int DEFAULT_MAX_PACKET_SIZE = UdpDataSource.DEFAULT_MAX_PACKET_SIZE;
+
+  /**
+   * The default number of datagrams that can be buffered. At 20Mbps, with seven TS packets per
+   * datagram, this is around half a second of data.
+   */
+  public static final int DEFAULT_BUFFER_PACKET_COUNT = 1024;
+
+  /**
+   * The default maximum time for which the reader waits for a missing RTP datagram.
+   */
+  public static final long DEFAULT_JITTER_DELAY_MS = 100;
+
+  /**
+   * The size of the socket receive buffer requested from the operating system, in bytes.
+   */
+  public static final int SOCKET_RECEIVE_BUFFER_SIZE = 1024 * 1024;
+
+  private static final long PACKET_COUNTS_UPDATE_INTERVAL_MS = 1000;
+
+  private final TransferListener listener;
+  private final Handler eventHandler;
+  private final EventListener eventListener;
+  private final Clock clock;
+  private final JitterBuffer jitterBuffer;
+  private final DatagramPacket datagram;
+
+  private DataSpec dataSpec;
+  private DatagramSocket socket;
+  private MulticastSocket multicastSocket;
+  private InetAddress address;
+  private Thread receiveThread;
+  private Packet receivePacket;
+  private volatile boolean receiveCanceled;
+  private volatile IOException receiveException;
+  private boolean opened;
+
+  private Packet readPacket;
+  private int readPacketPosition;
+  private int readPacketRemaining;
+  private long lastPacketCountsUpdateTimeMs;
+
+  /**
+   * @param listener An optional listener.
+   */
+  public BufferedUdpDataSource(TransferListener listener) {
+    this(listener, null, null);
+  }
+
+  /**
+   * @param listener An optional listener.
+   * @param eventHandler A handler for events. May be null if delivery of events is not required.
+   * @param eventListener A listener of events. May be null if delivery of events is not required.
+   */
+  public BufferedUdpDataSource(TransferListener listener, Handler eventHandler,
+      EventListener eventListener) {
+    this(listener, eventHandler, eventListener, DEFAULT_MAX_PACKET_SIZE,
+        DEFAULT_BUFFER_PACKET_COUNT, DEFAULT_JITTER_DELAY_MS);
+  }
+
+  /**
+   * @param listener An optional listener.
+   * @param eventHandler A handler for events. May be null if delivery of events is not required.
+   * @param eventListener A listener of events. May be null if delivery of events is not required.
+   * @param maxPacketSize The maximum datagram size, in bytes.
+   * @param bufferPacketCount The number of datagrams that can be buffered. Must be a power of two.
+   * @param jitterDelayMs The maximum time for which the reader waits for a missing RTP datagram.
+   */
+  public BufferedUdpDataSource(TransferListener listener, Handler eventHandler,
+      EventListener eventListener, int maxPacketSize, int bufferPacketCount, long jitterDelayMs) {
+    this(listener, eventHandler, eventListener, maxPacketSize, bufferPacketCount, jitterDelayMs,
+        new SystemClock());
+  }
+
+  /**
+   * @param listener An optional listener.
+   * @param eventHandler A handler for events. May be null if delivery of events is not required.
+   * @param eventListener A listener of events. May be null if delivery of events is not required.
+   * @param maxPacketSize The maximum datagram size, in bytes.
+   * @param bufferPacketCount The number of datagrams that can be buffered. Must be a power of two.
+   * @param jitterDelayMs The maximum time for which the reader waits for a missing RTP datagram.
+   * @param clock The {@link Clock} used to measure the jitter delay and the interval between
+   *     events.
+   */
+  public BufferedUdpDataSource(TransferListener listener, Handler eventHandler,
+      EventListener eventListener, int maxPacketSize, int bufferPacketCount, long jitterDelayMs,
+      Clock clock) {
+    this.listener = listener;
+    this.eventHandler = eventHandler;
+    this.eventListener = eventListener;
+    this.clock = clock;
+    jitterBuffer = new JitterBuffer(bufferPacketCount, maxPacketSize, jitterDelayMs, clock);
+    receivePacket = new Packet(maxPacketSize);
+    readPacket = new Packet(maxPacketSize);
+    datagram = new DatagramPacket(receivePacket.data, maxPacketSize);
+  }
+
+  @Override
+  public long open(DataSpec dataSpec) throws UdpDataSourceException {
+    this.dataSpec = dataSpec;
+    Uri uri = dataSpec.uri;
+    String host;
+    int port;
+    if (uri.getHost() != null && uri.getPort() != -1) {
+      host = uri.getHost();
+      port = uri.getPort();
+    } else {
+      String uriString = uri.toString();
+      host = uriString.substring(0, uriString.indexOf(':'));
+      port = Integer.parseInt(uriString.substring(uriString.indexOf(':') + 1));
+    }
+
+    try {
+      address = InetAddress.getByName(host);
+      InetSocketAddress socketAddress = new InetSocketAddress(address, port);
+      if (address.isMulticastAddress()) {
+        multicastSocket = new MulticastSocket(socketAddress);
+        multicastSocket.joinGroup(address);
+        socket = multicastSocket;
+      } else {
+        socket = new DatagramSocket(socketAddress);
+      }
+      socket.setReceiveBufferSize(SOCKET_RECEIVE_BUFFER_SIZE);
+    } catch (IOException e) {
+      closeSocket();
+      throw new UdpDataSourceException(e);
+    }
+
+    jitterBuffer.reset();
+    receiveCanceled = false;
+    receiveException = null;
+    receiveThread = new Thread(new ReceiveRunnable(socket), "BufferedUdpDataSource:Receive");
+    receiveThread.setPriority(Thread.MAX_PRIORITY);
+    receiveThread.start();
+
+    opened = true;
+    lastPacketCountsUpdateTimeMs = clock.elapsedRealtime();
+    if (listener != null) {
+      listener.onTransferStart();
+    }
+    return C.LENGTH_UNBOUNDED;
+  }
+
+  @Override
+  public int read(byte[] buffer, int offset, int readLength) throws IOException {
+    if (readLength == 0) {
+      return 0;
+    }
+    while (readPacketRemaining == 0) {
+      maybeNotifyPacketCountsUpdated();
+      Packet packet;
+      try {
+        packet = jitterBuffer.take(readPacket);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new InterruptedIOException();
+      }
+      if (packet == null) {
+        // The receive thread has stopped.
+        if (receiveException != null) {
+          throw new UdpDataSourceException(receiveException);
+        }
+        return C.RESULT_END_OF_INPUT;
+      }
+      readPacket = packet;
+      readPacketPosition = packet.payloadOffset;
+      readPacketRemaining = packet.payloadLength;
+      if (listener != null) {
+        listener.onBytesTransferred(readPacketRemaining);
+      }
+    }
+
+    int bytesToRead = Math.min(readPacketRemaining, readLength);
+    System.arraycopy(readPacket.data, readPacketPosition, buffer, offset, bytesToRead);
+    readPacketPosition += bytesToRead;
+    readPacketRemaining -= bytesToRead;
+    return bytesToRead;
+  }
+
+  @Override
+  public void close() {
+    receiveCanceled = true;
+    jitterBuffer.release();
+    closeSocket();
+    if (receiveThread != null) {
+      boolean interrupted = false;
+      while (receiveThread.isAlive()) {
+        try {
+          receiveThread.join();
+        } catch (InterruptedException e) {
+          interrupted = true;
+        }
+      }
+      if (interrupted) {
+        Thread.currentThread().interrupt();
+      }
+      receiveThread = null;
+    }
+    readPacketRemaining = 0;
+    if (opened) {
+      opened = false;
+      notifyPacketCountsUpdated();
+      if (listener != null) {
+        listener.onTransferEnd();
+      }
+    }
+  }
+
+  @Override
+  public String getUri() {
+    return dataSpec == null ? null : dataSpec.uri.toString();
+  }
+
+  /**
+   * Returns the number of datagrams buffered since the source was opened.
+   */
+  public long getReceivedPacketCount() {
+    return jitterBuffer.getReceivedPacketCount();
+  }
+
+  /**
+   * Returns the number of RTP datagrams that were not received in time since the source was opened.
+   */
+  public long getLostPacketCount() {
+    return jitterBuffer.getLostPacketCount();
+  }
+
+  /**
+   * Returns the number of RTP datagrams that were received out of order since the source was
+   * opened.
+   */
+  public long getReorderedPacketCount() {
+    return jitterBuffer.getReorderedPacketCount();
+  }
+
+  /**
+   * Returns the number of datagrams that were discarded since the source was opened.
+   */
+  public long getDiscardedPacketCount() {
+    return jitterBuffer.getDiscardedPacketCount();
+  }
+
+  private void closeSocket() {
+    if (multicastSocket != null) {
+      try {
+        multicastSocket.leaveGroup(address);
+      } catch (IOException e) {
+        // Do nothing.
+      }
+      multicastSocket = null;
+    }
+    if (socket != null) {
+      socket.close();
+      socket = null;
+    }
+    address = null;
+  }
+
+  private void maybeNotifyPacketCountsUpdated() {
+    long nowMs = clock.elapsedRealtime();
+    if (nowMs - lastPacketCountsUpdateTimeMs >= PACKET_COUNTS_UPDATE_INTERVAL_MS) {
+      lastPacketCountsUpdateTimeMs = nowMs;
+      notifyPacketCountsUpdated();
+    }
+  }
+
+  private void notifyPacketCountsUpdated() {
+    if (eventHandler != null && eventListener != null) {
+      final long receivedPacketCount = jitterBuffer.getReceivedPacketCount();
+      final long lostPacketCount = jitterBuffer.getLostPacketCount();
+      final long reorderedPacketCount = jitterBuffer.getReorderedPacketCount();
+      final long discardedPacketCount = jitterBuffer.getDiscardedPacketCount();
+      eventHandler.post(new Runnable() {
+        @Override
+        public void run() {
+          eventListener.onPacketCountsUpdated(receivedPacketCount, lostPacketCount,
+              reorderedPacketCount, discardedPacketCount);
+        }
+      });
+    }
+  }
+
+  /**
+   * Receives datagrams into the jitter buffer until the socket is closed.
+   */
+  private final class ReceiveRunnable implements Runnable {
+
+    private final DatagramSocket socket;
+
+    public ReceiveRunnable(DatagramSocket socket) {
+      this.socket = socket;
+    }
+
+    @Override
+    public void run() {
+      Packet packet = receivePacket;
+      datagram.setData(packet.data);
+      try {
+        while (true) {
+          socket.receive(datagram);
+          packet.length = datagram.getLength();
+          packet = jitterBuffer.offer(packet);
+          datagram.setData(packet.data);
+        }
+      } catch (IOException e) {
+        if (!receiveCanceled) {
+          receiveException = e;
+        }
+      } finally {
+        jitterBuffer.release();
+        // The buffer holds every other packet, so the receive thread of the next session must start
+        // from this one.
+        receivePacket = packet;
+      }
+    }
+
+  }
+
+}
@@ -22,23 +22,40 @@ import com.google.android.exoplayer.util.SystemClock;
 
 import android.os.Handler;
 
+import java.util.WeakHashMap;
+
 /**
- * Counts transferred bytes while transfers are open and creates a bandwidth sample and updated
- * bandwidth estimate each time a transfer ends.
+ * Tracks each open transfer separately, and passes a throughput sample to a
+ * {@link BandwidthEstimator} each time a transfer ends.
+ * <p>
+ * Transfers are told apart by the thread on which their {@link TransferListener} callbacks are
+ * invoked. Data sources are always read on a single thread between being opened and closed, so
+ * transfers running in parallel on different loaders yield separate samples.
+ * <p>
+ * The time between the request for each transfer and the arrival of its first bytes is also
+ * tracked, and the median of recent times is reported by {@link #getTimeToFirstByteEstimateMs()}.
+ * A transfer is requested when {@link #onTransferRequest()} is invoked by a data source that
+ * connects to a remote server, or else when it starts.
+ * <p>
+ * The state of each thread is held weakly, so that it is released if the thread dies part way
+ * through a transfer.
  */
-public final class DefaultBandwidthMeter implements BandwidthMeter {
+public final class DefaultBandwidthMeter implements ExtendedBandwidthMeter,
+    TransferRequestListener {
 
   public static final int DEFAULT_MAX_WEIGHT = 2000;
 
+  private static final int TIME_TO_FIRST_BYTE_SAMPLE_COUNT = 10;
+
   private final Handler eventHandler;
   private final EventListener eventListener;
   private final Clock clock;
-  private final SlidingPercentile slidingPercentile;
+  private final BandwidthEstimator bandwidthEstimator;
+  private final SlidingPercentile timeToFirstByteSamples;
+  private final WeakHashMap<Thread, Transfer> transfers;
+  private final WeakHashMap<Thread, Long> requestTimesMs;
 
-  private long bytesAccumulator;
-  private long startTimeMs;
-  private long bitrateEstimate;
-  private int streamCount;
+  private long timeToFirstByteEstimateMs;
 
   public DefaultBandwidthMeter() {
     this(null, null);
@@ -58,49 +75,98 @@ public final class DefaultBandwidthMeter implements BandwidthMeter {
 
   public DefaultBandwidthMeter(Handler eventHandler, EventListener eventListener, Clock clock,
       int maxWeight) {
+    this(eventHandler, eventListener, clock, new BandwidthEstimator.PercentileEstimator(maxWeight,
+        BandwidthEstimator.PercentileEstimator.DEFAULT_PERCENTILE));
+  }
+
+  public DefaultBandwidthMeter(Handler eventHandler, EventListener eventListener,
+      BandwidthEstimator bandwidthEstimator) {
+    this(eventHandler, eventListener, new SystemClock(), bandwidthEstimator);
+  }
+
+  public DefaultBandwidthMeter(Handler eventHandler, EventListener eventListener, Clock clock,
+      BandwidthEstimator bandwidthEstimator) {
     this.eventHandler = eventHandler;
     this.eventListener = eventListener;
     this.clock = clock;
-    this.slidingPercentile = new SlidingPercentile(maxWeight);
-    bitrateEstimate = NO_ESTIMATE;
+    this.bandwidthEstimator = bandwidthEstimator;
+    this.timeToFirstByteSamples = new SlidingPercentile(TIME_TO_FIRST_BYTE_SAMPLE_COUNT);
+    this.transfers = new WeakHashMap<>();
+    this.requestTimesMs = new WeakHashMap<>();
+    timeToFirstByteEstimateMs = NO_ESTIMATE;
   }
 
   @Override
   public synchronized long getBitrateEstimate() {
-    return bitrateEstimate;
+    return bandwidthEstimator.getBitrateEstimate();
+  }
+
+  @Override
+  public synchronized float getConfidence() {
+    return bandwidthEstimator.getConfidence();
+  }
+
+  @Override
+  public synchronized long getTimeToFirstByteEstimateMs() {
+    return timeToFirstByteEstimateMs;
+  }
+
+  @Override
+  public synchronized void onTransferRequest() {
+    Thread thread = Thread.currentThread();
+    if (!transfers.containsKey(thread)) {
+      // Requests made whilst a transfer is open on the same thread are counted as part of it.
+      requestTimesMs.put(thread, clock.elapsedRealtime());
+    }
+  }
+
+  @Override
+  public synchronized void onTransferRequestFailed() {
+    requestTimesMs.remove(Thread.currentThread());
   }
 
   @Override
   public synchronized void onTransferStart() {
-    if (streamCount == 0) {
-      startTimeMs = clock.elapsedRealtime();
+    Thread thread = Thread.currentThread();
+    Transfer transfer = transfers.get(thread);
+    if (transfer == null) {
+      long nowMs = clock.elapsedRealtime();
+      Long requestTimeMs = requestTimesMs.remove(thread);
+      transfers.put(thread, new Transfer(requestTimeMs != null ? requestTimeMs : nowMs, nowMs));
+    } else {
+      // A transfer opened whilst another is open on the same thread, for example by a data source
+      // that reads from two upstream sources in turn. Count both as one.
+      transfer.nestingDepth++;
     }
-    streamCount++;
   }
 
   @Override
   public synchronized void onBytesTransferred(int bytes) {
-    bytesAccumulator += bytes;
+    Transfer transfer = transfers.get(Thread.currentThread());
+    Assertions.checkState(transfer != null);
+    if (transfer.bytes == 0 && bytes > 0) {
+      long timeToFirstByteMs = clock.elapsedRealtime() - transfer.requestTimeMs;
+      timeToFirstByteSamples.addSample(1, timeToFirstByteMs);
+      timeToFirstByteEstimateMs = (long) timeToFirstByteSamples.getPercentile(0.5f);
+    }
+    transfer.bytes += bytes;
   }
 
   @Override
   public synchronized void onTransferEnd() {
-    Assertions.checkState(streamCount > 0);
-    long nowMs = clock.elapsedRealtime();
-    int elapsedMs = (int) (nowMs - startTimeMs);
-    if (elapsedMs > 0) {
-      float bitsPerSecond = (bytesAccumulator * 8000) / elapsedMs;
-      slidingPercentile.addSample((int) Math.sqrt(bytesAccumulator), bitsPerSecond);
-      float bandwidthEstimateFloat = slidingPercentile.getPercentile(0.5f);
-      bitrateEstimate = Float.isNaN(bandwidthEstimateFloat) ? NO_ESTIMATE
-          : (long) bandwidthEstimateFloat;
-      notifyBandwidthSample(elapsedMs, bytesAccumulator, bitrateEstimate);
+    Thread thread = Thread.currentThread();
+    Transfer transfer = transfers.get(thread);
+    Assertions.checkState(transfer != null);
+    if (transfer.nestingDepth > 0) {
+      transfer.nestingDepth--;
+      return;
     }
-    streamCount--;
-    if (streamCount > 0) {
-      startTimeMs = nowMs;
+    transfers.remove(thread);
+    int elapsedMs = (int) (clock.elapsedRealtime() - transfer.startTimeMs);
+    if (elapsedMs > 0) {
+      bandwidthEstimator.addSample(transfer.bytes, elapsedMs);
+      notifyBandwidthSample(elapsedMs, transfer.bytes, bandwidthEstimator.getBitrateEstimate());
     }
-    bytesAccumulator = 0;
   }
 
   private void notifyBandwidthSample(final int elapsedMs, final long bytes, final long bitrate) {
@@ -114,4 +180,19 @@ public final class DefaultBandwidthMeter implements BandwidthMeter {
     }
   }
 
+  private static final class Transfer {
+
+    public final long requestTimeMs;
+    public final long startTimeMs;
+
+    public long bytes;
+    public int nestingDepth;
+
+    public Transfer(long requestTimeMs, long startTimeMs) {
+      this.requestTimeMs = requestTimeMs;
+      this.startTimeMs = startTimeMs;
+    }
+
+  }
+
 }
@@ -184,6 +184,21 @@ public class DefaultHttpDataSource implements HttpDataSource {
 
   @Override
   public long open(DataSpec dataSpec) throws HttpDataSourceException {
+    if (!(listener instanceof TransferRequestListener)) {
+      return openInternal(dataSpec);
+    }
+    TransferRequestListener requestListener = (TransferRequestListener) listener;
+    requestListener.onTransferRequest();
+    try {
+      return openInternal(dataSpec);
+    } finally {
+      if (!opened) {
+        requestListener.onTransferRequestFailed();
+      }
+    }
+  }
+
+  private long openInternal(DataSpec dataSpec) throws HttpDataSourceException {
     this.dataSpec = dataSpec;
     this.bytesRead = 0;
     this.bytesSkipped = 0;
@@ -0,0 +1,39 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer.upstream;
+
+/**
+ * A {@link BandwidthMeter} that also provides the confidence in its bandwidth estimate, and an
+ * estimate of the time taken for the first bytes of a transfer to arrive.
+ */
+public interface ExtendedBandwidthMeter extends BandwidthMeter {
+
+  /**
+   * Gets the confidence in the bandwidth estimate, as a value in the range [0, 1].
+   *
+   * @return The confidence in the bandwidth estimate, or 0 if no estimate is available.
+   */
+  float getConfidence();
+
+  /**
+   * Gets the estimated time between the request for a transfer and the arrival of its first bytes.
+   *
+   * @return Estimated time to first byte in milliseconds, or {@link #NO_ESTIMATE} if no estimate
+   *     is available.
+   */
+  long getTimeToFirstByteEstimateMs();
+
+}
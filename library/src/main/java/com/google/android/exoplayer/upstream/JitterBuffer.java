@@ -0,0 +1,308 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer.upstream;
+
+import com.google.android.exoplayer.util.Assertions;
+import com.google.android.exoplayer.util.Clock;
+
+/**
+ * Holds datagrams received by one thread until they are read, in order, by another.
+ * <p>
+ * If the first datagram has an RTP header then datagrams are ordered by their RTP sequence
+ * numbers. Datagrams that arrive out of order are put back in order. A missing datagram is waited
+ * for until the jitter delay has elapsed since the reader reached it, or until the buffer is full,
+ * after which it is counted as lost. Otherwise, as for raw MPEG TS over UDP, datagrams are read in
+ * the order in which they were received.
+ * <p>
+ * Datagrams are held in a ring of preallocated {@link Packet}s. Each thread also owns one packet,
+ * which it exchanges for a packet in the ring when it inserts or removes a datagram, so that no
+ * data is copied and nothing is allocated after construction.
+ */
+/* package */ final class JitterBuffer {
+
+  /**
+   * A datagram, and the position of its payload.
+   */
+  public static final class Packet {
+
+    /**
+     * The datagram.
+     */
+    public final byte[] data;
+    /**
+     * The length of the datagram.
+     */
+    public int length;
+    /**
+     * The offset of the payload in {@link #data}.
+     */
+    public int payloadOffset;
+    /**
+     * The length of the payload.
+     */
+    public int payloadLength;
+
+    private long sequence;
+    private boolean queued;
+
+    /**
+     * @param maxPacketSize The maximum datagram size, in bytes.
+     */
+    public Packet(int maxPacketSize) {
+      data = new byte[maxPacketSize];
+    }
+
+  }
+
+  private static final int RTP_VERSION = 2;
+  private static final int RTP_HEADER_LENGTH = 12;
+  /**
+   * The number of sequence numbers by which a datagram may be behind the next datagram to be read,
+   * or ahead of the highest received datagram, before the sender is assumed to have restarted. The
+   * values are those suggested by RFC 3550, appendix A.1.
+   */
+  private static final int MAX_MISORDER = 100;
+  private static final int MAX_DROPOUT = 3000;
+
+  private final Clock clock;
+  private final long jitterDelayMs;
+  private final Packet[] ring;
+  private final int ringMask;
+
+  private boolean released;
+  private boolean receivedFirstPacket;
+  private boolean isRtp;
+  private long nextSequence;
+  private long highestSequence;
+  private long gapStartTimeMs;
+
+  private long receivedPacketCount;
+  private long lostPacketCount;
+  private long reorderedPacketCount;
+  private long discardedPacketCount;
+
+  /**
+   * @param capacity The number of datagrams that can be held. Must be a power of two.
+   * @param maxPacketSize The maximum datagram size, in bytes.
+   * @param jitterDelayMs The maximum time for which the reader waits for a missing datagram.
+   * @param clock The {@link Clock} used to measure the jitter delay.
+   */
+  public JitterBuffer(int capacity, int maxPacketSize, long jitterDelayMs, Clock clock) {
+    Assertions.checkArgument(capacity > 0 && (capacity & (capacity - 1)) == 0);
+    this.jitterDelayMs = jitterDelayMs;
+    this.clock = clock;
+    ring = new Packet[capacity];
+    for (int i = 0; i < capacity; i++) {
+      ring[i] = new Packet(maxPacketSize);
+    }
+    ringMask = capacity - 1;
+    reset();
+  }
+
+  /**
+   * Discards all datagrams, clears the counters and makes the buffer ready to be used again after
+   * {@link #release()}. Must not be called whilst either thread is using the buffer.
+   */
+  public synchronized void reset() {
+    clearRing();
+    released = false;
+    receivedFirstPacket = false;
+    gapStartTimeMs = -1;
+    receivedPacketCount = 0;
+    lostPacketCount = 0;
+    reorderedPacketCount = 0;
+    discardedPacketCount = 0;
+  }
+
+  /**
+   * Causes {@link #take(Packet)} to return null, now and on subsequent calls.
+   */
+  public synchronized void release() {
+    released = true;
+    notifyAll();
+  }
+
+  /**
+   * Inserts a received datagram.
+   *
+   * @param packet The packet holding the datagram, with its {@link Packet#length} set.
+   * @return A packet that is no longer held by the buffer, into which the next datagram can be
+   *     received.
+   */
+  public synchronized Packet offer(Packet packet) {
+    if (released) {
+      return packet;
+    }
+    if (!receivedFirstPacket) {
+      isRtp = packet.length > 0 && (packet.data[0] & 0xC0) == RTP_VERSION << 6;
+    }
+    if (isRtp && !parseRtpHeader(packet)) {
+      discardedPacketCount++;
+      return packet;
+    }
+
+    long sequence;
+    if (!isRtp) {
+      packet.payloadOffset = 0;
+      packet.payloadLength = packet.length;
+      sequence = receivedFirstPacket ? highestSequence + 1 : 0;
+    } else {
+      int sequenceNumber = ((packet.data[2] & 0xFF) << 8) | (packet.data[3] & 0xFF);
+      // Extend the 16 bit sequence number, assuming that it is close to the highest received.
+      sequence = receivedFirstPacket
+          ? highestSequence + (short) (sequenceNumber - (int) (highestSequence & 0xFFFF))
+          : sequenceNumber;
+    }
+    if (!receivedFirstPacket || sequence < nextSequence - MAX_MISORDER
+        || sequence > highestSequence + MAX_DROPOUT) {
+      // This is the first datagram, or the sender has restarted.
+      discardedPacketCount += clearRing();
+      receivedFirstPacket = true;
+      nextSequence = sequence;
+      highestSequence = sequence - 1;
+      gapStartTimeMs = -1;
+    }
+
+    int index = (int) sequence & ringMask;
+    if (sequence < nextSequence || sequence - nextSequence > ringMask || ring[index].queued) {
+      // The datagram is late, the buffer is full, or the datagram is a duplicate.
+      discardedPacketCount++;
+      return packet;
+    }
+    if (sequence < highestSequence) {
+      reorderedPacketCount++;
+    } else {
+      highestSequence = sequence;
+    }
+    receivedPacketCount++;
+    Packet freePacket = ring[index];
+    packet.sequence = sequence;
+    packet.queued = true;
+    ring[index] = packet;
+    notifyAll();
+    return freePacket;
+  }
+
+  /**
+   * Removes the next datagram, blocking until it is available or has been counted as lost.
+   *
+   * @param consumedPacket A packet whose datagram has been read, which is returned to the buffer.
+   * @return The packet holding the next datagram, or null if the buffer has been released. If null
+   *     is returned then {@code consumedPacket} is not returned to the buffer.
+   * @throws InterruptedException If the thread was interrupted.
+   */
+  public synchronized Packet take(Packet consumedPacket) throws InterruptedException {
+    while (!released) {
+      int index = (int) nextSequence & ringMask;
+      Packet packet = ring[index];
+      if (receivedFirstPacket && packet.queued) {
+        packet.queued = false;
+        ring[index] = consumedPacket;
+        nextSequence++;
+        gapStartTimeMs = -1;
+        return packet;
+      } else if (receivedFirstPacket && highestSequence > nextSequence) {
+        // A later datagram has been received. Wait for the missing datagram for up to the jitter
+        // delay, after which it and any missing datagrams following it are counted as lost.
+        long nowMs = clock.elapsedRealtime();
+        if (gapStartTimeMs == -1) {
+          gapStartTimeMs = nowMs;
+        }
+        long remainingDelayMs = gapStartTimeMs + jitterDelayMs - nowMs;
+        if (remainingDelayMs <= 0 || highestSequence - nextSequence >= ringMask) {
+          lostPacketCount++;
+          nextSequence++;
+        } else {
+          wait(remainingDelayMs);
+        }
+      } else {
+        wait();
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Returns the number of datagrams that have been inserted, excluding those that were discarded.
+   */
+  public synchronized long getReceivedPacketCount() {
+    return receivedPacketCount;
+  }
+
+  /**
+   * Returns the number of RTP datagrams that were never received, or were received too late.
+   */
+  public synchronized long getLostPacketCount() {
+    return lostPacketCount;
+  }
+
+  /**
+   * Returns the number of RTP datagrams that were received out of order, and put back in order.
+   */
+  public synchronized long getReorderedPacketCount() {
+    return reorderedPacketCount;
+  }
+
+  /**
+   * Returns the number of datagrams that were discarded because they were malformed, duplicated or
+   * late, or because the buffer was full.
+   */
+  public synchronized long getDiscardedPacketCount() {
+    return discardedPacketCount;
+  }
+
+  private int clearRing() {
+    int clearedPacketCount = 0;
+    for (int i = 0; i < ring.length; i++) {
+      if (ring[i].queued) {
+        ring[i].queued = false;
+        clearedPacketCount++;
+      }
+    }
+    return clearedPacketCount;
+  }
+
+  /**
+   * Sets the payload position of an RTP datagram, as described by RFC 3550, section 5.1.
+   *
+   * @param packet The packet holding the datagram.
+   * @return Whether the datagram is a valid RTP datagram.
+   */
+  private static boolean parseRtpHeader(Packet packet) {
+    byte[] data = packet.data;
+    int length = packet.length;
+    if (length < RTP_HEADER_LENGTH || (data[0] & 0xC0) != RTP_VERSION << 6) {
+      return false;
+    }
+    int csrcCount = data[0] & 0x0F;
+    int offset = RTP_HEADER_LENGTH + 4 * csrcCount;
+    if ((data[0] & 0x10) != 0) {
+      // Skip the header extension.
+      if (offset + 4 > length) {
+        return false;
+      }
+      offset += 4 + 4 * (((data[offset + 2] & 0xFF) << 8) | (data[offset + 3] & 0xFF));
+    }
+    int paddingLength = (data[0] & 0x20) != 0 ? data[length - 1] & 0xFF : 0;
+    if (offset + paddingLength > length) {
+      return false;
+    }
+    packet.payloadOffset = offset;
+    packet.payloadLength = length - offset - paddingLength;
+    return true;
+  }
+
+}
@@ -0,0 +1,389 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer.upstream;
+
+import com.google.android.exoplayer.C;
+import com.google.android.exoplayer.util.Assertions;
+import com.google.android.exoplayer.util.Util;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A {@link DataSource} that can load requests ahead of time, so that they are loaded concurrently
+ * with the request that is currently being read.
+ * <p>
+ * Requests passed to {@link #readAhead(DataSpec)} are loaded by a bounded number of background
+ * threads, each reading from its own upstream {@link DataSource}. Loaded data is held in
+ * {@link Allocation}s obtained from an {@link Allocator}. A later call to {@link #open(DataSpec)}
+ * with an equivalent {@link DataSpec} is served from this data, blocking as necessary whilst the
+ * remainder of the request is loaded. All other requests are read directly from the upstream
+ * {@link DataSource} passed to the constructor.
+ * <p>
+ * If the allocator is shared with a {@link com.google.android.exoplayer.LoadControl}, then data
+ * that has been read ahead counts toward the buffer that the control is managing.
+ */
+public final class ReadAheadDataSource implements DataSource {
+
+  private static final long THREAD_KEEP_ALIVE_MS = 1000;
+
+  private final DataSource upstream;
+  private final DataSourceFactory dataSourceFactory;
+  private final Allocator allocator;
+  private final int maxConcurrentRequests;
+  private final ThreadPoolExecutor executor;
+  private final LinkedList<Request> requests;
+  private final LinkedList<DataSource> idleDataSources;
+
+  private Request openedRequest;
+  private long readPosition;
+  private boolean upstreamOpened;
+
+  /**
+   * @param upstream The source from which requests that have not been read ahead are read.
+   * @param dataSourceFactory A factory for the {@link DataSource} instances used to read ahead.
+   * @param allocator The {@link Allocator} from which to obtain memory for data that is read
+   *     ahead.
+   * @param maxConcurrentRequests The maximum number of requests to read ahead concurrently.
+   */
+  public ReadAheadDataSource(DataSource upstream, DataSourceFactory dataSourceFactory,
+      Allocator allocator, int maxConcurrentRequests) {
+    Assertions.checkArgument(maxConcurrentRequests > 0);
+    this.upstream = Assertions.checkNotNull(upstream);
+    this.dataSourceFactory = Assertions.checkNotNull(dataSourceFactory);
+    this.allocator = Assertions.checkNotNull(allocator);
+    this.maxConcurrentRequests = maxConcurrentRequests;
+    requests = new LinkedList<>();
+    idleDataSources = new LinkedList<>();
+    executor = new ThreadPoolExecutor(maxConcurrentRequests, maxConcurrentRequests,
+        THREAD_KEEP_ALIVE_MS, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>(),
+        new ThreadFactory() {
+          @Override
+          public Thread newThread(Runnable r) {
+            return new Thread(r, "ReadAheadDataSource");
+          }
+        });
+    // Threads are only kept alive whilst there is data to read ahead.
+    executor.allowCoreThreadTimeOut(true);
+  }
+
+  /**
+   * Returns the maximum number of requests that are read ahead concurrently.
+   */
+  public int getMaxConcurrentRequests() {
+    return maxConcurrentRequests;
+  }
+
+  /**
+   * Starts reading a request ahead of time. Requests are started in the order in which they are
+   * passed to this method.
+   *
+   * @param dataSpec Defines the data to read ahead.
+   */
+  public void readAhead(DataSpec dataSpec) {
+    Request request = new Request(dataSpec);
+    synchronized (this) {
+      requests.add(request);
+    }
+    executor.execute(request);
+  }
+
+  /**
+   * Cancels all requests that are being read ahead and have not yet been opened, releasing any
+   * memory that they hold.
+   */
+  public void cancelReadAhead() {
+    ArrayList<Request> canceledRequests;
+    synchronized (this) {
+      canceledRequests = new ArrayList<>(requests);
+      requests.clear();
+    }
+    for (int i = 0; i < canceledRequests.size(); i++) {
+      canceledRequests.get(i).cancel();
+    }
+  }
+
+  @Override
+  public long open(DataSpec dataSpec) throws IOException {
+    Assertions.checkState(openedRequest == null && !upstreamOpened);
+    Request request = removeRequest(dataSpec);
+    if (request != null) {
+      long length = Request.OPEN_FAILED;
+      try {
+        length = request.awaitOpened();
+      } finally {
+        if (length == Request.OPEN_FAILED) {
+          // Reading ahead failed before any data was loaded, or waiting for it was interrupted.
+          // The request is no longer held by this source, so release it.
+          request.cancel();
+        }
+      }
+      if (length != Request.OPEN_FAILED) {
+        openedRequest = request;
+        readPosition = 0;
+        return length;
+      }
+      // Fall back to reading from upstream.
+    }
+    upstreamOpened = true;
+    return upstream.open(dataSpec);
+  }
+
+  @Override
+  public int read(byte[] buffer, int offset, int readLength) throws IOException {
+    if (openedRequest != null) {
+      int bytesRead = openedRequest.read(readPosition, buffer, offset, readLength);
+      if (bytesRead > 0) {
+        readPosition += bytesRead;
+      }
+      return bytesRead;
+    }
+    return upstream.read(buffer, offset, readLength);
+  }
+
+  @Override
+  public void close() throws IOException {
+    if (openedRequest != null) {
+      openedRequest.cancel();
+      openedRequest = null;
+    }
+    if (upstreamOpened) {
+      upstreamOpened = false;
+      upstream.close();
+    }
+  }
+
+  private synchronized Request removeRequest(DataSpec dataSpec) {
+    Iterator<Request> iterator = requests.iterator();
+    while (iterator.hasNext()) {
+      Request request = iterator.next();
+      if (request.matches(dataSpec)) {
+        iterator.remove();
+        return request;
+      }
+    }
+    return null;
+  }
+
+  private synchronized DataSource obtainDataSource() {
+    return idleDataSources.isEmpty() ? dataSourceFactory.createDataSource()
+        : idleDataSources.removeFirst();
+  }
+
+  private synchronized void recycleDataSource(DataSource dataSource) {
+    idleDataSources.add(dataSource);
+  }
+
+  /**
+   * A request that is read ahead. The loading thread appends data, and the thread that opens the
+   * request reads it. Accessed under the request's monitor.
+   */
+  private final class Request implements Runnable {
+
+    public static final long OPEN_FAILED = Long.MIN_VALUE;
+
+    private final DataSpec dataSpec;
+    private final int allocationLength;
+    private final ArrayList<Allocation> allocations;
+
+    private boolean opened;
+    private boolean loading;
+    private boolean loadFinished;
+    private boolean canceled;
+    private long resolvedLength;
+    private long bytesLoaded;
+    private IOException loadError;
+
+    public Request(DataSpec dataSpec) {
+      this.dataSpec = dataSpec;
+      allocationLength = allocator.getIndividualAllocationLength();
+      allocations = new ArrayList<>();
+      resolvedLength = C.LENGTH_UNBOUNDED;
+    }
+
+    public boolean matches(DataSpec other) {
+      return dataSpec.uri.equals(other.uri)
+          && dataSpec.absoluteStreamPosition == other.absoluteStreamPosition
+          && dataSpec.length == other.length && Util.areEqual(dataSpec.key, other.key);
+    }
+
+    /**
+     * Blocks until the request has been opened upstream.
+     *
+     * @return The resolved length of the request, or {@link #OPEN_FAILED} if it could not be
+     *     opened.
+     */
+    public synchronized long awaitOpened() throws InterruptedIOException {
+      while (!opened && !loadFinished) {
+        await();
+      }
+      return opened ? resolvedLength : OPEN_FAILED;
+    }
+
+    public synchronized int read(long position, byte[] buffer, int offset, int readLength)
+        throws IOException {
+      while (position == bytesLoaded && !loadFinished) {
+        await();
+      }
+      if (position == bytesLoaded) {
+        if (loadError != null) {
+          throw loadError;
+        }
+        return C.RESULT_END_OF_INPUT;
+      }
+      Allocation allocation = allocations.get((int) (position / allocationLength));
+      int allocationOffset = (int) (position % allocationLength);
+      int bytesToRead = (int) Math.min(readLength,
+          Math.min(bytesLoaded - position, allocationLength - allocationOffset));
+      if (allocation.isDirect()) {
+        ByteBuffer source = allocation.getReadBuffer();
+        source.clear();
+        source.position(allocationOffset);
+        source.get(buffer, offset, bytesToRead);
+      } else {
+        System.arraycopy(allocation.data, allocation.translateOffset(allocationOffset), buffer,
+            offset, bytesToRead);
+      }
+      return bytesToRead;
+    }
+
+    /**
+     * Cancels the request, or releases it once it has been read. Memory held by the request is
+     * released as soon as it is no longer being loaded.
+     */
+    public synchronized void cancel() {
+      canceled = true;
+      if (!loading) {
+        releaseAllocations();
+      }
+      notifyAll();
+    }
+
+    @Override
+    public void run() {
+      synchronized (this) {
+        if (canceled) {
+          return;
+        }
+        loading = true;
+      }
+      DataSource dataSource = obtainDataSource();
+      byte[] scratch = null;
+      try {
+        long length = dataSource.open(dataSpec);
+        synchronized (this) {
+          opened = true;
+          resolvedLength = length;
+          notifyAll();
+        }
+        while (!isCanceled()) {
+          Allocation allocation = getWriteAllocation();
+          int allocationOffset = (int) (bytesLoaded % allocationLength);
+          int bytesRead;
+          if (allocation.isDirect()) {
+            if (scratch == null) {
+              scratch = new byte[allocationLength];
+            }
+            bytesRead = dataSource.read(scratch, 0, allocationLength - allocationOffset);
+            if (bytesRead > 0) {
+              ByteBuffer target = allocation.getWriteBuffer();
+              target.clear();
+              target.position(allocationOffset);
+              target.put(scratch, 0, bytesRead);
+            }
+          } else {
+            bytesRead = dataSource.read(allocation.data,
+                allocation.translateOffset(allocationOffset), allocationLength - allocationOffset);
+          }
+          if (bytesRead == C.RESULT_END_OF_INPUT) {
+            break;
+          }
+          onBytesLoaded(bytesRead);
+        }
+      } catch (IOException e) {
+        synchronized (this) {
+          loadError = e;
+        }
+      } finally {
+        try {
+          dataSource.close();
+        } catch (IOException e) {
+          // Ignore. The data has already been loaded.
+        }
+        recycleDataSource(dataSource);
+        onLoadFinished();
+      }
+    }
+
+    private synchronized boolean isCanceled() {
+      return canceled;
+    }
+
+    private Allocation getWriteAllocation() {
+      int allocationIndex;
+      synchronized (this) {
+        allocationIndex = (int) (bytesLoaded / allocationLength);
+        if (allocationIndex < allocations.size()) {
+          return allocations.get(allocationIndex);
+        }
+      }
+      Allocation allocation = allocator.allocate();
+      synchronized (this) {
+        allocations.add(allocation);
+      }
+      return allocation;
+    }
+
+    private synchronized void onBytesLoaded(int bytesRead) {
+      bytesLoaded += bytesRead;
+      notifyAll();
+    }
+
+    private synchronized void onLoadFinished() {
+      loading = false;
+      loadFinished = true;
+      if (canceled) {
+        releaseAllocations();
+      }
+      notifyAll();
+    }
+
+    private void releaseAllocations() {
+      for (int i = 0; i < allocations.size(); i++) {
+        allocator.release(allocations.get(i));
+      }
+      allocations.clear();
+    }
+
+    private void await() throws InterruptedIOException {
+      try {
+        wait();
+      } catch (InterruptedException e) {
+        throw new InterruptedIOException();
+      }
+    }
+
+  }
+
+}
@@ -0,0 +1,411 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer.upstream;
+
+import com.google.android.exoplayer.util.Assertions;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+
+/**
+ * An {@link Allocator} that carves allocations of several sizes out of large slabs.
+ * <p>
+ * Each size class is exposed as a separate {@link Allocator} through {@link #getAllocator(int)},
+ * so that tracks whose samples are small (e.g. audio and text) can use smaller allocations than
+ * video tracks. All of the size classes share the same slabs and the same accounting, so the
+ * {@link SlabAllocator} itself can be passed to a {@link com.google.android.exoplayer.LoadControl}
+ * to control the total memory used. When used directly as an {@link Allocator}, allocations are
+ * made from the largest size class.
+ * <p>
+ * A slab is assigned to a size class when that class runs out of free allocations, and returns to
+ * a shared pool once all of its allocations have been released and the allocator is trimmed. Slabs
+ * reserved up front are never discarded.
+ * <p>
+ * Slabs can optionally be allocated as direct {@link ByteBuffer}s, in which case the allocations
+ * are exposed through {@link Allocation#buffer} rather than {@link Allocation#data}. Direct slabs
+ * are held outside of the Java heap, which reduces heap usage and garbage collection pressure when
+ * buffering large amounts of media.
+ */
+public final class SlabAllocator implements Allocator {
+
+  private final int slabLength;
+  private final int[] allocationLengths;
+  private final SizeClass[] sizeClasses;
+  private final boolean direct;
+  private final IdentityHashMap<Allocation, Slab> allocationSlabs;
+  private final ArrayList<Slab> freeSlabs;
+  private final int initialSlabCount;
+
+  private int slabCount;
+
+  private int totalBytesAllocated;
+  private int totalBytesAllocatedHighWaterMark;
+  private int totalBytesReservedHighWaterMark;
+
+  /**
+   * @param slabLength The length of each slab. Must be a multiple of every allocation length.
+   * @param allocationLengths The allocation lengths of the size classes, in ascending order.
+   */
+  public SlabAllocator(int slabLength, int... allocationLengths) {
+    this(slabLength, allocationLengths, 0, false);
+  }
+
+  /**
+   * @param slabLength The length of each slab. Must be a multiple of every allocation length.
+   * @param allocationLengths The allocation lengths of the size classes, in ascending order.
+   * @param initialSlabCount The number of slabs to reserve up front.
+   * @param direct Whether slabs should be allocated as direct {@link ByteBuffer}s.
+   */
+  public SlabAllocator(int slabLength, int[] allocationLengths, int initialSlabCount,
+      boolean direct) {
+    Assertions.checkArgument(slabLength > 0);
+    Assertions.checkArgument(initialSlabCount >= 0);
+    Assertions.checkArgument(allocationLengths.length > 0);
+    this.slabLength = slabLength;
+    this.initialSlabCount = initialSlabCount;
+    this.allocationLengths = Arrays.copyOf(allocationLengths, allocationLengths.length);
+    sizeClasses = new SizeClass[allocationLengths.length];
+    for (int i = 0; i < allocationLengths.length; i++) {
+      Assertions.checkArgument(allocationLengths[i] > 0 && slabLength % allocationLengths[i] == 0);
+      Assertions.checkArgument(i == 0 || allocationLengths[i] > allocationLengths[i - 1]);
+      sizeClasses[i] = new SizeClass(allocationLengths[i]);
+    }
+    this.direct = direct;
+    allocationSlabs = new IdentityHashMap<>();
+    freeSlabs = new ArrayList<>();
+    for (int i = 0; i < initialSlabCount; i++) {
+      freeSlabs.add(newSlab(true));
+    }
+    totalBytesReservedHighWaterMark = initialSlabCount * slabLength;
+  }
+
+  /**
+   * Returns an {@link Allocator} for the smallest size class whose allocations are at least
+   * {@code minAllocationLength} bytes long, or for the largest size class if none are.
+   * <p>
+   * The returned {@link Allocator} shares its accounting with this one. In particular
+   * {@link Allocator#getTotalBytesAllocated()}, {@link Allocator#trim(int)} and
+   * {@link Allocator#blockWhileTotalBytesAllocatedExceeds(int)} apply to all size classes.
+   *
+   * @param minAllocationLength The minimum allocation length.
+   * @return An {@link Allocator} for the corresponding size class.
+   */
+  public Allocator getAllocator(int minAllocationLength) {
+    for (SizeClass sizeClass : sizeClasses) {
+      if (sizeClass.allocationLength >= minAllocationLength) {
+        return sizeClass;
+      }
+    }
+    return sizeClasses[sizeClasses.length - 1];
+  }
+
+  @Override
+  public Allocation allocate() {
+    return sizeClasses[sizeClasses.length - 1].allocate();
+  }
+
+  @Override
+  public synchronized void release(Allocation allocation) {
+    Slab slab = allocationSlabs.get(allocation);
+    // Weak sanity check that the allocation probably originated from this allocator.
+    Assertions.checkArgument(slab != null && slab.sizeClass != null);
+    slab.sizeClass.release(slab, allocation);
+    // Wake up threads waiting for the allocated size to drop.
+    notifyAll();
+  }
+
+  @Override
+  public synchronized void trim(int targetSize) {
+    int targetSlabCount = Math.max(initialSlabCount, (targetSize + slabLength - 1) / slabLength);
+    // Return slabs with no outstanding allocations to the free pool.
+    for (SizeClass sizeClass : sizeClasses) {
+      sizeClass.releaseUnusedSlabs();
+    }
+    // Discard free slabs that weren't reserved up front, beyond the target.
+    for (int i = freeSlabs.size() - 1; i >= 0 && slabCount > targetSlabCount; i--) {
+      if (!freeSlabs.get(i).isInitial) {
+        freeSlabs.remove(i);
+        slabCount--;
+      }
+    }
+  }
+
+  @Override
+  public synchronized int getTotalBytesAllocated() {
+    return totalBytesAllocated;
+  }
+
+  @Override
+  public synchronized void blockWhileTotalBytesAllocatedExceeds(int limit)
+      throws InterruptedException {
+    while (totalBytesAllocated > limit) {
+      wait();
+    }
+  }
+
+  /**
+   * Returns the length of allocations made by {@link #allocate()}, which is that of the largest
+   * size class.
+   */
+  @Override
+  public int getIndividualAllocationLength() {
+    return allocationLengths[allocationLengths.length - 1];
+  }
+
+  /**
+   * Returns the total number of bytes held in slabs, whether or not they are currently allocated.
+   */
+  public synchronized int getTotalBytesReserved() {
+    return slabCount * slabLength;
+  }
+
+  /**
+   * Returns whether slabs are allocated as direct {@link ByteBuffer}s.
+   */
+  public boolean isDirect() {
+    return direct;
+  }
+
+  /**
+   * Returns the highest value of {@link #getTotalBytesAllocated()} since the allocator was created
+   * or {@link #resetHighWaterMarks()} was last called.
+   */
+  public synchronized int getTotalBytesAllocatedHighWaterMark() {
+    return totalBytesAllocatedHighWaterMark;
+  }
+
+  /**
+   * Returns the highest value of {@link #getTotalBytesReserved()} since the allocator was created
+   * or {@link #resetHighWaterMarks()} was last called.
+   */
+  public synchronized int getTotalBytesReservedHighWaterMark() {
+    return totalBytesReservedHighWaterMark;
+  }
+
+  /**
+   * Resets the high water marks to the current values.
+   */
+  public synchronized void resetHighWaterMarks() {
+    totalBytesAllocatedHighWaterMark = totalBytesAllocated;
+    totalBytesReservedHighWaterMark = getTotalBytesReserved();
+  }
+
+  /**
+   * Returns the fraction of reserved memory that is not currently allocated, or 0 if no memory is
+   * reserved. This includes free allocations within slabs assigned to a size class, and slabs in
+   * the free pool.
+   */
+  public synchronized float getFragmentation() {
+    int totalBytesReserved = getTotalBytesReserved();
+    return totalBytesReserved == 0 ? 0
+        : (float) (totalBytesReserved - totalBytesAllocated) / totalBytesReserved;
+  }
+
+  /**
+   * Returns the number of bytes currently allocated from the size class with the specified
+   * allocation length.
+   *
+   * @param allocationLength The allocation length of the size class.
+   * @return The number of bytes allocated from the size class.
+   */
+  public synchronized int getBytesAllocated(int allocationLength) {
+    int index = Arrays.binarySearch(allocationLengths, allocationLength);
+    Assertions.checkArgument(index >= 0);
+    return sizeClasses[index].allocatedCount * allocationLength;
+  }
+
+  /**
+   * Returns the number of bytes held in slabs that are assigned to the size class with the
+   * specified allocation length.
+   *
+   * @param allocationLength The allocation length of the size class.
+   * @return The number of bytes held by the size class.
+   */
+  public synchronized int getBytesReserved(int allocationLength) {
+    int index = Arrays.binarySearch(allocationLengths, allocationLength);
+    Assertions.checkArgument(index >= 0);
+    return sizeClasses[index].slabs.size() * slabLength;
+  }
+
+  private Slab obtainSlab() {
+    if (!freeSlabs.isEmpty()) {
+      return freeSlabs.remove(freeSlabs.size() - 1);
+    }
+    Slab slab = newSlab(false);
+    totalBytesReservedHighWaterMark = Math.max(totalBytesReservedHighWaterMark,
+        getTotalBytesReserved());
+    return slab;
+  }
+
+  private Slab newSlab(boolean isInitial) {
+    slabCount++;
+    return direct ? new Slab(null, ByteBuffer.allocateDirect(slabLength), isInitial)
+        : new Slab(new byte[slabLength], null, isInitial);
+  }
+
+  private void onAllocated(int allocationLength) {
+    totalBytesAllocated += allocationLength;
+    totalBytesAllocatedHighWaterMark = Math.max(totalBytesAllocatedHighWaterMark,
+        totalBytesAllocated);
+  }
+
+  /**
+   * A slab, which is either free or assigned to a single size class.
+   */
+  private static final class Slab {
+
+    public final byte[] data;
+    public final ByteBuffer buffer;
+    public final boolean isInitial;
+
+    public SizeClass sizeClass;
+    public int allocatedCount;
+
+    public Slab(byte[] data, ByteBuffer buffer, boolean isInitial) {
+      this.data = data;
+      this.buffer = buffer;
+      this.isInitial = isInitial;
+    }
+
+    public Allocation createAllocation(int offset, int length) {
+      if (data != null) {
+        return new Allocation(data, offset);
+      }
+      ByteBuffer allocationBuffer = buffer.duplicate();
+      allocationBuffer.position(offset);
+      allocationBuffer.limit(offset + length);
+      return new Allocation(allocationBuffer.slice());
+    }
+
+  }
+
+  /**
+   * Allocates from the slabs assigned to a single size class.
+   */
+  private final class SizeClass implements Allocator {
+
+    private final int allocationLength;
+    private final ArrayList<Slab> slabs;
+
+    private Allocation[] availableAllocations;
+    private int availableCount;
+    private int allocatedCount;
+
+    public SizeClass(int allocationLength) {
+      this.allocationLength = allocationLength;
+      slabs = new ArrayList<>();
+      availableAllocations = new Allocation[slabLength / allocationLength];
+    }
+
+    @Override
+    public Allocation allocate() {
+      synchronized (SlabAllocator.this) {
+        if (availableCount == 0) {
+          addSlab(obtainSlab());
+        }
+        Allocation allocation = availableAllocations[--availableCount];
+        availableAllocations[availableCount] = null;
+        allocationSlabs.get(allocation).allocatedCount++;
+        allocatedCount++;
+        onAllocated(allocationLength);
+        return allocation;
+      }
+    }
+
+    @Override
+    public void release(Allocation allocation) {
+      SlabAllocator.this.release(allocation);
+    }
+
+    @Override
+    public void trim(int targetSize) {
+      SlabAllocator.this.trim(targetSize);
+    }
+
+    @Override
+    public void blockWhileTotalBytesAllocatedExceeds(int limit) throws InterruptedException {
+      SlabAllocator.this.blockWhileTotalBytesAllocatedExceeds(limit);
+    }
+
+    @Override
+    public int getTotalBytesAllocated() {
+      return SlabAllocator.this.getTotalBytesAllocated();
+    }
+
+    @Override
+    public int getIndividualAllocationLength() {
+      return allocationLength;
+    }
+
+    // Methods below must be called whilst holding the SlabAllocator's monitor.
+
+    private void release(Slab slab, Allocation allocation) {
+      Assertions.checkArgument(slab.sizeClass == this);
+      slab.allocatedCount--;
+      allocatedCount--;
+      totalBytesAllocated -= allocationLength;
+      availableAllocations[availableCount++] = allocation;
+    }
+
+    private void addSlab(Slab slab) {
+      slab.sizeClass = this;
+      slabs.add(slab);
+      int allocationsPerSlab = slabLength / allocationLength;
+      // Ensure there's space for all of the allocations to be released back to this size class.
+      int requiredCapacity = slabs.size() * allocationsPerSlab;
+      if (availableAllocations.length < requiredCapacity) {
+        availableAllocations = Arrays.copyOf(availableAllocations,
+            Math.max(availableAllocations.length * 2, requiredCapacity));
+      }
+      for (int i = allocationsPerSlab - 1; i >= 0; i--) {
+        Allocation allocation = slab.createAllocation(i * allocationLength, allocationLength);
+        allocationSlabs.put(allocation, slab);
+        availableAllocations[availableCount++] = allocation;
+      }
+    }
+
+    private void releaseUnusedSlabs() {
+      boolean removedSlab = false;
+      for (int i = slabs.size() - 1; i >= 0; i--) {
+        Slab slab = slabs.get(i);
+        if (slab.allocatedCount == 0) {
+          slabs.remove(i);
+          slab.sizeClass = null;
+          freeSlabs.add(slab);
+          removedSlab = true;
+        }
+      }
+      if (removedSlab) {
+        // Drop the free allocations belonging to the slabs that were removed.
+        int newAvailableCount = 0;
+        for (int i = 0; i < availableCount; i++) {
+          Allocation allocation = availableAllocations[i];
+          if (allocationSlabs.get(allocation).sizeClass == this) {
+            availableAllocations[newAvailableCount++] = allocation;
+          } else {
+            allocationSlabs.remove(allocation);
+          }
+        }
+        Arrays.fill(availableAllocations, newAvailableCount, availableCount, null);
+        availableCount = newAvailableCount;
+      }
+    }
+
+  }
+
+}
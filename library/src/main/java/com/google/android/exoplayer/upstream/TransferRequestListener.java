@@ -0,0 +1,38 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer.upstream;
+
+/**
+ * A {@link TransferListener} that is also notified when a transfer is requested, before the
+ * connection over which the data will be transferred is established.
+ * <p>
+ * Data sources that connect to a remote server notify a listener implementing this interface
+ * before connecting, so that the time spent waiting for a response can be measured.
+ */
+public interface TransferRequestListener extends TransferListener {
+
+  /**
+   * Invoked when a transfer is requested. {@link #onTransferStart()} is invoked once the connection
+   * has been established, or {@link #onTransferRequestFailed()} if the connection fails.
+   */
+  void onTransferRequest();
+
+  /**
+   * Invoked when the connection for a requested transfer fails, so the transfer is abandoned.
+   */
+  void onTransferRequestFailed();
+
+}
@@ -15,6 +15,8 @@
  */
 package com.google.android.exoplayer.upstream.cache;
 
+import com.google.android.exoplayer.C;
+
 import java.io.File;
 import java.util.NavigableSet;
 import java.util.Set;
@@ -143,8 +145,8 @@ public interface Cache {
    *
    * @param key The cache key for the data.
    * @param position The starting position of the data.
-   * @param length The length of the data to be written. Used only to ensure that there is enough
-   *     space in the cache.
+   * @param length The length of the data to be written, or {@link C#LENGTH_UNBOUNDED} if it is
+   *     not known. Used only to ensure that there is enough space in the cache.
    * @return The file into which data should be written.
    */
   File startFile(String key, long position, long length);
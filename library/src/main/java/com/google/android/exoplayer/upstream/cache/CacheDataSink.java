@@ -65,9 +65,6 @@ public final class CacheDataSink implements DataSink {
 
   @Override
   public DataSink open(DataSpec dataSpec) throws CacheDataSinkException {
-    // TODO: Support caching for unbounded requests. See TODO in {@link CacheDataSource} for
-    // more details.
-    Assertions.checkState(dataSpec.length != C.LENGTH_UNBOUNDED);
     try {
       this.dataSpec = dataSpec;
       dataSpecBytesWritten = 0;
@@ -109,8 +106,10 @@ public final class CacheDataSink implements DataSink {
   }
 
   private void openNextOutputStream() throws FileNotFoundException {
+    long length = dataSpec.length == C.LENGTH_UNBOUNDED ? C.LENGTH_UNBOUNDED
+        : Math.min(dataSpec.length - dataSpecBytesWritten, maxCacheFileSize);
     file = cache.startFile(dataSpec.key, dataSpec.absoluteStreamPosition + dataSpecBytesWritten,
-        Math.min(dataSpec.length - dataSpecBytesWritten, maxCacheFileSize));
+        length);
     outputStream = new FileOutputStream(file);
     outputStreamBytesWritten = 0;
   }
@@ -24,7 +24,6 @@ import com.google.android.exoplayer.upstream.TeeDataSource;
 import com.google.android.exoplayer.upstream.cache.CacheDataSink.CacheDataSinkException;
 
 import android.net.Uri;
-import android.util.Log;
 
 import java.io.IOException;
 import java.io.InterruptedIOException;
@@ -51,8 +50,6 @@ public final class CacheDataSource implements DataSource {
 
   }
 
-  private static final String TAG = "CacheDataSource";
-
   private final Cache cache;
   private final DataSource cacheReadDataSource;
   private final DataSource cacheWriteDataSource;
@@ -68,6 +65,7 @@ public final class CacheDataSource implements DataSource {
   private String key;
   private long readPosition;
   private long bytesRemaining;
+  private boolean currentRequestUnbounded;
   private CacheSpan lockedSpan;
   private boolean ignoreCache;
   private long totalCachedBytesRead;
@@ -129,11 +127,20 @@ public final class CacheDataSource implements DataSource {
     try {
       uri = dataSpec.uri;
       flags = dataSpec.flags;
-      key = dataSpec.key;
+      key = dataSpec.key != null ? dataSpec.key : uri.toString();
       readPosition = dataSpec.position;
       bytesRemaining = dataSpec.length;
-      openNextSource();
-      return dataSpec.length;
+      if (bytesRemaining == C.LENGTH_UNBOUNDED && !ignoreCache
+          && cache instanceof ContentLengthCache) {
+        long contentLength = ((ContentLengthCache) cache).getContentLength(key);
+        if (contentLength != C.LENGTH_UNBOUNDED) {
+          bytesRemaining = Math.max(0, contentLength - readPosition);
+        }
+      }
+      if (bytesRemaining != 0) {
+        openNextSource();
+      }
+      return bytesRemaining;
     } catch (IOException e) {
       handleBeforeThrow(e);
       throw e;
@@ -142,6 +149,9 @@ public final class CacheDataSource implements DataSource {
 
   @Override
   public int read(byte[] buffer, int offset, int max) throws IOException {
+    if (bytesRemaining == 0) {
+      return -1;
+    }
     try {
       int bytesRead = currentDataSource.read(buffer, offset, max);
       if (bytesRead >= 0) {
@@ -153,8 +163,14 @@ public final class CacheDataSource implements DataSource {
           bytesRemaining -= bytesRead;
         }
       } else {
+        boolean endOfStream = currentRequestUnbounded;
+        if (endOfStream) {
+          // We've read to the end of the upstream data for an unbounded request, and so now know
+          // the content length.
+          setContentLength(readPosition);
+        }
         closeCurrentSource();
-        if (bytesRemaining > 0 && bytesRemaining != C.LENGTH_UNBOUNDED) {
+        if (!endOfStream && (bytesRemaining > 0 || bytesRemaining == C.LENGTH_UNBOUNDED)) {
           openNextSource();
           return read(buffer, offset, max);
         }
@@ -187,11 +203,6 @@ public final class CacheDataSource implements DataSource {
     CacheSpan span;
     if (ignoreCache) {
       span = null;
-    } else if (bytesRemaining == C.LENGTH_UNBOUNDED) {
-      // TODO: Support caching for unbounded requests. This requires storing the source length
-      // into the cache (the simplest approach is to incorporate it into each cache file's name).
-      Log.w(TAG, "Cache bypassed due to unbounded length.");
-      span = null;
     } else if (blockOnCache) {
       try {
         span = cache.startReadWrite(key, readPosition);
@@ -210,18 +221,41 @@ public final class CacheDataSource implements DataSource {
       // Data is cached, read from cache.
       Uri fileUri = Uri.fromFile(span.file);
       long filePosition = readPosition - span.position;
-      long length = Math.min(span.length - filePosition, bytesRemaining);
+      long length = span.length - filePosition;
+      if (bytesRemaining != C.LENGTH_UNBOUNDED) {
+        length = Math.min(length, bytesRemaining);
+      }
       dataSpec = new DataSpec(fileUri, readPosition, filePosition, length, key, flags);
       currentDataSource = cacheReadDataSource;
     } else {
       // Data is not cached, and data is not locked, read from upstream with cache backing.
       lockedSpan = span;
-      long length = span.isOpenEnded() ? bytesRemaining : Math.min(span.length, bytesRemaining);
+      long length;
+      if (span.isOpenEnded()) {
+        length = bytesRemaining;
+      } else if (bytesRemaining == C.LENGTH_UNBOUNDED) {
+        length = span.length;
+      } else {
+        length = Math.min(span.length, bytesRemaining);
+      }
       dataSpec = new DataSpec(uri, readPosition, length, key, flags);
       currentDataSource = cacheWriteDataSource != null ? cacheWriteDataSource
           : upstreamDataSource;
     }
-    currentDataSource.open(dataSpec);
+    currentRequestUnbounded = dataSpec.length == C.LENGTH_UNBOUNDED;
+    long resolvedLength = currentDataSource.open(dataSpec);
+    if (currentRequestUnbounded && resolvedLength != C.LENGTH_UNBOUNDED) {
+      // The upstream source resolved the length of the remaining data.
+      currentRequestUnbounded = false;
+      bytesRemaining = resolvedLength;
+      setContentLength(readPosition + resolvedLength);
+    }
+  }
+
+  private void setContentLength(long length) {
+    if (!ignoreCache && cache instanceof ContentLengthCache) {
+      ((ContentLengthCache) cache).setContentLength(key, length);
+    }
   }
 
   private void closeCurrentSource() throws IOException {
@@ -15,6 +15,8 @@
  */
 package com.google.android.exoplayer.upstream.cache;
 
+import com.google.android.exoplayer.C;
+
 /**
  * Evicts data from a {@link Cache}. Implementations should call {@link Cache#removeSpan(CacheSpan)}
  * to evict cache entries based on their eviction policies.
@@ -27,7 +29,8 @@ public interface CacheEvictor extends Cache.Listener {
    * @param cache The source of the event.
    * @param key The key being written.
    * @param position The starting position of the data being written.
-   * @param length The maximum length of the data being written.
+   * @param length The maximum length of the data being written, or {@link C#LENGTH_UNBOUNDED} if
+   *     it is not known.
    */
   void onStartFile(Cache cache, String key, long position, long length);
 
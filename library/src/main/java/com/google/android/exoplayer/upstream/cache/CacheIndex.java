@@ -0,0 +1,484 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer.upstream.cache;
+
+import com.google.android.exoplayer.C;
+import com.google.android.exoplayer.util.Util;
+
+import android.util.Log;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An append-only journal recording the spans held by a {@link SimpleCache}, together with the
+ * content lengths recorded for their keys.
+ * <p>
+ * Each addition, removal and access of a span, and each change of content length, is appended to
+ * the journal as a record. The spans held by the cache can then be restored by replaying the
+ * journal, which avoids parsing the name of every file in the cache directory on startup, and
+ * allows last access timestamps to be updated without renaming files. Additions, removals and
+ * content lengths are written through to the journal immediately. Accesses are buffered and written
+ * in batches, since losing them only degrades the accuracy of eviction. The journal is compacted by
+ * rewriting it from the in-memory representation once it contains sufficiently many redundant
+ * records.
+ * <p>
+ * Files in the cache directory that are not recorded by the journal, such as those left behind if
+ * the process died between writing and committing a span, are deleted when the journal is loaded.
+ * <p>
+ * The index also assigns an integer id to each cache key, so that cache files can be named by the
+ * id rather than by the key, which may be too long to be used in a file name. The id is part of the
+ * file name recorded for each span, and the mapping from ids to keys is restored from the records
+ * of the spans when the journal is replayed. Cache files named by an id therefore cannot be
+ * restored if the journal is lost, and are deleted when the cache directory is scanned.
+ * <p>
+ * This class is not thread safe. Calls must be synchronized by the owning cache.
+ */
+/* package */ final class CacheIndex {
+
+  /**
+   * The name of the journal file within the cache directory.
+   */
+  public static final String FILE_NAME = "index.v1.exi";
+
+  private static final String TAG = "CacheIndex";
+
+  private static final String TEMP_FILE_NAME = FILE_NAME + ".tmp";
+  private static final int VERSION = 1;
+
+  private static final int RECORD_TYPE_ADD = 0;
+  private static final int RECORD_TYPE_REMOVE = 1;
+  private static final int RECORD_TYPE_TOUCH = 2;
+  private static final int RECORD_TYPE_CONTENT_LENGTH = 3;
+
+  /**
+   * The number of buffered access records that triggers a write to the journal.
+   */
+  private static final int TOUCH_FLUSH_THRESHOLD = 64;
+  /**
+   * The minimum number of records in the journal before compaction is considered.
+   */
+  private static final int MIN_COMPACTION_RECORD_COUNT = 1024;
+  /**
+   * Compaction is performed when the journal contains more than this many records per live span or
+   * content length.
+   */
+  private static final int COMPACTION_RECORDS_PER_SPAN = 2;
+
+  private final File cacheDir;
+  private final File journalFile;
+  private final File tempJournalFile;
+  private final HashMap<String, Integer> keyIds;
+  private final HashMap<Integer, String> keysById;
+
+  private DataOutputStream output;
+  private int recordCount;
+  private int spanCount;
+  private int contentLengthCount;
+  private int pendingTouchCount;
+  private int nextKeyId;
+
+  /**
+   * @param cacheDir The cache directory in which the journal is stored.
+   */
+  public CacheIndex(File cacheDir) {
+    this.cacheDir = cacheDir;
+    this.journalFile = new File(cacheDir, FILE_NAME);
+    this.tempJournalFile = new File(cacheDir, TEMP_FILE_NAME);
+    keyIds = new HashMap<>();
+    keysById = new HashMap<>();
+  }
+
+  /**
+   * Returns whether the file with the specified name belongs to the index, as opposed to being a
+   * cache file or an unrecognized file.
+   *
+   * @param fileName The name of the file.
+   * @return True if the file belongs to the index. False otherwise.
+   */
+  public static boolean isIndexFile(String fileName) {
+    return FILE_NAME.equals(fileName) || TEMP_FILE_NAME.equals(fileName);
+  }
+
+  /**
+   * Restores the cached spans and content lengths by replaying the journal, deletes any files in
+   * the cache directory that are not recorded by the journal, and opens the journal for writing.
+   * <p>
+   * If false is returned then the journal could not be read, and the caller should rebuild the
+   * in-memory representation by other means before calling {@link #compact(Collection, Map)}.
+   *
+   * @param spans A list to which the restored spans are added.
+   * @param contentLengths A map to which the restored content lengths are added, keyed by cache
+   *     key.
+   * @return True if the journal was read. False otherwise.
+   */
+  public boolean load(List<CacheSpan> spans, Map<String, Long> contentLengths) {
+    if (!journalFile.exists()) {
+      return false;
+    }
+    LinkedHashMap<String, CacheSpan> spansByFileName = new LinkedHashMap<>();
+    HashMap<String, Long> lengthsByKey = new HashMap<>();
+    int readRecordCount = 0;
+    boolean truncated = false;
+    DataInputStream input = null;
+    try {
+      input = new DataInputStream(new BufferedInputStream(new FileInputStream(journalFile)));
+      if (input.readInt() != VERSION) {
+        return false;
+      }
+      while (true) {
+        int recordType = input.read();
+        if (recordType == -1) {
+          break;
+        }
+        try {
+          readRecord(input, recordType, spansByFileName, lengthsByKey);
+        } catch (EOFException e) {
+          // The final record was only partially written.
+          truncated = true;
+          break;
+        }
+        readRecordCount++;
+      }
+    } catch (IOException e) {
+      Log.w(TAG, "Failed to read cache index", e);
+      return false;
+    } finally {
+      if (input != null) {
+        try {
+          input.close();
+        } catch (IOException e) {
+          // Ignore.
+        }
+      }
+    }
+    deleteUnindexedFiles(spansByFileName);
+    spans.addAll(spansByFileName.values());
+    contentLengths.putAll(lengthsByKey);
+    spanCount = spansByFileName.size();
+    contentLengthCount = lengthsByKey.size();
+    recordCount = readRecordCount;
+    if (truncated || shouldCompact()) {
+      // Rewriting the journal also discards any partially written record, which must not be
+      // followed by newly appended records.
+      writeJournal(spansByFileName.values(), lengthsByKey);
+    } else {
+      openOutput();
+    }
+    return true;
+  }
+
+  /**
+   * Returns the id assigned to a cache key, assigning a new id if the key does not have one.
+   *
+   * @param key The cache key.
+   * @return The id assigned to the key.
+   */
+  public int assignKeyId(String key) {
+    Integer keyId = keyIds.get(key);
+    if (keyId != null) {
+      return keyId;
+    }
+    keyId = nextKeyId;
+    putKeyId(key, keyId);
+    return keyId;
+  }
+
+  /**
+   * Returns the cache key to which an id is assigned.
+   *
+   * @param keyId The id.
+   * @return The cache key, or null if the id is not assigned to a key.
+   */
+  public String getKey(int keyId) {
+    return keysById.get(keyId);
+  }
+
+  /**
+   * Records the addition of a span. The record is written through to the journal.
+   *
+   * @param span The added span.
+   */
+  public void onSpanAdded(CacheSpan span) {
+    spanCount++;
+    if (output == null) {
+      return;
+    }
+    try {
+      output.writeByte(RECORD_TYPE_ADD);
+      output.writeUTF(span.file.getName());
+      output.writeUTF(span.key);
+      output.writeLong(span.position);
+      output.writeLong(span.length);
+      output.writeLong(span.lastAccessTimestamp);
+      flush();
+      recordCount++;
+    } catch (IOException e) {
+      onJournalError(e);
+    }
+  }
+
+  /**
+   * Records the removal of a span. The record is written through to the journal.
+   *
+   * @param span The removed span.
+   */
+  public void onSpanRemoved(CacheSpan span) {
+    spanCount--;
+    if (output == null) {
+      return;
+    }
+    try {
+      output.writeByte(RECORD_TYPE_REMOVE);
+      output.writeUTF(span.file.getName());
+      flush();
+      recordCount++;
+    } catch (IOException e) {
+      onJournalError(e);
+    }
+  }
+
+  /**
+   * Records a change to the content length for a key. The record is written through to the
+   * journal.
+   *
+   * @param key The cache key.
+   * @param length The content length, or {@link C#LENGTH_UNBOUNDED} if it has been cleared.
+   */
+  public void onContentLengthChanged(String key, long length) {
+    if (output == null) {
+      return;
+    }
+    try {
+      output.writeByte(RECORD_TYPE_CONTENT_LENGTH);
+      output.writeUTF(key);
+      output.writeLong(length);
+      flush();
+      recordCount++;
+    } catch (IOException e) {
+      onJournalError(e);
+    }
+  }
+
+  /**
+   * Records an access to a span. The record is buffered, and written to the journal together with
+   * other pending records.
+   *
+   * @param span The accessed span, carrying its updated last access timestamp.
+   */
+  public void onSpanTouched(CacheSpan span) {
+    if (output == null) {
+      return;
+    }
+    try {
+      output.writeByte(RECORD_TYPE_TOUCH);
+      output.writeUTF(span.file.getName());
+      output.writeLong(span.lastAccessTimestamp);
+      recordCount++;
+      if (++pendingTouchCount >= TOUCH_FLUSH_THRESHOLD) {
+        flush();
+      }
+    } catch (IOException e) {
+      onJournalError(e);
+    }
+  }
+
+  /**
+   * Writes any buffered records to the journal.
+   */
+  public void flush() {
+    if (output == null) {
+      return;
+    }
+    try {
+      output.flush();
+      pendingTouchCount = 0;
+    } catch (IOException e) {
+      onJournalError(e);
+    }
+  }
+
+  /**
+   * Returns whether the journal contains enough redundant records that it should be compacted.
+   *
+   * @return Whether the journal should be compacted by calling {@link #compact(Collection, Map)}.
+   */
+  public boolean shouldCompact() {
+    return recordCount > MIN_COMPACTION_RECORD_COUNT
+        && recordCount > (spanCount + contentLengthCount) * COMPACTION_RECORDS_PER_SPAN;
+  }
+
+  /**
+   * Replaces the journal with one containing a single record for each of the specified spans and
+   * content lengths.
+   *
+   * @param spans The spans held by the cache, grouped by key.
+   * @param contentLengths The content lengths held by the cache, keyed by cache key.
+   */
+  public void compact(Collection<? extends Collection<CacheSpan>> spans,
+      Map<String, Long> contentLengths) {
+    ArrayList<CacheSpan> allSpans = new ArrayList<>();
+    for (Collection<CacheSpan> spansForKey : spans) {
+      allSpans.addAll(spansForKey);
+    }
+    spanCount = allSpans.size();
+    contentLengthCount = contentLengths.size();
+    writeJournal(allSpans, contentLengths);
+  }
+
+  private void readRecord(DataInputStream input, int recordType,
+      LinkedHashMap<String, CacheSpan> spansByFileName, HashMap<String, Long> lengthsByKey)
+      throws IOException {
+    if (recordType == RECORD_TYPE_CONTENT_LENGTH) {
+      String key = input.readUTF();
+      long length = input.readLong();
+      if (length == C.LENGTH_UNBOUNDED) {
+        lengthsByKey.remove(key);
+      } else {
+        lengthsByKey.put(key, length);
+      }
+      return;
+    }
+    String fileName = input.readUTF();
+    switch (recordType) {
+      case RECORD_TYPE_ADD:
+        String key = input.readUTF();
+        long position = input.readLong();
+        long length = input.readLong();
+        long lastAccessTimestamp = input.readLong();
+        int keyId = CacheSpan.getKeyId(fileName);
+        if (keyId != -1 && !keysById.containsKey(keyId)) {
+          putKeyId(key, keyId);
+        }
+        spansByFileName.put(fileName, CacheSpan.createCacheEntry(key, position, length,
+            lastAccessTimestamp, new File(cacheDir, fileName)));
+        break;
+      case RECORD_TYPE_REMOVE:
+        spansByFileName.remove(fileName);
+        break;
+      case RECORD_TYPE_TOUCH:
+        long timestamp = input.readLong();
+        CacheSpan span = spansByFileName.get(fileName);
+        if (span != null) {
+          spansByFileName.put(fileName, span.copyWithUpdatedLastAccessTime(timestamp));
+        }
+        break;
+      default:
+        throw new IOException("Unexpected record type: " + recordType);
+    }
+  }
+
+  private void putKeyId(String key, int keyId) {
+    keyIds.put(key, keyId);
+    keysById.put(keyId, key);
+    nextKeyId = Math.max(nextKeyId, keyId + 1);
+  }
+
+  /**
+   * Deletes files in the cache directory that are neither part of the index nor recorded as spans.
+   * Such files were never committed, or were removed from the journal but not deleted from disk.
+   */
+  private void deleteUnindexedFiles(Map<String, CacheSpan> spansByFileName) {
+    File[] files = cacheDir.listFiles();
+    if (files == null) {
+      return;
+    }
+    for (int i = 0; i < files.length; i++) {
+      String fileName = files[i].getName();
+      if (!isIndexFile(fileName) && !spansByFileName.containsKey(fileName)) {
+        files[i].delete();
+      }
+    }
+  }
+
+  private void writeJournal(Collection<CacheSpan> spans, Map<String, Long> contentLengths) {
+    closeOutput();
+    DataOutputStream tempOutput = null;
+    try {
+      tempOutput = new DataOutputStream(
+          new BufferedOutputStream(new FileOutputStream(tempJournalFile)));
+      tempOutput.writeInt(VERSION);
+      for (CacheSpan span : spans) {
+        tempOutput.writeByte(RECORD_TYPE_ADD);
+        tempOutput.writeUTF(span.file.getName());
+        tempOutput.writeUTF(span.key);
+        tempOutput.writeLong(span.position);
+        tempOutput.writeLong(span.length);
+        tempOutput.writeLong(span.lastAccessTimestamp);
+      }
+      for (Map.Entry<String, Long> entry : contentLengths.entrySet()) {
+        tempOutput.writeByte(RECORD_TYPE_CONTENT_LENGTH);
+        tempOutput.writeUTF(entry.getKey());
+        tempOutput.writeLong(entry.getValue());
+      }
+      tempOutput.close();
+      tempOutput = null;
+      if (!tempJournalFile.renameTo(journalFile)) {
+        throw new IOException("Failed to replace cache index");
+      }
+      recordCount = spans.size() + contentLengths.size();
+      openOutput();
+    } catch (IOException e) {
+      if (tempOutput != null) {
+        Util.closeQuietly(tempOutput);
+      }
+      tempJournalFile.delete();
+      onJournalError(e);
+    }
+  }
+
+  private void openOutput() {
+    try {
+      output = new DataOutputStream(
+          new BufferedOutputStream(new FileOutputStream(journalFile, true)));
+      pendingTouchCount = 0;
+    } catch (IOException e) {
+      onJournalError(e);
+    }
+  }
+
+  private void closeOutput() {
+    if (output != null) {
+      Util.closeQuietly(output);
+      output = null;
+    }
+    pendingTouchCount = 0;
+  }
+
+  /**
+   * Stops journaling and deletes the journal, so that the cache directory is scanned when the cache
+   * is next initialized.
+   */
+  private void onJournalError(IOException e) {
+    Log.e(TAG, "Cache index disabled", e);
+    closeOutput();
+    journalFile.delete();
+  }
+
+}
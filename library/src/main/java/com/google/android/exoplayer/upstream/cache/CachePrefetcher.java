@@ -0,0 +1,364 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer.upstream.cache;
+
+import com.google.android.exoplayer.C;
+import com.google.android.exoplayer.chunk.FormatWrapper;
+import com.google.android.exoplayer.upstream.DataSource;
+import com.google.android.exoplayer.upstream.DataSourceFactory;
+import com.google.android.exoplayer.upstream.DataSpec;
+import com.google.android.exoplayer.upstream.NetworkLock;
+import com.google.android.exoplayer.upstream.NetworkLock.PriorityTooLowException;
+import com.google.android.exoplayer.upstream.PriorityDataSource;
+import com.google.android.exoplayer.util.Assertions;
+
+import android.os.Handler;
+import android.util.Log;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Downloads a list of requests into a {@link Cache} in the background, so that they can later be
+ * read through a {@link CacheDataSource} without touching the network.
+ * <p>
+ * Requests are loaded by a bounded number of worker threads. Each worker reads through a
+ * {@link CacheDataSource}, so data that is already cached is skipped, and a request that was
+ * previously interrupted resumes from the end of the data that was cached before the
+ * interruption. Upstream reads are made at {@link NetworkLock#DOWNLOAD_PRIORITY}, and so yield to
+ * playback whenever a task with a higher priority (for example
+ * {@link NetworkLock#STREAMING_PRIORITY}) is registered with the {@link NetworkLock}.
+ * <p>
+ * Requests for DASH, HLS and SmoothStreaming content can be built using
+ * {@link com.google.android.exoplayer.dash.DashPrefetchUtil},
+ * {@link com.google.android.exoplayer.hls.HlsPrefetchUtil} and
+ * {@link com.google.android.exoplayer.smoothstreaming.SmoothStreamingPrefetchUtil} respectively.
+ */
+public final class CachePrefetcher {
+
+  /**
+   * Interface definition for a callback to be notified of {@link CachePrefetcher} events.
+   */
+  public interface EventListener {
+
+    /**
+     * Invoked when a request has been fully cached.
+     *
+     * @param requestsCompleted The number of requests that have been fully cached.
+     * @param requestCount The total number of requests.
+     * @param bytesLoaded The number of bytes loaded so far, including bytes that were already
+     *     cached.
+     */
+    void onPrefetchProgress(int requestsCompleted, int requestCount, long bytesLoaded);
+
+    /**
+     * Invoked when all requests have been fully cached.
+     *
+     * @param bytesLoaded The total number of bytes loaded, including bytes that were already
+     *     cached.
+     */
+    void onPrefetchCompleted(long bytesLoaded);
+
+    /**
+     * Invoked when the prefetcher stops because a request could not be loaded.
+     *
+     * @param e The cause of the failure.
+     */
+    void onPrefetchError(IOException e);
+
+  }
+
+  /**
+   * The default maximum number of requests that are loaded concurrently.
+   */
+  public static final int DEFAULT_MAX_CONCURRENT_REQUESTS = 2;
+
+  private static final String TAG = "CachePrefetcher";
+
+  private static final int BUFFER_SIZE = 16 * 1024;
+
+  private final Cache cache;
+  private final DataSourceFactory dataSourceFactory;
+  private final List<DataSpec> dataSpecs;
+  private final int maxConcurrentRequests;
+  private final Handler eventHandler;
+  private final EventListener eventListener;
+  private final AtomicInteger nextRequestIndex;
+  private final AtomicInteger requestsCompleted;
+  private final AtomicLong bytesLoaded;
+
+  private Thread[] workers;
+  private volatile boolean canceled;
+  private volatile boolean finished;
+  private int activeWorkerCount;
+
+  /**
+   * @param cache The cache into which data should be written.
+   * @param dataSourceFactory A factory for upstream {@link DataSource} instances. Each worker
+   *     thread uses its own instance.
+   * @param dataSpecs The requests to load. Requests must define a cache key, or otherwise the
+   *     request uri is used as the key.
+   * @param maxConcurrentRequests The maximum number of requests to load concurrently.
+   * @param eventHandler A handler to use when delivering events to {@code eventListener}. May be
+   *     null if delivery of events is not required.
+   * @param eventListener A listener of events. May be null if delivery of events is not required.
+   */
+  public CachePrefetcher(Cache cache, DataSourceFactory dataSourceFactory,
+      List<DataSpec> dataSpecs, int maxConcurrentRequests, Handler eventHandler,
+      EventListener eventListener) {
+    Assertions.checkArgument(maxConcurrentRequests > 0);
+    this.cache = Assertions.checkNotNull(cache);
+    this.dataSourceFactory = Assertions.checkNotNull(dataSourceFactory);
+    this.dataSpecs = new ArrayList<>(dataSpecs);
+    this.maxConcurrentRequests = maxConcurrentRequests;
+    this.eventHandler = eventHandler;
+    this.eventListener = eventListener;
+    nextRequestIndex = new AtomicInteger();
+    requestsCompleted = new AtomicInteger();
+    bytesLoaded = new AtomicLong();
+  }
+
+  /**
+   * Starts prefetching. Must only be called once.
+   */
+  public synchronized void start() {
+    Assertions.checkState(workers == null);
+    if (dataSpecs.isEmpty()) {
+      finished = true;
+      notifyCompleted();
+      return;
+    }
+    NetworkLock.instance.add(NetworkLock.DOWNLOAD_PRIORITY);
+    int workerCount = Math.min(maxConcurrentRequests, dataSpecs.size());
+    workers = new Thread[workerCount];
+    activeWorkerCount = workerCount;
+    for (int i = 0; i < workerCount; i++) {
+      workers[i] = new Worker(dataSourceFactory.createDataSource(), "CachePrefetcher:" + i);
+      workers[i].start();
+    }
+  }
+
+  /**
+   * Cancels prefetching. Data that has already been written into the cache remains cached.
+   * <p>
+   * Does nothing if prefetching has already finished.
+   */
+  public synchronized void cancel() {
+    if (finished || canceled) {
+      return;
+    }
+    canceled = true;
+    if (workers != null) {
+      for (Thread worker : workers) {
+        worker.interrupt();
+      }
+    }
+    finish();
+  }
+
+  /**
+   * Returns whether prefetching has finished, either because all requests were cached, because a
+   * request failed, or because {@link #cancel()} was called.
+   */
+  public boolean isFinished() {
+    return finished;
+  }
+
+  /**
+   * Returns the total number of requests.
+   */
+  public int getRequestCount() {
+    return dataSpecs.size();
+  }
+
+  /**
+   * Returns the number of requests that have been fully cached.
+   */
+  public int getRequestsCompleted() {
+    return requestsCompleted.get();
+  }
+
+  /**
+   * Returns the number of bytes loaded so far, including bytes that were already cached.
+   */
+  public long getBytesLoaded() {
+    return bytesLoaded.get();
+  }
+
+  /**
+   * Returns the index of the format with the highest bitrate that does not exceed
+   * {@code maxBitrate}, or the index of the format with the lowest bitrate if all formats exceed
+   * it. Can be used to choose which representation, variant or track to prefetch.
+   *
+   * @param formats The formats from which to choose.
+   * @param maxBitrate The maximum bitrate, in bits per second.
+   * @return The index of the selected format, or -1 if {@code formats} is empty.
+   */
+  public static int selectFormatIndex(List<? extends FormatWrapper> formats, int maxBitrate) {
+    int selectedIndex = -1;
+    int lowestIndex = -1;
+    for (int i = 0; i < formats.size(); i++) {
+      int bitrate = formats.get(i).getFormat().bitrate;
+      if (lowestIndex == -1 || bitrate < formats.get(lowestIndex).getFormat().bitrate) {
+        lowestIndex = i;
+      }
+      if (bitrate <= maxBitrate
+          && (selectedIndex == -1 || bitrate > formats.get(selectedIndex).getFormat().bitrate)) {
+        selectedIndex = i;
+      }
+    }
+    return selectedIndex != -1 ? selectedIndex : lowestIndex;
+  }
+
+  private synchronized void onWorkerFinished() {
+    activeWorkerCount--;
+    if (activeWorkerCount == 0 && !finished) {
+      finish();
+      notifyCompleted();
+    }
+  }
+
+  private synchronized void onWorkerError(IOException e) {
+    if (finished) {
+      return;
+    }
+    canceled = true;
+    for (Thread worker : workers) {
+      if (worker != Thread.currentThread()) {
+        worker.interrupt();
+      }
+    }
+    finish();
+    notifyError(e);
+  }
+
+  private void finish() {
+    finished = true;
+    if (workers != null) {
+      NetworkLock.instance.remove(NetworkLock.DOWNLOAD_PRIORITY);
+    }
+  }
+
+  private void notifyProgress(final int requestsCompleted, final long bytesLoaded) {
+    if (eventHandler != null && eventListener != null) {
+      final int requestCount = dataSpecs.size();
+      eventHandler.post(new Runnable() {
+        @Override
+        public void run() {
+          eventListener.onPrefetchProgress(requestsCompleted, requestCount, bytesLoaded);
+        }
+      });
+    }
+  }
+
+  private void notifyCompleted() {
+    if (eventHandler != null && eventListener != null) {
+      final long bytesLoaded = this.bytesLoaded.get();
+      eventHandler.post(new Runnable() {
+        @Override
+        public void run() {
+          eventListener.onPrefetchCompleted(bytesLoaded);
+        }
+      });
+    }
+  }
+
+  private void notifyError(final IOException e) {
+    if (eventHandler != null && eventListener != null) {
+      eventHandler.post(new Runnable() {
+        @Override
+        public void run() {
+          eventListener.onPrefetchError(e);
+        }
+      });
+    }
+  }
+
+  private final class Worker extends Thread {
+
+    private final CacheDataSource dataSource;
+    private final byte[] buffer;
+
+    public Worker(DataSource upstream, String name) {
+      super(name);
+      dataSource = new CacheDataSource(cache,
+          new PriorityDataSource(NetworkLock.DOWNLOAD_PRIORITY, upstream), true, false);
+      buffer = new byte[BUFFER_SIZE];
+    }
+
+    @Override
+    public void run() {
+      try {
+        int requestIndex;
+        while (!canceled && (requestIndex = nextRequestIndex.getAndIncrement())
+            < dataSpecs.size()) {
+          load(dataSpecs.get(requestIndex));
+          if (canceled) {
+            break;
+          }
+          notifyProgress(requestsCompleted.incrementAndGet(), bytesLoaded.get());
+        }
+        onWorkerFinished();
+      } catch (InterruptedException e) {
+        // Canceled.
+      } catch (IOException e) {
+        if (!canceled) {
+          Log.w(TAG, "Prefetch failed", e);
+          onWorkerError(e);
+        }
+      }
+    }
+
+    /**
+     * Loads a single request into the cache. If playback takes priority part way through, the
+     * worker waits for it to finish and then resumes from the cached data.
+     */
+    private void load(DataSpec dataSpec) throws IOException, InterruptedException {
+      String key = dataSpec.key != null ? dataSpec.key : dataSpec.uri.toString();
+      if (dataSpec.length != C.LENGTH_UNBOUNDED
+          && cache.isCached(key, dataSpec.position, dataSpec.length)) {
+        bytesLoaded.addAndGet(dataSpec.length);
+        return;
+      }
+      while (true) {
+        long requestBytesLoaded = 0;
+        try {
+          dataSource.open(dataSpec);
+          int bytesRead;
+          while ((bytesRead = dataSource.read(buffer, 0, buffer.length)) != -1) {
+            requestBytesLoaded += bytesRead;
+            if (canceled || Thread.interrupted()) {
+              throw new InterruptedException();
+            }
+          }
+          bytesLoaded.addAndGet(requestBytesLoaded);
+          return;
+        } catch (PriorityTooLowException e) {
+          // Yield to higher priority loads. When we resume, the data cached so far will be read
+          // from the cache rather than requested again.
+          NetworkLock.instance.proceed(NetworkLock.DOWNLOAD_PRIORITY);
+        } finally {
+          dataSource.close();
+        }
+      }
+    }
+
+  }
+
+}
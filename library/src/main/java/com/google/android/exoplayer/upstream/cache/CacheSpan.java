@@ -17,6 +17,7 @@ package com.google.android.exoplayer.upstream.cache;
 
 
 import java.io.File;
+import java.util.Locale;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -30,6 +31,10 @@ public final class CacheSpan implements Comparable<CacheSpan> {
   private static final Pattern cacheFilePattern =
       Pattern.compile("^(.+)\\.(\\d+)\\.(\\d+)(" + SUFFIX_ESCAPED + ")$");
 
+  private static final String SUFFIX_V2 = ".v2.exo";
+  private static final Pattern cacheFilePatternV2 =
+      Pattern.compile("^(\\d+)\\.(\\d+)\\.(\\d+)\\.v2\\.exo$");
+
   /**
    * The cache key that uniquely identifies the original stream.
    */
@@ -55,9 +60,50 @@ public final class CacheSpan implements Comparable<CacheSpan> {
    */
   public final long lastAccessTimestamp;
 
+  /**
+   * Returns a cache file whose name contains the escaped cache key.
+   * <p>
+   * The name may exceed the maximum length of a file name if the key is long. {@link SimpleCache}
+   * and {@link ConcurrentCache} instead name files by an id assigned to the key by their
+   * {@link CacheIndex}.
+   */
   public static File getCacheFileName(File cacheDir, String key, long offset,
       long lastAccessTimestamp) {
-    return new File(cacheDir, key + "." + offset + "." + lastAccessTimestamp + SUFFIX);
+    return new File(cacheDir,
+        escapeKey(key) + "." + offset + "." + lastAccessTimestamp + SUFFIX);
+  }
+
+  /**
+   * Returns a cache file whose name contains the id of the cache key, rather than the key itself.
+   *
+   * @param cacheDir The cache directory.
+   * @param keyId The id assigned to the cache key by {@link CacheIndex#assignKeyId(String)}.
+   * @param offset The position of the span in the original stream.
+   * @param lastAccessTimestamp The last access timestamp.
+   * @return The cache file.
+   */
+  /* package */ static File getCacheFile(File cacheDir, int keyId, long offset,
+      long lastAccessTimestamp) {
+    return new File(cacheDir, keyId + "." + offset + "." + lastAccessTimestamp + SUFFIX_V2);
+  }
+
+  /**
+   * Returns the id of the cache key contained in the name of a cache file created by
+   * {@link #getCacheFile(File, int, long, long)}.
+   *
+   * @param fileName The name of the cache file.
+   * @return The id of the cache key, or -1 if the name does not contain one.
+   */
+  /* package */ static int getKeyId(String fileName) {
+    Matcher matcher = cacheFilePatternV2.matcher(fileName);
+    if (!matcher.matches()) {
+      return -1;
+    }
+    try {
+      return Integer.parseInt(matcher.group(1));
+    } catch (NumberFormatException e) {
+      return -1;
+    }
   }
 
   public static CacheSpan createLookup(String key, long position) {
@@ -83,7 +129,39 @@ public final class CacheSpan implements Comparable<CacheSpan> {
     if (!matcher.matches()) {
       return null;
     }
-    return CacheSpan.createCacheEntry(matcher.group(1), Long.parseLong(matcher.group(2)),
+    String key = unescapeKey(matcher.group(1));
+    if (key == null) {
+      return null;
+    }
+    return CacheSpan.createCacheEntry(key, Long.parseLong(matcher.group(2)),
+        Long.parseLong(matcher.group(3)), file);
+  }
+
+  /**
+   * Creates a cache span from an underlying cache file, which may be named either by
+   * {@link #getCacheFile(File, int, long, long)} or by
+   * {@link #getCacheFileName(File, String, long, long)}.
+   *
+   * @param file The cache file.
+   * @param index The index that assigned the id of the cache key.
+   * @return The span, or null if the file name is not correctly formatted, or contains a key id
+   *     that is not known to the index.
+   */
+  /* package */ static CacheSpan createCacheEntry(File file, CacheIndex index) {
+    Matcher matcher = cacheFilePatternV2.matcher(file.getName());
+    if (!matcher.matches()) {
+      return createCacheEntry(file);
+    }
+    String key;
+    try {
+      key = index.getKey(Integer.parseInt(matcher.group(1)));
+    } catch (NumberFormatException e) {
+      return null;
+    }
+    if (key == null) {
+      return null;
+    }
+    return CacheSpan.createCacheEntry(key, Long.parseLong(matcher.group(2)),
         Long.parseLong(matcher.group(3)), file);
   }
 
@@ -92,6 +170,22 @@ public final class CacheSpan implements Comparable<CacheSpan> {
     return new CacheSpan(key, position, file.length(), true, lastAccessTimestamp, file);
   }
 
+  /**
+   * Creates a cache span for an underlying cache file whose properties are already known, for
+   * example from a {@link CacheIndex}.
+   *
+   * @param key The cache key.
+   * @param position The position of the span in the original stream.
+   * @param length The length of the cache file.
+   * @param lastAccessTimestamp The last access timestamp.
+   * @param file The cache file.
+   * @return The span.
+   */
+  /* package */ static CacheSpan createCacheEntry(String key, long position, long length,
+      long lastAccessTimestamp, File file) {
+    return new CacheSpan(key, position, length, true, lastAccessTimestamp, file);
+  }
+
   // Visible for testing.
   CacheSpan(String key, long position, long length, boolean isCached,
       long lastAccessTimestamp, File file) {
@@ -110,11 +204,26 @@ public final class CacheSpan implements Comparable<CacheSpan> {
     return length == -1;
   }
 
+  /**
+   * Returns a copy of this cache span with an updated last access timestamp. The underlying file is
+   * not renamed.
+   *
+   * @param lastAccessTimestamp The new last access timestamp.
+   * @return A {@link CacheSpan} representing the same cache file.
+   */
+  public CacheSpan copyWithUpdatedLastAccessTime(long lastAccessTimestamp) {
+    return new CacheSpan(key, position, length, isCached, lastAccessTimestamp, file);
+  }
+
   /**
    * Renames the file underlying this cache span to update its last access time.
    *
+   * @deprecated {@link SimpleCache} records last access timestamps in its index, and no longer
+   *     renames files when they are accessed. Use
+   *     {@link #copyWithUpdatedLastAccessTime(long)} instead.
    * @return A {@link CacheSpan} representing the updated cache file.
    */
+  @Deprecated
   public CacheSpan touch() {
     long now = System.currentTimeMillis();
     File newCacheFile = getCacheFileName(file.getParentFile(), key, position, now);
@@ -122,6 +231,70 @@ public final class CacheSpan implements Comparable<CacheSpan> {
     return CacheSpan.createCacheEntry(key, position, now, newCacheFile);
   }
 
+  /**
+   * Escapes characters in a cache key that may not be safely used in a file name, such as those
+   * in a key derived from a URI. Keys consisting only of letters, digits, '.', '-' and '_' are
+   * returned unchanged.
+   */
+  private static String escapeKey(String key) {
+    StringBuilder builder = null;
+    int length = key.length();
+    for (int i = 0; i < length; i++) {
+      char c = key.charAt(i);
+      if (isSafeKeyCharacter(c)) {
+        if (builder != null) {
+          builder.append(c);
+        }
+        continue;
+      }
+      if (builder == null) {
+        builder = new StringBuilder(length + 16);
+        builder.append(key, 0, i);
+      }
+      if (c < 0x100) {
+        builder.append(String.format(Locale.US, "%%%02X", (int) c));
+      } else {
+        builder.append(String.format(Locale.US, "%%u%04X", (int) c));
+      }
+    }
+    return builder == null ? key : builder.toString();
+  }
+
+  /**
+   * Reverses {@link #escapeKey(String)}, returning null if the escaped key is malformed.
+   */
+  private static String unescapeKey(String escapedKey) {
+    if (escapedKey.indexOf('%') == -1) {
+      return escapedKey;
+    }
+    StringBuilder builder = new StringBuilder(escapedKey.length());
+    int length = escapedKey.length();
+    try {
+      for (int i = 0; i < length; i++) {
+        char c = escapedKey.charAt(i);
+        if (c != '%') {
+          builder.append(c);
+        } else if (i + 1 < length && escapedKey.charAt(i + 1) == 'u' && i + 6 <= length) {
+          builder.append((char) Integer.parseInt(escapedKey.substring(i + 2, i + 6), 16));
+          i += 5;
+        } else if (i + 3 <= length) {
+          builder.append((char) Integer.parseInt(escapedKey.substring(i + 1, i + 3), 16));
+          i += 2;
+        } else {
+          return null;
+        }
+      }
+    } catch (NumberFormatException e) {
+      return null;
+    }
+    return builder.toString();
+  }
+
+  private static boolean isSafeKeyCharacter(char c) {
+    return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '.'
+        || c == '-' || c == '_';
+  }
+
   @Override
   public int compareTo(CacheSpan another) {
     if (!key.equals(another.key)) {
@@ -0,0 +1,660 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer.upstream.cache;
+
+import com.google.android.exoplayer.C;
+import com.google.android.exoplayer.util.Assertions;
+
+import android.os.ConditionVariable;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A {@link Cache} implementation that maintains an in-memory representation, and which allows
+ * operations on different keys to proceed concurrently.
+ * <p>
+ * Unlike {@link SimpleCache}, which synchronizes every operation on the cache as a whole, this
+ * implementation:
+ * <ul>
+ * <li>Locks holes and waits for them to be released on a per-key basis, so that a writer blocked
+ *     on one key is only woken by changes to that key.</li>
+ * <li>Serves {@link #getCachedSpans(String)}, {@link #getKeys()}, {@link #getCacheSpace()} and
+ *     {@link #isCached(String, long, long)} without locking.</li>
+ * <li>Only holds a cache-wide lock whilst updating the evictor, the index and listeners, so that
+ *     events are delivered in the same order as they occur. Files of evicted spans are deleted
+ *     after the lock is released.</li>
+ * </ul>
+ * The in-memory representation is persisted in the same format as {@link SimpleCache}, so a cache
+ * directory written by one can be opened by the other (but not by both at the same time).
+ */
+public final class ConcurrentCache implements ContentLengthCache {
+
+  private final File cacheDir;
+  private final CacheEvictor evictor;
+  private final CacheIndex index;
+  private final ConcurrentHashMap<String, CachedContent> contents;
+  private final ConcurrentHashMap<String, Long> contentLengths;
+  private final AtomicLong totalSpace;
+  /**
+   * Guards the evictor, the index, the delivery of events and {@link #pendingDeletions}. Must not
+   * be acquired whilst holding the monitor of a {@link CachedContent}.
+   */
+  private final Object updateLock;
+  /**
+   * Files of removed spans, which are deleted after {@link #updateLock} is released.
+   */
+  private final ArrayList<File> pendingDeletions;
+
+  private volatile boolean initialized;
+
+  /**
+   * Constructs the cache. The cache will delete any unrecognized files from the directory. Hence
+   * the directory cannot be used to store other files.
+   *
+   * @param cacheDir A dedicated cache directory.
+   */
+  public ConcurrentCache(File cacheDir, CacheEvictor evictor) {
+    this.cacheDir = cacheDir;
+    this.evictor = evictor;
+    this.index = new CacheIndex(cacheDir);
+    this.contents = new ConcurrentHashMap<>();
+    this.contentLengths = new ConcurrentHashMap<>();
+    this.totalSpace = new AtomicLong();
+    this.updateLock = new Object();
+    this.pendingDeletions = new ArrayList<>();
+    // Start cache initialization.
+    final ConditionVariable conditionVariable = new ConditionVariable();
+    new Thread() {
+      @Override
+      public void run() {
+        synchronized (updateLock) {
+          conditionVariable.open();
+          initialize();
+        }
+        deletePendingFiles();
+      }
+    }.start();
+    conditionVariable.block();
+  }
+
+  @Override
+  public NavigableSet<CacheSpan> addListener(String key, Listener listener) {
+    synchronized (updateLock) {
+      while (true) {
+        CachedContent content = getOrCreateContent(key);
+        synchronized (content) {
+          if (contents.get(key) == content) {
+            content.listeners.add(listener);
+            return getCachedSpans(key);
+          }
+        }
+      }
+    }
+  }
+
+  @Override
+  public void removeListener(String key, Listener listener) {
+    synchronized (updateLock) {
+      CachedContent content = contents.get(key);
+      if (content != null) {
+        synchronized (content) {
+          content.listeners.remove(listener);
+          maybeRemoveContent(content);
+        }
+      }
+    }
+  }
+
+  @Override
+  public NavigableSet<CacheSpan> getCachedSpans(String key) {
+    blockUntilInitialized();
+    CachedContent content = contents.get(key);
+    if (content == null || content.spans.isEmpty()) {
+      return null;
+    }
+    TreeSet<CacheSpan> spansForKey = new TreeSet<>(content.spans.values());
+    return spansForKey.isEmpty() ? null : spansForKey;
+  }
+
+  @Override
+  public Set<String> getKeys() {
+    blockUntilInitialized();
+    HashSet<String> keys = new HashSet<>();
+    for (CachedContent content : contents.values()) {
+      if (!content.spans.isEmpty()) {
+        keys.add(content.key);
+      }
+    }
+    return keys;
+  }
+
+  @Override
+  public long getCacheSpace() {
+    blockUntilInitialized();
+    return totalSpace.get();
+  }
+
+  @Override
+  public CacheSpan startReadWrite(String key, long position) throws InterruptedException {
+    while (true) {
+      CacheSpan span = startReadWriteNonBlocking(key, position);
+      if (span != null) {
+        return span;
+      }
+      // Write case, lock not available. We'll be woken up when the locked span for the key is
+      // released, or when a span is added for the key (if the span covers the requested position,
+      // then we'll become a read and be able to make progress).
+      CachedContent content = contents.get(key);
+      if (content != null) {
+        synchronized (content) {
+          while (content.lockedHole != null && !content.isCached(position)
+              && contents.get(key) == content) {
+            content.wait();
+          }
+        }
+      }
+    }
+  }
+
+  @Override
+  public CacheSpan startReadWriteNonBlocking(String key, long position) {
+    blockUntilInitialized();
+    while (true) {
+      CachedContent content = getOrCreateContent(key);
+      CacheSpan span = content.getSpan(position);
+      if (!span.isCached) {
+        synchronized (content) {
+          if (contents.get(key) != content) {
+            // The content was removed concurrently.
+            continue;
+          }
+          // Spans are only added whilst holding the monitor, so look up the span again.
+          span = content.getSpan(position);
+          if (!span.isCached) {
+            if (content.lockedHole != null) {
+              // Write case, lock not available.
+              return null;
+            }
+            // Write case, lock available.
+            content.lockedHole = span;
+            return span;
+          }
+        }
+      }
+      // Read case. The file is checked outside of any lock, since doing so may require I/O.
+      if (!span.file.exists()) {
+        // The file has been deleted from under us. It's likely that other files will have been
+        // deleted too, so scan the whole in-memory representation.
+        removeStaleSpans();
+        continue;
+      }
+      CacheSpan touchedSpan = touchSpan(content, span);
+      if (touchedSpan != null) {
+        return touchedSpan;
+      }
+      // The span was replaced or removed concurrently, so try again.
+    }
+  }
+
+  @Override
+  public File startFile(String key, long position, long length) {
+    blockUntilInitialized();
+    CachedContent content = contents.get(key);
+    Assertions.checkState(content != null);
+    synchronized (content) {
+      Assertions.checkState(content.lockedHole != null);
+    }
+    int keyId;
+    synchronized (updateLock) {
+      if (!cacheDir.exists()) {
+        // For some reason the cache directory doesn't exist. Make a best effort to create it.
+        removeStaleSpans();
+        cacheDir.mkdirs();
+        // The index will have been deleted along with the directory, so write a new one.
+        index.compact(getAllSpans(), contentLengths);
+      }
+      evictor.onStartFile(this, key, position, length);
+      keyId = index.assignKeyId(key);
+    }
+    deletePendingFiles();
+    return CacheSpan.getCacheFile(cacheDir, keyId, position, System.currentTimeMillis());
+  }
+
+  @Override
+  public void commitFile(File file) {
+    blockUntilInitialized();
+    CacheSpan span;
+    synchronized (updateLock) {
+      span = CacheSpan.createCacheEntry(file, index);
+    }
+    Assertions.checkState(span != null);
+    CachedContent content = contents.get(span.key);
+    Assertions.checkState(content != null);
+    synchronized (content) {
+      Assertions.checkState(content.lockedHole != null);
+    }
+    // If the file doesn't exist, don't add it to the in-memory representation.
+    if (!file.exists()) {
+      return;
+    }
+    // If the file has length 0, delete it and don't add it to the in-memory representation.
+    long length = file.length();
+    if (length == 0) {
+      file.delete();
+      return;
+    }
+    synchronized (updateLock) {
+      index.onSpanAdded(span);
+      addSpan(content, span);
+      maybeCompactIndex();
+    }
+    deletePendingFiles();
+  }
+
+  @Override
+  public void releaseHoleSpan(CacheSpan holeSpan) {
+    blockUntilInitialized();
+    CachedContent content = contents.get(holeSpan.key);
+    Assertions.checkState(content != null);
+    synchronized (content) {
+      Assertions.checkState(holeSpan == content.lockedHole);
+      content.lockedHole = null;
+      content.notifyAll();
+      maybeRemoveContent(content);
+    }
+  }
+
+  @Override
+  public void removeSpan(CacheSpan span) {
+    blockUntilInitialized();
+    synchronized (updateLock) {
+      CachedContent content = contents.get(span.key);
+      Assertions.checkState(content != null);
+      CacheSpan removedSpan;
+      synchronized (content) {
+        removedSpan = content.spans.remove(span.position);
+        Assertions.checkState(removedSpan != null);
+        maybeRemoveContent(content);
+      }
+      totalSpace.addAndGet(-removedSpan.length);
+      pendingDeletions.add(span.file);
+      index.onSpanRemoved(span);
+      if (content.spans.isEmpty()) {
+        removeContentLength(span.key);
+      }
+      notifySpanRemoved(content, span);
+    }
+    deletePendingFiles();
+  }
+
+  @Override
+  public boolean isCached(String key, long position, long length) {
+    blockUntilInitialized();
+    CachedContent content = contents.get(key);
+    if (content == null) {
+      return false;
+    }
+    Map.Entry<Long, CacheSpan> floorEntry = content.spans.floorEntry(position);
+    if (floorEntry == null) {
+      // We don't have a span covering the start of the queried region.
+      return false;
+    }
+    CacheSpan floorSpan = floorEntry.getValue();
+    long queryEndPosition = position + length;
+    long currentEndPosition = floorSpan.position + floorSpan.length;
+    if (currentEndPosition <= position) {
+      // We don't have a span covering the start of the queried region.
+      return false;
+    } else if (currentEndPosition >= queryEndPosition) {
+      // floorSpan covers the queried region.
+      return true;
+    }
+    Iterator<CacheSpan> iterator =
+        content.spans.tailMap(floorSpan.position, false).values().iterator();
+    while (iterator.hasNext()) {
+      CacheSpan next = iterator.next();
+      if (next.position > currentEndPosition) {
+        // There's a hole in the cache within the queried region.
+        return false;
+      }
+      // We expect currentEndPosition to always equal (next.position + next.length), but
+      // perform a max check anyway to guard against the existence of overlapping spans.
+      currentEndPosition = Math.max(currentEndPosition, next.position + next.length);
+      if (currentEndPosition >= queryEndPosition) {
+        // We've found spans covering the queried region.
+        return true;
+      }
+    }
+    // We ran out of spans before covering the queried region.
+    return false;
+  }
+
+  @Override
+  public void setContentLength(String key, long length) {
+    blockUntilInitialized();
+    synchronized (updateLock) {
+      Long previousLength = length == C.LENGTH_UNBOUNDED ? contentLengths.remove(key)
+          : contentLengths.put(key, length);
+      if (previousLength == null ? length != C.LENGTH_UNBOUNDED : previousLength != length) {
+        index.onContentLengthChanged(key, length);
+        maybeCompactIndex();
+      }
+    }
+  }
+
+  @Override
+  public long getContentLength(String key) {
+    blockUntilInitialized();
+    Long length = contentLengths.get(key);
+    return length == null ? C.LENGTH_UNBOUNDED : length;
+  }
+
+  /**
+   * Ensures that the cache's in-memory representation has been initialized.
+   */
+  private void initialize() {
+    if (!cacheDir.exists()) {
+      cacheDir.mkdirs();
+    }
+    ArrayList<CacheSpan> indexedSpans = new ArrayList<>();
+    if (index.load(indexedSpans, contentLengths)) {
+      for (int i = 0; i < indexedSpans.size(); i++) {
+        CacheSpan span = indexedSpans.get(i);
+        addSpan(getOrCreateContent(span.key), span);
+      }
+    } else {
+      // The index is missing or unreadable. Rebuild it by scanning the cache directory.
+      scanCacheDir();
+      index.compact(getAllSpans(), contentLengths);
+    }
+    initialized = true;
+  }
+
+  /**
+   * Adds a cached span to the in-memory representation for each cache file in the cache directory,
+   * deleting any files that are empty or unrecognized. Files named by a key id are unrecognized,
+   * since the key to which the id was assigned is only recorded by the index.
+   */
+  private void scanCacheDir() {
+    File[] files = cacheDir.listFiles();
+    if (files == null) {
+      return;
+    }
+    for (int i = 0; i < files.length; i++) {
+      File file = files[i];
+      if (CacheIndex.isIndexFile(file.getName())) {
+        continue;
+      } else if (file.length() == 0) {
+        file.delete();
+      } else {
+        CacheSpan span = CacheSpan.createCacheEntry(file, index);
+        if (span == null) {
+          file.delete();
+        } else {
+          addSpan(getOrCreateContent(span.key), span);
+        }
+      }
+    }
+  }
+
+  /**
+   * Blocks until initialization has completed. Initialization holds {@link #updateLock} for its
+   * duration, so returns immediately if called from within initialization (e.g. by the evictor).
+   */
+  private void blockUntilInitialized() {
+    if (!initialized) {
+      synchronized (updateLock) {
+        // Do nothing. Acquiring the lock is sufficient.
+      }
+    }
+  }
+
+  /**
+   * Deletes the files of removed spans. Does nothing if called whilst holding {@link #updateLock},
+   * in which case the files are deleted once the outermost holder releases it. This avoids
+   * blocking other operations on the cache whilst performing I/O.
+   */
+  private void deletePendingFiles() {
+    if (Thread.holdsLock(updateLock)) {
+      return;
+    }
+    File[] files;
+    synchronized (updateLock) {
+      if (pendingDeletions.isEmpty()) {
+        return;
+      }
+      files = pendingDeletions.toArray(new File[pendingDeletions.size()]);
+      pendingDeletions.clear();
+    }
+    for (File file : files) {
+      file.delete();
+    }
+  }
+
+  private CachedContent getOrCreateContent(String key) {
+    CachedContent content = contents.get(key);
+    if (content == null) {
+      CachedContent newContent = new CachedContent(key);
+      content = contents.putIfAbsent(key, newContent);
+      if (content == null) {
+        content = newContent;
+      }
+    }
+    return content;
+  }
+
+  /**
+   * Removes the {@link CachedContent} from {@link #contents} if it no longer holds any state.
+   * Must be called whilst holding the monitor of the content.
+   */
+  private void maybeRemoveContent(CachedContent content) {
+    if (content.spans.isEmpty() && content.lockedHole == null && content.listeners.isEmpty()) {
+      contents.remove(content.key, content);
+      // Wake up any waiting writers so that they retry with a new content.
+      content.notifyAll();
+    }
+  }
+
+  /**
+   * Replaces a cached span with one that has an updated last access timestamp.
+   *
+   * @param content The content to which the span belongs.
+   * @param span The span to replace.
+   * @return The replacement span, or null if the span was replaced or removed concurrently.
+   */
+  private CacheSpan touchSpan(CachedContent content, CacheSpan span) {
+    CacheSpan touchedSpan = span.copyWithUpdatedLastAccessTime(System.currentTimeMillis());
+    synchronized (updateLock) {
+      // Replacing a span does not change which positions are cached, so the monitor of the content
+      // is not required.
+      if (!content.spans.replace(span.position, span, touchedSpan)) {
+        return null;
+      }
+      index.onSpanTouched(touchedSpan);
+      maybeCompactIndex();
+      notifySpanTouched(content, span, touchedSpan);
+    }
+    // The evictor may have removed spans in response to the access.
+    deletePendingFiles();
+    return touchedSpan;
+  }
+
+  /**
+   * Adds a cached span to the in-memory representation. Must be called whilst holding
+   * {@link #updateLock}.
+   *
+   * @param content The content to which the span belongs.
+   * @param span The span to be added.
+   */
+  private void addSpan(CachedContent content, CacheSpan span) {
+    synchronized (content) {
+      content.spans.put(span.position, span);
+      content.notifyAll();
+    }
+    totalSpace.addAndGet(span.length);
+    notifySpanAdded(content, span);
+  }
+
+  /**
+   * Scans all of the cached spans in the in-memory representation, removing any for which files
+   * no longer exist.
+   */
+  private void removeStaleSpans() {
+    synchronized (updateLock) {
+      for (CachedContent content : contents.values()) {
+        for (CacheSpan span : content.spans.values()) {
+          if (span.file.exists()) {
+            continue;
+          }
+          boolean removed;
+          synchronized (content) {
+            removed = content.spans.remove(span.position, span);
+            maybeRemoveContent(content);
+          }
+          if (removed) {
+            totalSpace.addAndGet(-span.length);
+            index.onSpanRemoved(span);
+            if (content.spans.isEmpty()) {
+              removeContentLength(span.key);
+            }
+            notifySpanRemoved(content, span);
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * Removes the content length for a key. Must be called whilst holding {@link #updateLock}.
+   */
+  private void removeContentLength(String key) {
+    if (contentLengths.remove(key) != null) {
+      index.onContentLengthChanged(key, C.LENGTH_UNBOUNDED);
+    }
+  }
+
+  /**
+   * Compacts the index if it has accumulated sufficiently many redundant records. Must be called
+   * whilst holding {@link #updateLock}.
+   */
+  private void maybeCompactIndex() {
+    if (index.shouldCompact()) {
+      index.compact(getAllSpans(), contentLengths);
+    }
+  }
+
+  private ArrayList<Collection<CacheSpan>> getAllSpans() {
+    ArrayList<Collection<CacheSpan>> allSpans = new ArrayList<>();
+    for (CachedContent content : contents.values()) {
+      allSpans.add(content.spans.values());
+    }
+    return allSpans;
+  }
+
+  private void notifySpanRemoved(CachedContent content, CacheSpan span) {
+    for (int i = content.listeners.size() - 1; i >= 0; i--) {
+      content.listeners.get(i).onSpanRemoved(this, span);
+    }
+    evictor.onSpanRemoved(this, span);
+  }
+
+  private void notifySpanAdded(CachedContent content, CacheSpan span) {
+    for (int i = content.listeners.size() - 1; i >= 0; i--) {
+      content.listeners.get(i).onSpanAdded(this, span);
+    }
+    evictor.onSpanAdded(this, span);
+  }
+
+  private void notifySpanTouched(CachedContent content, CacheSpan oldSpan, CacheSpan newSpan) {
+    for (int i = content.listeners.size() - 1; i >= 0; i--) {
+      content.listeners.get(i).onSpanTouched(this, oldSpan, newSpan);
+    }
+    evictor.onSpanTouched(this, oldSpan, newSpan);
+  }
+
+  /**
+   * The cached spans and locking state for a single key.
+   * <p>
+   * {@link #spans} may be read without synchronization. Spans are only added and removed whilst
+   * holding the monitor of the instance. {@link #lockedHole} is guarded by the monitor of the
+   * instance, which is also used to wait for changes to the key.
+   */
+  private static final class CachedContent {
+
+    public final String key;
+    public final ConcurrentSkipListMap<Long, CacheSpan> spans;
+    public final CopyOnWriteArrayList<Listener> listeners;
+
+    public CacheSpan lockedHole;
+
+    public CachedContent(String key) {
+      this.key = key;
+      this.spans = new ConcurrentSkipListMap<>();
+      this.listeners = new CopyOnWriteArrayList<>();
+    }
+
+    /**
+     * Returns the cache {@link CacheSpan} corresponding to the provided position.
+     * <p>
+     * If the position is contained by an existing entry in the cache, then the returned
+     * {@link CacheSpan} defines the file in which the data is stored. If the position is not
+     * contained by an existing entry, then the returned {@link CacheSpan} defines the maximum
+     * extents of the hole in the cache.
+     *
+     * @param position The position.
+     * @return The corresponding cache {@link CacheSpan}.
+     */
+    public CacheSpan getSpan(long position) {
+      Map.Entry<Long, CacheSpan> floorEntry = spans.floorEntry(position);
+      if (floorEntry != null) {
+        CacheSpan floorSpan = floorEntry.getValue();
+        if (position < floorSpan.position + floorSpan.length) {
+          // The position is contained within floorSpan.
+          return floorSpan;
+        }
+      }
+      Map.Entry<Long, CacheSpan> ceilingEntry = spans.ceilingEntry(position);
+      return ceilingEntry == null ? CacheSpan.createOpenHole(key, position)
+          : CacheSpan.createClosedHole(key, position, ceilingEntry.getKey() - position);
+    }
+
+    /**
+     * Returns whether the specified position is contained by an existing entry in the cache.
+     *
+     * @param position The position.
+     * @return Whether the position is cached.
+     */
+    public boolean isCached(long position) {
+      Map.Entry<Long, CacheSpan> floorEntry = spans.floorEntry(position);
+      return floorEntry != null
+          && position < floorEntry.getValue().position + floorEntry.getValue().length;
+    }
+
+  }
+
+}
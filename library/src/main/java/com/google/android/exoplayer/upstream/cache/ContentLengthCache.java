@@ -0,0 +1,46 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer.upstream.cache;
+
+import com.google.android.exoplayer.C;
+
+/**
+ * A {@link Cache} that also records the total length of the data for each key.
+ * <p>
+ * Implementing this interface is optional. Users of a {@link Cache} should check whether it is an
+ * instance of this interface before recording or querying content lengths.
+ */
+public interface ContentLengthCache extends Cache {
+
+  /**
+   * Records the total length of the data for a given key, so that requests of unbounded length for
+   * the key can be served from the cache. The length is discarded when the last span for the key is
+   * removed.
+   *
+   * @param key The cache key for the data.
+   * @param length The total length of the data, or {@link C#LENGTH_UNBOUNDED} to clear it.
+   */
+  void setContentLength(String key, long length);
+
+  /**
+   * Returns the total length of the data for a given key, if known.
+   *
+   * @param key The cache key for the data.
+   * @return The total length of the data, or {@link C#LENGTH_UNBOUNDED} if it is not known.
+   */
+  long getContentLength(String key);
+
+}
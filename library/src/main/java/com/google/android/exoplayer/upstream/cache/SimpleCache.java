@@ -15,6 +15,7 @@
  */
 package com.google.android.exoplayer.upstream.cache;
 
+import com.google.android.exoplayer.C;
 import com.google.android.exoplayer.util.Assertions;
 
 import android.os.ConditionVariable;
@@ -31,14 +32,20 @@ import java.util.TreeSet;
 
 /**
  * A {@link Cache} implementation that maintains an in-memory representation.
+ * <p>
+ * The in-memory representation is persisted in a journaled {@link CacheIndex} stored alongside
+ * the cache files, from which it is restored on startup. The cache directory is only scanned if
+ * the index is missing or unreadable.
  */
-public final class SimpleCache implements Cache {
+public final class SimpleCache implements ContentLengthCache {
 
   private final File cacheDir;
   private final CacheEvictor evictor;
+  private final CacheIndex index;
   private final HashMap<String, CacheSpan> lockedSpans;
   private final HashMap<String, TreeSet<CacheSpan>> cachedSpans;
   private final HashMap<String, ArrayList<Listener>> listeners;
+  private final HashMap<String, Long> contentLengths;
   private long totalSpace = 0;
 
   /**
@@ -50,9 +57,11 @@ public final class SimpleCache implements Cache {
   public SimpleCache(File cacheDir, CacheEvictor evictor) {
     this.cacheDir = cacheDir;
     this.evictor = evictor;
+    this.index = new CacheIndex(cacheDir);
     this.lockedSpans = new HashMap<>();
     this.cachedSpans = new HashMap<>();
     this.listeners = new HashMap<>();
+    this.contentLengths = new HashMap<>();
     // Start cache initialization.
     final ConditionVariable conditionVariable = new ConditionVariable();
     new Thread() {
@@ -138,9 +147,11 @@ public final class SimpleCache implements Cache {
       TreeSet<CacheSpan> spansForKey = cachedSpans.get(oldCacheSpan.key);
       Assertions.checkState(spansForKey.remove(oldCacheSpan));
       // Obtain a new span with updated last access timestamp.
-      spanningRegion = oldCacheSpan.touch();
+      spanningRegion = oldCacheSpan.copyWithUpdatedLastAccessTime(System.currentTimeMillis());
       // Add the updated span back into the in-memory representation.
       spansForKey.add(spanningRegion);
+      index.onSpanTouched(spanningRegion);
+      maybeCompactIndex();
       notifySpanTouched(oldCacheSpan, spanningRegion);
       return spanningRegion;
     }
@@ -162,14 +173,17 @@ public final class SimpleCache implements Cache {
       // For some reason the cache directory doesn't exist. Make a best effort to create it.
       removeStaleSpans();
       cacheDir.mkdirs();
+      // The index will have been deleted along with the directory, so write a new one.
+      index.compact(cachedSpans.values(), contentLengths);
     }
     evictor.onStartFile(this, key, position, length);
-    return CacheSpan.getCacheFileName(cacheDir, key, position, System.currentTimeMillis());
+    return CacheSpan.getCacheFile(cacheDir, index.assignKeyId(key), position,
+        System.currentTimeMillis());
   }
 
   @Override
   public synchronized void commitFile(File file) {
-    CacheSpan span = CacheSpan.createCacheEntry(file);
+    CacheSpan span = CacheSpan.createCacheEntry(file, index);
     Assertions.checkState(span != null);
     Assertions.checkState(lockedSpans.containsKey(span.key));
     // If the file doesn't exist, don't add it to the in-memory representation.
@@ -182,7 +196,9 @@ public final class SimpleCache implements Cache {
       file.delete();
       return;
     }
+    index.onSpanAdded(span);
     addSpan(span);
+    maybeCompactIndex();
     notifyAll();
   }
 
@@ -236,16 +252,36 @@ public final class SimpleCache implements Cache {
     if (!cacheDir.exists()) {
       cacheDir.mkdirs();
     }
+    ArrayList<CacheSpan> indexedSpans = new ArrayList<>();
+    if (index.load(indexedSpans, contentLengths)) {
+      for (int i = 0; i < indexedSpans.size(); i++) {
+        addSpan(indexedSpans.get(i));
+      }
+    } else {
+      // The index is missing or unreadable. Rebuild it by scanning the cache directory.
+      scanCacheDir();
+      index.compact(cachedSpans.values(), contentLengths);
+    }
+  }
+
+  /**
+   * Adds a cached span to the in-memory representation for each cache file in the cache directory,
+   * deleting any files that are empty or unrecognized. Files named by a key id are unrecognized,
+   * since the key to which the id was assigned is only recorded by the index.
+   */
+  private void scanCacheDir() {
     File[] files = cacheDir.listFiles();
     if (files == null) {
       return;
     }
     for (int i = 0; i < files.length; i++) {
       File file = files[i];
-      if (file.length() == 0) {
+      if (CacheIndex.isIndexFile(file.getName())) {
+        continue;
+      } else if (file.length() == 0) {
         file.delete();
       } else {
-        CacheSpan span = CacheSpan.createCacheEntry(file);
+        CacheSpan span = CacheSpan.createCacheEntry(file, index);
         if (span == null) {
           file.delete();
         } else {
@@ -277,12 +313,45 @@ public final class SimpleCache implements Cache {
     totalSpace -= span.length;
     Assertions.checkState(spansForKey.remove(span));
     span.file.delete();
+    index.onSpanRemoved(span);
     if (spansForKey.isEmpty()) {
       cachedSpans.remove(span.key);
+      removeContentLength(span.key);
     }
     notifySpanRemoved(span);
   }
 
+  @Override
+  public synchronized void setContentLength(String key, long length) {
+    Long previousLength = length == C.LENGTH_UNBOUNDED ? contentLengths.remove(key)
+        : contentLengths.put(key, length);
+    if (previousLength == null ? length != C.LENGTH_UNBOUNDED : previousLength != length) {
+      index.onContentLengthChanged(key, length);
+      maybeCompactIndex();
+    }
+  }
+
+  @Override
+  public synchronized long getContentLength(String key) {
+    Long length = contentLengths.get(key);
+    return length == null ? C.LENGTH_UNBOUNDED : length;
+  }
+
+  private void removeContentLength(String key) {
+    if (contentLengths.remove(key) != null) {
+      index.onContentLengthChanged(key, C.LENGTH_UNBOUNDED);
+    }
+  }
+
+  /**
+   * Compacts the index if it has accumulated sufficiently many redundant records.
+   */
+  private void maybeCompactIndex() {
+    if (index.shouldCompact()) {
+      index.compact(cachedSpans.values(), contentLengths);
+    }
+  }
+
   /**
    * Scans all of the cached spans in the in-memory representation, removing any for which files
    * no longer exist.
@@ -300,6 +369,7 @@ public final class SimpleCache implements Cache {
           if (span.isCached) {
             totalSpace -= span.length;
           }
+          index.onSpanRemoved(span);
           notifySpanRemoved(span);
         } else {
           isEmpty = false;
@@ -307,6 +377,7 @@ public final class SimpleCache implements Cache {
       }
       if (isEmpty) {
         iterator.remove();
+        removeContentLength(next.getKey());
       }
     }
   }
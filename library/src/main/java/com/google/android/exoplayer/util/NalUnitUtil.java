@@ -223,20 +223,36 @@ public final class NalUnitUtil {
 
     int limit = endOffset - 1;
     // We're looking for the NAL unit start code prefix 0x000001. The value of i tracks the index of
-    // the third byte.
-    for (int i = startOffset + 2; i < limit; i += 3) {
-      if ((data[i] & 0xFE) != 0) {
-        // There isn't a NAL prefix here, or at the next two positions. Do nothing and let the
-        // loop advance the index by three.
-      } else if (data[i - 2] == 0 && data[i - 1] == 0 && data[i] == 1) {
-        if (prefixFlags != null) {
-          clearPrefixFlags(prefixFlags);
+    // the third byte. A byte other than 0 or 1 cannot be the third byte of a prefix, and rules out
+    // prefixes whose third byte lies at the next two positions too. Coded slice data rarely
+    // contains zeros, so the search almost always advances by three bytes per byte examined.
+    int i = startOffset + 2;
+    while (i < limit) {
+      // Examine two candidates per iteration while neither can be the third byte of a prefix.
+      while (i + 3 < limit && (data[i] & 0xFE) != 0 && (data[i + 3] & 0xFE) != 0) {
+        i += 6;
+      }
+      if (i >= limit) {
+        break;
+      }
+      int value = data[i];
+      if ((value & 0xFE) != 0) {
+        i += 3;
+      } else if (value == 1) {
+        if (data[i - 2] == 0 && data[i - 1] == 0) {
+          if (prefixFlags != null) {
+            clearPrefixFlags(prefixFlags);
+          }
+          return i - 2;
         }
-        return i - 2;
+        // The next two positions cannot be the third byte of a prefix, since this byte isn't 0.
+        i += 3;
+      } else if (data[i - 1] != 0) {
+        // This byte is 0, but the previous one isn't. The next position cannot be the third byte
+        // of a prefix, but the one after that can.
+        i += 2;
       } else {
-        // There isn't a NAL prefix here, but there might be at the next position. We should
-        // only skip forward by one. The loop will skip forward by three, so subtract two here.
-        i -= 2;
+        i++;
       }
     }
 
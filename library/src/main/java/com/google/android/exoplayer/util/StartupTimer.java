@@ -0,0 +1,163 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer.util;
+
+import android.os.Handler;
+
+/**
+ * Measures the time taken to reach each stage of start-up, from when playback is requested to when
+ * the first frame is rendered.
+ * <p>
+ * The time at which each stage is first reached is recorded by invoking the corresponding method.
+ * A breakdown is reported to the {@link EventListener} once the first frame has been rendered.
+ * Methods may be invoked from any thread.
+ */
+public final class StartupTimer {
+
+  /**
+   * Interface definition for a callback to be notified of {@link StartupTimer} events.
+   */
+  public interface EventListener {
+
+    /**
+     * Invoked when the first frame has been rendered. Each time is measured from when
+     * {@link StartupTimer#start()} was invoked.
+     *
+     * @param manifestMs The time taken to load the manifest, or {@link StartupTimer#NOT_REACHED}.
+     * @param drmMs The time taken to obtain DRM keys, or {@link StartupTimer#NOT_REACHED}.
+     * @param initializationMs The time taken to load initialization data, or
+     *     {@link StartupTimer#NOT_REACHED}.
+     * @param firstSampleMs The time taken to load the first media chunk, or
+     *     {@link StartupTimer#NOT_REACHED}.
+     * @param firstFrameMs The time taken to render the first frame.
+     */
+    void onStartupTimings(long manifestMs, long drmMs, long initializationMs, long firstSampleMs,
+        long firstFrameMs);
+
+  }
+
+  /**
+   * Indicates that a stage was not reached before the first frame was rendered, for example the
+   * DRM stage of unprotected content.
+   */
+  public static final long NOT_REACHED = -1;
+
+  private final Handler eventHandler;
+  private final EventListener eventListener;
+  private final Clock clock;
+
+  private long startTimeMs;
+  private long manifestMs;
+  private long drmMs;
+  private long initializationMs;
+  private long firstSampleMs;
+  private boolean timing;
+
+  /**
+   * @param eventHandler A handler to use when delivering events to {@code eventListener}. May be
+   *     null if delivery of events is not required.
+   * @param eventListener A listener of events. May be null if delivery of events is not required.
+   */
+  public StartupTimer(Handler eventHandler, EventListener eventListener) {
+    this(eventHandler, eventListener, new SystemClock());
+  }
+
+  /**
+   * @param eventHandler A handler to use when delivering events to {@code eventListener}. May be
+   *     null if delivery of events is not required.
+   * @param eventListener A listener of events. May be null if delivery of events is not required.
+   * @param clock The clock used to measure time.
+   */
+  public StartupTimer(Handler eventHandler, EventListener eventListener, Clock clock) {
+    this.eventHandler = eventHandler;
+    this.eventListener = eventListener;
+    this.clock = clock;
+  }
+
+  /**
+   * Starts timing, discarding any stages recorded previously. Should be invoked when playback is
+   * requested.
+   */
+  public synchronized void start() {
+    startTimeMs = clock.elapsedRealtime();
+    manifestMs = NOT_REACHED;
+    drmMs = NOT_REACHED;
+    initializationMs = NOT_REACHED;
+    firstSampleMs = NOT_REACHED;
+    timing = true;
+  }
+
+  /**
+   * Records that the manifest has been loaded.
+   */
+  public synchronized void onManifestLoaded() {
+    manifestMs = getStageTimeMs(manifestMs);
+  }
+
+  /**
+   * Records that DRM keys have been obtained.
+   */
+  public synchronized void onDrmKeysLoaded() {
+    drmMs = getStageTimeMs(drmMs);
+  }
+
+  /**
+   * Records that initialization data has been loaded.
+   */
+  public synchronized void onInitializationLoaded() {
+    initializationMs = getStageTimeMs(initializationMs);
+  }
+
+  /**
+   * Records that the first media chunk has been loaded.
+   */
+  public synchronized void onFirstSampleLoaded() {
+    firstSampleMs = getStageTimeMs(firstSampleMs);
+  }
+
+  /**
+   * Records that the first frame has been rendered, and reports the timings. Timing stops until
+   * {@link #start()} is next invoked.
+   */
+  public synchronized void onFirstFrameRendered() {
+    if (!timing) {
+      return;
+    }
+    timing = false;
+    notifyStartupTimings(manifestMs, drmMs, initializationMs, firstSampleMs,
+        clock.elapsedRealtime() - startTimeMs);
+  }
+
+  private long getStageTimeMs(long stageTimeMs) {
+    // Only the first time at which each stage is reached is recorded.
+    return timing && stageTimeMs == NOT_REACHED ? clock.elapsedRealtime() - startTimeMs
+        : stageTimeMs;
+  }
+
+  private void notifyStartupTimings(final long manifestMs, final long drmMs,
+      final long initializationMs, final long firstSampleMs, final long firstFrameMs) {
+    if (eventHandler != null && eventListener != null) {
+      eventHandler.post(new Runnable() {
+        @Override
+        public void run() {
+          eventListener.onStartupTimings(manifestMs, drmMs, initializationMs, firstSampleMs,
+              firstFrameMs);
+        }
+      });
+    }
+  }
+
+}
@@ -231,6 +231,19 @@ public final class Util {
     }
   }
 
+  /**
+   * Closes an {@link InputStream}, suppressing any {@link IOException} that may occur.
+   *
+   * @param inputStream The {@link InputStream} to close.
+   */
+  public static void closeQuietly(InputStream inputStream) {
+    try {
+      inputStream.close();
+    } catch (IOException e) {
+      // Ignore.
+    }
+  }
+
   /**
    * Closes an {@link OutputStream}, suppressing any {@link IOException} that may occur.
    *
@@ -0,0 +1,63 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer.util.extensions;
+
+/**
+ * Base class for buffers that are exchanged with a {@link SimpleDecoder}.
+ */
+public abstract class Buffer {
+
+  /**
+   * Flag indicating that the buffer marks the end of the stream.
+   */
+  public static final int FLAG_END_OF_STREAM = 1;
+  /**
+   * Flag indicating that the buffer should be decoded but not output.
+   */
+  public static final int FLAG_DECODE_ONLY = 2;
+
+  /**
+   * Flags associated with the buffer.
+   */
+  public int flags;
+
+  /**
+   * Clears the buffer.
+   */
+  public void reset() {
+    flags = 0;
+  }
+
+  /**
+   * Sets the specified flag.
+   *
+   * @param flag The flag to set.
+   */
+  public final void setFlag(int flag) {
+    flags |= flag;
+  }
+
+  /**
+   * Returns whether the specified flag has been set.
+   *
+   * @param flag The flag to check.
+   * @return Whether the flag is set.
+   */
+  public final boolean getFlag(int flag) {
+    return (flags & flag) == flag;
+  }
+
+}
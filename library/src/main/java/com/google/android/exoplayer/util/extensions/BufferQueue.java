@@ -0,0 +1,99 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer.util.extensions;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A bounded queue through which buffers are handed from one thread to another, without locking
+ * and without allocating.
+ * <p>
+ * The queue has a single consumer thread. Buffers are normally offered by a single producer thread
+ * too, but output buffers may be released from a further thread, such as a GL rendering thread,
+ * and so {@link #offer(Object)} may be called from any thread. A producer claims a slot by
+ * incrementing the write index, and fills it once the consumer has emptied it. The consumer
+ * empties the slot at the read index once it has been filled.
+ * <p>
+ * Buffers belong to a fixed pool, and the capacity of the queue must be at least the size of the
+ * pool, so that a producer never waits for the consumer for longer than it takes to empty a slot.
+ *
+ * @param <T> The type of the buffers.
+ */
+/* package */ final class BufferQueue<T> {
+
+  private final AtomicReferenceArray<T> slots;
+  private final int slotMask;
+  private final AtomicLong writeIndex;
+  private final AtomicLong readIndex;
+
+  /**
+   * @param poolSize The number of buffers that may be held by the queue.
+   */
+  public BufferQueue(int poolSize) {
+    int capacity = Integer.highestOneBit(Math.max(poolSize, 1) * 2 - 1);
+    slots = new AtomicReferenceArray<>(capacity);
+    slotMask = capacity - 1;
+    writeIndex = new AtomicLong();
+    readIndex = new AtomicLong();
+  }
+
+  /**
+   * Adds a buffer to the tail of the queue. May be called from any thread.
+   *
+   * @param buffer The buffer.
+   */
+  public void offer(T buffer) {
+    int slot = (int) writeIndex.getAndIncrement() & slotMask;
+    while (!slots.compareAndSet(slot, null, buffer)) {
+      // The consumer is emptying the slot.
+      Thread.yield();
+    }
+  }
+
+  /**
+   * Removes the buffer at the head of the queue. Must only be called by the consumer thread.
+   *
+   * @return The buffer, or null if the queue is empty.
+   */
+  public T poll() {
+    long index = readIndex.get();
+    int slot = (int) index & slotMask;
+    T buffer = slots.get(slot);
+    if (buffer == null) {
+      return null;
+    }
+    slots.lazySet(slot, null);
+    readIndex.lazySet(index + 1);
+    return buffer;
+  }
+
+  /**
+   * Returns whether the queue is empty. Must only be called by the consumer thread.
+   */
+  public boolean isEmpty() {
+    return slots.get((int) readIndex.get() & slotMask) == null;
+  }
+
+  /**
+   * Returns the number of buffers in the queue, including any that are being added. May be called
+   * from any thread.
+   */
+  public int size() {
+    return (int) Math.max(0, writeIndex.get() - readIndex.get());
+  }
+
+}
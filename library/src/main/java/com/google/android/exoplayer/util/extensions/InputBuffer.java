@@ -0,0 +1,50 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer.util.extensions;
+
+import com.google.android.exoplayer.SampleHolder;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Input buffer to a {@link SimpleDecoder}.
+ */
+public class InputBuffer extends Buffer {
+
+  /**
+   * The sample to be decoded.
+   */
+  public final SampleHolder sampleHolder;
+
+  /* package */ int flushCount;
+  /* package */ long queueTimeNs;
+
+  /**
+   * @param initialSize The initial size of the direct buffer that holds the sample data.
+   */
+  public InputBuffer(int initialSize) {
+    sampleHolder = new SampleHolder(SampleHolder.BUFFER_REPLACEMENT_MODE_DIRECT);
+    sampleHolder.data = ByteBuffer.allocateDirect(initialSize);
+  }
+
+  @Override
+  public void reset() {
+    super.reset();
+    sampleHolder.clearData();
+    sampleHolder.flags = 0;
+  }
+
+}
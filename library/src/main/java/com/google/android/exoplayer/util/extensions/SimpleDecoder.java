@@ -0,0 +1,377 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer.util.extensions;
+
+import com.google.android.exoplayer.util.Assertions;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Base class for software decoders that decode on a dedicated thread.
+ * <p>
+ * The playback thread dequeues an input buffer, fills it and queues it. The decoder thread decodes
+ * queued input buffers, in order, into available output buffers, which the playback thread then
+ * dequeues and releases. Buffers are preallocated when the decoder is created, and are handed
+ * between the threads through lock-free queues, so no locks are held and nothing is allocated per
+ * buffer. The decoder thread parks when it cannot make progress, and is unparked by the other
+ * threads.
+ * <p>
+ * A flush increments a flush count that is recorded in each input buffer when it is queued, and
+ * copied to the output buffer into which it is decoded. Buffers queued before the most recent flush
+ * are returned to their pools by the thread that next takes them from a queue, so that each queue
+ * is only ever read by one thread. The first buffer decoded after a flush is decoded with the reset
+ * flag set.
+ * <p>
+ * Apart from {@link OutputBuffer#release()}, the public methods must only be called from the
+ * playback thread.
+ *
+ * @param <I> The type of the input buffers.
+ * @param <O> The type of the output buffers.
+ * @param <E> The type of the exceptions thrown by the decoder.
+ */
+public abstract class SimpleDecoder<I extends InputBuffer, O extends OutputBuffer,
+    E extends Exception> extends Thread {
+
+  // Owned by the playback thread.
+  private final I[] availableInputBuffers;
+  private int availableInputBufferCount;
+  private I dequeuedInputBuffer;
+
+  // Written by the playback thread, read by the decoder thread.
+  private final BufferQueue<I> queuedInputBuffers;
+  private volatile int flushCount;
+  private volatile boolean released;
+
+  // Written by the decoder thread, read by the playback thread.
+  private final BufferQueue<I> decodedInputBuffers;
+  private final BufferQueue<O> queuedOutputBuffers;
+  private volatile E decoderException;
+
+  // Written by any thread, read by the decoder thread.
+  private final BufferQueue<O> availableOutputBuffers;
+
+  // Owned by the decoder thread.
+  private int decodedFlushCount;
+  private volatile boolean waiting;
+
+  // Counters.
+  private volatile int maxQueuedInputBufferCount;
+  private volatile long decodedBufferCount;
+  private volatile long totalDecodeLatencyUs;
+  private volatile long maxDecodeLatencyUs;
+
+  /**
+   * The number of buffers in each array determines the pipelining depth of the decoder: the number
+   * of samples that may be queued ahead of decoding, and the number of decoded samples that may be
+   * queued ahead of rendering. Each array is populated by calling {@link #createInputBuffer()} or
+   * {@link #createOutputBuffer()} for each of its elements, from this constructor.
+   *
+   * @param inputBuffers An array to hold the input buffers.
+   * @param outputBuffers An array to hold the output buffers.
+   */
+  protected SimpleDecoder(I[] inputBuffers, O[] outputBuffers) {
+    availableInputBuffers = inputBuffers;
+    availableInputBufferCount = inputBuffers.length;
+    for (int i = 0; i < inputBuffers.length; i++) {
+      inputBuffers[i] = createInputBuffer();
+    }
+    queuedInputBuffers = new BufferQueue<>(inputBuffers.length);
+    decodedInputBuffers = new BufferQueue<>(inputBuffers.length);
+    queuedOutputBuffers = new BufferQueue<>(outputBuffers.length);
+    availableOutputBuffers = new BufferQueue<>(outputBuffers.length);
+    for (int i = 0; i < outputBuffers.length; i++) {
+      outputBuffers[i] = createOutputBuffer();
+      availableOutputBuffers.offer(outputBuffers[i]);
+    }
+  }
+
+  /**
+   * Returns an input buffer to be filled, or null if none are available.
+   *
+   * @return The input buffer, or null.
+   * @throws E If the decoder has failed.
+   */
+  public final I dequeueInputBuffer() throws E {
+    maybeThrowDecoderException();
+    Assertions.checkState(dequeuedInputBuffer == null);
+    I inputBuffer;
+    while ((inputBuffer = decodedInputBuffers.poll()) != null) {
+      availableInputBuffers[availableInputBufferCount++] = inputBuffer;
+    }
+    if (availableInputBufferCount == 0) {
+      return null;
+    }
+    inputBuffer = availableInputBuffers[--availableInputBufferCount];
+    inputBuffer.reset();
+    dequeuedInputBuffer = inputBuffer;
+    return inputBuffer;
+  }
+
+  /**
+   * Queues a filled input buffer to be decoded.
+   *
+   * @param inputBuffer The buffer returned by the most recent call to
+   *     {@link #dequeueInputBuffer()}.
+   * @throws E If the decoder has failed.
+   */
+  public final void queueInputBuffer(I inputBuffer) throws E {
+    maybeThrowDecoderException();
+    Assertions.checkArgument(inputBuffer == dequeuedInputBuffer);
+    dequeuedInputBuffer = null;
+    inputBuffer.flushCount = flushCount;
+    inputBuffer.queueTimeNs = System.nanoTime();
+    queuedInputBuffers.offer(inputBuffer);
+    int queuedInputBufferCount = queuedInputBuffers.size();
+    if (queuedInputBufferCount > maxQueuedInputBufferCount) {
+      maxQueuedInputBufferCount = queuedInputBufferCount;
+    }
+    maybeNotifyDecodeLoop();
+  }
+
+  /**
+   * Returns the next decoded output buffer, or null if none are available. The caller must
+   * {@link OutputBuffer#release()} the buffer when it is no longer needed.
+   *
+   * @return The output buffer, or null.
+   * @throws E If the decoder has failed.
+   */
+  public final O dequeueOutputBuffer() throws E {
+    maybeThrowDecoderException();
+    O outputBuffer;
+    while ((outputBuffer = queuedOutputBuffers.poll()) != null) {
+      if (outputBuffer.flushCount == flushCount) {
+        return outputBuffer;
+      }
+      // The buffer was decoded from a sample queued before the most recent flush.
+      releaseOutputBuffer(outputBuffer);
+    }
+    return null;
+  }
+
+  /**
+   * Makes an output buffer available to be decoded into again. May be called from any thread.
+   *
+   * @param outputBuffer The output buffer.
+   */
+  public final void releaseOutputBuffer(O outputBuffer) {
+    availableOutputBuffers.offer(outputBuffer);
+    maybeNotifyDecodeLoop();
+  }
+
+  /**
+   * Discards queued input buffers and any output that has not been dequeued, and returns ownership
+   * of a dequeued input buffer to the decoder. The caller is still responsible for releasing any
+   * dequeued output buffers.
+   */
+  public final void flush() {
+    flushCount++;
+    if (dequeuedInputBuffer != null) {
+      availableInputBuffers[availableInputBufferCount++] = dequeuedInputBuffer;
+      dequeuedInputBuffer = null;
+    }
+    O outputBuffer;
+    while ((outputBuffer = queuedOutputBuffers.poll()) != null) {
+      releaseOutputBuffer(outputBuffer);
+    }
+    // Wake the decoder thread so that it returns the input buffers queued before the flush.
+    maybeNotifyDecodeLoop();
+  }
+
+  /**
+   * Stops the decoder thread, blocking until it has finished. Subclasses that hold native
+   * resources should override this method to free them after calling the superclass method.
+   */
+  public void release() {
+    released = true;
+    LockSupport.unpark(this);
+    try {
+      join();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /**
+   * Returns the number of input buffers that are queued to be decoded.
+   */
+  public final int getQueuedInputBufferCount() {
+    return queuedInputBuffers.size();
+  }
+
+  /**
+   * Returns the maximum number of input buffers that have been queued to be decoded at once.
+   */
+  public final int getMaxQueuedInputBufferCount() {
+    return maxQueuedInputBufferCount;
+  }
+
+  /**
+   * Returns the number of output buffers that are queued to be dequeued.
+   */
+  public final int getQueuedOutputBufferCount() {
+    return queuedOutputBuffers.size();
+  }
+
+  /**
+   * Returns the number of input buffers that have been decoded.
+   */
+  public final long getDecodedBufferCount() {
+    return decodedBufferCount;
+  }
+
+  /**
+   * Returns the sum of the decode latencies of the decoded input buffers, in microseconds. The
+   * decode latency of a buffer is the time from when it was queued to when decoding finished.
+   */
+  public final long getTotalDecodeLatencyUs() {
+    return totalDecodeLatencyUs;
+  }
+
+  /**
+   * Returns the maximum decode latency of the decoded input buffers, in microseconds.
+   */
+  public final long getMaxDecodeLatencyUs() {
+    return maxDecodeLatencyUs;
+  }
+
+  /**
+   * Creates an input buffer. Called from the constructor.
+   */
+  protected abstract I createInputBuffer();
+
+  /**
+   * Creates an output buffer. Called from the constructor.
+   */
+  protected abstract O createOutputBuffer();
+
+  /**
+   * Decodes an input buffer into an output buffer. Called on the decoder thread.
+   * <p>
+   * The output buffer has been reset, and its timestamp set to that of the sample. The decoder may
+   * set {@link Buffer#FLAG_DECODE_ONLY} on the output buffer if it should not be output.
+   *
+   * @param inputBuffer The buffer to decode.
+   * @param outputBuffer The buffer into which to decode.
+   * @param reset Whether the decoder must be reset before decoding, because the decoder has been
+   *     flushed since the previous buffer was decoded.
+   * @return A decoder exception if an error occurred, or null if decoding was successful.
+   */
+  protected abstract E decode(I inputBuffer, O outputBuffer, boolean reset);
+
+  private void maybeThrowDecoderException() throws E {
+    E exception = decoderException;
+    if (exception != null) {
+      throw exception;
+    }
+  }
+
+  /**
+   * Unparks the decoder thread if it is waiting. Must be called after any change that may allow the
+   * decoder thread to make progress.
+   */
+  private void maybeNotifyDecodeLoop() {
+    if (waiting) {
+      LockSupport.unpark(this);
+    }
+  }
+
+  @Override
+  public final void run() {
+    I inputBuffer = null;
+    O outputBuffer = null;
+    while (!released) {
+      if (inputBuffer == null) {
+        inputBuffer = queuedInputBuffers.poll();
+      }
+      if (inputBuffer != null && inputBuffer.flushCount != flushCount) {
+        // The buffer was queued before the most recent flush.
+        decodedInputBuffers.offer(inputBuffer);
+        inputBuffer = null;
+        continue;
+      }
+      if (outputBuffer == null) {
+        outputBuffer = availableOutputBuffers.poll();
+      }
+      if (inputBuffer == null || outputBuffer == null) {
+        // Wait until we have an input buffer to decode, and an output buffer to decode into. The
+        // waiting flag is set before checking again, so that a change made by another thread is
+        // either seen here or followed by an unpark.
+        waiting = true;
+        if (!canMakeProgress(inputBuffer)) {
+          LockSupport.park(this);
+        }
+        waiting = false;
+        continue;
+      }
+
+      if (!decodeBuffer(inputBuffer, outputBuffer)) {
+        return;
+      }
+      inputBuffer = null;
+      if (outputBuffer.getFlag(Buffer.FLAG_DECODE_ONLY) || outputBuffer.flushCount != flushCount) {
+        // Keep the output buffer to decode into again.
+        continue;
+      }
+      queuedOutputBuffers.offer(outputBuffer);
+      outputBuffer = null;
+    }
+  }
+
+  private boolean canMakeProgress(I inputBuffer) {
+    if (released) {
+      return true;
+    } else if (inputBuffer == null) {
+      return !queuedInputBuffers.isEmpty();
+    } else {
+      return inputBuffer.flushCount != flushCount || !availableOutputBuffers.isEmpty();
+    }
+  }
+
+  /**
+   * Decodes an input buffer and returns it to the playback thread.
+   *
+   * @return Whether decoding was successful.
+   */
+  private boolean decodeBuffer(I inputBuffer, O outputBuffer) {
+    boolean reset = inputBuffer.flushCount != decodedFlushCount;
+    decodedFlushCount = inputBuffer.flushCount;
+    outputBuffer.reset();
+    outputBuffer.flushCount = inputBuffer.flushCount;
+    if (inputBuffer.getFlag(Buffer.FLAG_END_OF_STREAM)) {
+      outputBuffer.setFlag(Buffer.FLAG_END_OF_STREAM);
+    } else {
+      outputBuffer.timestampUs = inputBuffer.sampleHolder.timeUs;
+      if (inputBuffer.sampleHolder.isDecodeOnly()) {
+        outputBuffer.setFlag(Buffer.FLAG_DECODE_ONLY);
+      }
+      E exception = decode(inputBuffer, outputBuffer, reset);
+      if (exception != null) {
+        decoderException = exception;
+        return false;
+      }
+    }
+
+    long decodeLatencyUs = (System.nanoTime() - inputBuffer.queueTimeNs) / 1000;
+    totalDecodeLatencyUs += decodeLatencyUs;
+    if (decodeLatencyUs > maxDecodeLatencyUs) {
+      maxDecodeLatencyUs = decodeLatencyUs;
+    }
+    decodedBufferCount++;
+    decodedInputBuffers.offer(inputBuffer);
+    return true;
+  }
+
+}